@@ -0,0 +1,140 @@
+package com.toamistaketracker;
+
+import com.toamistaketracker.detector.tracker.RegionTileBitmap;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import net.runelite.api.Client;
+import net.runelite.api.Player;
+import net.runelite.api.coords.LocalPoint;
+import net.runelite.api.coords.WorldPoint;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Translates static room tiles, defined in their template region, into the instance the room was copied into.
+ * <p>
+ * The template-to-instance offset is only computed once per room load, from the local player's location, and the
+ * translated tile layers are cached so every detector (and every wipe reset) reuses them. {@link RaidState} invalidates
+ * the cache whenever the scene loads or the region changes.
+ */
+@Singleton
+@RequiredArgsConstructor(onConstructor_ = @Inject)
+public class InstanceGeometry {
+
+    private final Client client;
+
+    private boolean computed;
+    private int sceneDx; // scene x of the current region's south-west tile
+    private int sceneDy; // scene y of the current region's south-west tile
+    private int regionBaseX; // world x of the current region's south-west tile, in the instance
+    private int regionBaseY; // world y of the current region's south-west tile, in the instance
+
+    private final Map<Collection<WorldPoint>, RegionTileBitmap> layers = new IdentityHashMap<>(); // region tiles -> layer
+    private final Map<WorldPoint, WorldPoint> tiles = new HashMap<>(); // region tile -> instance tile
+
+    /**
+     * Invalidate the offset and all cached layers, e.g. because the scene was reloaded
+     */
+    void invalidate() {
+        computed = false;
+        layers.clear();
+        tiles.clear();
+    }
+
+    /**
+     * Whether the offset for the current room can be computed, i.e. the local player is in the scene
+     *
+     * @return True if the offset is available
+     */
+    public boolean isAvailable() {
+        return computeOffset();
+    }
+
+    /**
+     * Retrieve the world x coordinate of the current room's south-west tile, in the instance
+     *
+     * @return The x coordinate, or 0 if the offset isn't available
+     */
+    public int getRegionBaseX() {
+        return computeOffset() ? regionBaseX : 0;
+    }
+
+    /**
+     * Retrieve the world y coordinate of the current room's south-west tile, in the instance
+     *
+     * @return The y coordinate, or 0 if the offset isn't available
+     */
+    public int getRegionBaseY() {
+        return computeOffset() ? regionBaseY : 0;
+    }
+
+    /**
+     * Retrieve the given static tiles translated into the instance. Layers are cached by the identity of the given
+     * collection, so this should be called with a constant, e.g. a {@code static final} set of region tiles.
+     * <p>
+     * The returned layer is shared and must not be modified.
+     *
+     * @param regionTiles The tiles in their template region
+     * @return The translated tiles, or an empty layer if the offset isn't available
+     */
+    public RegionTileBitmap getLayer(@NonNull Collection<WorldPoint> regionTiles) {
+        if (!computeOffset()) {
+            return new RegionTileBitmap();
+        }
+
+        RegionTileBitmap layer = layers.get(regionTiles);
+        if (layer == null) {
+            layer = new RegionTileBitmap();
+            layer.anchor(regionBaseX, regionBaseY);
+            for (WorldPoint regionTile : regionTiles) {
+                layer.add(translate(regionTile));
+            }
+            layers.put(regionTiles, layer);
+        }
+        return layer;
+    }
+
+    /**
+     * Retrieve the given static tile translated into the instance
+     *
+     * @param regionTile The tile in its template region
+     * @return The translated tile, or null if the offset isn't available
+     */
+    public WorldPoint getTile(@NonNull WorldPoint regionTile) {
+        if (!computeOffset()) {
+            return null;
+        }
+
+        return tiles.computeIfAbsent(regionTile, this::translate);
+    }
+
+    private WorldPoint translate(WorldPoint regionTile) {
+        return WorldPoint.fromScene(client,
+                regionTile.getRegionX() + sceneDx,
+                regionTile.getRegionY() + sceneDy,
+                regionTile.getPlane());
+    }
+
+    private boolean computeOffset() {
+        if (computed) return true;
+
+        Player player = client.getLocalPlayer();
+        if (player == null) return false;
+
+        WorldPoint wpPlayer = player.getWorldLocation();
+        LocalPoint lpPlayer = LocalPoint.fromWorld(client, wpPlayer);
+        if (lpPlayer == null) return false;
+
+        sceneDx = lpPlayer.getSceneX() - wpPlayer.getRegionX();
+        sceneDy = lpPlayer.getSceneY() - wpPlayer.getRegionY();
+        regionBaseX = wpPlayer.getX() - wpPlayer.getRegionX();
+        regionBaseY = wpPlayer.getY() - wpPlayer.getRegionY();
+        computed = true;
+        return true;
+    }
+}
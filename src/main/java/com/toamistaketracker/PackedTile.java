@@ -0,0 +1,58 @@
+package com.toamistaketracker;
+
+import net.runelite.api.coords.WorldPoint;
+
+/**
+ * Utility for packing a tile's (x, y, plane) coordinates into a single int, so tiles can be compared and stored
+ * without allocating or hashing {@link WorldPoint}s.
+ * <p>
+ * World coordinates fit in 14 bits each (x and y are under 16384), and the plane in 2 bits.
+ */
+public final class PackedTile {
+
+    /**
+     * A packed value that no tile can have, used to represent no tile
+     */
+    public static final int NONE = -1;
+
+    private static final int COORD_BITS = 14;
+    private static final int COORD_MASK = (1 << COORD_BITS) - 1;
+    private static final int PLANE_SHIFT = COORD_BITS * 2;
+    private static final int PLANE_MASK = 0x3;
+
+    private PackedTile() {
+    }
+
+    public static int pack(int x, int y, int plane) {
+        return ((plane & PLANE_MASK) << PLANE_SHIFT) | ((x & COORD_MASK) << COORD_BITS) | (y & COORD_MASK);
+    }
+
+    /**
+     * Pack the given world point
+     *
+     * @param worldPoint The world point
+     * @return The packed tile, or {@link #NONE} if the world point is null
+     */
+    public static int pack(WorldPoint worldPoint) {
+        if (worldPoint == null) {
+            return NONE;
+        }
+        return pack(worldPoint.getX(), worldPoint.getY(), worldPoint.getPlane());
+    }
+
+    public static int getX(int packedTile) {
+        return (packedTile >>> COORD_BITS) & COORD_MASK;
+    }
+
+    public static int getY(int packedTile) {
+        return packedTile & COORD_MASK;
+    }
+
+    public static int getPlane(int packedTile) {
+        return (packedTile >>> PLANE_SHIFT) & PLANE_MASK;
+    }
+
+    public static WorldPoint toWorldPoint(int packedTile) {
+        return new WorldPoint(getX(packedTile), getY(packedTile), getPlane(packedTile));
+    }
+}
@@ -21,16 +21,34 @@ public enum RaidRoom {
     WARDENS_P3(15696),
     ;
 
+    // Dense region id -> room lookup, offset by the smallest region id. The ToA regions are all close together.
+    private static final int MIN_REGION_ID;
+    private static final RaidRoom[] ROOMS_BY_REGION;
+
+    static {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (RaidRoom r : values()) {
+            min = Math.min(min, r.getRegionId());
+            max = Math.max(max, r.getRegionId());
+        }
+
+        MIN_REGION_ID = min;
+        ROOMS_BY_REGION = new RaidRoom[max - min + 1];
+        for (RaidRoom r : values()) {
+            ROOMS_BY_REGION[r.getRegionId() - MIN_REGION_ID] = r;
+        }
+    }
+
     @Getter
     private final int regionId;
 
     public static RaidRoom forRegionId(int region) {
-        for (RaidRoom r : RaidRoom.values()) {
-            if (r.getRegionId() == region) {
-                return r;
-            }
+        int index = region - MIN_REGION_ID;
+        if (index < 0 || index >= ROOMS_BY_REGION.length) {
+            return null;
         }
 
-        return null;
+        return ROOMS_BY_REGION[index];
     }
 }
@@ -1,5 +1,6 @@
 package com.toamistaketracker;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.toamistaketracker.events.InRaidChanged;
 import com.toamistaketracker.events.RaidEntered;
@@ -22,11 +23,9 @@ import net.runelite.client.util.Text;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import static com.toamistaketracker.RaidRoom.RAID_LOBBY_INSIDE;
 import static com.toamistaketracker.RaidRoom.RAID_LOBBY_OUTSIDE;
@@ -38,10 +37,11 @@ public class RaidState {
 
     private static final int TOA_HUD_INIT_STATUS_NAMES_SCRIPT_ID = 6585;
     private static final int TOA_RAIDERS_VARC_START = 1099;
-    private static final int MAX_RAIDERS = 8;
+    public static final int MAX_RAIDERS = 8;
 
     private final Client client;
     private final EventBus eventBus;
+    private final InstanceGeometry instanceGeometry;
 
     @Getter
     private boolean inRaid;
@@ -49,10 +49,17 @@ public class RaidState {
     private RaidRoom currentRoom;
     @Getter
     private final Map<String, Raider> raiders = new HashMap<>(); // name -> raider
+    private final Raider[] raidersBySlot = new Raider[MAX_RAIDERS];
+    @Getter
+    private final TileOccupancy tileOccupancy = new TileOccupancy();
 
     private int prevRegion;
     private boolean newRaid;
 
+    // The region is only resolved again when the local player crosses into another chunk, or the scene is reloaded
+    private int resolvedChunk; // packed plane and scene chunk the region was resolved for, or -1
+    private int resolvedRegion;
+
     public void startUp() {
         clearState();
         eventBus.register(this);
@@ -66,9 +73,12 @@ public class RaidState {
     private void clearState() {
         inRaid = false;
         currentRoom = null;
-        raiders.clear();
+        instanceGeometry.invalidate();
+        clearRaiders();
         prevRegion = -1;
         newRaid = false;
+        resolvedChunk = -1;
+        resolvedRegion = -1;
     }
 
     @Subscribe(priority = 5)
@@ -78,13 +88,18 @@ public class RaidState {
         int newRegion = getRegion();
         if (newRegion == -1) return;
 
+        onGameTick(newRegion);
+    }
+
+    @VisibleForTesting
+    void onGameTick(int newRegion) {
         if (prevRegion != newRegion) {
             regionChanged(newRegion);
         }
         prevRegion = newRegion;
 
         if (!inRaid) {
-            raiders.clear();
+            clearRaiders();
             return;
         }
 
@@ -94,11 +109,18 @@ public class RaidState {
         if (raiders.isEmpty()) {
             tryLoadRaiders();
         }
+
+        captureRaiders();
+        computeTileOccupancy();
     }
 
     @Subscribe
     public void onGameStateChanged(GameStateChanged event) {
         if (event.getGameState() == GameState.LOADING) {
+            // The scene is being reloaded, so the resolved region and any translated room tiles are no longer valid
+            resolvedChunk = -1;
+            instanceGeometry.invalidate();
+
             // If there are still raiders, they can't be dead anymore after loading.
             for (Raider raider : raiders.values()) {
                 raider.setDead(false);
@@ -117,16 +139,57 @@ public class RaidState {
         return raiders.containsKey(actor.getName());
     }
 
+    /**
+     * Retrieve the raider for the given actor
+     *
+     * @param actor The actor
+     * @return The raider, or null if the actor is not a raider
+     */
+    public Raider getRaider(Actor actor) {
+        if (actor == null || actor.getName() == null) return null;
+        return raiders.get(actor.getName());
+    }
+
+    /**
+     * Retrieve the raider for the given name
+     *
+     * @param name The name of the raider
+     * @return The raider, or null if there is no raider with that name
+     */
+    public Raider getRaider(String name) {
+        if (name == null) return null;
+        return raiders.get(name);
+    }
+
+    /**
+     * Retrieve the raider in the given slot
+     *
+     * @param slot The slot, from 0 until {@link #MAX_RAIDERS}
+     * @return The raider, or null if there is no raider in that slot
+     */
+    public Raider getRaider(int slot) {
+        return raidersBySlot[slot];
+    }
+
     private int getRegion() {
         LocalPoint localPoint = client.getLocalPlayer().getLocalLocation();
         if (localPoint == null) {
             return -1;
-        } else {
-            return WorldPoint.fromLocalInstance(client, localPoint).getRegionID();
         }
+
+        // Instances are built from 8x8 chunks, so the template region can only change when crossing a chunk
+        int chunk = (client.getPlane() << 16) | ((localPoint.getSceneX() >> 3) << 8) | (localPoint.getSceneY() >> 3);
+        if (chunk != resolvedChunk) {
+            resolvedChunk = chunk;
+            resolvedRegion = WorldPoint.fromLocalInstance(client, localPoint).getRegionID();
+        }
+        return resolvedRegion;
     }
 
     private void regionChanged(int newRegion) {
+        // Invalidate before posting RaidRoomChanged, since detectors start up from that event
+        instanceGeometry.invalidate();
+
         currentRoom = RaidRoom.forRegionId(newRegion);
         if (currentRoom == null) {
             return;
@@ -154,15 +217,58 @@ public class RaidState {
         // TODO: RaidFinished?
     }
 
+    private void clearRaiders() {
+        raiders.clear();
+        Arrays.fill(raidersBySlot, null);
+        tileOccupancy.clear();
+    }
+
+    /**
+     * Snapshot each raider's state for this tick, which all detectors then evaluate
+     */
+    private void captureRaiders() {
+        for (Raider raider : raidersBySlot) {
+            if (raider != null) {
+                raider.captureTickState();
+            }
+        }
+    }
+
+    /**
+     * Move every raider's locations on to the next tick. This must be called on the client thread once the current
+     * tick has been captured for detection.
+     */
+    public void advanceRaiders() {
+        for (Raider raider : raidersBySlot) {
+            if (raider != null) {
+                raider.setPreviousWorldLocationForOverlay(raider.getPreviousWorldLocation());
+                raider.setPreviousWorldLocation(raider.getCurrentWorldLocation());
+            }
+        }
+    }
+
+    /**
+     * Index which raiders are standing on which tiles for this tick, using the locations that mistakes are detected on
+     */
+    private void computeTileOccupancy() {
+        tileOccupancy.clear();
+        for (Raider raider : raidersBySlot) {
+            if (raider != null && !raider.isDead()) {
+                tileOccupancy.add(raider);
+            }
+        }
+    }
+
     private void tryLoadRaiders() {
         log.debug("Setting raiders");
-        raiders.clear();
+        clearRaiders();
 
-        Set<String> raiderNames = new HashSet<>(MAX_RAIDERS);
+        // The varc index is the raider's slot, which stays the same for the whole raid
+        Map<String, Integer> raiderNames = new HashMap<>(MAX_RAIDERS); // name -> slot
         for (int i = 0; i < MAX_RAIDERS; i++) {
             String name = client.getVarcStrValue(TOA_RAIDERS_VARC_START + i);
             if (name != null && !name.isEmpty()) {
-                raiderNames.add(Text.sanitize(name));
+                raiderNames.putIfAbsent(Text.sanitize(name), i);
             }
         }
 
@@ -170,8 +276,11 @@ public class RaidState {
             if (player != null &&
                     player.getName() != null &&
                     !raiders.containsKey(player.getName()) &&
-                    raiderNames.contains(player.getName())) {
-                raiders.put(player.getName(), new Raider(player));
+                    raiderNames.containsKey(player.getName())) {
+                int slot = raiderNames.get(player.getName());
+                Raider raider = new Raider(player, slot);
+                raiders.put(player.getName(), raider);
+                raidersBySlot[slot] = raider;
             }
         }
 
@@ -180,7 +289,7 @@ public class RaidState {
 
         if (raiders.isEmpty() || raiders.size() < raiderNames.size()) {
             log.debug("Not enough raiders loaded. Will try again later...");
-            raiders.clear();
+            clearRaiders();
             return;
         }
 
@@ -5,6 +5,7 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
+import net.runelite.api.HeadIcon;
 import net.runelite.api.Player;
 import net.runelite.api.coords.WorldPoint;
 
@@ -21,6 +22,15 @@ public class Raider {
     @NonNull
     private final Player player;
 
+    /**
+     * The stable index of this raider in the party, from 0 until {@link RaidState#MAX_RAIDERS}
+     */
+    @Getter
+    private final int slot;
+
+    @Getter
+    private final String name;
+
     @Getter
     @Setter(AccessLevel.PACKAGE)
     private WorldPoint previousWorldLocation;
@@ -32,20 +42,62 @@ public class Raider {
     @Setter(AccessLevel.PACKAGE)
     private boolean isDead;
 
-    Raider(@NonNull Player player) {
+    // The player's state captured at the start of the current tick, so that every detector evaluates the same values
+    private WorldPoint currentWorldLocation;
+    @Getter
+    private int animation = -1;
+    @Getter
+    private int poseAnimation = -1;
+    @Getter
+    private HeadIcon overheadIcon;
+
+    Raider(@NonNull Player player, int slot) {
         this.player = player;
+        this.slot = slot;
+        this.name = player.getName();
     }
 
-    public String getName() {
-        return player.getName();
+    /**
+     * Snapshot the player's location, animations and overhead icon for this tick. This is called by {@link RaidState}
+     * at the start of every tick, before any detector runs, so detection reads one consistent view of the raider
+     * instead of querying the player over and over.
+     */
+    void captureTickState() {
+        currentWorldLocation = player.getWorldLocation();
+        animation = player.getAnimation();
+        poseAnimation = player.getPoseAnimation();
+        overheadIcon = player.getOverheadIcon();
+    }
+
+    /**
+     * Copy this raider's state for the current tick into a frozen copy, which detection can read from any thread without
+     * touching the {@link Player}. This must be called on the client thread.
+     *
+     * @param copy The frozen copy from a previous tick, which is reused if it's for the same player, or null
+     * @return The frozen copy
+     */
+    public Raider copyTickState(Raider copy) {
+        if (copy == null || copy.player != player || copy.slot != slot) {
+            copy = new Raider(player, slot);
+        }
+
+        copy.previousWorldLocation = previousWorldLocation;
+        copy.previousWorldLocationForOverlay = previousWorldLocationForOverlay;
+        copy.isDead = isDead();
+        copy.currentWorldLocation = getCurrentWorldLocation();
+        copy.animation = animation;
+        copy.poseAnimation = poseAnimation;
+        copy.overheadIcon = overheadIcon;
+        return copy;
     }
 
     public WorldPoint getCurrentWorldLocation() {
-        return player.getWorldLocation();
+        // Fall back to the live location if this raider was loaded after the tick's state was captured
+        return currentWorldLocation != null ? currentWorldLocation : player.getWorldLocation();
     }
 
     public boolean isDead() {
         // If the plugin is turned off and on, or just as a safety net, also check to see if we're a ghost
-        return isDead || GHOST_POSE_IDS.contains(player.getPoseAnimation());
+        return isDead || GHOST_POSE_IDS.contains(poseAnimation);
     }
 }
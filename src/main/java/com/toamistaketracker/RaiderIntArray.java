@@ -0,0 +1,67 @@
+package com.toamistaketracker;
+
+import lombok.NonNull;
+
+/**
+ * A map of raider -> int, backed by a fixed array indexed by each {@link Raider}'s slot. This replaces name-keyed
+ * {@code Map<String, Integer>} state in detectors, such as the tick a raider last did something.
+ * <p>
+ * Slots are only stable for as long as the raiders are loaded in {@link RaidState}, so these should be cleared whenever
+ * detectors are cleaned up.
+ */
+public class RaiderIntArray {
+
+    private final int[] values = new int[RaidState.MAX_RAIDERS];
+    private final RaiderMask present = new RaiderMask();
+
+    public boolean containsKey(@NonNull Raider raider) {
+        return present.contains(raider.getSlot());
+    }
+
+    /**
+     * Retrieve the value for the given raider
+     *
+     * @param raider       The raider
+     * @param defaultValue The value to return if there is no value for the raider
+     * @return The value for the raider, or the default value if there is none
+     */
+    public int get(@NonNull Raider raider, int defaultValue) {
+        int slot = raider.getSlot();
+        return present.contains(slot) ? values[slot] : defaultValue;
+    }
+
+    public void put(@NonNull Raider raider, int value) {
+        int slot = raider.getSlot();
+        present.add(slot);
+        values[slot] = value;
+    }
+
+    /**
+     * Add the given amount to the value for the given raider, starting from 0 if there is no value yet
+     *
+     * @param raider The raider
+     * @param amount The amount to add
+     * @return The new value for the raider
+     */
+    public int increment(@NonNull Raider raider, int amount) {
+        int slot = raider.getSlot();
+        if (!present.contains(slot)) {
+            present.add(slot);
+            values[slot] = 0;
+        }
+        values[slot] += amount;
+        return values[slot];
+    }
+
+    public void remove(@NonNull Raider raider) {
+        present.remove(raider.getSlot());
+    }
+
+    public void clear() {
+        present.clear();
+    }
+
+    public boolean isEmpty() {
+        return present.isEmpty();
+    }
+}
@@ -0,0 +1,91 @@
+package com.toamistaketracker;
+
+import lombok.NonNull;
+
+/**
+ * A set of raiders, backed by a single bitmask over each {@link Raider}'s slot. This replaces name-keyed
+ * {@code Set<String>} state in detectors, so that checking, adding, and copying per-raider flags doesn't need to hash
+ * any Strings.
+ * <p>
+ * Slots are only stable for as long as the raiders are loaded in {@link RaidState}, so masks should be cleared whenever
+ * detectors are cleaned up.
+ */
+public class RaiderMask {
+
+    private int bits;
+
+    public boolean contains(@NonNull Raider raider) {
+        return contains(raider.getSlot());
+    }
+
+    public boolean contains(int slot) {
+        return (bits & bit(slot)) != 0;
+    }
+
+    public void add(@NonNull Raider raider) {
+        add(raider.getSlot());
+    }
+
+    public void add(int slot) {
+        bits |= bit(slot);
+    }
+
+    public void remove(@NonNull Raider raider) {
+        remove(raider.getSlot());
+    }
+
+    public void remove(int slot) {
+        bits &= ~bit(slot);
+    }
+
+    /**
+     * Add all raiders that are in the other mask
+     *
+     * @param other The mask of raiders to add
+     */
+    public void addAll(@NonNull RaiderMask other) {
+        bits |= other.bits;
+    }
+
+    /**
+     * Remove all raiders that are also in the other mask
+     *
+     * @param other The mask of raiders to remove
+     */
+    public void removeAll(@NonNull RaiderMask other) {
+        bits &= ~other.bits;
+    }
+
+    /**
+     * Replace the contents of this mask with the contents of the other mask
+     *
+     * @param other The mask to copy from
+     */
+    public void copyFrom(@NonNull RaiderMask other) {
+        bits = other.bits;
+    }
+
+    public void clear() {
+        bits = 0;
+    }
+
+    public boolean isEmpty() {
+        return bits == 0;
+    }
+
+    public int size() {
+        return Integer.bitCount(bits);
+    }
+
+    private static int bit(int slot) {
+        if (slot < 0 || slot >= RaidState.MAX_RAIDERS) {
+            throw new IndexOutOfBoundsException("Invalid raider slot: " + slot);
+        }
+        return 1 << slot;
+    }
+
+    @Override
+    public String toString() {
+        return "RaiderMask(" + Integer.toBinaryString(bits) + ")";
+    }
+}
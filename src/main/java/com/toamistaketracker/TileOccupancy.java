@@ -0,0 +1,149 @@
+package com.toamistaketracker;
+
+import com.toamistaketracker.detector.tracker.HitTileSet;
+import com.toamistaketracker.detector.tracker.RegionTileBitmap;
+import lombok.NonNull;
+import net.runelite.api.coords.WorldPoint;
+
+import java.util.Collection;
+
+/**
+ * Index of which raiders were standing on which tile for the current tick, built once per tick by {@link RaidState}
+ * from each raider's previous world location (the location mistakes are detected on).
+ * <p>
+ * This lets a detector with many active hit tiles compute the mask of hit raiders once per tick, walking whichever side
+ * is smaller (the hit tiles, or the at most {@link RaidState#MAX_RAIDERS} occupied tiles), instead of checking every
+ * tile layer for every raider.
+ */
+public class TileOccupancy {
+
+    private final int[] tiles = new int[RaidState.MAX_RAIDERS]; // packed tiles
+    private final WorldPoint[] worldPoints = new WorldPoint[RaidState.MAX_RAIDERS];
+    private final RaiderMask[] raiders = new RaiderMask[RaidState.MAX_RAIDERS];
+    private int size;
+
+    public TileOccupancy() {
+        for (int i = 0; i < raiders.length; i++) {
+            raiders[i] = new RaiderMask();
+        }
+    }
+
+    /**
+     * Add the given raider as standing on their previous world location
+     *
+     * @param raider The raider
+     */
+    void add(@NonNull Raider raider) {
+        WorldPoint worldPoint = raider.getPreviousWorldLocation();
+        if (worldPoint == null) return;
+
+        int tile = PackedTile.pack(worldPoint);
+        for (int i = 0; i < size; i++) {
+            if (tiles[i] == tile) {
+                raiders[i].add(raider);
+                return;
+            }
+        }
+
+        tiles[size] = tile;
+        worldPoints[size] = worldPoint;
+        raiders[size].clear();
+        raiders[size].add(raider);
+        size++;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            worldPoints[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * Retrieve the number of distinct occupied tiles
+     *
+     * @return The number of distinct occupied tiles
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Collect the raiders standing on the given packed tile into the given mask
+     *
+     * @param packedTile The packed tile
+     * @param out        The mask to add the raiders to
+     */
+    public void collectRaidersOn(int packedTile, @NonNull RaiderMask out) {
+        for (int i = 0; i < size; i++) {
+            if (tiles[i] == packedTile) {
+                out.addAll(raiders[i]);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Compute the raiders standing on any of the given tiles, replacing the contents of the given mask. This walks
+     * whichever of the tiles or the occupied tiles is smaller.
+     *
+     * @param hitTiles The tiles, e.g. the active hit tiles for this tick
+     * @param out      The mask to store the raiders in
+     */
+    public void computeRaidersOn(@NonNull Collection<WorldPoint> hitTiles, @NonNull RaiderMask out) {
+        out.clear();
+        if (size == 0 || hitTiles.isEmpty()) return;
+
+        if (hitTiles.size() < size) {
+            for (WorldPoint hitTile : hitTiles) {
+                collectRaidersOn(PackedTile.pack(hitTile), out);
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                if (hitTiles.contains(worldPoints[i])) {
+                    out.addAll(raiders[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the raiders standing on any of the given tiles, replacing the contents of the given mask. Lookups in a
+     * {@link HitTileSet} are cheap, so this always walks the at most {@link RaidState#MAX_RAIDERS} occupied tiles.
+     *
+     * @param hitTiles The tiles, e.g. the active hit tiles for this tick
+     * @param out      The mask to store the raiders in
+     */
+    public void computeRaidersOn(@NonNull HitTileSet hitTiles, @NonNull RaiderMask out) {
+        out.clear();
+        if (size == 0 || hitTiles.isEmpty()) return;
+
+        for (int i = 0; i < size; i++) {
+            if (hitTiles.contains(tiles[i])) {
+                out.addAll(raiders[i]);
+            }
+        }
+    }
+
+    /**
+     * Compute the raiders standing on any of the tiles in the given layer, replacing the contents of the given mask.
+     * This is a single bit test per occupied tile.
+     *
+     * @param layer The tile layer
+     * @param out   The mask to store the raiders in
+     */
+    public void computeRaidersOn(@NonNull RegionTileBitmap layer, @NonNull RaiderMask out) {
+        out.clear();
+        if (size == 0 || layer.isEmpty()) return;
+
+        for (int i = 0; i < size; i++) {
+            if (layer.contains(tiles[i])) {
+                out.addAll(raiders[i]);
+            }
+        }
+    }
+}
@@ -418,4 +418,36 @@ public interface ToaMistakeTrackerConfig extends Config {
     default String wardensSlamMessage() {
         return ToaMistake.WARDENS_P3_EARTHQUAKE.getDefaultMessage();
     }
+
+    @ConfigSection(
+            name = "Advanced",
+            description = "Advanced settings",
+            position = 10,
+            closedByDefault = true
+    )
+    String advancedSettings = "advancedSettings";
+
+    @ConfigItem(
+            keyName = "useMemoryMappedCounters",
+            name = "Memory-Mapped Counters",
+            description = "Store the tracked mistake counts in a memory-mapped file that is updated in place, " +
+                    "instead of a journal. Takes effect the next time the plugin starts.",
+            section = advancedSettings,
+            position = 0
+    )
+    default boolean useMemoryMappedCounters() {
+        return false;
+    }
+
+    @ConfigItem(
+            keyName = "evaluateMistakesInBackground",
+            name = "Evaluate Mistakes In Background",
+            description = "Evaluate the mistakes for each tick on a background thread instead of the client thread. " +
+                    "Falls back to the client thread if the background thread fails.",
+            section = advancedSettings,
+            position = 1
+    )
+    default boolean evaluateMistakesInBackground() {
+        return false;
+    }
 }
@@ -2,9 +2,16 @@ package com.toamistaketracker;
 
 import com.google.inject.Provides;
 import com.toamistaketracker.detector.MistakeDetectorManager;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.TickEvaluator;
+import com.toamistaketracker.detector.TickSnapshot;
 import com.toamistaketracker.detector.tracker.VengeanceTracker;
 import com.toamistaketracker.events.InRaidChanged;
 import com.toamistaketracker.events.RaidEntered;
+import com.toamistaketracker.events.RaidRoomChanged;
+import com.toamistaketracker.mistakestate.MistakeStateWriter;
+import com.toamistaketracker.mistakestate.RaidHistory;
+import com.toamistaketracker.mistakestate.TickMistakeBatch;
 import com.toamistaketracker.panel.ToaMistakeTrackerPanel;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -17,6 +24,7 @@ import net.runelite.client.callback.ClientThread;
 import net.runelite.client.config.ConfigManager;
 import net.runelite.client.eventbus.EventBus;
 import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.events.ConfigChanged;
 import net.runelite.client.plugins.Plugin;
 import net.runelite.client.plugins.PluginDescriptor;
 import net.runelite.client.ui.ClientToolbar;
@@ -27,7 +35,8 @@ import net.runelite.client.util.ImageUtil;
 import javax.inject.Inject;
 import javax.swing.SwingUtilities;
 import java.awt.image.BufferedImage;
-import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @PluginDescriptor(
@@ -41,6 +50,7 @@ public class ToaMistakeTrackerPlugin extends Plugin {
 
     private static final int OVERHEAD_TEXT_TICK_TIMEOUT = 5;
     private static final int CYCLES_FOR_OVERHEAD_TEXT = OVERHEAD_TEXT_TICK_TIMEOUT * CYCLES_PER_GAME_TICK;
+    private static final long CLIENT_THREAD_SHUTDOWN_TIMEOUT_MS = 5000;
 
     @Inject
     private Client client;
@@ -61,16 +71,40 @@ public class ToaMistakeTrackerPlugin extends Plugin {
     private RaidState raidState;
 
     @Inject
-    private VengeanceTracker vengeanceTracker;
+    private TickEvaluator tickEvaluator;
+
+    @Inject
+    private MistakeStateWriter mistakeStateWriter;
+
+    @Inject
+    private RaidHistory raidHistory;
 
     @Inject
     private OverlayManager overlayManager;
 
+    // slot -> mistakes detected for the raider on the tick being evaluated, applied once every raider has been
+    // evaluated. Only one tick is evaluated at a time, so these are reused for every tick.
+    private final MistakeSink[] detectedMistakes = new MistakeSink[RaidState.MAX_RAIDERS];
+
+    // The tick being evaluated, and the evaluation and apply steps for it. These are reused for every tick too, so
+    // evaluating a tick without mistakes doesn't allocate. Set on the client thread before the tick is handed to the
+    // evaluator, which only evaluates one tick at a time.
+    private TickSnapshot evaluatingTick;
+    private final Runnable detectAll = () -> mistakeDetectorManager.detectAll(evaluatingTick, detectedMistakes);
+    private final Runnable applyAll = () -> applyAll(evaluatingTick);
+
+    {
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            detectedMistakes[slot] = new MistakeSink();
+        }
+    }
+
     // UI fields
     @Inject
     private ClientToolbar clientToolbar;
     private final BufferedImage icon = ImageUtil.loadImageResource(ToaMistakeTrackerPlugin.class, "panel-icon.png");
-    private ToaMistakeTrackerPanel panel;
+    // Written on the EDT and read on the client thread
+    private volatile ToaMistakeTrackerPanel panel;
     private NavigationButton navButton;
 
     @Override
@@ -90,6 +124,7 @@ public class ToaMistakeTrackerPlugin extends Plugin {
 
         // Start raid state detection
         clientThread.invoke(() -> {
+            tickEvaluator.setAsync(config.evaluateMistakesInBackground());
             raidState.startUp();
         });
 
@@ -99,9 +134,25 @@ public class ToaMistakeTrackerPlugin extends Plugin {
 
     @Override
     protected void shutDown() throws Exception {
-        // Clear all state
-        raidState.shutDown();
-        mistakeDetectorManager.shutdown();
+        // Clear all state on the client thread, once the tick in flight has been applied there. This is called on the
+        // EDT, so wait for it before flushing, so that the mistakes from that last tick are flushed too.
+        CountDownLatch stopped = new CountDownLatch(1);
+        clientThread.invoke(() -> {
+            try {
+                tickEvaluator.shutdown();
+                raidState.shutDown();
+                mistakeDetectorManager.shutdown();
+            } finally {
+                stopped.countDown();
+            }
+        });
+        if (!stopped.await(CLIENT_THREAD_SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            log.warn("Timed out waiting for the client thread to stop detecting mistakes");
+        }
+
+        // Don't lose any mistakes that haven't been written yet, including the raid in progress
+        raidHistory.endRaid();
+        panel.shutDown();
 
         // Remove UI
         clientToolbar.removeNavigation(navButton);
@@ -113,50 +164,72 @@ public class ToaMistakeTrackerPlugin extends Plugin {
     public void onGameTick(GameTick event) {
         if (!raidState.isInRaid()) return;
 
-        // Try detecting all possible mistakes for this GameTick
-        detectAll();
+        // Capture everything detection needs from the client for this GameTick. This first applies the previous tick,
+        // if it's still being evaluated.
+        evaluatingTick = mistakeDetectorManager.captureTick();
 
-        // Invoke post-processing method for detectors to get ready for the next GameTick
-        afterDetectAll();
+        // Try detecting all possible mistakes for this GameTick, possibly on the worker thread. Every raider is
+        // evaluated against the captured tick before any of the results are applied in slot order: overhead text and
+        // chat on the client thread, and the panel on the EDT.
+        tickEvaluator.evaluate(detectAll, applyAll);
     }
 
-    private void detectAll() {
-        for (Raider raider : raidState.getRaiders().values()) {
-            if (raider != null) {
-                detect(raider);
+    private void applyAll(TickSnapshot tick) {
+        // Drop the tick if the plugin was shut down while it was in flight
+        ToaMistakeTrackerPanel panel = this.panel;
+        if (panel == null) return;
+
+        // A new batch for every tick with mistakes, since the EDT may still be reading the previous one
+        TickMistakeBatch batch = null;
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            MistakeSink mistakes = detectedMistakes[slot];
+            Raider raider = tick.getRaider(slot);
+            if (raider != null && !mistakes.isEmpty()) {
+                if (batch == null) {
+                    batch = new TickMistakeBatch();
+                }
+                apply(tick, raider, mistakes, batch, panel);
             }
         }
-    }
 
-    private void detect(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = mistakeDetectorManager.detectMistakes(raider);
-        if (!mistakes.isEmpty()) {
-            log.debug(client.getTickCount() + " Found mistakes for " + raider.getName() + " - " + mistakes);
+        if (batch != null) {
+            addMistakesToOverlayPanel(batch, panel);
+        }
+    }
 
-            for (ToaMistake mistake : mistakes) {
-                // Handle special logic for deaths
-                if (mistake == ToaMistake.DEATH) {
-                    raider.setDead(true);
+    private void apply(@NonNull TickSnapshot tick,
+                       @NonNull Raider raider,
+                       @NonNull MistakeSink mistakes,
+                       @NonNull TickMistakeBatch batch,
+                       @NonNull ToaMistakeTrackerPanel panel) {
+        for (int i = 0; i < mistakes.size(); i++) {
+            ToaMistake mistake = mistakes.get(i);
+            // Handle special logic for deaths. The raider is the frozen copy from the snapshot, so mark the live one,
+            // as long as the same player is still in that slot.
+            if (mistake == ToaMistake.DEATH) {
+                Raider liveRaider = raidState.getRaider(raider.getSlot());
+                if (liveRaider != null && liveRaider.getPlayer() == raider.getPlayer()) {
+                    liveRaider.setDead(true);
                 }
-
-                addChatMessageForMistake(raider, mistake);
-                addMistakeToOverlayPanel(raider, mistake);
             }
-        }
 
-        afterDetect(raider);
-    }
+            // The chat message uses the counts from before this mistake, which include every mistake already applied,
+            // even earlier on this same tick
+            addChatMessageForMistake(tick, raider, mistake, panel);
 
-    private void afterDetect(Raider raider) {
-        raider.setPreviousWorldLocationForOverlay(raider.getPreviousWorldLocation());
-        raider.setPreviousWorldLocation(raider.getCurrentWorldLocation());
-    }
+            // Certain mistakes have their own detection and chat messages, but should be grouped together as one in
+            // the tracker panel and written state.
+            ToaMistake groupedMistake = ToaMistake.toGroupedMistake(mistake);
+            panel.recordMistakeForPlayer(raider.getName(), groupedMistake);
+            batch.add(raider.getName(), groupedMistake);
 
-    private void afterDetectAll() {
-        mistakeDetectorManager.afterDetect();
+            // The raid history keeps the mistake as it was detected
+            raidHistory.addMistake(raider, mistake, tick.getTickCount());
+        }
     }
 
-    private void addChatMessageForMistake(Raider raider, ToaMistake mistake) {
+    private void addChatMessageForMistake(TickSnapshot tick, Raider raider, ToaMistake mistake,
+                                          ToaMistakeTrackerPanel panel) {
         int mistakeCount = config.mistakeMessageStacking() == StackingBehavior.SAME_MISTAKES_ONLY
                 ? panel.getCurrentMistakeCountForPlayer(raider.getName(), mistake)
                 : panel.getCurrentTotalMistakeCountForPlayer(raider.getName());
@@ -173,7 +246,7 @@ public class ToaMistakeTrackerPlugin extends Plugin {
         final Player player = raider.getPlayer();
         if (config.showMistakesOnOverheadText()) {
             String overheadText = msg;
-            if (vengeanceTracker.didPopVengeance(raider)) {
+            if (tick.didPopVengeance(raider)) {
                 overheadText = VengeanceTracker.VENGEANCE_TEXT + " " + overheadText;
             }
             player.setOverheadText(overheadText);
@@ -186,11 +259,10 @@ public class ToaMistakeTrackerPlugin extends Plugin {
         }
     }
 
-    private void addMistakeToOverlayPanel(Raider raider, ToaMistake mistake) {
-        // Certain mistakes have their own detection and chat messages, but should be grouped together as one in the
-        // tracker panel and written state.
-        ToaMistake groupedMistake = ToaMistake.toGroupedMistake(mistake);
-        SwingUtilities.invokeLater(() -> panel.addMistakeForPlayer(raider.getName(), groupedMistake));
+    private void addMistakesToOverlayPanel(TickMistakeBatch batch, ToaMistakeTrackerPanel panel) {
+        // Hand the whole tick to the EDT at once. This can run after the plugin is shut down and the field is cleared,
+        // so it uses the panel the mistakes were recorded in.
+        SwingUtilities.invokeLater(() -> panel.addMistakes(batch));
     }
 
     @Subscribe
@@ -201,12 +273,39 @@ public class ToaMistakeTrackerPlugin extends Plugin {
         } else {
             log.debug("Shutting down detectors");
             mistakeDetectorManager.shutdown();
+            raidHistory.endRaid();
         }
     }
 
     @Subscribe
     public void onRaidEntered(RaidEntered event) {
+        // Anything still in flight belongs to the previous raid
+        tickEvaluator.awaitIdle();
         panel.newRaid(event.getRaiderNames());
+
+        String[] raiderNames = new String[RaidState.MAX_RAIDERS];
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            Raider raider = raidState.getRaider(slot);
+            if (raider != null) {
+                raiderNames[slot] = raider.getName();
+            }
+        }
+        raidHistory.startRaid(raiderNames, raidState.getCurrentRoom(), client.getTickCount());
+    }
+
+    @Subscribe
+    public void onRaidRoomChanged(RaidRoomChanged event) {
+        raidHistory.enterRoom(event.getNewRaidRoom());
+
+        // Room boundaries are a natural point to persist the mistakes from the last room
+        mistakeStateWriter.flush();
+    }
+
+    @Subscribe
+    public void onConfigChanged(ConfigChanged event) {
+        if (!CONFIG_GROUP.equals(event.getGroup()) || !"evaluateMistakesInBackground".equals(event.getKey())) return;
+
+        clientThread.invoke(() -> tickEvaluator.setAsync(config.evaluateMistakesInBackground()));
     }
 
     @Provides
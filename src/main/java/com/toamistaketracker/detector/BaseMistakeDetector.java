@@ -1,11 +1,13 @@
 package com.toamistaketracker.detector;
 
 import com.google.common.collect.ImmutableSet;
+import com.toamistaketracker.InstanceGeometry;
 import com.toamistaketracker.RaidRoom;
 import com.toamistaketracker.RaidState;
 import com.toamistaketracker.Raider;
 import com.toamistaketracker.ToaMistake;
-import com.toamistaketracker.detector.tracker.VengeanceTracker;
+import com.toamistaketracker.detector.tracker.RegionTileBitmap;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 import net.runelite.api.Actor;
@@ -17,7 +19,6 @@ import net.runelite.api.coords.WorldPoint;
 import net.runelite.client.eventbus.EventBus;
 
 import javax.inject.Inject;
-import java.util.List;
 import java.util.Set;
 
 /**
@@ -41,24 +42,67 @@ public abstract class BaseMistakeDetector {
 
     @Inject
     @Setter
-    protected VengeanceTracker vengeanceTracker;
+    protected InstanceGeometry instanceGeometry;
+
+    @Inject
+    @Setter
+    protected NpcRoleRegistry npcRoleRegistry;
+
+    @Inject
+    @Setter
+    protected TickEvaluator tickEvaluator;
+
+    /**
+     * Whether or not the detector is currently started and handling events. Detectors stay subscribed to the
+     * {@link EventBus} for the whole raid, so every event handler must return early while this is false.
+     */
+    @Getter
+    private boolean active;
+
+    /**
+     * Subscribe this detector to the {@link EventBus}. This is called once by the {@link MistakeDetectorManager} when
+     * entering a raid, since (un)registering makes the EventBus rebuild its subscribers. Use {@link #startup()} and
+     * {@link #shutdown()} for turning the detector on and off within the raid.
+     */
+    public void register() {
+        eventBus.register(this);
+    }
 
     /**
-     * Used to tell a detector to start listening for events.
+     * Unsubscribe this detector from the {@link EventBus}. This is called once by the {@link MistakeDetectorManager}
+     * when leaving a raid.
+     */
+    public void unregister() {
+        eventBus.unregister(this);
+    }
+
+    /**
+     * Used to tell a detector to start handling events.
      */
     public void startup() {
+        tickEvaluator.awaitIdle();
         cleanup();
-        eventBus.register(this);
+        active = true;
     }
 
     /**
      * Shutdown and cleanup state. This is always called when the plugin is shutdown, or when a detector is finished.
      */
     public void shutdown() {
-        eventBus.unregister(this);
+        tickEvaluator.awaitIdle();
+        active = false;
         cleanup();
     }
 
+    /**
+     * Register any handlers for {@link GraphicsObject} ids with the dispatcher. This is called once by the
+     * {@link MistakeDetectorManager}, and the handlers are only invoked while the detector is active.
+     *
+     * @param dispatcher The dispatcher to register the handlers with
+     */
+    public void registerGraphicsObjectHandlers(@NonNull GraphicsObjectDispatcher dispatcher) {
+    }
+
     /**
      * Cleanup all relevant state in the detector. This is called during startup to reset state, and shutdown to cleanup
      * This is also called for active detectors whenever raiders are loaded, which is during room transitions and room
@@ -74,33 +118,35 @@ public abstract class BaseMistakeDetector {
     public abstract RaidRoom getRaidRoom();
 
     /**
-     * Detects mistakes for the given raider.
-     * This is called during handling the {@link net.runelite.api.events.GameTick} event, each tick.
+     * Hand over everything that {@link #detectMistakes} reads for this tick, commonly by resolving the raiders on each
+     * hit layer that activated this tick and resetting the per-tick state. This is called on the client thread once
+     * every detector has handled the {@link net.runelite.api.events.GameTick}, while no tick is being evaluated.
+     * <p>
+     * Since detection may run on a worker thread while the client keeps handling events for the next tick, event
+     * handlers must only touch state that gets handed over here, and never the state that detection reads.
      *
-     * @param raider - The raider to detect mistakes for
-     * @return The list of {@link ToaMistake} detected on this tick
+     * @param tick The tick being captured
      */
-    public abstract List<ToaMistake> detectMistakes(@NonNull Raider raider);
+    public void captureTick(@NonNull TickSnapshot tick) {
+    }
 
     /**
-     * This method allows detectors to handle some logic after all detectMistakes methods have been invoked
-     * for this {@link net.runelite.api.events.GameTick}. Commonly, this is to cleanup state from after this tick.
+     * Detects mistakes for the given raider, adding any found mistakes to the given sink. This is called once per
+     * raider for each captured tick, possibly on a worker thread, so it must only read the snapshot, the raider, and
+     * the state handed over in {@link #captureTick(TickSnapshot)}.
+     *
+     * @param tick     - The tick being evaluated
+     * @param raider   - The raider to detect mistakes for, as of this tick
+     * @param mistakes - The sink to add each {@link ToaMistake} detected on this tick to
      */
-    public abstract void afterDetect();
+    public abstract void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider,
+                                        @NonNull MistakeSink mistakes);
 
     /**
-     * Determines whether or not this detector is currently detecting mistakes. Commonly this is by checking the current
-     * {@link RaidRoom} in the {@link RaidState}
-     *
-     * @return True if the detector is detecting mistakes, else false
+     * This method allows detectors to handle some logic after all detectMistakes methods have been invoked
+     * for this tick, on the same thread. Commonly, this is to roll over state that detection keeps across ticks.
      */
-    public boolean isDetectingMistakes() {
-        if (getRaidRoom() == null) { // null means *all* rooms
-            return raidState.isInRaid();
-        }
-
-        return raidState.getCurrentRoom() == getRaidRoom();
-    }
+    public abstract void afterDetect();
 
     protected WorldPoint getWorldPoint(Actor actor) {
         return WorldPoint.fromLocal(client, actor.getLocalLocation());
@@ -110,6 +156,20 @@ public abstract class BaseMistakeDetector {
         return WorldPoint.fromLocal(client, graphicsObject.getLocation());
     }
 
+    /**
+     * Anchor the given tile layers to the current room's region, which also clears them. This should be called on
+     * startup, after the room has changed.
+     *
+     * @param layers The tile layers to anchor
+     */
+    protected void anchorToRoom(RegionTileBitmap... layers) {
+        if (!instanceGeometry.isAvailable()) return;
+
+        for (RegionTileBitmap layer : layers) {
+            layer.anchor(instanceGeometry.getRegionBaseX(), instanceGeometry.getRegionBaseY());
+        }
+    }
+
     /**
      * This method computes the WorldPoints in a 3x3 area given a center point.
      *
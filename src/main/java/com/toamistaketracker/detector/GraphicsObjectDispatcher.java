@@ -0,0 +1,101 @@
+package com.toamistaketracker.detector;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.GraphicsObject;
+import net.runelite.api.events.GraphicsObjectCreated;
+import net.runelite.client.eventbus.Subscribe;
+
+import javax.inject.Singleton;
+import java.util.Arrays;
+
+/**
+ * Single subscriber for {@link GraphicsObjectCreated} on behalf of all detectors. Some rooms (e.g. Wardens P3
+ * lightning, Ba-Ba falling boulders) spawn a storm of graphics objects, so instead of every detector subscribing and
+ * filtering on boxed ids, the handlers are kept in a table indexed directly by graphics id and only handlers for
+ * active detectors are invoked.
+ * <p>
+ * Detectors add their handlers in {@link BaseMistakeDetector#registerGraphicsObjectHandlers}, which is called once by
+ * the {@link MistakeDetectorManager}.
+ */
+@Slf4j
+@Singleton
+public class GraphicsObjectDispatcher {
+
+    private static final int INITIAL_TABLE_SIZE = 2400;
+
+    @FunctionalInterface
+    public interface GraphicsObjectHandler {
+        void handle(GraphicsObject graphicsObject);
+    }
+
+    private static class Registration {
+        private final BaseMistakeDetector detector;
+        private final GraphicsObjectHandler handler;
+
+        private Registration(BaseMistakeDetector detector, GraphicsObjectHandler handler) {
+            this.detector = detector;
+            this.handler = handler;
+        }
+    }
+
+    // graphics id -> registrations for that id
+    private Registration[][] registrations = new Registration[INITIAL_TABLE_SIZE][];
+
+    /**
+     * Register a handler for the given graphics id. The handler is only invoked while the detector is active.
+     *
+     * @param detector   The detector that owns the handler
+     * @param graphicsId The id of the graphics object to handle
+     * @param handler    The handler
+     */
+    public void register(@NonNull BaseMistakeDetector detector, int graphicsId, @NonNull GraphicsObjectHandler handler) {
+        if (graphicsId < 0) {
+            throw new IllegalArgumentException("Invalid graphics id: " + graphicsId);
+        }
+
+        if (graphicsId >= registrations.length) {
+            registrations = Arrays.copyOf(registrations, Math.max(graphicsId + 1, registrations.length * 2));
+        }
+
+        Registration[] existing = registrations[graphicsId];
+        Registration registration = new Registration(detector, handler);
+        if (existing == null) {
+            registrations[graphicsId] = new Registration[]{registration};
+        } else {
+            Registration[] updated = Arrays.copyOf(existing, existing.length + 1);
+            updated[existing.length] = registration;
+            registrations[graphicsId] = updated;
+        }
+    }
+
+    /**
+     * Register the same handler for each of the given graphics ids
+     *
+     * @param detector    The detector that owns the handler
+     * @param graphicsIds The ids of the graphics objects to handle
+     * @param handler     The handler
+     */
+    public void register(@NonNull BaseMistakeDetector detector, @NonNull Iterable<Integer> graphicsIds,
+                         @NonNull GraphicsObjectHandler handler) {
+        for (int graphicsId : graphicsIds) {
+            register(detector, graphicsId, handler);
+        }
+    }
+
+    @Subscribe
+    public void onGraphicsObjectCreated(GraphicsObjectCreated event) {
+        GraphicsObject graphicsObject = event.getGraphicsObject();
+        int id = graphicsObject.getId();
+        if (id < 0 || id >= registrations.length) return;
+
+        Registration[] forId = registrations[id];
+        if (forId == null) return;
+
+        for (Registration registration : forId) {
+            if (registration.detector.isActive()) {
+                registration.handler.handle(graphicsObject);
+            }
+        }
+    }
+}
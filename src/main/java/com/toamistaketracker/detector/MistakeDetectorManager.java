@@ -1,9 +1,9 @@
 package com.toamistaketracker.detector;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.toamistaketracker.RaidRoom;
 import com.toamistaketracker.RaidState;
 import com.toamistaketracker.Raider;
-import com.toamistaketracker.ToaMistake;
 import com.toamistaketracker.detector.boss.AkkhaDetector;
 import com.toamistaketracker.detector.boss.BabaDetector;
 import com.toamistaketracker.detector.boss.KephriDetector;
@@ -15,6 +15,7 @@ import com.toamistaketracker.detector.puzzle.ApmekenPuzzleDetector;
 import com.toamistaketracker.detector.puzzle.CrondisPuzzleDetector;
 import com.toamistaketracker.detector.puzzle.HetPuzzleDetector;
 import com.toamistaketracker.detector.puzzle.ScabarasPuzzleDetector;
+import com.toamistaketracker.detector.tracker.AppliedHitsplatsTracker;
 import com.toamistaketracker.detector.tracker.BaseRaidTracker;
 import com.toamistaketracker.detector.tracker.VengeanceTracker;
 import com.toamistaketracker.events.RaidRoomChanged;
@@ -32,8 +33,9 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manager for all the {@link BaseMistakeDetector}. It keeps all the detectors in memory in order to manage events.
@@ -43,17 +45,30 @@ import java.util.List;
  * <p>
  * When the manager is on (started = true), then all other detectors are subscribed to the EventBus and
  * listening for events on when to turn themselves on/off. This will only be true while the player is in Toa.
+ * <p>
+ * Since only a couple of detectors are ever live in a room, the manager precomputes the active detectors for each
+ * {@link RaidRoom} in their configured order, and only swaps which array is active when the room changes. The per-tick
+ * loops then only touch live detectors.
+ * <p>
+ * Every tick is first captured into a {@link TickSnapshot} on the client thread, and then evaluated against it by the
+ * {@link TickEvaluator}, possibly on a worker thread. The manager waits for the tick in flight before starting up,
+ * shutting down or resetting any detector.
  */
 @Slf4j
 @Singleton
 public class MistakeDetectorManager {
 
     private static final String WIPE_GAME_MESSAGE = "Your party failed to complete the challenge";
+    private static final BaseMistakeDetector[] NO_DETECTORS = new BaseMistakeDetector[0];
 
     private final Client client;
     private final EventBus eventBus;
     private final RaidState raidstate;
     private final VengeanceTracker vengeanceTracker;
+    private final AppliedHitsplatsTracker appliedHitsplatsTracker;
+    private final GraphicsObjectDispatcher graphicsObjectDispatcher;
+    private final NpcRoleRegistry npcRoleRegistry;
+    private final TickEvaluator tickEvaluator;
 
     @Getter
     private final List<BaseRaidTracker> raidTrackers;
@@ -65,11 +80,27 @@ public class MistakeDetectorManager {
     @VisibleForTesting
     private boolean started;
 
+    // room -> detectors that detect mistakes in that room, in configured order
+    private final Map<RaidRoom, BaseMistakeDetector[]> roomDetectors;
+    // detectors that detect mistakes in *all* rooms, used when the current room is unknown
+    private final BaseMistakeDetector[] allRoomsDetectors;
+
+    // Only accessed on the client thread. Evaluation uses the detectors handed over in the TickSnapshot instead.
+    private BaseMistakeDetector[] activeDetectors;
+    private RaidRoom activeRoom;
+
+    // Reused for every tick, see TickSnapshot
+    private final TickSnapshot tickSnapshot = new TickSnapshot();
+
     @Inject
     public MistakeDetectorManager(Client client,
                                   EventBus eventBus,
                                   RaidState raidState,
                                   VengeanceTracker vengeanceTracker,
+                                  AppliedHitsplatsTracker appliedHitsplatsTracker,
+                                  GraphicsObjectDispatcher graphicsObjectDispatcher,
+                                  NpcRoleRegistry npcRoleRegistry,
+                                  TickEvaluator tickEvaluator,
                                   HetPuzzleDetector hetPuzzleDetector,
                                   CrondisPuzzleDetector crondisPuzzleDetector,
                                   ScabarasPuzzleDetector scabarasPuzzleDetector,
@@ -81,7 +112,7 @@ public class MistakeDetectorManager {
                                   WardensP1P2Detector wardensP1P2Detector,
                                   WardensP3Detector wardensP3Detector,
                                   DeathDetector deathDetector) {
-        this.raidTrackers = Arrays.asList(vengeanceTracker);
+        this.raidTrackers = Arrays.asList(vengeanceTracker, appliedHitsplatsTracker);
 
         // Order matters, since it's last write wins for which mistake gets put on overhead text. Death should be last.
         this.mistakeDetectors = new ArrayList<>(Arrays.asList(
@@ -98,61 +129,180 @@ public class MistakeDetectorManager {
                 deathDetector
         ));
 
+        this.roomDetectors = new EnumMap<>(RaidRoom.class);
+        for (RaidRoom room : RaidRoom.values()) {
+            roomDetectors.put(room, computeDetectorsForRoom(room));
+        }
+        this.allRoomsDetectors = computeDetectorsForRoom(null);
+
+        for (BaseMistakeDetector mistakeDetector : mistakeDetectors) {
+            mistakeDetector.registerGraphicsObjectHandlers(graphicsObjectDispatcher);
+        }
+        this.activeDetectors = NO_DETECTORS;
+
         this.client = client;
         this.eventBus = eventBus;
         this.raidstate = raidState;
         this.vengeanceTracker = vengeanceTracker;
+        this.appliedHitsplatsTracker = appliedHitsplatsTracker;
+        this.graphicsObjectDispatcher = graphicsObjectDispatcher;
+        this.npcRoleRegistry = npcRoleRegistry;
+        this.tickEvaluator = tickEvaluator;
         this.started = false;
     }
 
+    /**
+     * Compute the detectors that detect mistakes in the given room, keeping their configured order
+     *
+     * @param room The room, or null for only the detectors that run in *all* rooms
+     * @return The detectors for the room
+     */
+    private BaseMistakeDetector[] computeDetectorsForRoom(RaidRoom room) {
+        return mistakeDetectors.stream()
+                .filter(d -> d.getRaidRoom() == null || (room != null && d.getRaidRoom() == room))
+                .toArray(BaseMistakeDetector[]::new);
+    }
+
+    private BaseMistakeDetector[] getActiveDetectors() {
+        // The current room can also become unknown without a RaidRoomChanged event, so double check it here
+        if (raidstate.getCurrentRoom() != activeRoom) {
+            swapActiveDetectors();
+        }
+        return activeDetectors;
+    }
+
+    /**
+     * Swap the active detectors to the ones for the current room
+     */
+    private void swapActiveDetectors() {
+        activeRoom = raidstate.getCurrentRoom();
+        activeDetectors = activeRoom == null ? allRoomsDetectors : roomDetectors.get(activeRoom);
+    }
+
     public void startup() {
+        tickEvaluator.awaitIdle();
         started = true;
         eventBus.register(this);
+        eventBus.register(graphicsObjectDispatcher);
+        eventBus.register(npcRoleRegistry);
 
         // Startup all raid trackers
         raidTrackers.forEach(BaseRaidTracker::startup);
 
+        // Subscribe all detectors once for the whole raid. They ignore events until they're started up.
+        mistakeDetectors.forEach(BaseMistakeDetector::register);
+
         // Startup any detectors that should be active in *all* rooms
         mistakeDetectors.stream().filter(d -> d.getRaidRoom() == null).forEach(BaseMistakeDetector::startup);
+
+        swapActiveDetectors();
     }
 
     public void shutdown() {
+        tickEvaluator.awaitIdle();
         mistakeDetectors.forEach(BaseMistakeDetector::shutdown);
+        mistakeDetectors.forEach(BaseMistakeDetector::unregister);
         // Don't clear mistakeDetectors or else we can't get them back.
 
         raidTrackers.forEach(BaseRaidTracker::shutdown);
 
+        eventBus.unregister(npcRoleRegistry);
+        eventBus.unregister(graphicsObjectDispatcher);
         eventBus.unregister(this);
         started = false;
+
+        activeDetectors = NO_DETECTORS;
+        activeRoom = null;
     }
 
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        if (!started) return Collections.emptyList();
+    /**
+     * Capture everything the active detectors need to evaluate this tick, and reset the raid trackers and raiders for
+     * the next one. This must be called on the client thread once every detector has handled the GameTick. The previous
+     * tick is evaluated and applied first, if it's still in flight.
+     *
+     * @return The captured tick, which stays the same until the next call
+     */
+    public TickSnapshot captureTick() {
+        tickEvaluator.awaitIdle();
 
-        List<ToaMistake> mistakes = new ArrayList<>();
-        for (BaseMistakeDetector mistakeDetector : mistakeDetectors) {
-            if (mistakeDetector.isDetectingMistakes() && !raider.isDead()) {
-                mistakes.addAll(mistakeDetector.detectMistakes(raider));
+        BaseMistakeDetector[] detectors = started ? getActiveDetectors() : NO_DETECTORS;
+        tickSnapshot.capture(client.getTickCount(), raidstate.getCurrentRoom(), detectors, raidstate,
+                appliedHitsplatsTracker, vengeanceTracker);
+
+        // Index-based loops to avoid allocating iterators on every tick
+        for (int i = 0; i < detectors.length; i++) {
+            detectors[i].captureTick(tickSnapshot);
+        }
+
+        if (started) {
+            for (int i = 0; i < raidTrackers.size(); i++) {
+                raidTrackers.get(i).afterDetect();
             }
         }
 
-        return mistakes;
+        // Detection reads the locations frozen in the snapshot, so the raiders can move on to the next tick right away
+        raidstate.advanceRaiders();
+        return tickSnapshot;
     }
 
-    public void afterDetect() {
-        if (!started) return;
+    /**
+     * Detects mistakes for every raider in the captured tick, and then lets the detectors clean up for the next one.
+     * This may be called on a worker thread.
+     *
+     * @param tick     The captured tick
+     * @param mistakes slot -> the sink to detect the mistakes for the raider in that slot into, which is cleared first
+     */
+    public void detectAll(@NonNull TickSnapshot tick, @NonNull MistakeSink[] mistakes) {
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            mistakes[slot].clear();
+            Raider raider = tick.getRaider(slot);
+            if (raider != null) {
+                detectMistakes(tick, raider, mistakes[slot]);
+                if (!mistakes[slot].isEmpty()) {
+                    log.debug(tick.getTickCount() + " Found mistakes for " + raider.getName() + " - " + mistakes[slot]);
+                }
+            }
+        }
 
-        raidTrackers.forEach(BaseRaidTracker::afterDetect);
+        // Invoke post-processing method for detectors to get ready for the next GameTick
+        afterDetect(tick);
+    }
 
-        for (BaseMistakeDetector mistakeDetector : mistakeDetectors) {
-            if (mistakeDetector.isDetectingMistakes()) {
-                mistakeDetector.afterDetect();
-            }
+    /**
+     * Detects mistakes for the given raider across all detectors that were active when the tick was captured, into a
+     * sink owned by the caller. The sink is cleared first. This may be called on a worker thread.
+     *
+     * @param tick     The captured tick
+     * @param raider   The raider to detect mistakes for, as of the captured tick
+     * @param mistakes The sink to add the mistakes detected for the raider on this tick to, in detection order
+     */
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
+        mistakes.clear();
+        if (raider.isDead()) return;
+
+        BaseMistakeDetector[] detectors = tick.getDetectors();
+        for (int i = 0; i < detectors.length; i++) {
+            detectors[i].detectMistakes(tick, raider, mistakes);
+        }
+    }
+
+    /**
+     * Let the detectors that were active when the tick was captured clean up after every raider has been evaluated,
+     * on the same thread
+     *
+     * @param tick The captured tick
+     */
+    private void afterDetect(@NonNull TickSnapshot tick) {
+        BaseMistakeDetector[] detectors = tick.getDetectors();
+        for (int i = 0; i < detectors.length; i++) {
+            detectors[i].afterDetect();
         }
     }
 
     @Subscribe
     public void onRaidRoomChanged(RaidRoomChanged event) {
+        tickEvaluator.awaitIdle();
+
         // Detectors that run in *all* rooms do not need to handle these events
         mistakeDetectors.stream().filter(d -> d.getRaidRoom() != null).forEach(detector -> {
             if (detector.getRaidRoom() == event.getNewRaidRoom()) {
@@ -161,6 +311,8 @@ public class MistakeDetectorManager {
                 detector.shutdown();
             }
         });
+
+        swapActiveDetectors();
     }
 
     @Subscribe
@@ -169,14 +321,16 @@ public class MistakeDetectorManager {
 
         String message = Text.removeTags(event.getMessage());
         if (message != null && message.startsWith(WIPE_GAME_MESSAGE)) {
-            // If the team has wiped, all active detectors should reset state just in case.
+            // If the team has wiped, all active detectors should reset state just in case. They stay subscribed, so
+            // this is just a cleanup.
             log.debug("Team wiped -- Resetting all active detectors");
-            mistakeDetectors.stream()
-                    .filter(BaseMistakeDetector::isDetectingMistakes)
-                    .forEach(d -> {
-                        d.shutdown();
-                        d.startup();
-                    });
+            tickEvaluator.awaitIdle();
+            BaseMistakeDetector[] detectors = activeDetectors;
+            for (BaseMistakeDetector detector : detectors) {
+                detector.shutdown();
+                detector.startup();
+            }
+            swapActiveDetectors();
         }
     }
 }
@@ -0,0 +1,68 @@
+package com.toamistaketracker.detector;
+
+import com.toamistaketracker.ToaMistake;
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A reusable container for the mistakes detected for a single raider on a single tick. The plugin
+ * owns one sink per raider slot, and the {@link MistakeDetectorManager} clears it and hands it to each active detector
+ * to write into. This way detecting mistakes doesn't need to allocate new lists on every GameTick.
+ * <p>
+ * Mistakes are kept in the order they were added (including duplicates), since it's last write wins for which mistake
+ * gets put on overhead text.
+ */
+public class MistakeSink {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private ToaMistake[] mistakes = new ToaMistake[DEFAULT_CAPACITY];
+    private int size;
+
+    /**
+     * Add a detected mistake
+     *
+     * @param mistake The mistake
+     */
+    public void add(@NonNull ToaMistake mistake) {
+        if (size == mistakes.length) {
+            // Should practically never happen, but grow instead of dropping mistakes
+            mistakes = Arrays.copyOf(mistakes, size * 2);
+        }
+        mistakes[size++] = mistake;
+    }
+
+    /**
+     * Retrieve the mistake at the given index, in the order they were added
+     *
+     * @param index The index of the mistake
+     * @return The mistake
+     */
+    public ToaMistake get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return mistakes[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Clears all mistakes, keeping the underlying capacity around for the next raider
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(Arrays.copyOf(mistakes, size));
+    }
+}
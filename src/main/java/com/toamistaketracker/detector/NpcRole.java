@@ -0,0 +1,68 @@
+package com.toamistaketracker.detector;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * The roles of the NPCs in the raid that detectors care about, resolved by {@link NpcRoleRegistry}.
+ */
+public enum NpcRole {
+
+    NONE,
+
+    // Puzzles
+    PALM_TREE("Palm of Resourcefulness"),
+
+    // Akkha
+    AKKHA("Akkha"),
+    ELEMENTAL_ORB("Orb of Lightning", "Orb of Darkness", "Burning Orb", "Frozen Orb"),
+    UNSTABLE_ORB("Unstable Orb"),
+
+    // Zebak
+    ZEBAK("Zebak"),
+    WAVE("Wave"),
+    BLOOD_CLOUD("Blood Cloud"),
+
+    // Kephri
+    KEPHRI("Kephri"),
+    SCARAB_SWARM("Scarab Swarm"),
+
+    // Ba-Ba
+    BABA("Ba-Ba"),
+    BOULDER("Boulder"),
+    RUBBLE("Rubble"),
+
+    // Wardens
+    OBELISK("Obelisk"),
+    ;
+
+    private static final Map<String, NpcRole> ROLES_BY_NAME;
+
+    static {
+        ImmutableMap.Builder<String, NpcRole> builder = ImmutableMap.builder();
+        for (NpcRole role : values()) {
+            for (String name : role.names) {
+                builder.put(name, role);
+            }
+        }
+        ROLES_BY_NAME = builder.build();
+    }
+
+    private final String[] names;
+
+    NpcRole(String... names) {
+        this.names = names;
+    }
+
+    /**
+     * Retrieve the role for the given NPC name
+     *
+     * @param name The NPC name, without any tags
+     * @return The role for the name, or {@link #NONE} if the name has no role
+     */
+    public static NpcRole forName(String name) {
+        if (name == null) return NONE;
+        return ROLES_BY_NAME.getOrDefault(name, NONE);
+    }
+}
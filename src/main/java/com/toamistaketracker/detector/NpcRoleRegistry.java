@@ -0,0 +1,84 @@
+package com.toamistaketracker.detector;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.Actor;
+import net.runelite.api.NPC;
+import net.runelite.api.events.NpcChanged;
+import net.runelite.api.events.NpcSpawned;
+import net.runelite.client.eventbus.Subscribe;
+import net.runelite.client.util.Text;
+
+import javax.inject.Singleton;
+import java.util.Arrays;
+
+/**
+ * Registry that resolves NPCs to their {@link NpcRole}, so that detector event handlers can switch on a cached role
+ * instead of stripping tags and comparing names on every event.
+ * <p>
+ * Roles are keyed by NPC id. Rather than hardcoding every id (which change between invocation levels, phases, etc.),
+ * the role for an id is resolved from the NPC's name the first time that id is seen, which is normally when the NPC
+ * spawns or transforms. Every lookup after that is a single array read.
+ */
+@Slf4j
+@Singleton
+public class NpcRoleRegistry {
+
+    private static final int INITIAL_TABLE_SIZE = 16384;
+
+    // npc id -> role, or null if the id hasn't been resolved yet
+    private NpcRole[] rolesById = new NpcRole[INITIAL_TABLE_SIZE];
+
+    // Run before the detectors, so the roles are already resolved when they handle the same events
+    @Subscribe(priority = 1)
+    public void onNpcSpawned(NpcSpawned event) {
+        getRole(event.getNpc());
+    }
+
+    @Subscribe(priority = 1)
+    public void onNpcChanged(NpcChanged event) {
+        getRole(event.getNpc());
+    }
+
+    /**
+     * Retrieve the role for the given actor
+     *
+     * @param actor The actor
+     * @return The role of the actor, or {@link NpcRole#NONE} if the actor isn't an NPC with a role
+     */
+    public NpcRole getRole(Actor actor) {
+        if (!(actor instanceof NPC)) return NpcRole.NONE;
+        return getRole((NPC) actor);
+    }
+
+    /**
+     * Retrieve the role for the given NPC
+     *
+     * @param npc The NPC
+     * @return The role of the NPC, or {@link NpcRole#NONE} if the NPC doesn't have a role
+     */
+    public NpcRole getRole(NPC npc) {
+        if (npc == null) return NpcRole.NONE;
+
+        int id = npc.getId();
+        if (id < 0) return NpcRole.NONE;
+
+        if (id >= rolesById.length) {
+            rolesById = Arrays.copyOf(rolesById, Math.max(id + 1, rolesById.length * 2));
+        }
+
+        NpcRole role = rolesById[id];
+        if (role == null) {
+            String name = npc.getName();
+            if (name == null) {
+                // Don't cache this, as the name may just not be available yet
+                return NpcRole.NONE;
+            }
+
+            role = NpcRole.forName(Text.removeTags(name));
+            rolesById[id] = role;
+            log.debug("Resolved npc {} ({}) to role {}", id, name, role);
+        }
+
+        return role;
+    }
+}
@@ -0,0 +1,154 @@
+package com.toamistaketracker.detector;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Uninterruptibles;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.client.callback.ClientThread;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the evaluation of each captured {@link TickSnapshot}, either right away on the client thread, or on a dedicated
+ * worker thread so that evaluating every detector doesn't compete with rendering.
+ * <p>
+ * At most one tick is ever in flight. The client thread waits for it to be evaluated and applied in
+ * {@link #awaitIdle()} before it captures the next tick, and before any detector is started up, shut down or reset, so
+ * the state that detection reads is only ever touched by one thread at a time. The results of each tick are applied on
+ * the client thread in tick order: as soon as the worker is done with it, or at the latest right before the next tick.
+ * <p>
+ * If evaluating on the worker ever fails, the evaluator logs it and falls back to evaluating on the client thread until
+ * it's asked to go async again.
+ */
+@Slf4j
+@Singleton
+public class TickEvaluator {
+
+    private final Executor clientThreadExecutor;
+
+    // Only accessed on the client thread
+    private ExecutorService worker; // null while evaluating on the client thread
+    private Future<?> inFlight;
+    private Runnable pendingApply;
+    private long inFlightSequence;
+
+    @Inject
+    public TickEvaluator(ClientThread clientThread) {
+        this(clientThread::invokeLater);
+    }
+
+    @VisibleForTesting
+    public TickEvaluator(@NonNull Executor clientThreadExecutor) {
+        this.clientThreadExecutor = clientThreadExecutor;
+    }
+
+    /**
+     * Switch between evaluating on the worker thread and evaluating synchronously on the client thread. This must be
+     * called on the client thread.
+     *
+     * @param async True to evaluate on the worker thread, false to evaluate on the client thread
+     */
+    public void setAsync(boolean async) {
+        if (async == isAsync()) return;
+
+        if (async) {
+            worker = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "toa-mistake-detector");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            stopWorker();
+        }
+    }
+
+    public boolean isAsync() {
+        return worker != null;
+    }
+
+    /**
+     * Evaluate a tick, and then apply its results on the client thread. This must be called on the client thread, and
+     * any tick still in flight is finished first.
+     *
+     * @param evaluation The evaluation of the captured tick, which may run on the worker thread
+     * @param apply      Applies the results of the evaluation, which always runs on the client thread
+     */
+    public void evaluate(@NonNull Runnable evaluation, @NonNull Runnable apply) {
+        awaitIdle();
+
+        if (worker != null) {
+            long sequence = ++inFlightSequence;
+            try {
+                inFlight = worker.submit(() -> {
+                    try {
+                        evaluation.run();
+                    } finally {
+                        clientThreadExecutor.execute(() -> onEvaluated(sequence));
+                    }
+                });
+                pendingApply = apply;
+                return;
+            } catch (RejectedExecutionException e) {
+                log.warn("Unable to evaluate mistakes in the background, evaluating on the client thread instead", e);
+                stopWorker();
+            }
+        }
+
+        evaluation.run();
+        apply.run();
+    }
+
+    /**
+     * Wait for the tick in flight, if any, to finish evaluating, and apply its results. This must be called on the
+     * client thread before touching any state that detection reads.
+     */
+    public void awaitIdle() {
+        if (inFlight == null) return;
+
+        Future<?> future = inFlight;
+        Runnable apply = pendingApply;
+        inFlight = null;
+        pendingApply = null;
+
+        try {
+            Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            // The results for this tick are lost, just like they would be if detection threw on the client thread
+            log.error("Unable to evaluate mistakes in the background, evaluating on the client thread instead",
+                    e.getCause());
+            stopWorker();
+            return;
+        }
+
+        apply.run();
+    }
+
+    /**
+     * Finish the tick in flight and stop the worker thread. This must be called on the client thread.
+     */
+    public void shutdown() {
+        awaitIdle();
+        stopWorker();
+    }
+
+    private void onEvaluated(long sequence) {
+        // The results might already have been applied, if the client thread needed them first
+        if (inFlight != null && sequence == inFlightSequence) {
+            awaitIdle();
+        }
+    }
+
+    private void stopWorker() {
+        if (worker != null) {
+            worker.shutdown();
+            worker = null;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.toamistaketracker.detector;
+
+import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.RaidState;
+import com.toamistaketracker.Raider;
+import com.toamistaketracker.RaiderMask;
+import com.toamistaketracker.detector.tracker.AppliedHitsplatsTracker;
+import com.toamistaketracker.detector.tracker.VengeanceTracker;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Everything the detectors need from the client to evaluate a single tick, captured on the client thread once every
+ * detector has handled the {@link net.runelite.api.events.GameTick}: a frozen copy of each raider (location,
+ * animations and overhead icon), the hitsplats applied to them, and who popped vengeance. Each detector hands over the
+ * hit layers that activated on the tick in {@link BaseMistakeDetector#captureTick(TickSnapshot)}.
+ * <p>
+ * Detection only reads the snapshot, so it can be evaluated on a worker thread. The {@link MistakeDetectorManager}
+ * reuses one snapshot for every tick to keep the tick path allocation-free, which is safe because the next tick isn't
+ * captured until the {@link TickEvaluator} is done evaluating and applying this one. Until then it doesn't change.
+ */
+public class TickSnapshot {
+
+    private static final int INITIAL_DAMAGE_CAPACITY = 4;
+
+    @Getter
+    private int tickCount;
+
+    @Getter
+    private RaidRoom room;
+
+    // The detectors that were active when the tick was captured, in configured order
+    @Getter(AccessLevel.PACKAGE)
+    private BaseMistakeDetector[] detectors = new BaseMistakeDetector[0];
+
+    private final Raider[] raiders = new Raider[RaidState.MAX_RAIDERS]; // slot -> frozen raider
+    private final RaiderMask raidersVengeance = new RaiderMask();
+    private final int[] hitsplatCounts = new int[RaidState.MAX_RAIDERS]; // slot -> # of hitsplats applied
+    private final int[] damageCounts = new int[RaidState.MAX_RAIDERS]; // slot -> # of damage amounts
+    private final int[][] damageAmounts = new int[RaidState.MAX_RAIDERS][INITIAL_DAMAGE_CAPACITY]; // slot -> amounts
+
+    /**
+     * Capture the given tick, replacing everything from the previous one. This must be called on the client thread.
+     */
+    void capture(int tickCount,
+                 RaidRoom room,
+                 @NonNull BaseMistakeDetector[] detectors,
+                 @NonNull RaidState raidState,
+                 @NonNull AppliedHitsplatsTracker appliedHitsplatsTracker,
+                 @NonNull VengeanceTracker vengeanceTracker) {
+        this.tickCount = tickCount;
+        this.room = room;
+        this.detectors = detectors;
+
+        raidersVengeance.clear();
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            Raider raider = raidState.getRaider(slot);
+            if (raider == null) {
+                raiders[slot] = null;
+                hitsplatCounts[slot] = 0;
+                damageCounts[slot] = 0;
+                continue;
+            }
+
+            raiders[slot] = raider.copyTickState(raiders[slot]);
+            if (vengeanceTracker.didPopVengeance(raider)) {
+                raidersVengeance.add(slot);
+            }
+
+            hitsplatCounts[slot] = appliedHitsplatsTracker.getHitsplatCount(raider);
+            damageCounts[slot] = appliedHitsplatsTracker.getDamageHitsplatCount(raider);
+            if (damageCounts[slot] > damageAmounts[slot].length) {
+                damageAmounts[slot] = Arrays.copyOf(damageAmounts[slot], damageCounts[slot]);
+            }
+            for (int i = 0; i < damageCounts[slot]; i++) {
+                damageAmounts[slot][i] = appliedHitsplatsTracker.getDamageHitsplatAmount(raider, i);
+            }
+        }
+    }
+
+    /**
+     * Retrieve the frozen copy of the raider in the given slot
+     *
+     * @param slot The slot, from 0 until {@link RaidState#MAX_RAIDERS}
+     * @return The raider as of this tick, or null if there is no raider in that slot
+     */
+    public Raider getRaider(int slot) {
+        return raiders[slot];
+    }
+
+    /**
+     * Since multiple players could be on a hit tile, confirm there's a corresponding hitsplat applied to that raider.
+     *
+     * @param raider The raider
+     * @return True if there was a hitsplat applied to the specified raider on this tick, else false
+     */
+    public boolean hasHitsplatApplied(@NonNull Raider raider) {
+        return getHitsplatCount(raider) > 0;
+    }
+
+    /**
+     * Retrieve the number of hitsplats of any type applied to the raider on this tick
+     *
+     * @param raider The raider
+     * @return The number of hitsplats
+     */
+    public int getHitsplatCount(@NonNull Raider raider) {
+        return hitsplatCounts[raider.getSlot()];
+    }
+
+    /**
+     * Retrieve the number of damage hitsplats with a positive amount applied to the raider on this tick
+     *
+     * @param raider The raider
+     * @return The number of damage hitsplats
+     */
+    public int getDamageHitsplatCount(@NonNull Raider raider) {
+        return damageCounts[raider.getSlot()];
+    }
+
+    /**
+     * Retrieve the amount of the damage hitsplat at the given index, in the order they were applied on this tick
+     *
+     * @param raider The raider
+     * @param index  The index, from 0 until {@link #getDamageHitsplatCount(Raider)}
+     * @return The damage amount
+     */
+    public int getDamageHitsplatAmount(@NonNull Raider raider, int index) {
+        if (index < 0 || index >= getDamageHitsplatCount(raider)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getDamageHitsplatCount(raider));
+        }
+        return damageAmounts[raider.getSlot()][index];
+    }
+
+    public boolean didPopVengeance(@NonNull Raider raider) {
+        return raidersVengeance.contains(raider);
+    }
+}
@@ -3,9 +3,13 @@ package com.toamistaketracker.detector.boss;
 import com.google.common.collect.ImmutableSet;
 import com.toamistaketracker.RaidRoom;
 import com.toamistaketracker.Raider;
-import com.toamistaketracker.ToaMistake;
+import com.toamistaketracker.RaiderMask;
+import com.toamistaketracker.TileOccupancy;
 import com.toamistaketracker.detector.BaseMistakeDetector;
-import com.toamistaketracker.detector.tracker.AppliedHitsplatsTracker;
+import com.toamistaketracker.detector.GraphicsObjectDispatcher;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.NpcRole;
+import com.toamistaketracker.detector.TickSnapshot;
 import com.toamistaketracker.detector.tracker.DelayedHitTilesTracker;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -18,12 +22,9 @@ import net.runelite.api.events.GameObjectDespawned;
 import net.runelite.api.events.GameObjectSpawned;
 import net.runelite.api.events.GameTick;
 import net.runelite.api.events.GraphicChanged;
-import net.runelite.api.events.GraphicsObjectCreated;
-import net.runelite.api.events.HitsplatApplied;
 import net.runelite.api.events.NpcDespawned;
 import net.runelite.api.events.NpcSpawned;
 import net.runelite.client.eventbus.Subscribe;
-import net.runelite.client.util.Text;
 
 import javax.inject.Singleton;
 import java.util.ArrayList;
@@ -77,31 +78,29 @@ public class AkkhaDetector extends BaseMistakeDetector {
 
     private static final Set<Integer> FULL_HOURGLASS_GAME_OBJECT_IDS = ImmutableSet.of(46064, 46065, 46066, 46067);
     private static final Set<Integer> QUADRANT_BOMB_GRAPHICS_IDS = ImmutableSet.of(2256, 2257, 2258, 2259);
-    private static final Set<String> ELEMENTAL_ORB_NAMES = ImmutableSet.of(
-            "Orb of Lightning", "Orb of Darkness", "Burning Orb", "Frozen Orb");
-    private static final String UNSTABLE_ORB_NAME = "Unstable Orb";
     private static final int UNSTABLE_ORB_POPPED_GRAPHICS_ID = 2260;
 
-    private static final String AKKHA_NAME = "Akkha";
     private static final int HOURGLASS_SPECIAL_SUBTRACTED_CYCLES = 9; // 3 cycles per tile, up to 3 tiles away
     private static final int HOURGLASS_SPECIAL_HIT_DELAY_IN_TICKS = 1; // extra hit delay to offset, due to subtraction
 
     private static final int QUADRANT_EXPLODE_HIT_DELAY_IN_TICKS = 0;
 
     private boolean isAkkhaPresent;
-    private final Set<String> raidersPreviouslyMadeQuadrantMistake = new HashSet<>();
+    private final RaiderMask raidersPreviouslyMadeQuadrantMistake = new RaiderMask();
     private final List<GameObject> activeFullHourglasses = new ArrayList<>();
 
     private final DelayedHitTilesTracker quadrantBombTiles = new DelayedHitTilesTracker();
     private final Set<WorldPoint> elementalOrbHitTiles;
     private final Set<WorldPoint> unstableOrbHitTiles;
 
-    private final AppliedHitsplatsTracker appliedHitsplats;
+    // Raiders standing on each kind of active hit tile this tick, handed over to detection in captureTick
+    private final RaiderMask raidersOnQuadrantBombTiles = new RaiderMask();
+    private final RaiderMask raidersOnElementalOrbTiles = new RaiderMask();
+    private final RaiderMask raidersOnUnstableOrbTiles = new RaiderMask();
 
     public AkkhaDetector() {
         elementalOrbHitTiles = new HashSet<>();
         unstableOrbHitTiles = new HashSet<>();
-        appliedHitsplats = new AppliedHitsplatsTracker();
     }
 
     @Override
@@ -113,7 +112,10 @@ public class AkkhaDetector extends BaseMistakeDetector {
         quadrantBombTiles.clear();
         elementalOrbHitTiles.clear();
         unstableOrbHitTiles.clear();
-        appliedHitsplats.clear();
+
+        raidersOnQuadrantBombTiles.clear();
+        raidersOnElementalOrbTiles.clear();
+        raidersOnUnstableOrbTiles.clear();
     }
 
     @Override
@@ -122,63 +124,68 @@ public class AkkhaDetector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = new ArrayList<>();
+    public void registerGraphicsObjectHandlers(@NonNull GraphicsObjectDispatcher dispatcher) {
+        dispatcher.register(this, QUADRANT_BOMB_GRAPHICS_IDS, this::onQuadrantBomb);
+    }
+
+    @Override
+    public void captureTick(@NonNull TickSnapshot tick) {
+        TileOccupancy tileOccupancy = raidState.getTileOccupancy();
+        tileOccupancy.computeRaidersOn(quadrantBombTiles.getActiveHitTiles(), raidersOnQuadrantBombTiles);
+        tileOccupancy.computeRaidersOn(elementalOrbHitTiles, raidersOnElementalOrbTiles);
+        tileOccupancy.computeRaidersOn(unstableOrbHitTiles, raidersOnUnstableOrbTiles);
 
+        elementalOrbHitTiles.clear();
+        unstableOrbHitTiles.clear();
+    }
+
+    @Override
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
         if (isQuadrantHit(raider)) {
             mistakes.add(AKKHA_SPECIAL_QUADRANT_BOMB);
-            raidersPreviouslyMadeQuadrantMistake.add(raider.getName());
+            raidersPreviouslyMadeQuadrantMistake.add(raider);
         } else {
-            raidersPreviouslyMadeQuadrantMistake.remove(raider.getName());
+            raidersPreviouslyMadeQuadrantMistake.remove(raider);
         }
 
-        if (elementalOrbHitTiles.contains(raider.getPreviousWorldLocation())) {
+        if (raidersOnElementalOrbTiles.contains(raider)) {
             mistakes.add(AKKHA_SPECIAL_ELEMENTAL_ORBS);
         }
 
-        if (unstableOrbHitTiles.contains(raider.getPreviousWorldLocation()) &&
-                appliedHitsplats.popHitsplatApplied(raider.getName())) {
+        if (raidersOnUnstableOrbTiles.contains(raider) && tick.hasHitsplatApplied(raider)) {
             mistakes.add(AKKHA_UNSTABLE_ORB);
         }
-
-        return mistakes;
     }
 
     @Override
     public void afterDetect() {
-        elementalOrbHitTiles.clear();
-        unstableOrbHitTiles.clear();
-        appliedHitsplats.clear();
     }
 
     @Subscribe
     public void onGameTick(GameTick event) {
+        if (!isActive()) return;
+
         quadrantBombTiles.onGameTick(client.getTickCount());
     }
 
-    @Subscribe
-    public void onGraphicsObjectCreated(GraphicsObjectCreated event) {
-        if (!QUADRANT_BOMB_GRAPHICS_IDS.contains(event.getGraphicsObject().getId())) return;
-
+    private void onQuadrantBomb(GraphicsObject graphicsObject) {
         final int activationTick;
         if (isHourglassSpecial()) {
             // Hourglass special works differently. The animation is reversed but the hit tiles are *not* reversed,
             // they're inversed from the memory special. Instead of hardcoding the tiles, we can do some math.
-            activationTick = getActivationTickWithSubtractedCycles(event.getGraphicsObject(),
+            activationTick = getActivationTickWithSubtractedCycles(graphicsObject,
                     HOURGLASS_SPECIAL_HIT_DELAY_IN_TICKS, HOURGLASS_SPECIAL_SUBTRACTED_CYCLES);
         } else {
-            activationTick = getActivationTick(event.getGraphicsObject(), QUADRANT_EXPLODE_HIT_DELAY_IN_TICKS);
+            activationTick = getActivationTick(graphicsObject, QUADRANT_EXPLODE_HIT_DELAY_IN_TICKS);
         }
-        quadrantBombTiles.put(activationTick, getWorldPoint(event.getGraphicsObject()));
+        quadrantBombTiles.put(activationTick, getWorldPoint(graphicsObject));
     }
 
     @Subscribe
     public void onGraphicChanged(GraphicChanged event) {
-        if (!(event.getActor() instanceof NPC) || event.getActor().getName() == null) return;
+        if (!isActive()) return;
 
-        String name = Text.removeTags(event.getActor().getName());
-        if (event.getActor() instanceof NPC &&
-                UNSTABLE_ORB_NAME.equals(name) &&
+        if (npcRoleRegistry.getRole(event.getActor()) == NpcRole.UNSTABLE_ORB &&
                 event.getActor().getGraphic() == UNSTABLE_ORB_POPPED_GRAPHICS_ID) {
             // We need to use the *actual* world location here, since the moving orb despawns too late and changes
             // graphics too early. Transform the world location 1 tile towards the client's local location.
@@ -188,6 +195,8 @@ public class AkkhaDetector extends BaseMistakeDetector {
 
     @Subscribe
     public void onGameObjectSpawned(GameObjectSpawned event) {
+        if (!isActive()) return;
+
         if (isFullHourglass(event.getGameObject())) {
             activeFullHourglasses.add(event.getGameObject());
         }
@@ -195,6 +204,8 @@ public class AkkhaDetector extends BaseMistakeDetector {
 
     @Subscribe
     public void onGameObjectDespawned(GameObjectDespawned event) {
+        if (!isActive()) return;
+
         if (isFullHourglass(event.getGameObject())) {
             activeFullHourglasses.remove(event.getGameObject());
         }
@@ -229,30 +240,24 @@ public class AkkhaDetector extends BaseMistakeDetector {
 
     @Subscribe
     public void onNpcSpawned(NpcSpawned event) {
-        if (event.getNpc().getName() == null) return;
+        if (!isActive()) return;
 
-        String name = Text.removeTags(event.getNpc().getName());
-        if (AKKHA_NAME.equals(name)) {
+        if (npcRoleRegistry.getRole(event.getNpc()) == NpcRole.AKKHA) {
             isAkkhaPresent = true;
         }
     }
 
     @Subscribe
     public void onNpcDespawned(NpcDespawned event) {
-        if (event.getNpc().getName() == null) return;
-
-        String name = Text.removeTags(event.getNpc().getName());
-        if (ELEMENTAL_ORB_NAMES.contains(name)) {
-            elementalOrbHitTiles.add(getWorldPoint(event.getActor()));
-        } else if (AKKHA_NAME.equals(name)) {
-            isAkkhaPresent = false;
-        }
-    }
-
-    @Subscribe
-    public void onHitsplatApplied(HitsplatApplied event) {
-        if (raidState.isRaider(event.getActor())) {
-            appliedHitsplats.addHitsplatForRaider(event.getActor().getName());
+        if (!isActive()) return;
+
+        switch (npcRoleRegistry.getRole(event.getNpc())) {
+            case ELEMENTAL_ORB:
+                elementalOrbHitTiles.add(getWorldPoint(event.getActor()));
+                break;
+            case AKKHA:
+                isAkkhaPresent = false;
+                break;
         }
     }
 
@@ -265,8 +270,7 @@ public class AkkhaDetector extends BaseMistakeDetector {
     }
 
     private boolean isQuadrantHit(Raider raider) {
-        return quadrantBombTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation()) &&
-                !raidersPreviouslyMadeQuadrantMistake.contains(raider.getName());
+        return raidersOnQuadrantBombTiles.contains(raider) && !raidersPreviouslyMadeQuadrantMistake.contains(raider);
     }
 
     private int getActivationTickWithSubtractedCycles(GraphicsObject graphicsObject,
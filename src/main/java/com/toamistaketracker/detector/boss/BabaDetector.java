@@ -3,27 +3,30 @@ package com.toamistaketracker.detector.boss;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.RaidState;
 import com.toamistaketracker.Raider;
-import com.toamistaketracker.ToaMistake;
+import com.toamistaketracker.RaiderIntArray;
+import com.toamistaketracker.RaiderMask;
+import com.toamistaketracker.TileOccupancy;
 import com.toamistaketracker.detector.BaseMistakeDetector;
-import com.toamistaketracker.detector.tracker.AppliedHitsplatsTracker;
+import com.toamistaketracker.detector.GraphicsObjectDispatcher;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.NpcRole;
+import com.toamistaketracker.detector.TickSnapshot;
 import com.toamistaketracker.detector.tracker.DelayedHitTilesTracker;
+import com.toamistaketracker.detector.tracker.RegionTileBitmap;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import net.runelite.api.HitsplatID;
 import net.runelite.api.NPC;
 import net.runelite.api.Player;
-import net.runelite.api.coords.LocalPoint;
 import net.runelite.api.coords.WorldPoint;
 import net.runelite.api.events.AnimationChanged;
 import net.runelite.api.events.GameTick;
-import net.runelite.api.events.GraphicsObjectCreated;
 import net.runelite.api.events.HitsplatApplied;
 import net.runelite.api.events.NpcDespawned;
 import net.runelite.api.events.NpcSpawned;
 import net.runelite.client.eventbus.Subscribe;
-import net.runelite.client.util.Text;
 
 import javax.inject.Singleton;
 import java.util.ArrayList;
@@ -127,23 +130,36 @@ public class BabaDetector extends BaseMistakeDetector {
     // The boulder collision doesn't really start for 1-2 ticks. Let's use 3 to be safe and rely on the other forms
     // of boulder detection in those early ticks anyway, as they should always be safe.
     private static final Integer BOULDER_SPAWN_DELAY_IN_TICKS = 3;
-    private static final String BOULDER_NAME = "Boulder";
-    private static final String RUBBLE_NAME = "Rubble";
-    private static final String BABA_NAME = "Ba-Ba";
     private static final Integer PROJECTILE_BOULDER_DELAY_IN_TICKS = 7;
     private static final int RUBBLE_SAFE_TILES_LENGTH = 5;
 
     @Getter
-    private Set<WorldPoint> gapTiles;
+    private RegionTileBitmap gapTiles; // Shared static layer from the InstanceGeometry, which must not be modified
     private WorldPoint boulderWallTile;
 
     private final Set<WorldPoint> slamHitTiles;
-    private final Set<String> raidersFell;
-    private final Set<String> raidersSlipping;
-    private final Map<String, Integer> raidersRecentlySlipped; // name -> tick they last slipped
-    private final Set<String> raidersRolledAnimation;
-    private final Set<String> raidersRolled;
-    private final Set<String> raidersRolledLastTick;
+    private final RaiderMask pendingRaidersSlipping;
+    private final RaiderMask pendingRaidersRolledAnimation;
+
+    private final RaiderMask raidersFell;
+    private final RaiderIntArray raidersRecentlySlipped; // raider -> tick they last slipped
+    private final RaiderMask raidersRolled;
+    private final RaiderMask raidersRolledLastTick;
+
+    // Handed over to detection in captureTick
+    private final RaiderMask raidersSlipping;
+    private final RaiderMask raidersRolledAnimation;
+    private boolean isBoulderPhase;
+    private boolean isRubblePresent;
+    private boolean isProjectileBoulderActive;
+    private final RaiderIntArray raidersStandingRubble; // raider -> index of the rubble they're standing next to
+    private final RaiderIntArray raidersStandingRubbleHitsplats; // raider -> # of hitsplats on that rubble
+
+    // Raiders standing on each kind of tile this tick, handed over to detection in captureTick
+    private final RaiderMask raidersOnSlamTiles;
+    private final RaiderMask raidersOnGapTiles;
+    private final RaiderMask raidersOnBoulderTiles;
+    private final RaiderMask raidersOnFallingBoulderTiles;
 
     @Getter
     private final List<NPC> boulders;
@@ -151,8 +167,8 @@ public class BabaDetector extends BaseMistakeDetector {
     private final List<NPC> despawnedBoulders;
 
     @Getter
-    private final Set<WorldPoint> boulderTiles;
-    private final Set<WorldPoint> finalBoulderTiles;
+    private final RegionTileBitmap boulderTiles;
+    private final RegionTileBitmap finalBoulderTiles;
 
     @Getter
     private final List<NPC> rubbles = new ArrayList<>();
@@ -162,52 +178,76 @@ public class BabaDetector extends BaseMistakeDetector {
 
     @Getter
     private final DelayedHitTilesTracker fallingBoulderHitTiles = new DelayedHitTilesTracker();
-    private final AppliedHitsplatsTracker fallingBoulderAppliedHitsplats = new AppliedHitsplatsTracker();
 
     @Getter
     // This is really just used for timing, not for the tile itself
     // TODO: Can now refactor this to use DelayedObjects interface
     private final DelayedHitTilesTracker projectileBoulderHitTiles = new DelayedHitTilesTracker();
-    // name -> list of hitsplat amounts
-    private final Map<String, List<Integer>> projectileBoulderAppliedHitsplats = new HashMap<>();
 
     public BabaDetector() {
-        gapTiles = new HashSet<>();
+        gapTiles = new RegionTileBitmap();
 
         slamHitTiles = new HashSet<>();
-        raidersFell = new HashSet<>();
-        raidersSlipping = new HashSet<>();
-        raidersRecentlySlipped = new HashMap<>();
-        raidersRolledAnimation = new HashSet<>();
-        raidersRolled = new HashSet<>();
-        raidersRolledLastTick = new HashSet<>();
+        pendingRaidersSlipping = new RaiderMask();
+        pendingRaidersRolledAnimation = new RaiderMask();
+
+        raidersFell = new RaiderMask();
+        raidersRecentlySlipped = new RaiderIntArray();
+        raidersRolled = new RaiderMask();
+        raidersRolledLastTick = new RaiderMask();
+
+        raidersSlipping = new RaiderMask();
+        raidersRolledAnimation = new RaiderMask();
+        raidersStandingRubble = new RaiderIntArray();
+        raidersStandingRubbleHitsplats = new RaiderIntArray();
+
+        raidersOnSlamTiles = new RaiderMask();
+        raidersOnGapTiles = new RaiderMask();
+        raidersOnBoulderTiles = new RaiderMask();
+        raidersOnFallingBoulderTiles = new RaiderMask();
 
         boulders = new ArrayList<>();
         spawnedBoulders = new HashMap<>();
         despawnedBoulders = new ArrayList<>();
-        boulderTiles = new HashSet<>();
-        finalBoulderTiles = new HashSet<>();
+        boulderTiles = new RegionTileBitmap();
+        finalBoulderTiles = new RegionTileBitmap();
     }
 
     @Override
     public void startup() {
         super.startup();
-        computeGapTiles();
+        anchorToRoom(boulderTiles, finalBoulderTiles);
+
+        gapTiles = instanceGeometry.getLayer(GAP_REGION_TILES);
+        boulderWallTile = instanceGeometry.getTile(BOULDER_WALL_REGION_TILE);
     }
 
     @Override
     public void cleanup() {
-        gapTiles.clear();
         boulderWallTile = null;
 
         slamHitTiles.clear();
+        pendingRaidersSlipping.clear();
+        pendingRaidersRolledAnimation.clear();
+
         raidersFell.clear();
-        raidersSlipping.clear();
         raidersRecentlySlipped.clear();
-        raidersRolledAnimation.clear();
         raidersRolled.clear();
         raidersRolledLastTick.clear();
 
+        raidersSlipping.clear();
+        raidersRolledAnimation.clear();
+        isBoulderPhase = false;
+        isRubblePresent = false;
+        isProjectileBoulderActive = false;
+        raidersStandingRubble.clear();
+        raidersStandingRubbleHitsplats.clear();
+
+        raidersOnSlamTiles.clear();
+        raidersOnGapTiles.clear();
+        raidersOnBoulderTiles.clear();
+        raidersOnFallingBoulderTiles.clear();
+
         boulders.clear();
         spawnedBoulders.clear();
         despawnedBoulders.clear();
@@ -219,10 +259,8 @@ public class BabaDetector extends BaseMistakeDetector {
         rubbleHitsplats.clear();
 
         fallingBoulderHitTiles.clear();
-        fallingBoulderAppliedHitsplats.clear();
 
         projectileBoulderHitTiles.clear();
-        projectileBoulderAppliedHitsplats.clear();
     }
 
     @Override
@@ -231,58 +269,75 @@ public class BabaDetector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = new ArrayList<>();
+    public void registerGraphicsObjectHandlers(@NonNull GraphicsObjectDispatcher dispatcher) {
+        dispatcher.register(this, BABA_SLAM_GRAPHICS_ID, g -> slamHitTiles.add(getWorldPoint(g)));
+        FALLING_BOULDER_GRAPHICS_IDS.forEach((id, delay) -> dispatcher.register(this, id,
+                g -> fallingBoulderHitTiles.put(client.getTickCount() + delay, getWorldPoint(g))));
+    }
+
+    @Override
+    public void captureTick(@NonNull TickSnapshot tick) {
+        // Resolve the raiders on each kind of tile once instead of once per raider
+        TileOccupancy tileOccupancy = raidState.getTileOccupancy();
+        tileOccupancy.computeRaidersOn(slamHitTiles, raidersOnSlamTiles);
+        tileOccupancy.computeRaidersOn(gapTiles, raidersOnGapTiles);
+        tileOccupancy.computeRaidersOn(boulderTiles, raidersOnBoulderTiles);
+        tileOccupancy.computeRaidersOn(fallingBoulderHitTiles.getActiveHitTiles(), raidersOnFallingBoulderTiles);
+
+        raidersSlipping.copyFrom(pendingRaidersSlipping);
+        raidersRolledAnimation.copyFrom(pendingRaidersRolledAnimation);
+        isBoulderPhase = computeBoulderPhase();
+        isRubblePresent = !rubbles.isEmpty();
+        isProjectileBoulderActive = !projectileBoulderHitTiles.getActiveHitTiles().isEmpty();
+        captureStandingRubbles(tick);
+
+        slamHitTiles.clear();
+        pendingRaidersSlipping.clear();
+        pendingRaidersRolledAnimation.clear();
+        rubbleHitsplats.clear();
+        finalBoulderTiles.clear();
+    }
 
-        if (slamHitTiles.contains(raider.getPreviousWorldLocation())) {
+    @Override
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
+        if (raidersOnSlamTiles.contains(raider)) {
             mistakes.add(BABA_SLAM);
         }
 
-        if (gapTiles.contains(raider.getPreviousWorldLocation()) && !raidersFell.contains(raider.getName())) {
+        if (raidersOnGapTiles.contains(raider) && !raidersFell.contains(raider)) {
             mistakes.add(BABA_GAP);
-            raidersFell.add(raider.getName());
+            raidersFell.add(raider);
         }
 
-        if (isSlip(raider)) {
+        if (isSlip(tick, raider)) {
             mistakes.add(BABA_BANANA);
-            raidersRecentlySlipped.put(raider.getName(), client.getTickCount());
+            raidersRecentlySlipped.put(raider, tick.getTickCount());
         }
 
         if (isRollingBoulder(raider)) {
             mistakes.add(BABA_ROLLING_BOULDER);
-            raidersRolled.add(raider.getName());
+            raidersRolled.add(raider);
         }
 
-        if (isFallingBoulder(raider)) {
+        if (isFallingBoulder(tick, raider)) {
             mistakes.add(BABA_FALLING_BOULDER);
         }
 
-        if (isProjectileBoulder(raider)) {
+        if (isProjectileBoulder(tick, raider)) {
             mistakes.add(BABA_PROJECTILE_BOULDER);
         }
-
-        return mistakes;
     }
 
     @Override
     public void afterDetect() {
-        slamHitTiles.clear();
-        raidersSlipping.clear();
-        raidersRolledAnimation.clear();
-
-        raidersRolledLastTick.clear();
-        raidersRolledLastTick.addAll(raidersRolled);
+        raidersRolledLastTick.copyFrom(raidersRolled);
         raidersRolled.clear();
-
-        rubbleHitsplats.clear();
-
-        finalBoulderTiles.clear();
-        fallingBoulderAppliedHitsplats.clear();
-        projectileBoulderAppliedHitsplats.clear();
     }
 
     @Subscribe
     public void onGameTick(GameTick event) {
+        if (!isActive()) return;
+
         if (spawnedBoulders.containsKey(client.getTickCount())) {
             List<NPC> spawned = spawnedBoulders.remove(client.getTickCount());
             // Ignore boulders that have already despawned
@@ -296,73 +351,67 @@ public class BabaDetector extends BaseMistakeDetector {
         boulders.stream()
                 .filter(b -> !b.isDead())
                 .forEach(boulder -> boulderTiles.addAll(computeBoulderTiles(boulder.getWorldLocation())));
-        boulderTiles.addAll(finalBoulderTiles);
+        boulderTiles.union(finalBoulderTiles);
 
         fallingBoulderHitTiles.onGameTick(client.getTickCount());
         projectileBoulderHitTiles.onGameTick(client.getTickCount());
     }
 
-    @Subscribe
-    public void onGraphicsObjectCreated(GraphicsObjectCreated event) {
-        int id = event.getGraphicsObject().getId();
-        if (id == BABA_SLAM_GRAPHICS_ID) {
-            slamHitTiles.add(getWorldPoint(event.getGraphicsObject()));
-        } else if (FALLING_BOULDER_GRAPHICS_IDS.containsKey(id)) {
-            int activationTick = client.getTickCount() + FALLING_BOULDER_GRAPHICS_IDS.get(id);
-            fallingBoulderHitTiles.put(activationTick, getWorldPoint(event.getGraphicsObject()));
-        }
-    }
-
     @Subscribe
     public void onNpcSpawned(NpcSpawned event) {
-        if (event.getNpc().getName() == null) return;
-
-        String name = Text.removeTags(event.getNpc().getName());
-        if (BOULDER_NAME.equals(name)) {
-            spawnedBoulders
-                    .computeIfAbsent(client.getTickCount() + BOULDER_SPAWN_DELAY_IN_TICKS, k -> new ArrayList<>())
-                    .add(event.getNpc());
-        } else if (RUBBLE_NAME.equals(name)) {
-            rubbles.add(event.getNpc());
-            safeRubbleTiles.put(event.getNpc(), computeSafeRubbleTiles(event.getNpc().getWorldLocation()));
+        if (!isActive()) return;
+
+        switch (npcRoleRegistry.getRole(event.getNpc())) {
+            case BOULDER:
+                spawnedBoulders
+                        .computeIfAbsent(client.getTickCount() + BOULDER_SPAWN_DELAY_IN_TICKS, k -> new ArrayList<>())
+                        .add(event.getNpc());
+                break;
+            case RUBBLE:
+                rubbles.add(event.getNpc());
+                safeRubbleTiles.put(event.getNpc(), computeSafeRubbleTiles(event.getNpc().getWorldLocation()));
+                break;
         }
     }
 
     @Subscribe
     public void onNpcDespawned(NpcDespawned event) {
-        if (event.getNpc().getName() == null) return;
-
-        String name = Text.removeTags(event.getNpc().getName());
-        if (BOULDER_NAME.equals(name)) {
-            despawnedBoulders.add(event.getNpc());
-            boolean removed = boulders.remove(event.getNpc());
-            if (removed &&
-                    !event.getNpc().isDead() &&
-                    event.getNpc().getWorldLocation().getX() == boulderWallTile.getX()) {
-                // This despawned from hitting the wall, not from a player killing it. Extend tiles for one more tick
-                // Pretend the SW tile is 1 tile lower
-                finalBoulderTiles.addAll(computeBoulderTiles(event.getNpc().getWorldLocation().dx(-1)));
-            }
-        } else if (RUBBLE_NAME.equals(name)) {
-            rubbles.remove(event.getNpc());
-            safeRubbleTiles.remove(event.getNpc());
+        if (!isActive()) return;
+
+        switch (npcRoleRegistry.getRole(event.getNpc())) {
+            case BOULDER:
+                despawnedBoulders.add(event.getNpc());
+                boolean removed = boulders.remove(event.getNpc());
+                if (removed &&
+                        !event.getNpc().isDead() &&
+                        event.getNpc().getWorldLocation().getX() == boulderWallTile.getX()) {
+                    // This despawned from hitting the wall, not from a player killing it. Extend tiles for one more
+                    // tick. Pretend the SW tile is 1 tile lower
+                    finalBoulderTiles.addAll(computeBoulderTiles(event.getNpc().getWorldLocation().dx(-1)));
+                }
+                break;
+            case RUBBLE:
+                rubbles.remove(event.getNpc());
+                safeRubbleTiles.remove(event.getNpc());
+                break;
         }
     }
 
     @Subscribe
     public void onAnimationChanged(AnimationChanged event) {
-        if (event.getActor() == null || event.getActor().getName() == null) return;
+        if (!isActive()) return;
+
+        if (event.getActor() == null) return;
 
-        String name = Text.removeTags(event.getActor().getName());
-        if (event.getActor() instanceof Player && raidState.isRaider(event.getActor())) {
+        Raider raider = event.getActor() instanceof Player ? raidState.getRaider(event.getActor()) : null;
+        if (raider != null) {
             if (event.getActor().getAnimation() == BANANA_SLIP_ANIMATION_ID ||
                     event.getActor().getGraphic() == BANANA_GRAPHICS_ID) {
-                raidersSlipping.add(name);
+                pendingRaidersSlipping.add(raider);
             } else if (event.getActor().getAnimation() == BOULDER_ROLLED_ANIMATION_ID) {
-                raidersRolledAnimation.add(name);
+                pendingRaidersRolledAnimation.add(raider);
             }
-        } else if (event.getActor() instanceof NPC &&
-                BABA_NAME.equals(name) &&
+        } else if (npcRoleRegistry.getRole(event.getActor()) == NpcRole.BABA &&
                 event.getActor().getAnimation() == BABA_PROJECTILE_BOULDER_ANIMATION_ID) {
             int activationTick = client.getTickCount() + PROJECTILE_BOULDER_DELAY_IN_TICKS;
             // Add dummy location for the correct activation tick
@@ -372,19 +421,12 @@ public class BabaDetector extends BaseMistakeDetector {
 
     @Subscribe
     public void onHitsplatApplied(HitsplatApplied event) {
-        if (event.getActor() == null || event.getActor().getName() == null) return;
+        if (!isActive()) return;
 
-        String name = Text.removeTags(event.getActor().getName());
-        if (raidState.isRaider(event.getActor())) {
-            fallingBoulderAppliedHitsplats.addHitsplatForRaider(name);
+        if (event.getActor() == null) return;
 
-            if (isDamageHitsplat(event.getHitsplat().getHitsplatType()) &&
-                    event.getHitsplat().getAmount() > 0) {
-                projectileBoulderAppliedHitsplats.computeIfAbsent(name, k -> new ArrayList<>())
-                        .add(event.getHitsplat().getAmount());
-
-            }
-        } else if (event.getActor() instanceof NPC && RUBBLE_NAME.equals(name)) {
+        // Raider hitsplats are tracked by the shared AppliedHitsplatsTracker
+        if (npcRoleRegistry.getRole(event.getActor()) == NpcRole.RUBBLE) {
             if (event.getActor().getGraphic() == RUBBLE_EXPLOSION_GRAPHICS_ID) {
                 rubbleHitsplats.compute((NPC) event.getActor(), (k, v) -> v == null ? 1 : v + 1);
             } else {
@@ -394,42 +436,74 @@ public class BabaDetector extends BaseMistakeDetector {
         }
     }
 
-    private boolean isDamageHitsplat(int hitsplatType) {
-        return hitsplatType == HitsplatID.DAMAGE_ME || hitsplatType == HitsplatID.DAMAGE_OTHER;
+    /**
+     * Resolve which rubble each raider is standing next to, and how many hitsplats that rubble took this tick, for
+     * resolving projectile boulder hits. Rubbles are only known by their NPC, so this has to be done on the client
+     * thread.
+     */
+    private void captureStandingRubbles(TickSnapshot tick) {
+        raidersStandingRubble.clear();
+        raidersStandingRubbleHitsplats.clear();
+        if (!isProjectileBoulderActive || !isRubblePresent) return;
+
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            Raider raider = tick.getRaider(slot);
+            if (raider == null || raider.isDead()) continue;
+
+            int rubble = 0;
+            for (Map.Entry<NPC, Set<WorldPoint>> entry : safeRubbleTiles.entrySet()) {
+                if (entry.getValue().contains(raider.getPreviousWorldLocation())) {
+                    raidersStandingRubble.put(raider, rubble);
+                    Integer rubbleHitsplatCount = rubbleHitsplats.get(entry.getKey());
+                    if (rubbleHitsplatCount != null) {
+                        raidersStandingRubbleHitsplats.put(raider, rubbleHitsplatCount);
+                    }
+                    break;
+                }
+                rubble++;
+            }
+        }
     }
 
     // This is super hacky and was written at 4am without testing in a group so who knows if this works...
-    private boolean isProjectileBoulder(Raider raider) {
-        if (projectileBoulderHitTiles.getActiveHitTiles().isEmpty()) {
+    private boolean isProjectileBoulder(TickSnapshot tick, Raider raider) {
+        if (!isProjectileBoulderActive) {
             // No explosion this tick
             return false;
         }
 
-        if (rubbles.isEmpty()) {
+        if (!isRubblePresent) {
             return false;
         }
 
-        if (!projectileBoulderAppliedHitsplats.containsKey(raider.getName())) {
+        int numHitsplats = tick.getDamageHitsplatCount(raider);
+        if (numHitsplats == 0) {
             // Somehow there was no hitsplat, so no mistake. This can happen if boss dies
             return false;
         }
 
-        if (safeRubbleTiles.values().stream().noneMatch(tiles -> tiles.contains(raider.getPreviousWorldLocation()))) {
+        if (!raidersStandingRubble.containsKey(raider)) {
             // Raider isn't standing on a safe tile. Definitely a mistake.
             return true;
         }
 
-        List<Integer> hitsplats = projectileBoulderAppliedHitsplats.get(raider.getName());
-        if (hitsplats.size() == 1) {
-            return isLargeBoulderHitsplat(hitsplats.get(0));
+        if (numHitsplats == 1) {
+            return isLargeBoulderHitsplat(tick.getDamageHitsplatAmount(raider, 0));
         }
 
-        if (hitsplats.stream().noneMatch(this::isLargeBoulderHitsplat)) {
+        int numLargeHitsplats = 0;
+        for (int i = 0; i < numHitsplats; i++) {
+            if (isLargeBoulderHitsplat(tick.getDamageHitsplatAmount(raider, i))) {
+                numLargeHitsplats++;
+            }
+        }
+
+        if (numLargeHitsplats == 0) {
             // No large hitsplats, so we're safe.
             return false;
         }
 
-        if (hitsplats.stream().allMatch(this::isLargeBoulderHitsplat)) {
+        if (numLargeHitsplats == numHitsplats) {
             // Only large hitsplats, so we made a mistake.
             return true;
         }
@@ -437,36 +511,44 @@ public class BabaDetector extends BaseMistakeDetector {
         // The player must have taken more than one hitsplats this tick (possibly from baba, baboons, etc). One of them
         // is "large", and at least one isn't. To resolve this, we need to check which rubble this player is standing on
         // and check other players too.
-        NPC standingRubble = getStandingRubble(raider);
-        if (standingRubble == null) {
-            // Should never happen since we already know the player is standing on a rubble tile
-            return false;
+        int standingRubble = raidersStandingRubble.get(raider, -1);
+        int numRaidersOnSameRubble = 0;
+        int numSafeRaiders = 0;
+        boolean allHaveOneHitsplat = true;
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            Raider other = tick.getRaider(slot);
+            if (other == null ||
+                    other.getSlot() == raider.getSlot() ||
+                    other.isDead() ||
+                    raidersStandingRubble.get(other, -1) != standingRubble) {
+                continue;
+            }
+
+            numRaidersOnSameRubble++;
+            int otherNumHitsplats = tick.getDamageHitsplatCount(other);
+            if (otherNumHitsplats > 1) {
+                allHaveOneHitsplat = false;
+            } else if (otherNumHitsplats == 1 && !isLargeBoulderHitsplat(tick.getDamageHitsplatAmount(other, 0))) {
+                numSafeRaiders++;
+            }
         }
 
-        List<String> raiderNamesOnSameRubble = getRaidersStandingOnRubble(standingRubble, raider.getName());
-        if (raiderNamesOnSameRubble.isEmpty()) {
+        if (numRaidersOnSameRubble == 0) {
             // There are no other players on this rubble. I have to be safe.
             return false;
         }
 
-        boolean allHaveOneHitsplat = raiderNamesOnSameRubble.stream()
-                .filter(projectileBoulderAppliedHitsplats::containsKey)
-                .allMatch(r -> projectileBoulderAppliedHitsplats.get(r).size() == 1);
         if (!allHaveOneHitsplat) {
             // Some other raiders have multiple hitsplats (possibly from baba, baboons, etc). Let's not bother resolving
             // this and just determine no mistake.
             return false;
         }
 
-        if (!rubbleHitsplats.containsKey(standingRubble)) {
+        if (!raidersStandingRubbleHitsplats.containsKey(raider)) {
             // Should never happen, as there should be hitsplats for this rubble
             return false;
         }
-        int currRubbleHitsplats = rubbleHitsplats.get(standingRubble);
-        int numSafeRaiders = (int) raiderNamesOnSameRubble.stream()
-                .map(r -> projectileBoulderAppliedHitsplats.get(r).get(0))
-                .filter(amount -> !isLargeBoulderHitsplat(amount))
-                .count();
+        int currRubbleHitsplats = raidersStandingRubbleHitsplats.get(raider, 0);
         if (currRubbleHitsplats == numSafeRaiders) {
             // If there are already enough safe raiders, then we made the mistake
             return true;
@@ -480,25 +562,6 @@ public class BabaDetector extends BaseMistakeDetector {
         }
     }
 
-    private List<String> getRaidersStandingOnRubble(NPC rubble, String currentRaider) {
-        return raidState.getRaiders().values().stream()
-                .filter(r -> !currentRaider.equals(r.getName()))
-                .filter(r -> !r.isDead())
-                .filter(r -> rubble.equals(getStandingRubble(r)))
-                .map(Raider::getName)
-                .collect(Collectors.toList());
-    }
-
-    private NPC getStandingRubble(Raider raider) {
-        for (Map.Entry<NPC, Set<WorldPoint>> entry : safeRubbleTiles.entrySet()) {
-            if (entry.getValue().contains(raider.getPreviousWorldLocation())) {
-                return entry.getKey();
-            }
-        }
-
-        return null;
-    }
-
     private boolean isLargeBoulderHitsplat(int hitsplatAmount) {
         return hitsplatAmount > PROJECTILE_BOULDER_DAMAGE_THRESHOLD;
     }
@@ -516,23 +579,23 @@ public class BabaDetector extends BaseMistakeDetector {
         return safeTiles;
     }
 
-    private boolean isFallingBoulder(Raider raider) {
-        if (raider.getPlayer().getAnimation() == PLAYER_KNOCK_BACK_ANIMATION_ID) {
+    private boolean isFallingBoulder(TickSnapshot tick, Raider raider) {
+        if (raider.getAnimation() == PLAYER_KNOCK_BACK_ANIMATION_ID) {
             // If we're in the knock back animation, we can't possibly be taking a small boulder hit
             return false;
         }
 
-        if (!fallingBoulderAppliedHitsplats.popHitsplatApplied(raider.getName())) {
+        if (!tick.hasHitsplatApplied(raider)) {
             // If there's not a hitsplat on the player at all, we also can't possibly be taking a hit
             return false;
         }
 
-        if (!fallingBoulderHitTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation())) {
+        if (!raidersOnFallingBoulderTiles.contains(raider)) {
             // The player isn't even on a hit tile
             return false;
         }
 
-        if (rubbles.isEmpty()) {
+        if (!isRubblePresent) {
             // This might be possible when the room finishes. If there are no rubbles left, then no hit.
             return false;
         }
@@ -540,22 +603,22 @@ public class BabaDetector extends BaseMistakeDetector {
         return true;
     }
 
-    private boolean isSlip(Raider raider) {
-        if (!raidersSlipping.contains(raider.getName())) {
+    private boolean isSlip(TickSnapshot tick, Raider raider) {
+        if (!raidersSlipping.contains(raider)) {
             return false;
         }
 
-        boolean wasRecentlySlipped = raidersRecentlySlipped.containsKey(raider.getName()) &&
-                client.getTickCount() - raidersRecentlySlipped.get(raider.getName()) <= BANANA_SLIP_COOLDOWN_IN_TICKS;
+        boolean wasRecentlySlipped = raidersRecentlySlipped.containsKey(raider) &&
+                tick.getTickCount() - raidersRecentlySlipped.get(raider, 0) <= BANANA_SLIP_COOLDOWN_IN_TICKS;
 
         return !wasRecentlySlipped;
     }
 
     private boolean isRollingBoulder(Raider raider) {
         if (raider.getPreviousWorldLocation() == null ||
-                !isBoulderPhase() ||
+                !isBoulderPhase ||
                 // Can't be rolled two ticks in a row
-                raidersRolledLastTick.contains(raider.getName())) {
+                raidersRolledLastTick.contains(raider)) {
             return false;
         }
 
@@ -567,11 +630,11 @@ public class BabaDetector extends BaseMistakeDetector {
 
         // All of these together should catch the majority of cases
         return wasMovedFar ||
-                raidersRolledAnimation.contains(raider.getName()) ||
-                boulderTiles.contains(raider.getPreviousWorldLocation());
+                raidersRolledAnimation.contains(raider) ||
+                raidersOnBoulderTiles.contains(raider);
     }
 
-    private boolean isBoulderPhase() {
+    private boolean computeBoulderPhase() {
         return !boulders.isEmpty() ||
                 !spawnedBoulders.isEmpty() ||
                 !boulderTiles.isEmpty() ||
@@ -593,23 +656,4 @@ public class BabaDetector extends BaseMistakeDetector {
                 sw.dx(2), cw.dx(2), nw.dx(2),
                 sw.dx(3), cw.dx(3), nw.dx(3));
     }
-
-    private void computeGapTiles() {
-        WorldPoint wpPlayer = client.getLocalPlayer().getWorldLocation();
-        LocalPoint lpPlayer = LocalPoint.fromWorld(client, wpPlayer);
-        if (lpPlayer == null) return;
-
-        int dx = lpPlayer.getSceneX() - wpPlayer.getRegionX();
-        int dy = lpPlayer.getSceneY() - wpPlayer.getRegionY();
-
-        gapTiles = GAP_REGION_TILES.stream()
-                .map(wp -> WorldPoint.fromScene(client, wp.getRegionX() + dx, wp.getRegionY() + dy, wp.getPlane()))
-                .collect(Collectors.toSet());
-
-        // Also compute the boulder wall tile
-        boulderWallTile = WorldPoint.fromScene(client,
-                BOULDER_WALL_REGION_TILE.getRegionX() + dx,
-                BOULDER_WALL_REGION_TILE.getRegionY() + dy,
-                BOULDER_WALL_REGION_TILE.getPlane());
-    }
 }
\ No newline at end of file
@@ -4,26 +4,25 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.toamistaketracker.RaidRoom;
 import com.toamistaketracker.Raider;
-import com.toamistaketracker.ToaMistake;
+import com.toamistaketracker.RaiderMask;
 import com.toamistaketracker.detector.BaseMistakeDetector;
+import com.toamistaketracker.detector.GraphicsObjectDispatcher;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.NpcRole;
+import com.toamistaketracker.detector.TickSnapshot;
 import com.toamistaketracker.detector.tracker.DelayedHitTilesTracker;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Actor;
-import net.runelite.api.NPC;
 import net.runelite.api.NPCComposition;
 import net.runelite.api.events.AnimationChanged;
 import net.runelite.api.events.GameTick;
-import net.runelite.api.events.GraphicsObjectCreated;
 import net.runelite.api.events.HitsplatApplied;
 import net.runelite.api.events.NpcChanged;
 import net.runelite.client.eventbus.Subscribe;
-import net.runelite.client.util.Text;
 
 import javax.inject.Singleton;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -50,11 +49,9 @@ public class KephriDetector extends BaseMistakeDetector {
 
     private static final Set<Integer> KEPHRI_BOMB_GRAPHICS_ID = ImmutableSet.of(2156, 2157, 2158, 2159);
     private static final int SWARM_HEAL_ANIMATION_ID = 9607;
-    private static final String SWARM_NAME = "Scarab Swarm";
     private static final int KEPHRI_BOMB_PROJECTILE_ID = 2266;
     private static final int EXPLODING_SCARAB_PROJECTILE_ID = 2147;
 
-    private static final String KEPHRI_NAME = "Kephri";
     private static final Set<Integer> KEPHRI_PHASE_IDS = ImmutableSet.of(11719, 11720, 11721);
     private static final int KEPHRI_DEAD_ID = 11722;
 
@@ -68,12 +65,21 @@ public class KephriDetector extends BaseMistakeDetector {
     @Getter
     private final DelayedHitTilesTracker bombHitTiles = new DelayedHitTilesTracker();
 
+    // Handed over to detection in captureTick
+    private final RaiderMask raidersOnBombTiles = new RaiderMask();
+    private boolean isKephriAtZeroHealth;
+    private boolean isUnvengeablePhase;
+
     @Override
     public void cleanup() {
         swarmsHealing = 0;
         kephriHealthInternal = -1;
         kephri = null;
         bombHitTiles.clear();
+
+        raidersOnBombTiles.clear();
+        isKephriAtZeroHealth = false;
+        isUnvengeablePhase = false;
     }
 
     @Override
@@ -82,51 +88,54 @@ public class KephriDetector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = new ArrayList<>();
+    public void registerGraphicsObjectHandlers(@NonNull GraphicsObjectDispatcher dispatcher) {
+        KEPHRI_BOMB_SHADOW_GRAPHICS.forEach((id, delay) -> dispatcher.register(this, id,
+                g -> bombHitTiles.put(client.getTickCount() + delay, getWorldPoint(g))));
+    }
+
+    @Override
+    public void captureTick(@NonNull TickSnapshot tick) {
+        raidState.getTileOccupancy().computeRaidersOn(bombHitTiles.getActiveHitTiles(), raidersOnBombTiles);
+        isKephriAtZeroHealth = kephriHealthInternal == 0;
+        // Only look through the NPCs if a bomb can actually hit someone
+        isUnvengeablePhase = !raidersOnBombTiles.isEmpty() && computeUnvengeablePhase();
 
+        swarmsHealing = 0;
+        kephri = null;
+    }
+
+    @Override
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
         // Disabling Swarm mistakes for now, as currently it's not even possible to fully kill them all in solos, and
         // it can just be noisy.
 //        for (int i = 0; i < swarmsHealing; i++) {
 //            mistakes.add(KEPHRI_SWARM_HEAL);
 //        }
 
-        if (isBombHit(raider)) {
+        if (isBombHit(tick, raider)) {
             mistakes.add(KEPHRI_BOMB);
         }
-
-        return mistakes;
     }
 
     @Override
     public void afterDetect() {
-        swarmsHealing = 0;
-        kephri = null;
     }
 
     @Subscribe
     public void onGameTick(GameTick event) {
+        if (!isActive()) return;
+
         if (kephri != null) {
             kephriHealthInternal = kephri.getHealthRatio();
         }
         bombHitTiles.onGameTick(client.getTickCount());
     }
 
-    @Subscribe
-    public void onGraphicsObjectCreated(GraphicsObjectCreated event) {
-        int id = event.getGraphicsObject().getId();
-        if (KEPHRI_BOMB_SHADOW_GRAPHICS.containsKey(id)) {
-            int activationTick = client.getTickCount() + KEPHRI_BOMB_SHADOW_GRAPHICS.get(id);
-            bombHitTiles.put(activationTick, getWorldPoint(event.getGraphicsObject()));
-        }
-    }
-
     @Subscribe
     public void onAnimationChanged(AnimationChanged event) {
-        if (event.getActor() == null || event.getActor().getName() == null) return;
+        if (!isActive()) return;
 
-        String name = Text.removeTags(event.getActor().getName());
-        if (event.getActor() instanceof NPC && SWARM_NAME.equals(name) &&
+        if (npcRoleRegistry.getRole(event.getActor()) == NpcRole.SCARAB_SWARM &&
                 event.getActor().getAnimation() == SWARM_HEAL_ANIMATION_ID &&
                 !event.getActor().isDead()) {
             swarmsHealing += 1;
@@ -135,7 +144,9 @@ public class KephriDetector extends BaseMistakeDetector {
 
     @Subscribe
     public void onNpcChanged(NpcChanged event) {
-        if (!KEPHRI_NAME.equals(event.getNpc().getName())) return;
+        if (!isActive()) return;
+
+        if (npcRoleRegistry.getRole(event.getNpc()) != NpcRole.KEPHRI) return;
 
         if (isPhaseTransition(event.getOld(), event.getNpc().getComposition())) {
             kephriHealthInternal = -1; // something non-zero to initialize to
@@ -146,34 +157,33 @@ public class KephriDetector extends BaseMistakeDetector {
 
     @Subscribe
     public void onHitsplatApplied(HitsplatApplied event) {
-        if (event.getActor() == null || event.getActor().getName() == null) return;
+        if (!isActive()) return;
 
-        String name = Text.removeTags(event.getActor().getName());
-        if (event.getActor() instanceof NPC && KEPHRI_NAME.equals(name)) {
+        if (npcRoleRegistry.getRole(event.getActor()) == NpcRole.KEPHRI) {
             kephri = event.getActor();
         }
     }
 
-    private boolean isBombHit(Raider raider) {
-        if (!bombHitTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation())) {
+    private boolean isBombHit(TickSnapshot tick, Raider raider) {
+        if (!raidersOnBombTiles.contains(raider)) {
             return false;
         }
 
-        if (kephriHealthInternal == 0) {
+        if (isKephriAtZeroHealth) {
             // Kephri bomb for some reason can't do damage when her health is 0, until she phase transitions in
             // which we update this to be non-zero and the next hitsplat corrects it.
             return false;
         }
 
         // Vengeance only counts for phases that allow it (non-swarm phase)
-        if (vengeanceTracker.didPopVengeance(raider) && !isUnvengeablePhase()) {
+        if (tick.didPopVengeance(raider) && !isUnvengeablePhase) {
             return false;
         }
 
         return true;
     }
 
-    private boolean isUnvengeablePhase() {
+    private boolean computeUnvengeablePhase() {
         return client.getNpcs().stream().anyMatch(npc -> npc.getId() == KEPHRI_UNVENGEABLE_PHASE);
     }
 
@@ -3,9 +3,15 @@ package com.toamistaketracker.detector.boss;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.RaidState;
 import com.toamistaketracker.Raider;
-import com.toamistaketracker.ToaMistake;
+import com.toamistaketracker.RaiderMask;
+import com.toamistaketracker.TileOccupancy;
 import com.toamistaketracker.detector.BaseMistakeDetector;
+import com.toamistaketracker.detector.GraphicsObjectDispatcher;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.NpcRole;
+import com.toamistaketracker.detector.TickSnapshot;
 import com.toamistaketracker.detector.tracker.DelayedHitTilesTracker;
 import com.toamistaketracker.detector.tracker.InstantHitTilesTracker;
 import com.toamistaketracker.detector.tracker.OverheadTracker;
@@ -16,22 +22,19 @@ import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Animation;
 import net.runelite.api.DynamicObject;
 import net.runelite.api.GameObject;
+import net.runelite.api.GraphicsObject;
 import net.runelite.api.HeadIcon;
-import net.runelite.api.NPC;
 import net.runelite.api.Player;
 import net.runelite.api.events.AnimationChanged;
 import net.runelite.api.events.GameObjectDespawned;
 import net.runelite.api.events.GameObjectSpawned;
 import net.runelite.api.events.GameTick;
-import net.runelite.api.events.GraphicsObjectCreated;
 import net.runelite.api.events.NpcChanged;
 import net.runelite.api.events.ProjectileMoved;
 import net.runelite.client.eventbus.Subscribe;
-import net.runelite.client.util.Text;
 
 import javax.inject.Singleton;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -78,7 +81,6 @@ public class WardensP1P2Detector extends BaseMistakeDetector {
     private static final int DISPERSE_PROJECTILE_ID = 2238;
 
     // P2 constants
-    private static final String OBELISK_NAME = "Obelisk";
     private static final int DDR_GRAPHICS_ID = 2235;
     private static final int WINDMILL_SHADOW_GRAPHICS_ID = 2236;
     private static final int WINDMILL_HIT_GRAPHICS_ID = 2234;
@@ -136,10 +138,18 @@ public class WardensP1P2Detector extends BaseMistakeDetector {
     private final InstantHitTilesTracker windmillHitTiles = new InstantHitTilesTracker();
     @Getter
     private final DelayedHitTilesTracker bombHitTiles = new DelayedHitTilesTracker();
-    private final Set<String> raidersBound = new HashSet<>();
+    private final RaiderMask pendingRaidersBound = new RaiderMask();
 
     private final OverheadTracker specialPrayerOverheadTracker = new OverheadTracker(SPECIAL_PRAYER_ATTACKS);
 
+    // Raiders standing on each kind of active hit tile this tick, handed over to detection in captureTick
+    private final RaiderMask raidersHitByPyramid = new RaiderMask();
+    private final RaiderMask raidersHitByDdr = new RaiderMask();
+    private final RaiderMask raidersHitByWindmill = new RaiderMask();
+    private final RaiderMask raidersHitByBombs = new RaiderMask();
+    private final RaiderMask raidersBound = new RaiderMask();
+    private final RaiderMask raidersMissedSpecialPrayer = new RaiderMask();
+
     @Override
     public void cleanup() {
         activePyramids.clear();
@@ -149,8 +159,15 @@ public class WardensP1P2Detector extends BaseMistakeDetector {
         ddrHitTiles.clear();
         windmillHitTiles.clear();
         bombHitTiles.clear();
-        raidersBound.clear();
+        pendingRaidersBound.clear();
         specialPrayerOverheadTracker.clear();
+
+        raidersHitByPyramid.clear();
+        raidersHitByDdr.clear();
+        raidersHitByWindmill.clear();
+        raidersHitByBombs.clear();
+        raidersBound.clear();
+        raidersMissedSpecialPrayer.clear();
     }
 
     @Override
@@ -159,60 +176,93 @@ public class WardensP1P2Detector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = new ArrayList<>();
+    public void registerGraphicsObjectHandlers(@NonNull GraphicsObjectDispatcher dispatcher) {
+        dispatcher.register(this, DDR_GRAPHICS_ID, g -> ddrHitTiles.put(
+                getActivationTick(g, DDR_HIT_DELAY_IN_TICKS), getWorldPoint(g)));
+        dispatcher.register(this, OBELISK_DDR_LIGHTNING_GRAPHICS_ID, g -> ddrHitTiles.put(
+                getActivationTick(g, LIGHTNING_HIT_DELAY_IN_TICKS), getWorldPoint(g)));
+        dispatcher.register(this, WINDMILL_HIT_GRAPHICS_ID, this::onWindmillHit);
+        dispatcher.register(this, OBELISK_WINDMILL_LIGHTNING_GRAPHICS_ID,
+                g -> windmillHitTiles.add(getWorldPoint(g)));
+        dispatcher.register(this, BOMB_GRAPHICS_ID, this::onBomb);
+    }
 
-        if (pyramidHitTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation())) {
+    @Override
+    public void captureTick(@NonNull TickSnapshot tick) {
+        // Lots of tiles can activate on the same tick, so resolve the hit raiders once instead of once per raider
+        TileOccupancy tileOccupancy = raidState.getTileOccupancy();
+        tileOccupancy.computeRaidersOn(pyramidHitTiles.getActiveHitTiles(), raidersHitByPyramid);
+        tileOccupancy.computeRaidersOn(ddrHitTiles.getActiveHitTiles(), raidersHitByDdr);
+        tileOccupancy.computeRaidersOn(windmillHitTiles.getActiveHitTiles(), raidersHitByWindmill);
+        tileOccupancy.computeRaidersOn(bombHitTiles.getActiveHitTiles(), raidersHitByBombs);
+
+        raidersBound.copyFrom(pendingRaidersBound);
+        pendingRaidersBound.clear();
+
+        // Whose projectile is whose can only be checked against the live projectiles
+        raidersMissedSpecialPrayer.clear();
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            Raider raider = tick.getRaider(slot);
+            if (raider != null && !raider.isDead() && specialPrayerOverheadTracker.didMissPrayer(raider)) {
+                raidersMissedSpecialPrayer.add(raider);
+            }
+        }
+    }
+
+    @Override
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
+        if (raidersHitByPyramid.contains(raider)) {
             mistakes.add(WARDENS_P1_PYRAMID);
         }
 
-        if (ddrHitTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation())) {
+        if (raidersHitByDdr.contains(raider)) {
             mistakes.add(WARDENS_P2_DDR);
         }
 
-        if (windmillHitTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation())) {
+        if (raidersHitByWindmill.contains(raider)) {
             mistakes.add(WARDENS_P2_WINDMILL);
         }
 
-        if (bombHitTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation())) {
+        if (raidersHitByBombs.contains(raider)) {
             mistakes.add(WARDENS_P2_BOMBS);
         }
 
-        if (raidersBound.contains(raider.getName())) {
+        if (raidersBound.contains(raider)) {
             mistakes.add(WARDENS_P2_BIND);
         }
 
-        if (isSpecialPrayerHit(raider)) {
+        if (isSpecialPrayerHit(tick, raider)) {
             mistakes.add(WARDENS_P2_SPECIAL_PRAYER);
         }
-
-        return mistakes;
     }
 
     @Override
     public void afterDetect() {
-        raidersBound.clear();
     }
 
     @Subscribe
     public void onAnimationChanged(AnimationChanged event) {
-        if (event.getActor() == null || event.getActor().getName() == null) return;
+        if (!isActive()) return;
 
-        String name = Text.removeTags(event.getActor().getName());
-        if (event.getActor() instanceof NPC && OBELISK_NAME.equals(name)) {
+        if (event.getActor() == null) return;
+
+        if (npcRoleRegistry.getRole(event.getActor()) == NpcRole.OBELISK) {
             ObeliskPhase newObeliskPhase = ObeliskPhase.fromAnimationId(event.getActor().getAnimation());
             if (newObeliskPhase != null) {
                 obeliskPhase = newObeliskPhase;
             }
-        } else if (event.getActor() instanceof Player && raidState.getRaiders().containsKey(name)) {
-            if (event.getActor().getAnimation() == PLAYER_BIND_ANIMATION_ID) {
-                raidersBound.add(name);
+        } else if (event.getActor() instanceof Player && event.getActor().getAnimation() == PLAYER_BIND_ANIMATION_ID) {
+            Raider raider = raidState.getRaider(event.getActor());
+            if (raider != null) {
+                pendingRaidersBound.add(raider);
             }
         }
     }
 
     @Subscribe
     public void onGameTick(GameTick event) {
+        if (!isActive()) return;
+
         computePyramidHitTiles();
         pyramidHitTiles.onGameTick(client.getTickCount());
 
@@ -224,6 +274,8 @@ public class WardensP1P2Detector extends BaseMistakeDetector {
 
     @Subscribe
     public void onGameObjectSpawned(GameObjectSpawned event) {
+        if (!isActive()) return;
+
         if (isPyramid(event.getGameObject())) {
             activePyramids.add(event.getGameObject());
         }
@@ -231,44 +283,32 @@ public class WardensP1P2Detector extends BaseMistakeDetector {
 
     @Subscribe
     public void onGameObjectDespawned(GameObjectDespawned event) {
+        if (!isActive()) return;
+
         if (isPyramid(event.getGameObject())) {
             activePyramids.remove(event.getGameObject());
         }
     }
 
-    @Subscribe
-    public void onGraphicsObjectCreated(GraphicsObjectCreated event) {
-        int activationTick;
-        switch (event.getGraphicsObject().getId()) {
-            case DDR_GRAPHICS_ID:
-                activationTick = getActivationTick(event.getGraphicsObject(), DDR_HIT_DELAY_IN_TICKS);
-                ddrHitTiles.put(activationTick, getWorldPoint(event.getGraphicsObject()));
-                break;
-            case OBELISK_DDR_LIGHTNING_GRAPHICS_ID:
-                activationTick = getActivationTick(event.getGraphicsObject(), LIGHTNING_HIT_DELAY_IN_TICKS);
-                ddrHitTiles.put(activationTick, getWorldPoint(event.getGraphicsObject()));
-                break;
-            case WINDMILL_HIT_GRAPHICS_ID:
-                if (obeliskPhase == ObeliskPhase.DDR) {
-                    ddrHitTiles.put(client.getTickCount(), getWorldPoint(event.getGraphicsObject()));
-                } else if (obeliskPhase == ObeliskPhase.WINDMILL) {
-                    windmillHitTiles.add(getWorldPoint(event.getGraphicsObject()));
-                }
-                break;
-            case OBELISK_WINDMILL_LIGHTNING_GRAPHICS_ID:
-                windmillHitTiles.add(getWorldPoint(event.getGraphicsObject()));
-                break;
-            case BOMB_GRAPHICS_ID:
-                if (obeliskPhase == ObeliskPhase.BOMBS) {
-                    activationTick = getActivationTick(event.getGraphicsObject(), LIGHTNING_HIT_DELAY_IN_TICKS);
-                    bombHitTiles.put(activationTick, getWorldPoint(event.getGraphicsObject()));
-                }
-                break;
+    private void onWindmillHit(GraphicsObject graphicsObject) {
+        if (obeliskPhase == ObeliskPhase.DDR) {
+            ddrHitTiles.put(client.getTickCount(), getWorldPoint(graphicsObject));
+        } else if (obeliskPhase == ObeliskPhase.WINDMILL) {
+            windmillHitTiles.add(getWorldPoint(graphicsObject));
+        }
+    }
+
+    private void onBomb(GraphicsObject graphicsObject) {
+        if (obeliskPhase == ObeliskPhase.BOMBS) {
+            int activationTick = getActivationTick(graphicsObject, LIGHTNING_HIT_DELAY_IN_TICKS);
+            bombHitTiles.put(activationTick, getWorldPoint(graphicsObject));
         }
     }
 
     @Subscribe
     public void onProjectileMoved(ProjectileMoved event) {
+        if (!isActive()) return;
+
         if (!SPECIAL_PRAYER_ATTACKS.containsKey(event.getProjectile().getId())) return;
 
         specialPrayerOverheadTracker.trackProjectile(event, getActivationTick(event.getProjectile()));
@@ -276,6 +316,8 @@ public class WardensP1P2Detector extends BaseMistakeDetector {
 
     @Subscribe
     public void onNpcChanged(NpcChanged event) {
+        if (!isActive()) return;
+
         if (WARDENS_HEALTH_PHASE.contains(event.getNpc().getId())) {
             // Wardens changed to health phase with core. DDR special can no longer deal damage here as of 09/21/2022
             ddrHitTiles.clear();
@@ -286,12 +328,12 @@ public class WardensP1P2Detector extends BaseMistakeDetector {
         }
     }
 
-    private boolean isSpecialPrayerHit(Raider raider) {
-        if (vengeanceTracker.didPopVengeance(raider)) {
+    private boolean isSpecialPrayerHit(TickSnapshot tick, Raider raider) {
+        if (tick.didPopVengeance(raider)) {
             return false;
         }
 
-        return specialPrayerOverheadTracker.didMissPrayer(raider);
+        return raidersMissedSpecialPrayer.contains(raider);
     }
 
     private void computePyramidHitTiles() {
@@ -3,9 +3,15 @@ package com.toamistaketracker.detector.boss;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.RaidState;
 import com.toamistaketracker.Raider;
-import com.toamistaketracker.ToaMistake;
+import com.toamistaketracker.RaiderIntArray;
+import com.toamistaketracker.RaiderMask;
+import com.toamistaketracker.TileOccupancy;
 import com.toamistaketracker.detector.BaseMistakeDetector;
+import com.toamistaketracker.detector.GraphicsObjectDispatcher;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.TickSnapshot;
 import com.toamistaketracker.detector.tracker.DelayedHitTilesTracker;
 import com.toamistaketracker.detector.tracker.DelayedMistakeTracker;
 import com.toamistaketracker.detector.tracker.InstantHitTilesTracker;
@@ -15,13 +21,10 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.HeadIcon;
 import net.runelite.api.events.GameTick;
-import net.runelite.api.events.GraphicsObjectCreated;
 import net.runelite.api.events.ProjectileMoved;
 import net.runelite.client.eventbus.Subscribe;
 
 import javax.inject.Singleton;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -93,6 +96,15 @@ public class WardensP3Detector extends BaseMistakeDetector {
     private final OverheadTracker zebakOverheadTracker = new OverheadTracker(ZEBAK_ATTACKS);
     private final DelayedMistakeTracker delayedMistakeTracker = new DelayedMistakeTracker();
 
+    // Raiders standing on each kind of active hit tile this tick, handed over to detection in captureTick
+    private final RaiderMask raidersHitByEarthquake = new RaiderMask();
+    private final RaiderMask raidersHitByKephriBomb = new RaiderMask();
+    private final RaiderMask raidersHitByBabaBoulder = new RaiderMask();
+    private final RaiderMask raidersHitByLightning = new RaiderMask();
+    // raider -> ticks until the attack they missed their prayer for hits, handed over to detection in captureTick
+    private final RaiderIntArray raidersMissedAkkhaPrayer = new RaiderIntArray();
+    private final RaiderIntArray raidersMissedZebakPrayer = new RaiderIntArray();
+
     @Override
     public void cleanup() {
         earthquakeHitTiles.clear();
@@ -101,6 +113,12 @@ public class WardensP3Detector extends BaseMistakeDetector {
         lightningHitTiles.clear();
         akkhaOverheadTracker.clear();
         zebakOverheadTracker.clear();
+        raidersHitByEarthquake.clear();
+        raidersHitByKephriBomb.clear();
+        raidersHitByBabaBoulder.clear();
+        raidersHitByLightning.clear();
+        raidersMissedAkkhaPrayer.clear();
+        raidersMissedZebakPrayer.clear();
     }
 
     @Override
@@ -109,44 +127,78 @@ public class WardensP3Detector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = new ArrayList<>();
+    public void registerGraphicsObjectHandlers(@NonNull GraphicsObjectDispatcher dispatcher) {
+        dispatcher.register(this, EARTHQUAKE_GRAPHICS_IDS, g -> earthquakeHitTiles.put(
+                getActivationTick(g, EARTHQUAKE_HIT_DELAY_IN_TICKS), getWorldPoint(g)));
+        dispatcher.register(this, KEPHRI_BOMB_GRAPHICS_IDS, g -> kephriBombHitTiles.add(getWorldPoint(g)));
+        BABA_BOULDERS.forEach((id, delay) -> dispatcher.register(this, id,
+                g -> babaBoulderTiles.put(getActivationTick(g, delay), getWorldPoint(g))));
+        dispatcher.register(this, P3_LIGHTNING_GRAPHICS_ID, g -> lightningHitTiles.add(getWorldPoint(g)));
+    }
 
-        if (earthquakeHitTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation())) {
+    @Override
+    public void captureTick(@NonNull TickSnapshot tick) {
+        // Lots of tiles can activate on the same tick, so resolve the hit raiders once instead of once per raider
+        TileOccupancy tileOccupancy = raidState.getTileOccupancy();
+        tileOccupancy.computeRaidersOn(earthquakeHitTiles.getActiveHitTiles(), raidersHitByEarthquake);
+        tileOccupancy.computeRaidersOn(kephriBombHitTiles.getActiveHitTiles(), raidersHitByKephriBomb);
+        tileOccupancy.computeRaidersOn(babaBoulderTiles.getActiveHitTiles(), raidersHitByBabaBoulder);
+        tileOccupancy.computeRaidersOn(lightningHitTiles.getActiveHitTiles(), raidersHitByLightning);
+
+        // Whose projectile is whose can only be checked against the live projectiles
+        raidersMissedAkkhaPrayer.clear();
+        raidersMissedZebakPrayer.clear();
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            Raider raider = tick.getRaider(slot);
+            if (raider == null || raider.isDead()) continue;
+
+            if (akkhaOverheadTracker.didMissPrayer(raider)) {
+                raidersMissedAkkhaPrayer.put(raider,
+                        getActivationTick(akkhaOverheadTracker.getActiveProjectileForRaider(raider)) -
+                                tick.getTickCount());
+            }
+
+            if (zebakOverheadTracker.didMissPrayer(raider)) {
+                raidersMissedZebakPrayer.put(raider,
+                        getActivationTick(zebakOverheadTracker.getActiveProjectileForRaider(raider)) -
+                                tick.getTickCount());
+            }
+        }
+    }
+
+    @Override
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
+        if (raidersHitByEarthquake.contains(raider)) {
             mistakes.add(WARDENS_P3_EARTHQUAKE);
         }
 
-        if (kephriBombHitTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation())) {
+        if (raidersHitByKephriBomb.contains(raider)) {
             mistakes.add(WARDENS_P3_KEPHRI);
         }
 
-        if (babaBoulderTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation())) {
+        if (raidersHitByBabaBoulder.contains(raider)) {
             mistakes.add(WARDENS_P3_BABA);
         }
 
-        if (lightningHitTiles.getActiveHitTiles().contains(raider.getPreviousWorldLocation())) {
+        if (raidersHitByLightning.contains(raider)) {
             mistakes.add(WARDENS_P3_LIGHTNING);
         }
 
-        mistakes.addAll(delayedMistakeTracker.popDelayedMistakes(raider.getName(), client.getTickCount()));
+        delayedMistakeTracker.popDelayedMistakes(raider, tick.getTickCount(), mistakes);
 
-        if (akkhaOverheadTracker.didMissPrayer(raider)) {
-            delayedMistakeTracker.addDelayedMistake(raider.getName(),
+        if (raidersMissedAkkhaPrayer.containsKey(raider)) {
+            delayedMistakeTracker.addDelayedMistake(raider,
                     WARDENS_P3_AKKHA,
-                    client.getTickCount(),
-                    getActivationTick(akkhaOverheadTracker.getActiveProjectileForRaider(raider)) -
-                            client.getTickCount());
+                    tick.getTickCount(),
+                    raidersMissedAkkhaPrayer.get(raider, 0));
         }
 
-        if (zebakOverheadTracker.didMissPrayer(raider)) {
-            delayedMistakeTracker.addDelayedMistake(raider.getName(),
+        if (raidersMissedZebakPrayer.containsKey(raider)) {
+            delayedMistakeTracker.addDelayedMistake(raider,
                     WARDENS_P3_ZEBAK,
-                    client.getTickCount(),
-                    getActivationTick(zebakOverheadTracker.getActiveProjectileForRaider(raider)) -
-                            client.getTickCount());
+                    tick.getTickCount(),
+                    raidersMissedZebakPrayer.get(raider, 0));
         }
-
-        return mistakes;
     }
 
     @Override
@@ -155,6 +207,8 @@ public class WardensP3Detector extends BaseMistakeDetector {
 
     @Subscribe
     public void onGameTick(GameTick event) {
+        if (!isActive()) return;
+
         earthquakeHitTiles.onGameTick(client.getTickCount());
         kephriBombHitTiles.onGameTick(client.getTickCount());
         babaBoulderTiles.onGameTick(client.getTickCount());
@@ -163,24 +217,10 @@ public class WardensP3Detector extends BaseMistakeDetector {
         zebakOverheadTracker.onGameTick(client.getTickCount());
     }
 
-    @Subscribe
-    public void onGraphicsObjectCreated(GraphicsObjectCreated event) {
-        int id = event.getGraphicsObject().getId();
-        if (EARTHQUAKE_GRAPHICS_IDS.contains(id)) {
-            int activationTick = getActivationTick(event.getGraphicsObject(), EARTHQUAKE_HIT_DELAY_IN_TICKS);
-            earthquakeHitTiles.put(activationTick, getWorldPoint(event.getGraphicsObject()));
-        } else if (KEPHRI_BOMB_GRAPHICS_IDS.contains(id)) {
-            kephriBombHitTiles.add(getWorldPoint(event.getGraphicsObject()));
-        } else if (BABA_BOULDERS.containsKey(id)) {
-            int activationTick = getActivationTick(event.getGraphicsObject(), BABA_BOULDERS.get(id));
-            babaBoulderTiles.put(activationTick, getWorldPoint(event.getGraphicsObject()));
-        } else if (id == P3_LIGHTNING_GRAPHICS_ID) {
-            lightningHitTiles.add(getWorldPoint(event.getGraphicsObject()));
-        }
-    }
-
     @Subscribe
     public void onProjectileMoved(ProjectileMoved event) {
+        if (!isActive()) return;
+
         if (!AKKHA_ATTACKS.containsKey(event.getProjectile().getId()) &&
                 !ZEBAK_ATTACKS.containsKey(event.getProjectile().getId())) {
             return;
@@ -3,8 +3,14 @@ package com.toamistaketracker.detector.boss;
 import com.google.common.collect.ImmutableSet;
 import com.toamistaketracker.RaidRoom;
 import com.toamistaketracker.Raider;
-import com.toamistaketracker.ToaMistake;
+import com.toamistaketracker.RaiderMask;
+import com.toamistaketracker.TileOccupancy;
 import com.toamistaketracker.detector.BaseMistakeDetector;
+import com.toamistaketracker.detector.GraphicsObjectDispatcher;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.NpcRole;
+import com.toamistaketracker.detector.TickSnapshot;
+import com.toamistaketracker.detector.tracker.RegionTileBitmap;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.HitsplatID;
@@ -13,13 +19,11 @@ import net.runelite.api.coords.WorldPoint;
 import net.runelite.api.events.AnimationChanged;
 import net.runelite.api.events.GameObjectDespawned;
 import net.runelite.api.events.GameObjectSpawned;
-import net.runelite.api.events.GraphicsObjectCreated;
 import net.runelite.api.events.HitsplatApplied;
 import net.runelite.api.events.NpcDespawned;
 import net.runelite.api.events.NpcSpawned;
 import net.runelite.api.events.PlayerChanged;
 import net.runelite.client.eventbus.Subscribe;
-import net.runelite.client.util.Text;
 
 import javax.inject.Singleton;
 import java.util.ArrayList;
@@ -66,31 +70,46 @@ public class ZebakDetector extends BaseMistakeDetector {
             45570, 45571, 45572, 45573, 45574, 45575, 45576);
     private static final int EARTHQUAKE_GRAPHICS_ID = 2184;
     private static final int ZEBAK_SCREAM_ANIMATION_ID = 9628;
-    private static final String ZEBAK_NAME = "Zebak";
-    private static final String WAVE_NAME = "Wave";
-    private static final String BLOOD_CLOUD_NAME = "Blood Cloud";
 
-    private final Set<WorldPoint> acidTilesToSpawn;
-    private final Set<WorldPoint> acidTiles;
+    private final RegionTileBitmap acidTilesToSpawn;
+    private final RegionTileBitmap acidTiles;
     private final Set<WorldPoint> bloodHealedTiles;
     private final Set<WorldPoint> earthquakeHitTiles;
-    private final Set<String> raidersCurrentlySwimming;
-    private final Set<String> raidersPreviouslySwimming;
+    private final RaiderMask pendingRaidersSwimming;
 
     private final List<NPC> waves;
     private boolean isZebakScreaming;
 
+    // Handed over to detection in captureTick
+    private final RaiderMask raidersOnAcidTiles;
+    private final RaiderMask raidersOnBloodHealedTiles;
+    private final RaiderMask raidersHitByEarthquake;
+    private final RaiderMask raidersCurrentlySwimming;
+    private final RaiderMask raidersPreviouslySwimming;
+    private boolean isWavePresent;
+
     public ZebakDetector() {
-        acidTilesToSpawn = new HashSet<>();
-        acidTiles = new HashSet<>();
+        acidTilesToSpawn = new RegionTileBitmap();
+        acidTiles = new RegionTileBitmap();
         bloodHealedTiles = new HashSet<>();
         earthquakeHitTiles = new HashSet<>();
-        raidersCurrentlySwimming = new HashSet<>();
-        raidersPreviouslySwimming = new HashSet<>();
+        pendingRaidersSwimming = new RaiderMask();
 
         waves = new ArrayList<>();
         isZebakScreaming = false;
 
+        raidersOnAcidTiles = new RaiderMask();
+        raidersOnBloodHealedTiles = new RaiderMask();
+        raidersHitByEarthquake = new RaiderMask();
+        raidersCurrentlySwimming = new RaiderMask();
+        raidersPreviouslySwimming = new RaiderMask();
+        isWavePresent = false;
+    }
+
+    @Override
+    public void startup() {
+        super.startup();
+        anchorToRoom(acidTilesToSpawn, acidTiles);
     }
 
     @Override
@@ -99,10 +118,16 @@ public class ZebakDetector extends BaseMistakeDetector {
         acidTiles.clear();
         bloodHealedTiles.clear();
         earthquakeHitTiles.clear();
-        raidersCurrentlySwimming.clear();
-        raidersPreviouslySwimming.clear();
+        pendingRaidersSwimming.clear();
         waves.clear();
         isZebakScreaming = false;
+
+        raidersOnAcidTiles.clear();
+        raidersOnBloodHealedTiles.clear();
+        raidersHitByEarthquake.clear();
+        raidersCurrentlySwimming.clear();
+        raidersPreviouslySwimming.clear();
+        isWavePresent = false;
     }
 
     @Override
@@ -111,49 +136,59 @@ public class ZebakDetector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = new ArrayList<>();
+    public void registerGraphicsObjectHandlers(@NonNull GraphicsObjectDispatcher dispatcher) {
+        dispatcher.register(this, EARTHQUAKE_GRAPHICS_ID, g -> earthquakeHitTiles.add(getWorldPoint(g)));
+    }
+
+    @Override
+    public void captureTick(@NonNull TickSnapshot tick) {
+        TileOccupancy tileOccupancy = raidState.getTileOccupancy();
+        tileOccupancy.computeRaidersOn(acidTiles, raidersOnAcidTiles);
+        tileOccupancy.computeRaidersOn(bloodHealedTiles, raidersOnBloodHealedTiles);
+        if (isZebakScreaming) {
+            tileOccupancy.computeRaidersOn(earthquakeHitTiles, raidersHitByEarthquake);
+        } else {
+            raidersHitByEarthquake.clear();
+        }
+        raidersCurrentlySwimming.copyFrom(pendingRaidersSwimming);
+        isWavePresent = !waves.isEmpty();
+
+        acidTiles.union(acidTilesToSpawn);
+        acidTilesToSpawn.clear();
+        bloodHealedTiles.clear();
+        earthquakeHitTiles.clear();
+        pendingRaidersSwimming.clear();
+    }
 
-        if (acidTiles.contains(raider.getPreviousWorldLocation())) {
+    @Override
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
+        if (raidersOnAcidTiles.contains(raider)) {
             mistakes.add(ZEBAK_ACID_TILE);
         }
 
-        if (bloodHealedTiles.contains(raider.getPreviousWorldLocation())) {
+        if (raidersOnBloodHealedTiles.contains(raider)) {
             mistakes.add(ZEBAK_BLOOD_CLOUD);
         }
 
-        if (isEarthquakeHit(raider)) {
+        if (raidersHitByEarthquake.contains(raider)) {
             mistakes.add(ZEBAK_EARTHQUAKE);
         }
 
         if (isWaveHit(raider)) {
             mistakes.add(ZEBAK_WAVE);
         }
-
-        return mistakes;
     }
 
     @Override
     public void afterDetect() {
-        acidTiles.addAll(acidTilesToSpawn);
-        acidTilesToSpawn.clear();
-        bloodHealedTiles.clear();
-        earthquakeHitTiles.clear();
-
-        raidersPreviouslySwimming.clear();
-        raidersPreviouslySwimming.addAll(raidersCurrentlySwimming);
-        raidersCurrentlySwimming.clear();
-    }
-
-    private boolean isEarthquakeHit(Raider raider) {
-        return earthquakeHitTiles.contains(raider.getPreviousWorldLocation()) && isZebakScreaming;
+        raidersPreviouslySwimming.copyFrom(raidersCurrentlySwimming);
     }
 
     private boolean isWaveHit(Raider raider) {
         // Jumping back up from swimming can bring you forward 3 tiles, so don't allow that to count in the hack below.
         if (raider.getPreviousWorldLocation() == null ||
-                waves.isEmpty() ||
-                raidersPreviouslySwimming.contains(raider.getName())) {
+                !isWavePresent ||
+                raidersPreviouslySwimming.contains(raider)) {
             return false;
         }
 
@@ -164,6 +199,8 @@ public class ZebakDetector extends BaseMistakeDetector {
 
     @Subscribe
     public void onGameObjectSpawned(GameObjectSpawned event) {
+        if (!isActive()) return;
+
         if (ACID_TILE_GAME_OBJECT_IDS.contains(event.getGameObject().getId())) {
             // Acid tiles don't hit you for the first tick they're spawned, so delay their detection by a tick.
             // The first ones sometimes only poison you and not damage you on the second tick, but we count that anyway.
@@ -173,6 +210,8 @@ public class ZebakDetector extends BaseMistakeDetector {
 
     @Subscribe
     public void onGameObjectDespawned(GameObjectDespawned event) {
+        if (!isActive()) return;
+
         if (ACID_TILE_GAME_OBJECT_IDS.contains(event.getGameObject().getId())) {
             acidTilesToSpawn.remove(event.getGameObject().getWorldLocation());
             acidTiles.remove(event.getGameObject().getWorldLocation());
@@ -181,53 +220,49 @@ public class ZebakDetector extends BaseMistakeDetector {
 
     @Subscribe
     public void onHitsplatApplied(HitsplatApplied event) {
-        if (event.getActor().getName() != null &&
-                BLOOD_CLOUD_NAME.equals(event.getActor().getName()) &&
+        if (!isActive()) return;
+
+        if (npcRoleRegistry.getRole(event.getActor()) == NpcRole.BLOOD_CLOUD &&
                 event.getHitsplat().getHitsplatType() == HitsplatID.HEAL) {
             bloodHealedTiles.add(event.getActor().getWorldLocation()); // Is this correct? Should it be local toWorld?
         }
     }
 
-    @Subscribe
-    public void onGraphicsObjectCreated(GraphicsObjectCreated event) {
-        if (event.getGraphicsObject().getId() == EARTHQUAKE_GRAPHICS_ID) {
-            earthquakeHitTiles.add(getWorldPoint(event.getGraphicsObject()));
-        }
-    }
-
     @Subscribe
     public void onNpcSpawned(NpcSpawned event) {
-        if (event.getNpc().getName() == null) return;
+        if (!isActive()) return;
 
-        String name = Text.removeTags(event.getNpc().getName());
-        if (WAVE_NAME.equals(name)) {
+        if (npcRoleRegistry.getRole(event.getNpc()) == NpcRole.WAVE) {
             waves.add(event.getNpc());
         }
     }
 
     @Subscribe
     public void onNpcDespawned(NpcDespawned event) {
-        if (event.getNpc().getName() == null) return;
+        if (!isActive()) return;
 
-        String name = Text.removeTags(event.getNpc().getName());
-        if (WAVE_NAME.equals(name)) {
+        if (npcRoleRegistry.getRole(event.getNpc()) == NpcRole.WAVE) {
             waves.remove(event.getNpc());
         }
     }
 
     @Subscribe
     public void onPlayerChanged(PlayerChanged event) {
+        if (!isActive()) return;
+
         if (event.getPlayer() != null && SWIMMING_POSE_IDS.contains(event.getPlayer().getPoseAnimation())) {
-            raidersCurrentlySwimming.add(event.getPlayer().getName());
+            Raider raider = raidState.getRaider(event.getPlayer());
+            if (raider != null) {
+                pendingRaidersSwimming.add(raider);
+            }
         }
     }
 
     @Subscribe
     public void onAnimationChanged(AnimationChanged event) {
-        if (event.getActor() == null || event.getActor().getName() == null) return;
+        if (!isActive()) return;
 
-        String name = Text.removeTags(event.getActor().getName());
-        if (event.getActor() instanceof NPC && ZEBAK_NAME.equals(name)) {
+        if (npcRoleRegistry.getRole(event.getActor()) == NpcRole.ZEBAK) {
             isZebakScreaming = event.getActor().getAnimation() == ZEBAK_SCREAM_ANIMATION_ID;
         }
     }
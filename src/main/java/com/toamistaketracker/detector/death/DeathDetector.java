@@ -3,8 +3,11 @@ package com.toamistaketracker.detector.death;
 import com.google.common.collect.ImmutableMap;
 import com.toamistaketracker.RaidRoom;
 import com.toamistaketracker.Raider;
+import com.toamistaketracker.RaiderMask;
 import com.toamistaketracker.ToaMistake;
 import com.toamistaketracker.detector.BaseMistakeDetector;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.TickSnapshot;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.Player;
@@ -12,12 +15,7 @@ import net.runelite.api.events.ActorDeath;
 import net.runelite.client.eventbus.Subscribe;
 
 import javax.inject.Singleton;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import static com.toamistaketracker.ToaMistake.DEATH;
 import static com.toamistaketracker.ToaMistake.DEATH_APMEKEN;
@@ -46,14 +44,17 @@ public class DeathDetector extends BaseMistakeDetector {
             .put(RaidRoom.WARDENS_P3, DEATH_WARDENS)
             .build();
 
-    private final Set<String> raiderDeaths;
+    private final RaiderMask pendingRaiderDeaths;
+    private final RaiderMask raiderDeaths; // Handed over to detection in captureTick
 
     public DeathDetector() {
-        raiderDeaths = new HashSet<>();
+        pendingRaiderDeaths = new RaiderMask();
+        raiderDeaths = new RaiderMask();
     }
 
     @Override
     public void cleanup() {
+        pendingRaiderDeaths.clear();
         raiderDeaths.clear();
     }
 
@@ -63,34 +64,37 @@ public class DeathDetector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = new ArrayList<>();
-
-        if (raiderDeaths.contains(raider.getName())) {
-            mistakes.add(DEATH);
+    public void captureTick(@NonNull TickSnapshot tick) {
+        raiderDeaths.copyFrom(pendingRaiderDeaths);
+        pendingRaiderDeaths.clear();
+    }
 
-            if (!ROOM_DEATHS.containsKey(raidState.getCurrentRoom())) {
-                // Should never happen. If it does, log and return empty mistakes for this death
-                log.error("Unknown room death: {}", raidState.getCurrentRoom());
-                return Collections.emptyList();
+    @Override
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
+        if (raiderDeaths.contains(raider)) {
+            if (!ROOM_DEATHS.containsKey(tick.getRoom())) {
+                // Should never happen. If it does, log and add no mistakes for this death
+                log.error("Unknown room death: {}", tick.getRoom());
+                return;
             }
 
-            mistakes.add(ROOM_DEATHS.get(raidState.getCurrentRoom()));
+            mistakes.add(DEATH);
+            mistakes.add(ROOM_DEATHS.get(tick.getRoom()));
         }
-
-        return mistakes;
     }
 
     @Override
     public void afterDetect() {
-        raiderDeaths.clear();
     }
 
     @Subscribe
     public void onActorDeath(ActorDeath event) {
+        if (!isActive()) return;
+
         if (!(event.getActor() instanceof Player)) return;
 
-        if (raidState.isRaider(event.getActor()))
-            raiderDeaths.add(event.getActor().getName());
+        Raider raider = raidState.getRaider(event.getActor());
+        if (raider != null)
+            pendingRaiderDeaths.add(raider);
     }
 }
\ No newline at end of file
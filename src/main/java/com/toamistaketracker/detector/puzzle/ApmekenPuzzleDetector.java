@@ -2,8 +2,14 @@ package com.toamistaketracker.detector.puzzle;
 
 import com.toamistaketracker.RaidRoom;
 import com.toamistaketracker.Raider;
+import com.toamistaketracker.RaiderMask;
+import com.toamistaketracker.TileOccupancy;
 import com.toamistaketracker.ToaMistake;
 import com.toamistaketracker.detector.BaseMistakeDetector;
+import com.toamistaketracker.detector.GraphicsObjectDispatcher;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.TickSnapshot;
+import com.toamistaketracker.detector.tracker.RegionTileBitmap;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -12,14 +18,11 @@ import net.runelite.api.coords.WorldPoint;
 import net.runelite.api.events.ChatMessage;
 import net.runelite.api.events.GameObjectDespawned;
 import net.runelite.api.events.GameObjectSpawned;
-import net.runelite.api.events.GraphicsObjectCreated;
 import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.util.Text;
 
 import javax.inject.Singleton;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import static com.toamistaketracker.RaidRoom.APMEKEN_PUZZLE;
@@ -58,26 +61,43 @@ public class ApmekenPuzzleDetector extends BaseMistakeDetector {
     private static final String PILLAR_FAILURE_MESSAGE = "Damaged roof supports cause some debris to fall on you!";
     private static final String CORRUPTION_FAILURE_MESSAGE = "Your group is overwhelmed by Amascut's corruption!";
 
-    private ToaMistake teamMistake;
+    private ToaMistake pendingTeamMistake;
 
-    private final Set<WorldPoint> venomTilesToSpawn;
-    private final Set<WorldPoint> venomTiles;
+    private final RegionTileBitmap venomTilesToSpawn;
+    private final RegionTileBitmap venomTiles;
 
     @Getter
     private final Set<WorldPoint> volatileHitTiles;
 
+    // Handed over to detection in captureTick
+    private ToaMistake teamMistake;
+    private final RaiderMask raidersOnVenomTiles;
+    private final RaiderMask raidersOnVolatileTiles;
+
     public ApmekenPuzzleDetector() {
-        venomTilesToSpawn = new HashSet<>();
-        venomTiles = new HashSet<>();
+        venomTilesToSpawn = new RegionTileBitmap();
+        venomTiles = new RegionTileBitmap();
         volatileHitTiles = new HashSet<>();
+        raidersOnVenomTiles = new RaiderMask();
+        raidersOnVolatileTiles = new RaiderMask();
+    }
+
+    @Override
+    public void startup() {
+        super.startup();
+        anchorToRoom(venomTilesToSpawn, venomTiles);
     }
 
     @Override
     public void cleanup() {
-        teamMistake = null;
+        pendingTeamMistake = null;
         venomTilesToSpawn.clear();
         venomTiles.clear();
         volatileHitTiles.clear();
+
+        teamMistake = null;
+        raidersOnVenomTiles.clear();
+        raidersOnVolatileTiles.clear();
     }
 
     @Override
@@ -86,50 +106,66 @@ public class ApmekenPuzzleDetector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = new ArrayList<>();
+    public void registerGraphicsObjectHandlers(@NonNull GraphicsObjectDispatcher dispatcher) {
+        // Hits in 3x3 around center, so compute and add all
+        dispatcher.register(this, VOLATILE_GRAPHICS_ID,
+                g -> volatileHitTiles.addAll(compute3By3TilesFromCenter(getWorldPoint(g))));
+    }
+
+    @Override
+    public void captureTick(@NonNull TickSnapshot tick) {
+        teamMistake = pendingTeamMistake;
+        pendingTeamMistake = null;
+
+        TileOccupancy tileOccupancy = raidState.getTileOccupancy();
+        tileOccupancy.computeRaidersOn(venomTiles, raidersOnVenomTiles);
+        tileOccupancy.computeRaidersOn(volatileHitTiles, raidersOnVolatileTiles);
+        volatileHitTiles.clear();
+
+        venomTiles.union(venomTilesToSpawn);
+        venomTilesToSpawn.clear();
+    }
 
+    @Override
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
         // All raiders get team mistakes
         if (teamMistake != null) {
             mistakes.add(teamMistake);
         }
 
-        if (venomTiles.contains(raider.getPreviousWorldLocation())) {
+        if (raidersOnVenomTiles.contains(raider)) {
             mistakes.add(APMEKEN_PUZZLE_VENOM);
         }
 
-        if (volatileHitTiles.contains(raider.getPreviousWorldLocation())) {
+        if (raidersOnVolatileTiles.contains(raider)) {
             mistakes.add(APMEKEN_PUZZLE_VOLATILE);
         }
-
-        return mistakes;
     }
 
     @Override
     public void afterDetect() {
-        teamMistake = null;
-        volatileHitTiles.clear();
-
-        venomTiles.addAll(venomTilesToSpawn);
-        venomTilesToSpawn.clear();
     }
 
     @Subscribe
     public void onChatMessage(ChatMessage event) {
+        if (!isActive()) return;
+
         if (event.getType() != ChatMessageType.GAMEMESSAGE) return;
 
         String message = Text.removeTags(event.getMessage());
         if (VENT_FAILURE_MESSAGE.equals(message)) {
-            teamMistake = APMEKEN_PUZZLE_VENT;
+            pendingTeamMistake = APMEKEN_PUZZLE_VENT;
         } else if (PILLAR_FAILURE_MESSAGE.equals(message)) {
-            teamMistake = APMEKEN_PUZZLE_PILLAR;
+            pendingTeamMistake = APMEKEN_PUZZLE_PILLAR;
         } else if (CORRUPTION_FAILURE_MESSAGE.equals(message)) {
-            teamMistake = APMEKEN_PUZZLE_CORRUPTION;
+            pendingTeamMistake = APMEKEN_PUZZLE_CORRUPTION;
         }
     }
 
     @Subscribe
     public void onGameObjectSpawned(GameObjectSpawned event) {
+        if (!isActive()) return;
+
         if (event.getGameObject().getId() == VENOM_TILE_GAME_OBJECT_ID) {
             // Venom tiles don't hit you for the first tick they're spawned, so delay their detection by a tick.
             venomTilesToSpawn.add(event.getGameObject().getWorldLocation());
@@ -138,18 +174,11 @@ public class ApmekenPuzzleDetector extends BaseMistakeDetector {
 
     @Subscribe
     public void onGameObjectDespawned(GameObjectDespawned event) {
+        if (!isActive()) return;
+
         if (event.getGameObject().getId() == VENOM_TILE_GAME_OBJECT_ID) {
             venomTilesToSpawn.remove(event.getGameObject().getWorldLocation());
             venomTiles.remove(event.getGameObject().getWorldLocation());
         }
     }
-
-    @Subscribe
-    public void onGraphicsObjectCreated(GraphicsObjectCreated event) {
-        if (event.getGraphicsObject().getId() != VOLATILE_GRAPHICS_ID) return;
-
-        // Hits in 3x3 around center, so compute and add all
-        Set<WorldPoint> newHitTiles = compute3By3TilesFromCenter(getWorldPoint(event.getGraphicsObject()));
-        volatileHitTiles.addAll(newHitTiles);
-    }
 }
\ No newline at end of file
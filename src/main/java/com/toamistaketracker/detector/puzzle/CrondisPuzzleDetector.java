@@ -3,27 +3,24 @@ package com.toamistaketracker.detector.puzzle;
 import com.google.common.collect.ImmutableSet;
 import com.toamistaketracker.RaidRoom;
 import com.toamistaketracker.Raider;
-import com.toamistaketracker.ToaMistake;
+import com.toamistaketracker.RaiderMask;
 import com.toamistaketracker.detector.BaseMistakeDetector;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.NpcRole;
+import com.toamistaketracker.detector.TickSnapshot;
+import com.toamistaketracker.detector.tracker.AppliedHitsplatsTracker;
+import com.toamistaketracker.detector.tracker.RegionTileBitmap;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import net.runelite.api.HitsplatID;
-import net.runelite.api.NPC;
 import net.runelite.api.Player;
-import net.runelite.api.coords.LocalPoint;
 import net.runelite.api.coords.WorldPoint;
 import net.runelite.api.events.AnimationChanged;
 import net.runelite.api.events.HitsplatApplied;
 import net.runelite.client.eventbus.Subscribe;
-import net.runelite.client.util.Text;
 
 import javax.inject.Singleton;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import static com.toamistaketracker.RaidRoom.CRONDIS_PUZZLE;
 import static com.toamistaketracker.ToaMistake.CRONDIS_PUZZLE_LOW_WATER;
@@ -105,48 +102,62 @@ public class CrondisPuzzleDetector extends BaseMistakeDetector {
             WorldPoint.fromRegion(CRONDIS_PUZZLE.getRegionId(), 29, 34, 0)
     );
 
-    private static final String PALM_TREE_NAME = "Palm of Resourcefulness";
     private static final int PLAYER_WATER_ANIMATION_ID = 827;
     private static final int WATER_HITSPLAT_UP_ID = 11;
     private static final int WATER_HITSPLAT_DOWN_ID = 15;
     private static final int MAX_WATER_HITSPLAT_UP_AMOUNT = 100;
 
+    // Shared static layers from the InstanceGeometry, which must not be modified
     @Getter
-    private Set<WorldPoint> waterFallTiles;
+    private RegionTileBitmap waterFallTiles;
     @Getter
-    private Set<WorldPoint> palmTreeTiles;
-
-    private final Set<String> raidersAnimatingWater;
-    private final Set<String> raidersWithWater;
-    private final Set<String> raidersLostWater;
-    private final Set<String> raidersWatering;
+    private RegionTileBitmap palmTreeTiles;
+
+    // Collected from events until they're handed over to detection in captureTick
+    private final RaiderMask pendingRaidersAnimatingWater;
+    private final RaiderMask pendingRaidersDamaged;
+    private int pendingLowWaterHitsplats;
+
+    private final RaiderMask raidersAnimatingWater;
+    private final RaiderMask raidersDamaged;
+    private final RaiderMask raidersWithWater;
+    private final RaiderMask raidersLostWater;
+    private final RaiderMask raidersWatering;
     private int lowWaterHitsplats;
 
     public CrondisPuzzleDetector() {
-        waterFallTiles = new HashSet<>();
-        palmTreeTiles = new HashSet<>();
+        waterFallTiles = new RegionTileBitmap();
+        palmTreeTiles = new RegionTileBitmap();
+
+        pendingRaidersAnimatingWater = new RaiderMask();
+        pendingRaidersDamaged = new RaiderMask();
 
-        raidersAnimatingWater = new HashSet<>();
-        raidersWithWater = new HashSet<>();
-        raidersLostWater = new HashSet<>();
-        raidersWatering = new HashSet<>();
+        raidersAnimatingWater = new RaiderMask();
+        raidersDamaged = new RaiderMask();
+        raidersWithWater = new RaiderMask();
+        raidersLostWater = new RaiderMask();
+        raidersWatering = new RaiderMask();
     }
 
     @Override
     public void startup() {
         super.startup();
-        computeTiles();
+        waterFallTiles = instanceGeometry.getLayer(WATERFALL_REGION_TILES);
+        palmTreeTiles = instanceGeometry.getLayer(PALM_TREE_REGION_TILES);
     }
 
     @Override
     public void cleanup() {
-        waterFallTiles.clear();
-        palmTreeTiles.clear();
+        pendingRaidersAnimatingWater.clear();
+        pendingRaidersDamaged.clear();
+        pendingLowWaterHitsplats = 0;
 
         raidersAnimatingWater.clear();
+        raidersDamaged.clear();
         raidersWithWater.clear();
         raidersLostWater.clear();
         raidersWatering.clear();
+        lowWaterHitsplats = 0;
     }
 
     @Override
@@ -155,87 +166,82 @@ public class CrondisPuzzleDetector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
+    public void captureTick(@NonNull TickSnapshot tick) {
+        raidersAnimatingWater.copyFrom(pendingRaidersAnimatingWater);
+        raidersDamaged.copyFrom(pendingRaidersDamaged);
+        lowWaterHitsplats = pendingLowWaterHitsplats;
+
+        pendingRaidersAnimatingWater.clear();
+        pendingRaidersDamaged.clear();
+        pendingLowWaterHitsplats = 0;
+    }
+
+    @Override
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
+        // Taking damage while carrying water spills it. Who was carrying water is only known here, after the previous
+        // tick's detection.
+        if (raidersDamaged.contains(raider) && raidersWithWater.contains(raider)) {
+            raidersLostWater.add(raider);
+        }
+
         // This needs to be done here, as the player's location hasn't been updated yet during HitsplatApplied-time.
-        if (raidersAnimatingWater.contains(raider.getName())) {
+        if (raidersAnimatingWater.contains(raider)) {
             computeRaiderWatering(raider);
         }
 
-        List<ToaMistake> mistakes = new ArrayList<>();
-
-        if (raidersWatering.contains(raider.getName())) {
-            if (lowWaterHitsplats > 0 && raidersLostWater.contains(raider.getName())) {
+        if (raidersWatering.contains(raider)) {
+            if (lowWaterHitsplats > 0 && raidersLostWater.contains(raider)) {
                 mistakes.add(CRONDIS_PUZZLE_LOW_WATER);
                 lowWaterHitsplats -= 1;
             }
 
-            raidersWithWater.remove(raider.getName());
-            raidersLostWater.remove(raider.getName());
+            raidersWithWater.remove(raider);
+            raidersLostWater.remove(raider);
         }
-
-        return mistakes;
     }
 
     @Override
     public void afterDetect() {
-        raidersAnimatingWater.clear();
         raidersWatering.clear();
-        lowWaterHitsplats = 0;
     }
 
     @Subscribe
     public void onHitsplatApplied(HitsplatApplied event) {
-        if (event.getActor().getName() == null) return;
-
-        String name = Text.removeTags(event.getActor().getName());
-        if (raidState.isRaider(event.getActor()) &&
-                raidersWithWater.contains(name) &&
-                isDamageHitsplat(event.getHitsplat().getHitsplatType())) {
-            raidersLostWater.add(name);
-        } else if (event.getActor() instanceof NPC && PALM_TREE_NAME.equals(name) &&
+        if (!isActive()) return;
+
+        Raider raider = raidState.getRaider(event.getActor());
+        if (raider != null) {
+            if (AppliedHitsplatsTracker.isDamageHitsplat(event.getHitsplat().getHitsplatType())) {
+                pendingRaidersDamaged.add(raider);
+            }
+        } else if (npcRoleRegistry.getRole(event.getActor()) == NpcRole.PALM_TREE &&
                 event.getHitsplat().getHitsplatType() == WATER_HITSPLAT_UP_ID &&
                 event.getHitsplat().getAmount() < MAX_WATER_HITSPLAT_UP_AMOUNT) {
-            lowWaterHitsplats += 1;
+            pendingLowWaterHitsplats += 1;
         }
     }
 
     @Subscribe
     public void onAnimationChanged(AnimationChanged event) {
+        if (!isActive()) return;
+
         if (!(event.getActor() instanceof Player) ||
-                event.getActor().getAnimation() != PLAYER_WATER_ANIMATION_ID ||
-                !raidState.isRaider(event.getActor())) {
+                event.getActor().getAnimation() != PLAYER_WATER_ANIMATION_ID) {
             return;
         }
 
-        raidersAnimatingWater.add(event.getActor().getName());
-    }
-
-    private boolean isDamageHitsplat(int hitsplatType) {
-        return hitsplatType == HitsplatID.DAMAGE_ME || hitsplatType == HitsplatID.DAMAGE_OTHER;
-    }
-
-    private void computeTiles() {
-        WorldPoint wpPlayer = client.getLocalPlayer().getWorldLocation();
-        LocalPoint lpPlayer = LocalPoint.fromWorld(client, wpPlayer);
-        if (lpPlayer == null) return;
-
-        int dx = lpPlayer.getSceneX() - wpPlayer.getRegionX();
-        int dy = lpPlayer.getSceneY() - wpPlayer.getRegionY();
-
-        waterFallTiles = WATERFALL_REGION_TILES.stream()
-                .map(wp -> WorldPoint.fromScene(client, wp.getRegionX() + dx, wp.getRegionY() + dy, wp.getPlane()))
-                .collect(Collectors.toSet());
-        palmTreeTiles = PALM_TREE_REGION_TILES.stream()
-                .map(wp -> WorldPoint.fromScene(client, wp.getRegionX() + dx, wp.getRegionY() + dy, wp.getPlane()))
-                .collect(Collectors.toSet());
+        Raider raider = raidState.getRaider(event.getActor());
+        if (raider != null) {
+            pendingRaidersAnimatingWater.add(raider);
+        }
     }
 
     private void computeRaiderWatering(Raider raider) {
         if (waterFallTiles.contains(raider.getCurrentWorldLocation())) {
-            raidersWithWater.add(raider.getName());
-            raidersLostWater.remove(raider.getName());
+            raidersWithWater.add(raider);
+            raidersLostWater.remove(raider);
         } else if (palmTreeTiles.contains(raider.getCurrentWorldLocation())) {
-            raidersWatering.add(raider.getName());
+            raidersWatering.add(raider);
         }
     }
 }
\ No newline at end of file
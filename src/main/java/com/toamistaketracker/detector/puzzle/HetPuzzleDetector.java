@@ -3,21 +3,19 @@ package com.toamistaketracker.detector.puzzle;
 import com.google.common.collect.ImmutableSet;
 import com.toamistaketracker.RaidRoom;
 import com.toamistaketracker.Raider;
-import com.toamistaketracker.ToaMistake;
-import com.toamistaketracker.detector.tracker.AppliedHitsplatsTracker;
+import com.toamistaketracker.RaiderMask;
+import com.toamistaketracker.TileOccupancy;
+import com.toamistaketracker.detector.GraphicsObjectDispatcher;
 import com.toamistaketracker.detector.BaseMistakeDetector;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.TickSnapshot;
 import com.toamistaketracker.detector.tracker.DelayedMistakeTracker;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.coords.WorldPoint;
-import net.runelite.api.events.GraphicsObjectCreated;
-import net.runelite.api.events.HitsplatApplied;
-import net.runelite.client.eventbus.Subscribe;
 
 import javax.inject.Singleton;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import static com.toamistaketracker.RaidRoom.HET_PUZZLE;
@@ -46,14 +44,19 @@ public class HetPuzzleDetector extends BaseMistakeDetector {
     private final Set<WorldPoint> orbHitTiles;
     private final Set<WorldPoint> lightHitTiles;
 
-    private final AppliedHitsplatsTracker appliedHitsplats;
+    // Handed over to detection in captureTick
+    private final RaiderMask raidersOnOrbTiles;
+    private final RaiderMask raidersOnLightTiles;
+
     private final DelayedMistakeTracker delayedMistakes;
 
     public HetPuzzleDetector() {
         orbHitTiles = new HashSet<>();
         lightHitTiles = new HashSet<>();
 
-        appliedHitsplats = new AppliedHitsplatsTracker();
+        raidersOnOrbTiles = new RaiderMask();
+        raidersOnLightTiles = new RaiderMask();
+
         delayedMistakes = new DelayedMistakeTracker();
     }
 
@@ -61,7 +64,8 @@ public class HetPuzzleDetector extends BaseMistakeDetector {
     public void cleanup() {
         orbHitTiles.clear();
         lightHitTiles.clear();
-        appliedHitsplats.clear();
+        raidersOnOrbTiles.clear();
+        raidersOnLightTiles.clear();
         delayedMistakes.clear();
     }
 
@@ -71,46 +75,37 @@ public class HetPuzzleDetector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = new ArrayList<>();
+    public void registerGraphicsObjectHandlers(@NonNull GraphicsObjectDispatcher dispatcher) {
+        dispatcher.register(this, ORB_OF_DARKNESS_GRAPHICS_ID, g -> orbHitTiles.add(getWorldPoint(g)));
+        dispatcher.register(this, LIGHT_BEAM_GRAPHICS_IDS, g -> lightHitTiles.add(getWorldPoint(g)));
+    }
 
-        if (orbHitTiles.contains(raider.getPreviousWorldLocation()) &&
-                appliedHitsplats.popHitsplatApplied(raider.getName())) {
+    @Override
+    public void captureTick(@NonNull TickSnapshot tick) {
+        TileOccupancy tileOccupancy = raidState.getTileOccupancy();
+        tileOccupancy.computeRaidersOn(orbHitTiles, raidersOnOrbTiles);
+        tileOccupancy.computeRaidersOn(lightHitTiles, raidersOnLightTiles);
+        orbHitTiles.clear();
+        lightHitTiles.clear();
+    }
+
+    @Override
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
+        if (raidersOnOrbTiles.contains(raider) && tick.hasHitsplatApplied(raider)) {
             mistakes.add(HET_PUZZLE_DARK_ORB);
         }
 
-        if (lightHitTiles.contains(raider.getPreviousWorldLocation())) {
+        if (raidersOnLightTiles.contains(raider)) {
             // Delay this mistake until 1 tick, since it takes 1 tick for the hitsplat to show up
-            delayedMistakes.addDelayedMistake(raider.getName(), HET_PUZZLE_LIGHT, client.getTickCount(), 1);
+            delayedMistakes.addDelayedMistake(raider, HET_PUZZLE_LIGHT, tick.getTickCount(), 1);
         }
 
         // Add any delayed mistakes from previous ticks
-        mistakes.addAll(delayedMistakes.popDelayedMistakes(raider.getName(), client.getTickCount()));
-
-        return mistakes;
+        delayedMistakes.popDelayedMistakes(raider, tick.getTickCount(), mistakes);
     }
 
     @Override
     public void afterDetect() {
-        orbHitTiles.clear();
-        lightHitTiles.clear();
-        appliedHitsplats.clear();
         // Don't clear delayedMistakes on afterDetect, since we need it to persist across ticks.
     }
-
-    @Subscribe
-    public void onGraphicsObjectCreated(GraphicsObjectCreated event) {
-        if (event.getGraphicsObject().getId() == ORB_OF_DARKNESS_GRAPHICS_ID) {
-            orbHitTiles.add(getWorldPoint(event.getGraphicsObject()));
-        } else if (LIGHT_BEAM_GRAPHICS_IDS.contains(event.getGraphicsObject().getId())) {
-            lightHitTiles.add(getWorldPoint(event.getGraphicsObject()));
-        }
-    }
-
-    @Subscribe
-    public void onHitsplatApplied(HitsplatApplied event) {
-        if (raidState.isRaider(event.getActor())) {
-            appliedHitsplats.addHitsplatForRaider(event.getActor().getName());
-        }
-    }
 }
@@ -2,14 +2,13 @@ package com.toamistaketracker.detector.puzzle;
 
 import com.toamistaketracker.RaidRoom;
 import com.toamistaketracker.Raider;
-import com.toamistaketracker.ToaMistake;
 import com.toamistaketracker.detector.BaseMistakeDetector;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.TickSnapshot;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.inject.Singleton;
-import java.util.ArrayList;
-import java.util.List;
 
 import static com.toamistaketracker.RaidRoom.SCABARAS_PUZZLE;
 
@@ -33,10 +32,7 @@ public class ScabarasPuzzleDetector extends BaseMistakeDetector {
     }
 
     @Override
-    public List<ToaMistake> detectMistakes(@NonNull Raider raider) {
-        List<ToaMistake> mistakes = new ArrayList<>();
-
-        return mistakes;
+    public void detectMistakes(@NonNull TickSnapshot tick, @NonNull Raider raider, @NonNull MistakeSink mistakes) {
     }
 
     @Override
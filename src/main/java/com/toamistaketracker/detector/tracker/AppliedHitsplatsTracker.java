@@ -1,55 +1,117 @@
 package com.toamistaketracker.detector.tracker;
 
-import java.util.HashMap;
-import java.util.Map;
+import com.toamistaketracker.RaidState;
+import com.toamistaketracker.Raider;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.HitsplatID;
+import net.runelite.api.events.HitsplatApplied;
+import net.runelite.client.eventbus.Subscribe;
+
+import javax.inject.Singleton;
+import java.util.Arrays;
 
 /**
- * Wrapper class for a map tracking applied hitsplats for a raider
+ * Shared ledger of the hitsplats applied to each raider since the last tick, fed by a single {@link HitsplatApplied}
+ * subscription for every detector that needs it.
+ * <p>
+ * Counts and damage amounts are kept in fixed arrays indexed by raider slot. Each slot is stamped with the generation
+ * it was last written in, and resetting the ledger after every tick just bumps the generation, so stale slots read as
+ * empty without clearing any arrays.
  */
-public class AppliedHitsplatsTracker {
+@Slf4j
+@Singleton
+public class AppliedHitsplatsTracker extends BaseRaidTracker {
+
+    private static final int INITIAL_DAMAGE_CAPACITY = 4;
 
-    private final Map<String, Integer> appliedHitsplats; // name -> # of hitsplats applied this tick
+    private final int[] generations = new int[RaidState.MAX_RAIDERS]; // slot -> generation the slot was written in
+    private final int[] hitsplatCounts = new int[RaidState.MAX_RAIDERS]; // slot -> # of hitsplats applied this tick
+    private final int[] damageCounts = new int[RaidState.MAX_RAIDERS]; // slot -> # of damage amounts this tick
+    private final int[][] damageAmounts = new int[RaidState.MAX_RAIDERS][INITIAL_DAMAGE_CAPACITY]; // slot -> amounts
 
-    public AppliedHitsplatsTracker() {
-        appliedHitsplats = new HashMap<>();
+    private int generation = 1;
+
+    @Override
+    public void cleanup() {
+        generation++;
     }
 
-    /**
-     * Since multiple players could be on this tile, confirm there's a corresponding hitsplat applied to that raider.
-     * This will pop a corresponding hitsplat for the player, if there are any and return true, otherwise false
-     *
-     * @param name The name of the raider
-     * @return True if there was a hitsplat applied to the specified raider on this tick, else false
-     */
-    public boolean popHitsplatApplied(String name) {
-        boolean hasHitsplat = appliedHitsplats.containsKey(name) && appliedHitsplats.get(name) > 0;
-        if (hasHitsplat) {
-            removeHitsplatForRaider(name);
-        }
-        return hasHitsplat;
+    @Override
+    public void afterDetect() {
+        generation++;
     }
 
-    public void addHitsplatForRaider(String name) {
-        appliedHitsplats.compute(name, this::increment);
+    @Subscribe
+    public void onHitsplatApplied(HitsplatApplied event) {
+        Raider raider = raidState.getRaider(event.getActor());
+        if (raider == null) return;
+
+        int slot = raider.getSlot();
+        if (generations[slot] != generation) {
+            generations[slot] = generation;
+            hitsplatCounts[slot] = 0;
+            damageCounts[slot] = 0;
+        }
+
+        hitsplatCounts[slot]++;
+
+        int amount = event.getHitsplat().getAmount();
+        if (isDamageHitsplat(event.getHitsplat().getHitsplatType()) && amount > 0) {
+            if (damageCounts[slot] == damageAmounts[slot].length) {
+                damageAmounts[slot] = Arrays.copyOf(damageAmounts[slot], damageAmounts[slot].length * 2);
+            }
+            damageAmounts[slot][damageCounts[slot]++] = amount;
+        }
     }
 
-    public void addAllHitsplats(AppliedHitsplatsTracker other) {
-        this.appliedHitsplats.putAll(other.appliedHitsplats);
+    /**
+     * Since multiple players could be on a hit tile, confirm there's a corresponding hitsplat applied to that raider.
+     *
+     * @param raider The raider
+     * @return True if there was a hitsplat applied to the specified raider on this tick, else false
+     */
+    public boolean hasHitsplatApplied(@NonNull Raider raider) {
+        return getHitsplatCount(raider) > 0;
     }
 
-    private void removeHitsplatForRaider(String name) {
-        appliedHitsplats.compute(name, this::decrement);
+    /**
+     * Retrieve the number of hitsplats of any type applied to the raider on this tick
+     *
+     * @param raider The raider
+     * @return The number of hitsplats
+     */
+    public int getHitsplatCount(@NonNull Raider raider) {
+        int slot = raider.getSlot();
+        return generations[slot] == generation ? hitsplatCounts[slot] : 0;
     }
 
-    public void clear() {
-        appliedHitsplats.clear();
+    /**
+     * Retrieve the number of damage hitsplats with a positive amount applied to the raider on this tick
+     *
+     * @param raider The raider
+     * @return The number of damage hitsplats
+     */
+    public int getDamageHitsplatCount(@NonNull Raider raider) {
+        int slot = raider.getSlot();
+        return generations[slot] == generation ? damageCounts[slot] : 0;
     }
 
-    private Integer increment(String key, Integer value) {
-        return value == null ? 1 : value + 1;
+    /**
+     * Retrieve the amount of the damage hitsplat at the given index, in the order they were applied on this tick
+     *
+     * @param raider The raider
+     * @param index  The index, from 0 until {@link #getDamageHitsplatCount(Raider)}
+     * @return The damage amount
+     */
+    public int getDamageHitsplatAmount(@NonNull Raider raider, int index) {
+        if (index < 0 || index >= getDamageHitsplatCount(raider)) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getDamageHitsplatCount(raider));
+        }
+        return damageAmounts[raider.getSlot()][index];
     }
 
-    private Integer decrement(String key, Integer value) {
-        return value == null ? -1 : value - 1;
+    public static boolean isDamageHitsplat(int hitsplatType) {
+        return hitsplatType == HitsplatID.DAMAGE_ME || hitsplatType == HitsplatID.DAMAGE_OTHER;
     }
 }
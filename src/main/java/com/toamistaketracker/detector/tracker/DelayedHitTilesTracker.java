@@ -1,16 +1,64 @@
 package com.toamistaketracker.detector.tracker;
 
+import lombok.NonNull;
 import net.runelite.api.coords.WorldPoint;
 
-import java.util.Set;
+import java.util.Collection;
 
 /**
- * Wrapper class for a map tracking hit tiles delayed for a specified activation tick
+ * Wrapper class for tracking hit tiles delayed for a specified activation tick
+ * <p>
+ * Tiles are stored as {@link HitTileSet}s scheduled on a {@link TimingWheel}, so activating a tick swaps that tick's
+ * set in as the active hit tiles, and tracking hit tiles doesn't allocate once the tracker has warmed up.
  */
-public class DelayedHitTilesTracker extends DelayedObjectsTracker<WorldPoint> {
+public class DelayedHitTilesTracker {
 
-    public Set<WorldPoint> getActiveHitTiles() {
-        return getActiveObjects();
+    private final TimingWheel<HitTileSet> delayedHitTiles =
+            new TimingWheel<>(HitTileSet::new, HitTileSet::clear, HitTileSet::addAll);
+
+    /**
+     * Put the specified tile to be activated at the specified activationTick
+     *
+     * @param activationTick The game tick to activate the tile
+     * @param hitTile        The tile to track
+     */
+    public void put(int activationTick, @NonNull WorldPoint hitTile) {
+        delayedHitTiles.bucketFor(activationTick).add(hitTile);
+    }
+
+    /**
+     * Put the specified tiles to be activated at the specified activationTick
+     *
+     * @param activationTick The game tick to activate the tiles
+     * @param hitTiles       The tiles to track
+     */
+    public void putAll(int activationTick, @NonNull Collection<WorldPoint> hitTiles) {
+        delayedHitTiles.bucketFor(activationTick).addAll(hitTiles);
+    }
+
+    /**
+     * Sets the active hit tiles for the given game tick, and removes activated tiles from the delayed tiles. This
+     * should be called once every GameTick update.
+     *
+     * @param gameTick the game tick
+     */
+    public void onGameTick(int gameTick) {
+        delayedHitTiles.advance(gameTick);
+    }
+
+    /**
+     * Retrieve the active hit tiles for this game tick. The returned set is owned and reused by the tracker.
+     *
+     * @return The set of active hit tiles this game tick
+     */
+    public HitTileSet getActiveHitTiles() {
+        return delayedHitTiles.getActiveBucket();
     }
 
+    /**
+     * Clears all active and delayed hit tiles
+     */
+    public void clear() {
+        delayedHitTiles.clear();
+    }
 }
@@ -1,103 +1,195 @@
 package com.toamistaketracker.detector.tracker;
 
+import com.toamistaketracker.RaidState;
+import com.toamistaketracker.Raider;
 import com.toamistaketracker.ToaMistake;
-import lombok.Builder;
+import com.toamistaketracker.detector.MistakeSink;
 import lombok.NonNull;
-import lombok.Value;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Class to track mistakes that should be delayed for a specified number of ticks, or until actively retrieved
+ * <p>
+ * Each raider slot has its own queue of delayed mistakes, stored as packed longs of (due tick, sequence, mistake
+ * ordinal) and kept sorted by due tick, then by the order they were added. Popping due mistakes only touches the due
+ * entries at the head of the queue, and neither adding nor popping allocates once the queue has grown.
  */
 public class DelayedMistakeTracker {
 
-    private final Logger log = LoggerFactory.getLogger(DelayedMistakeTracker.class);
+    private static final ToaMistake[] MISTAKES = ToaMistake.values();
+    private static final int INITIAL_CAPACITY = 4;
 
-    private final Map<String, List<DelayedMistake>> delayedMistakes; // name -> list of delayed mistakes
+    private static final int ORDINAL_BITS = 16;
+    private static final long ORDINAL_MASK = (1L << ORDINAL_BITS) - 1;
+    private static final int SEQUENCE_BITS = 16;
+    private static final int MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+    private static final int DUE_TICK_SHIFT = ORDINAL_BITS + SEQUENCE_BITS;
 
-    public DelayedMistakeTracker() {
-        delayedMistakes = new HashMap<>();
-    }
+    private final long[][] queues = new long[RaidState.MAX_RAIDERS][]; // slot -> sorted entries, lazily created
+    private final int[] heads = new int[RaidState.MAX_RAIDERS]; // slot -> index of the first entry
+    private final int[] sizes = new int[RaidState.MAX_RAIDERS]; // slot -> number of entries
+    private final int[] nextSequences = new int[RaidState.MAX_RAIDERS]; // slot -> sequence for the next added entry
 
     /**
      * Add a delayed mistake which can be retrieved after a specified number of ticks in the future
      *
-     * @param raiderName  The raider to retrieve mistakes for
+     * @param raider      The raider to retrieve mistakes for
      * @param mistake     The mistake
      * @param currentTick The current game tick
      * @param tickDelay   The amount of ticks to delay until the mistake can successfully be retrieved
      */
-    public void addDelayedMistake(@NonNull String raiderName, @NonNull ToaMistake mistake, @NonNull Integer currentTick,
-                                  Integer tickDelay) {
-        delayedMistakes.computeIfAbsent(raiderName, k -> new ArrayList<>())
-                .add(DelayedMistake.builder()
-                        .raiderName(raiderName)
-                        .mistake(mistake)
-                        .tickAdded(currentTick)
-                        .tickDelay(tickDelay)
-                        .build());
+    public void addDelayedMistake(@NonNull Raider raider, @NonNull ToaMistake mistake, int currentTick,
+                                  int tickDelay) {
+        int slot = raider.getSlot();
+        if (nextSequences[slot] > MAX_SEQUENCE) {
+            renumberSequences(slot);
+        }
+
+        long entry = pack(currentTick + tickDelay, nextSequences[slot]++, mistake);
+        long[] queue = ensureCapacity(slot);
+        int head = heads[slot];
+        int end = head + sizes[slot];
+
+        // Insert sorted, scanning from the tail since new mistakes are usually due last
+        int i = end;
+        while (i > head && queue[i - 1] > entry) {
+            queue[i] = queue[i - 1];
+            i--;
+        }
+        queue[i] = entry;
+        sizes[slot]++;
     }
 
     /**
-     * Retrieve the delayed mistakes for the specified raider if enough ticks have passed. This removes all found
-     * mistakes
+     * Retrieve the delayed mistakes for the specified raider if enough ticks have passed, adding them to the given
+     * sink in the order they're due. This removes all found mistakes
      *
-     * @param raiderName  The raider to retrieve mistakes for
+     * @param raider      The raider to retrieve mistakes for
      * @param currentTick The current game tick
-     * @return The tracked mistakes that have had enough ticks passed
+     * @param mistakes    The sink to add the tracked mistakes that have had enough ticks passed to
      */
-    public List<ToaMistake> popDelayedMistakes(@NonNull String raiderName, @NonNull Integer currentTick) {
-        if (delayedMistakes.get(raiderName) == null) return Collections.emptyList();
-
-        List<DelayedMistake> foundMistakes = new ArrayList<>();
-        for (DelayedMistake delayedMistake : delayedMistakes.get(raiderName)) {
-            int ticksSince = currentTick - delayedMistake.getTickAdded();
-            if (ticksSince >= delayedMistake.getTickDelay()) {
-                foundMistakes.add(delayedMistake);
-            }
+    public void popDelayedMistakes(@NonNull Raider raider, int currentTick, @NonNull MistakeSink mistakes) {
+        int slot = raider.getSlot();
+        long[] queue = queues[slot];
+        int head = heads[slot];
+        int end = head + sizes[slot];
+
+        while (head < end && getDueTick(queue[head]) <= currentTick) {
+            mistakes.add(getMistake(queue[head]));
+            head++;
         }
 
-        delayedMistakes.get(raiderName).removeAll(foundMistakes);
-        return foundMistakes.stream().map(DelayedMistake::getMistake).collect(Collectors.toList());
+        heads[slot] = head;
+        sizes[slot] = end - head;
+        if (sizes[slot] == 0) {
+            reset(slot);
+        }
     }
 
     /**
-     * Forcibly retrieve all tracked delayed mistakes for the specified raider. This removes all tracked delayed
-     * mistakes for that raider.
+     * Forcibly retrieve all tracked delayed mistakes for the specified raider, in the order they were added. This
+     * removes all tracked delayed mistakes for that raider.
      *
-     * @param raiderName The raider to retrieve mistakes for
+     * @param raider The raider to retrieve mistakes for
      * @return The tracked mistakes
      */
-    public List<ToaMistake> popAllDelayedMistakes(@NonNull String raiderName) {
-        if (delayedMistakes.get(raiderName) == null) return Collections.emptyList();
+    public List<ToaMistake> popAllDelayedMistakes(@NonNull Raider raider) {
+        int slot = raider.getSlot();
+        if (sizes[slot] == 0) return Collections.emptyList();
+
+        // Re-sort by sequence (the order they were added), dropping the due tick
+        long[] entries = new long[sizes[slot]];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = queues[slot][heads[slot] + i] & ((1L << DUE_TICK_SHIFT) - 1);
+        }
+        Arrays.sort(entries);
 
-        List<ToaMistake> mistakes = delayedMistakes.get(raiderName).stream()
-                .map(DelayedMistake::getMistake)
-                .collect(Collectors.toList());
-        delayedMistakes.get(raiderName).clear();
+        List<ToaMistake> mistakes = new ArrayList<>(entries.length);
+        for (long entry : entries) {
+            mistakes.add(getMistake(entry));
+        }
 
+        reset(slot);
         return mistakes;
     }
 
     public void clear() {
-        delayedMistakes.clear();
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            reset(slot);
+        }
+    }
+
+    private long[] ensureCapacity(int slot) {
+        long[] queue = queues[slot];
+        if (queue == null) {
+            queue = queues[slot] = new long[INITIAL_CAPACITY];
+        }
+
+        int head = heads[slot];
+        int size = sizes[slot];
+        if (head + size < queue.length) {
+            return queue;
+        }
+
+        if (size >= queue.length / 2) {
+            queue = queues[slot] = Arrays.copyOfRange(queue, head, head + queue.length * 2);
+        } else {
+            // Plenty of room freed up by popped entries, so just move the entries to the front
+            System.arraycopy(queue, head, queue, 0, size);
+        }
+        heads[slot] = 0;
+        return queue;
+    }
+
+    /**
+     * Renumber the sequences of the entries for the given slot from 0, keeping the order they were added. This is only
+     * needed if a raider's queue never empties for {@link #MAX_SEQUENCE} added mistakes.
+     */
+    private void renumberSequences(int slot) {
+        long[] queue = queues[slot];
+        int head = heads[slot];
+        int end = head + sizes[slot];
+
+        int[] sequences = new int[sizes[slot]];
+        for (int i = head; i < end; i++) {
+            sequences[i - head] = getSequence(queue[i]);
+        }
+
+        for (int i = head; i < end; i++) {
+            int rank = 0;
+            for (int sequence : sequences) {
+                if (sequence < getSequence(queue[i])) {
+                    rank++;
+                }
+            }
+            queue[i] = pack(getDueTick(queue[i]), rank, getMistake(queue[i]));
+        }
+        nextSequences[slot] = sizes[slot];
+    }
+
+    private void reset(int slot) {
+        heads[slot] = 0;
+        sizes[slot] = 0;
+        nextSequences[slot] = 0;
+    }
+
+    private static long pack(int dueTick, int sequence, ToaMistake mistake) {
+        return ((long) dueTick << DUE_TICK_SHIFT) | ((long) sequence << ORDINAL_BITS) | mistake.ordinal();
+    }
+
+    private static int getDueTick(long entry) {
+        return (int) (entry >> DUE_TICK_SHIFT);
     }
 
-    @Value
-    @Builder
-    private static class DelayedMistake {
+    private static int getSequence(long entry) {
+        return (int) ((entry >>> ORDINAL_BITS) & MAX_SEQUENCE);
+    }
 
-        @NonNull String raiderName;
-        @NonNull ToaMistake mistake;
-        @NonNull Integer tickAdded;
-        Integer tickDelay;
+    private static ToaMistake getMistake(long entry) {
+        return MISTAKES[(int) (entry & ORDINAL_MASK)];
     }
 }
@@ -0,0 +1,204 @@
+package com.toamistaketracker.detector.tracker;
+
+import com.toamistaketracker.PackedTile;
+import lombok.NonNull;
+import net.runelite.api.coords.WorldPoint;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of tiles, backed by an open-addressing table of {@link PackedTile} ints with linear probing. This replaces
+ * {@code Set<WorldPoint>} for hit tiles, so that adding and checking tiles doesn't box every tile in a
+ * {@link WorldPoint} plus a HashMap node.
+ * <p>
+ * Clearing the set keeps its capacity, so sets that are refilled every tick stop allocating once they've grown to fit
+ * the largest attack. {@link WorldPoint} overloads are only provided as an adapter for callers at the API edge.
+ */
+public class HitTileSet {
+
+    private static final int EMPTY = PackedTile.NONE;
+    private static final int DEFAULT_CAPACITY = 16; // Must be a power of 2
+
+    private int[] table;
+    private int mask;
+    private int size;
+
+    public HitTileSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize The number of tiles this set is expected to hold without growing
+     */
+    public HitTileSet(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int packedTile) {
+        if (packedTile == EMPTY || size == 0) return false;
+
+        for (int i = indexFor(packedTile); ; i = (i + 1) & mask) {
+            int tile = table[i];
+            if (tile == packedTile) return true;
+            if (tile == EMPTY) return false;
+        }
+    }
+
+    /**
+     * @param worldPoint The world point, which may be null
+     * @return True if the set contains the world point, or false if it doesn't or the world point is null
+     */
+    public boolean contains(WorldPoint worldPoint) {
+        return worldPoint != null && contains(PackedTile.pack(worldPoint));
+    }
+
+    /**
+     * Add the given packed tile
+     *
+     * @param packedTile The packed tile
+     * @return True if the tile was not already in the set
+     */
+    public boolean add(int packedTile) {
+        if (packedTile == EMPTY) {
+            throw new IllegalArgumentException("Cannot add PackedTile.NONE to a HitTileSet");
+        }
+
+        int i = indexFor(packedTile);
+        for (int tile = table[i]; tile != EMPTY; tile = table[i]) {
+            if (tile == packedTile) return false;
+            i = (i + 1) & mask;
+        }
+
+        table[i] = packedTile;
+        if (++size > maxSize()) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    public boolean add(@NonNull WorldPoint worldPoint) {
+        return add(PackedTile.pack(worldPoint));
+    }
+
+    public void addAll(@NonNull HitTileSet other) {
+        if (other.size == 0) return;
+
+        int[] otherTable = other.table;
+        for (int i = 0; i < otherTable.length; i++) {
+            if (otherTable[i] != EMPTY) {
+                add(otherTable[i]);
+            }
+        }
+    }
+
+    public void addAll(@NonNull Collection<WorldPoint> worldPoints) {
+        for (WorldPoint worldPoint : worldPoints) {
+            add(worldPoint);
+        }
+    }
+
+    /**
+     * Perform the given action for each packed tile in the set, in no particular order
+     *
+     * @param action The action to perform on each packed tile
+     */
+    public void forEach(@NonNull IntConsumer action) {
+        if (size == 0) return;
+
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != EMPTY) {
+                action.accept(table[i]);
+            }
+        }
+    }
+
+    /**
+     * Remove the given packed tile
+     *
+     * @param packedTile The packed tile
+     * @return True if the tile was in the set
+     */
+    public boolean remove(int packedTile) {
+        if (packedTile == EMPTY || size == 0) return false;
+
+        int i = indexFor(packedTile);
+        for (int tile = table[i]; tile != packedTile; tile = table[i]) {
+            if (tile == EMPTY) return false;
+            i = (i + 1) & mask;
+        }
+
+        // Shift back any following entries in the probe run, so that lookups never stop early at the removed slot
+        int gap = i;
+        for (int j = (gap + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+            int home = indexFor(table[j]);
+            // Move the entry into the gap if its home slot isn't cyclically in (gap, j]
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                table[gap] = table[j];
+                gap = j;
+            }
+        }
+        table[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    public boolean remove(WorldPoint worldPoint) {
+        return worldPoint != null && remove(PackedTile.pack(worldPoint));
+    }
+
+    /**
+     * Remove all tiles, keeping the current capacity
+     */
+    public void clear() {
+        if (size == 0) return;
+
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    private int indexFor(int packedTile) {
+        // Fibonacci hashing, since neighbouring tiles only differ in their low bits
+        int h = packedTile * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private int maxSize() {
+        // Keep the load factor at or under 0.5, so probe runs stay short
+        return table.length >> 1;
+    }
+
+    private void allocate(int capacity) {
+        table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldTable = table;
+        allocate(capacity);
+        size = 0;
+        for (int tile : oldTable) {
+            if (tile != EMPTY) {
+                add(tile);
+            }
+        }
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity >> 1 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -1,15 +1,54 @@
 package com.toamistaketracker.detector.tracker;
 
+import lombok.NonNull;
 import net.runelite.api.coords.WorldPoint;
 
-import java.util.Set;
-
 /**
- * Wrapper class for a map tracking hit tiles that are active on the tick they are added
+ * Wrapper class for a set tracking hit tiles that are active on the tick they are added
+ * <p>
+ * The new and active tiles are double-buffered {@link HitTileSet}s that are swapped every tick, so no tiles are copied.
  */
-public class InstantHitTilesTracker extends InstantObjectsTracker<WorldPoint> {
+public class InstantHitTilesTracker {
+
+    private HitTileSet activeHitTiles = new HitTileSet();
+    private HitTileSet newHitTiles = new HitTileSet();
+
+    /**
+     * Add the specified tile to be activated this tick
+     *
+     * @param hitTile The tile to track
+     */
+    public void add(@NonNull WorldPoint hitTile) {
+        newHitTiles.add(hitTile);
+    }
+
+    /**
+     * Sets the active hit tiles for the given game tick to the tiles added since the last tick. This should be called
+     * once every GameTick update.
+     *
+     * @param gameTick the game tick
+     */
+    public void onGameTick(int gameTick) {
+        HitTileSet previousHitTiles = activeHitTiles;
+        activeHitTiles = newHitTiles;
+        newHitTiles = previousHitTiles;
+        newHitTiles.clear();
+    }
+
+    /**
+     * Retrieve the active hit tiles for this game tick. The returned set is owned and reused by the tracker.
+     *
+     * @return The set of active hit tiles this game tick
+     */
+    public HitTileSet getActiveHitTiles() {
+        return activeHitTiles;
+    }
 
-    public Set<WorldPoint> getActiveHitTiles() {
-        return getActiveObjects();
+    /**
+     * Clears all active and new hit tiles
+     */
+    public void clear() {
+        activeHitTiles.clear();
+        newHitTiles.clear();
     }
 }
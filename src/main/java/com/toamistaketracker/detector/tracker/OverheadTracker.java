@@ -76,7 +76,7 @@ public class OverheadTracker extends DelayedObjectsTracker<Projectile>{
             return false;
         }
 
-        HeadIcon playerHeadIcon = raider.getPlayer().getOverheadIcon();
+        HeadIcon playerHeadIcon = raider.getOverheadIcon();
         if (playerHeadIcon == null) {
             return true;
         }
@@ -0,0 +1,213 @@
+package com.toamistaketracker.detector.tracker;
+
+import com.toamistaketracker.PackedTile;
+import lombok.Getter;
+import lombok.NonNull;
+import net.runelite.api.coords.WorldPoint;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A layer of tiles within a single 64x64 region, backed by one bitmap row (a long) per y coordinate per plane. Every
+ * ToA room is one region, so room-wide layers like acid, venom, gap, or boulder tiles can be set, tested, cleared,
+ * and unioned with a few word operations instead of hashing {@link WorldPoint}s.
+ * <p>
+ * Rooms are copied into instances, so the region's world coordinates are only known once the room is loaded. The
+ * bitmap is anchored to the room's south-west tile with {@link #anchor(int, int)}, and falls back to anchoring itself
+ * to the region of the first tile added if it was never anchored. Tiles outside the anchored region are kept in an
+ * overflow {@link HitTileSet}, so the layer is always exact even if the anchor is off.
+ */
+public class RegionTileBitmap {
+
+    private static final int REGION_SIZE = 64;
+    private static final int PLANES = 4;
+
+    private final long[] rows = new long[PLANES * REGION_SIZE]; // plane * 64 + regionY -> bits by regionX
+    private int dirtyPlanes; // Bit per plane that may have bits set, so clearing only touches those planes
+    private int bitCount; // Number of tiles set in the bitmap, excluding the overflow
+    private HitTileSet overflow; // Lazily created, as it's not expected to be used
+
+    @Getter
+    private boolean anchored;
+    @Getter
+    private int baseX;
+    @Getter
+    private int baseY;
+
+    /**
+     * Anchor this bitmap to the region with the given south-west tile, clearing all tiles
+     *
+     * @param baseX The x coordinate of the region's south-west tile
+     * @param baseY The y coordinate of the region's south-west tile
+     */
+    public void anchor(int baseX, int baseY) {
+        clear();
+        this.baseX = baseX;
+        this.baseY = baseY;
+        this.anchored = true;
+    }
+
+    /**
+     * Retrieve the number of tiles in this layer
+     *
+     * @return The number of tiles in this layer
+     */
+    public int size() {
+        return bitCount + (overflow == null ? 0 : overflow.size());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(int x, int y, int plane) {
+        int dx = x - baseX;
+        int dy = y - baseY;
+        if (!anchored || !isInRegion(dx, dy, plane)) {
+            return overflow != null && overflow.contains(PackedTile.pack(x, y, plane));
+        }
+
+        return (rows[plane * REGION_SIZE + dy] & (1L << dx)) != 0;
+    }
+
+    public boolean contains(int packedTile) {
+        if (packedTile == PackedTile.NONE) return false;
+        return contains(PackedTile.getX(packedTile), PackedTile.getY(packedTile), PackedTile.getPlane(packedTile));
+    }
+
+    /**
+     * @param worldPoint The world point, which may be null
+     * @return True if the layer contains the world point, or false if it doesn't or the world point is null
+     */
+    public boolean contains(WorldPoint worldPoint) {
+        return worldPoint != null && contains(worldPoint.getX(), worldPoint.getY(), worldPoint.getPlane());
+    }
+
+    public void add(int x, int y, int plane) {
+        if (!anchored) {
+            anchor(x - (x & (REGION_SIZE - 1)), y - (y & (REGION_SIZE - 1)));
+        }
+
+        int dx = x - baseX;
+        int dy = y - baseY;
+        if (!isInRegion(dx, dy, plane)) {
+            if (overflow == null) {
+                overflow = new HitTileSet();
+            }
+            overflow.add(PackedTile.pack(x, y, plane));
+            return;
+        }
+
+        int i = plane * REGION_SIZE + dy;
+        long bit = 1L << dx;
+        if ((rows[i] & bit) == 0) {
+            rows[i] |= bit;
+            bitCount++;
+        }
+        dirtyPlanes |= 1 << plane;
+    }
+
+    public void add(@NonNull WorldPoint worldPoint) {
+        add(worldPoint.getX(), worldPoint.getY(), worldPoint.getPlane());
+    }
+
+    public void addAll(@NonNull Collection<WorldPoint> worldPoints) {
+        for (WorldPoint worldPoint : worldPoints) {
+            add(worldPoint);
+        }
+    }
+
+    public void remove(int x, int y, int plane) {
+        int dx = x - baseX;
+        int dy = y - baseY;
+        if (!anchored || !isInRegion(dx, dy, plane)) {
+            if (overflow != null) {
+                overflow.remove(PackedTile.pack(x, y, plane));
+            }
+            return;
+        }
+
+        int i = plane * REGION_SIZE + dy;
+        long bit = 1L << dx;
+        if ((rows[i] & bit) != 0) {
+            rows[i] &= ~bit;
+            bitCount--;
+        }
+    }
+
+    public void remove(WorldPoint worldPoint) {
+        if (worldPoint == null) return;
+        remove(worldPoint.getX(), worldPoint.getY(), worldPoint.getPlane());
+    }
+
+    /**
+     * Add all tiles in the other layer to this one. If both layers are anchored to the same region, this is a single
+     * OR per row of each plane the other layer has tiles on.
+     *
+     * @param other The layer to union into this one
+     */
+    public void union(@NonNull RegionTileBitmap other) {
+        if (other.isEmpty()) return;
+
+        if (!anchored) {
+            anchor(other.baseX, other.baseY);
+        }
+
+        if (baseX == other.baseX && baseY == other.baseY) {
+            for (int plane = 0; plane < PLANES; plane++) {
+                if ((other.dirtyPlanes & (1 << plane)) == 0) continue;
+
+                int start = plane * REGION_SIZE;
+                for (int i = start; i < start + REGION_SIZE; i++) {
+                    bitCount += Long.bitCount(other.rows[i] & ~rows[i]);
+                    rows[i] |= other.rows[i];
+                }
+                dirtyPlanes |= 1 << plane;
+            }
+
+            // The other layer's overflow tiles are outside the same region, so they stay in the overflow
+            if (other.overflow != null && !other.overflow.isEmpty()) {
+                if (overflow == null) {
+                    overflow = new HitTileSet();
+                }
+                overflow.addAll(other.overflow);
+            }
+            return;
+        }
+
+        // Different regions, so fall back to adding tile by tile. This is not expected within a room.
+        for (int i = 0; i < other.rows.length; i++) {
+            long row = other.rows[i];
+            while (row != 0) {
+                int dx = Long.numberOfTrailingZeros(row);
+                row &= row - 1;
+                add(other.baseX + dx, other.baseY + (i % REGION_SIZE), i / REGION_SIZE);
+            }
+        }
+        if (other.overflow != null) {
+            other.overflow.forEach(t -> add(PackedTile.getX(t), PackedTile.getY(t), PackedTile.getPlane(t)));
+        }
+    }
+
+    /**
+     * Remove all tiles, keeping the anchor
+     */
+    public void clear() {
+        for (int plane = 0; plane < PLANES; plane++) {
+            if ((dirtyPlanes & (1 << plane)) != 0) {
+                Arrays.fill(rows, plane * REGION_SIZE, (plane + 1) * REGION_SIZE, 0L);
+            }
+        }
+        dirtyPlanes = 0;
+        bitCount = 0;
+
+        if (overflow != null) {
+            overflow.clear();
+        }
+    }
+
+    private static boolean isInRegion(int dx, int dy, int plane) {
+        return dx >= 0 && dx < REGION_SIZE && dy >= 0 && dy < REGION_SIZE && plane >= 0 && plane < PLANES;
+    }
+}
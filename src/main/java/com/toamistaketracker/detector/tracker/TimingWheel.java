@@ -0,0 +1,180 @@
+package com.toamistaketracker.detector.tracker;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A fixed ring of reusable buckets indexed by {@code activationTick & MASK}, used by the delayed trackers to schedule
+ * objects for a future game tick. Every delay in the detectors is well under {@link #SLOTS} ticks, so advancing a tick
+ * is a single bucket swap and allocates nothing.
+ * <p>
+ * Each slot remembers which tick its bucket is for. If a slot is already taken by a different tick (a delay of
+ * {@link #SLOTS} or more), the bucket goes to the overflow instead, so no activation is ever dropped. The overflow is
+ * kept sorted by activation tick in plain int and bucket arrays, and its buckets are reused too.
+ *
+ * @param <B> The bucket type, e.g. a set of objects
+ */
+class TimingWheel<B> {
+
+    static final int SLOTS = 16; // Must be a power of 2
+    private static final int MASK = SLOTS - 1;
+    private static final int NO_TICK = Integer.MIN_VALUE;
+    private static final int INITIAL_OVERFLOW_CAPACITY = 4;
+
+    private final Supplier<B> bucketFactory;
+    private final Consumer<B> clearBucket;
+    private final BiConsumer<B, B> mergeBucket; // (into, from)
+
+    private final B[] buckets;
+    private final int[] bucketTicks = new int[SLOTS]; // slot -> activation tick of its bucket, or NO_TICK if free
+
+    // Sorted by activation tick. The buckets past overflowSize are cleared spares, or null if none were needed yet.
+    private int[] overflowTicks = new int[INITIAL_OVERFLOW_CAPACITY];
+    private B[] overflowBuckets;
+    private int overflowSize;
+
+    private B activeBucket;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(@NonNull Supplier<B> bucketFactory,
+                @NonNull Consumer<B> clearBucket,
+                @NonNull BiConsumer<B, B> mergeBucket) {
+        this.bucketFactory = bucketFactory;
+        this.clearBucket = clearBucket;
+        this.mergeBucket = mergeBucket;
+
+        this.buckets = (B[]) new Object[SLOTS];
+        this.overflowBuckets = (B[]) new Object[INITIAL_OVERFLOW_CAPACITY];
+        for (int i = 0; i < SLOTS; i++) {
+            buckets[i] = bucketFactory.get();
+            bucketTicks[i] = NO_TICK;
+        }
+        this.activeBucket = bucketFactory.get();
+    }
+
+    /**
+     * Retrieve the bucket to add objects to for the given activation tick
+     *
+     * @param activationTick The game tick the objects activate on
+     * @return The bucket for the activation tick
+     */
+    B bucketFor(int activationTick) {
+        int slot = activationTick & MASK;
+        int bucketTick = bucketTicks[slot];
+        if (bucketTick == activationTick) {
+            return buckets[slot];
+        }
+        if (bucketTick == NO_TICK) {
+            bucketTicks[slot] = activationTick;
+            return buckets[slot];
+        }
+
+        // The slot is taken by another tick, which means this delay is out of range of the wheel
+        return overflowBucketFor(activationTick);
+    }
+
+    private B overflowBucketFor(int activationTick) {
+        int index = Arrays.binarySearch(overflowTicks, 0, overflowSize, activationTick);
+        if (index >= 0) {
+            return overflowBuckets[index];
+        }
+
+        index = -(index + 1);
+        if (overflowSize == overflowTicks.length) {
+            overflowTicks = Arrays.copyOf(overflowTicks, overflowSize * 2);
+            overflowBuckets = Arrays.copyOf(overflowBuckets, overflowSize * 2);
+        }
+
+        B bucket = overflowBuckets[overflowSize];
+        if (bucket == null) {
+            bucket = bucketFactory.get();
+        }
+        System.arraycopy(overflowTicks, index, overflowTicks, index + 1, overflowSize - index);
+        System.arraycopy(overflowBuckets, index, overflowBuckets, index + 1, overflowSize - index);
+        overflowTicks[index] = activationTick;
+        overflowBuckets[index] = bucket;
+        overflowSize++;
+        return bucket;
+    }
+
+    /**
+     * Advance the wheel to the given game tick, making the bucket for that tick the active bucket. The previously
+     * active bucket is cleared and recycled into the slot.
+     *
+     * @param gameTick The game tick
+     * @return The active bucket for the game tick
+     */
+    B advance(int gameTick) {
+        clearBucket.accept(activeBucket);
+
+        int slot = gameTick & MASK;
+        int bucketTick = bucketTicks[slot];
+        if (bucketTick == gameTick) {
+            B bucket = buckets[slot];
+            buckets[slot] = activeBucket;
+            activeBucket = bucket;
+            bucketTicks[slot] = NO_TICK;
+        } else if (bucketTick != NO_TICK && bucketTick < gameTick) {
+            // Scheduled for a tick that has already passed, so it can never activate. Free the slot.
+            clearBucket.accept(buckets[slot]);
+            bucketTicks[slot] = NO_TICK;
+        }
+
+        if (overflowSize > 0) {
+            advanceOverflow(gameTick);
+        }
+
+        return activeBucket;
+    }
+
+    /**
+     * Merge the overflow bucket for the given game tick into the active bucket, and drop the ones for ticks that have
+     * already passed. The sorted overflow means they're all at the front.
+     */
+    private void advanceOverflow(int gameTick) {
+        int removed = 0;
+        while (removed < overflowSize && overflowTicks[removed] <= gameTick) {
+            B bucket = overflowBuckets[removed];
+            if (overflowTicks[removed] == gameTick) {
+                mergeBucket.accept(activeBucket, bucket);
+            }
+            clearBucket.accept(bucket);
+            removed++;
+        }
+        if (removed == 0) return;
+
+        // Shift the remaining buckets to the front, and rotate the cleared ones behind them to be reused
+        for (int i = removed; i < overflowSize; i++) {
+            B bucket = overflowBuckets[i - removed];
+            overflowBuckets[i - removed] = overflowBuckets[i];
+            overflowBuckets[i] = bucket;
+        }
+        System.arraycopy(overflowTicks, removed, overflowTicks, 0, overflowSize - removed);
+        overflowSize -= removed;
+    }
+
+    B getActiveBucket() {
+        return activeBucket;
+    }
+
+    /**
+     * Clear the active bucket and all scheduled buckets, keeping the buckets for reuse
+     */
+    void clear() {
+        clearBucket.accept(activeBucket);
+        for (int i = 0; i < SLOTS; i++) {
+            if (bucketTicks[i] != NO_TICK) {
+                clearBucket.accept(buckets[i]);
+                bucketTicks[i] = NO_TICK;
+            }
+        }
+        for (int i = 0; i < overflowSize; i++) {
+            clearBucket.accept(overflowBuckets[i]);
+        }
+        overflowSize = 0;
+    }
+}
@@ -1,7 +1,7 @@
 package com.toamistaketracker.detector.tracker;
 
 import com.toamistaketracker.Raider;
-import lombok.Getter;
+import com.toamistaketracker.RaiderMask;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.ChatMessageType;
 import net.runelite.api.Player;
@@ -14,8 +14,6 @@ import net.runelite.client.eventbus.Subscribe;
 import net.runelite.client.util.Text;
 
 import javax.inject.Singleton;
-import java.util.HashSet;
-import java.util.Set;
 
 @Slf4j
 @Singleton
@@ -23,9 +21,8 @@ public class VengeanceTracker extends BaseRaidTracker {
 
     public static final String VENGEANCE_TEXT = "Taste vengeance!";
 
-    @Getter
-    private final Set<String> raidersVengeance = new HashSet<>();
-    private final Set<String> raidersChatVengeance = new HashSet<>();
+    private final RaiderMask raidersVengeance = new RaiderMask();
+    private final RaiderMask raidersChatVengeance = new RaiderMask();
 
     @Override
     public void cleanup() {
@@ -47,8 +44,9 @@ public class VengeanceTracker extends BaseRaidTracker {
     public void onVarbitChanged(VarbitChanged event) {
         if (event.getVarbitId() == Varbits.VENGEANCE_ACTIVE && event.getValue() == 0) {
             // Local player just procc'd veng
-            if (client.getLocalPlayer() != null && raidState.isRaider(client.getLocalPlayer())) {
-                raidersVengeance.add(client.getLocalPlayer().getName());
+            Raider raider = raidState.getRaider(client.getLocalPlayer());
+            if (raider != null) {
+                raidersVengeance.add(raider);
             }
         }
     }
@@ -58,8 +56,9 @@ public class VengeanceTracker extends BaseRaidTracker {
         if (!(event.getActor() instanceof Player) || event.getActor().getName() == null) return;
 
         String name = Text.sanitize(event.getActor().getName());
-        if (isOtherVengeance(name, event.getOverheadText())) {
-            raidersVengeance.add(name);
+        Raider raider = raidState.getRaider(name);
+        if (raider != null && isOtherVengeance(name, event.getOverheadText())) {
+            raidersVengeance.add(raider);
         }
     }
 
@@ -68,13 +67,14 @@ public class VengeanceTracker extends BaseRaidTracker {
         if (event.getType() != ChatMessageType.PUBLICCHAT) return;
 
         String name = Text.sanitize(event.getName());
-        if (isOtherVengeance(name, event.getMessage())) {
-            raidersChatVengeance.add(name);
+        Raider raider = raidState.getRaider(name);
+        if (raider != null && isOtherVengeance(name, event.getMessage())) {
+            raidersChatVengeance.add(raider);
         }
     }
 
     public boolean didPopVengeance(Raider raider) {
-        return raidersVengeance.contains(raider.getName());
+        return raidersVengeance.contains(raider);
     }
 
     /**
@@ -0,0 +1,534 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.ToaMistake;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.toMistake;
+
+/**
+ * Optional backend that keeps the mistake state in a memory-mapped file of fixed-size player records, updated in place.
+ * Recording a mistake is then a single {@code putInt} per manager instead of a {@link MistakeJournal} record, and
+ * durability comes from {@link #force()} on the writer's coalesced flushes.
+ * <p>
+ * The in-memory {@link MistakeStateManager} is still the source of truth while the plugin is running, and every change
+ * to it is mirrored into the file under this store's lock. The index from player name to record is only kept in
+ * memory, and is rebuilt by scanning the records when the file is opened.
+ * <p>
+ * The file is only opened in place if it was written for the current {@link ToaMistake} values. Otherwise it's read by
+ * mistake name like the other formats, and rewritten. Once the plugin switches back to the journal, the counters are
+ * imported into a new snapshot and the file is retired, so it's never read again.
+ * <p>
+ * Header, padded to {@link #HEADER_SIZE}: {@code int MAGIC, byte VERSION, byte status, int recordCapacity,
+ * int currentRaidTrackedRaids, int allRaidsTrackedRaids, short mistakeNameCount, UTF mistakeNames...}
+ * <p>
+ * Record, padded to a multiple of 4: {@code int nameHash, int raidCount, int[mistakeNameCount] counts,
+ * byte managerSlot (0 if free), byte nameLength, char[MAX_NAME_LENGTH] name}
+ */
+@Slf4j
+class MappedCounterStore {
+
+    static final int CURRENT_RAID = 1;
+    static final int ALL_RAIDS = 2;
+    private static final int FREE = 0;
+
+    private static final int MAGIC = 0x544F4143; // "TOAC"
+    private static final byte VERSION = 1;
+
+    private static final byte CREATING = 0;
+    private static final byte ACTIVE = 1;
+    private static final byte RETIRED = 2;
+
+    private static final int HEADER_SIZE = 4096;
+    private static final int MAX_NAME_LENGTH = 32;
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    // Offsets in the header
+    private static final int STATUS_OFFSET = 5;
+    private static final int CAPACITY_OFFSET = 6;
+    private static final int TRACKED_RAIDS_OFFSET = 10; // one int per manager slot
+    private static final int MISTAKE_NAMES_OFFSET = 18;
+
+    // Offsets in a record
+    private static final int NAME_HASH_OFFSET = 0;
+    private static final int RAID_COUNT_OFFSET = 4;
+    private static final int COUNTS_OFFSET = 8;
+
+    private static final ToaMistake[] MISTAKES = PlayerTrackingInfo.MISTAKES;
+    private static final int RECORD_SIZE = recordSize(MISTAKES.length);
+
+    private final FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+    private int capacity;
+
+    // Guarded by this
+    private final Map<String, Integer> currentRaidRecords = new HashMap<>(); // player name -> record
+    private final Map<String, Integer> allRaidsRecords = new HashMap<>(); // player name -> record
+    private int[] freeRecords = new int[0];
+    private int freeCount;
+    private boolean isOpen = true;
+
+    /**
+     * A change mirrored into the counters from the in-memory state it was just applied to
+     */
+    @FunctionalInterface
+    interface Change {
+        void applyTo(MappedCounterStore counterStore) throws IOException;
+    }
+
+    private MappedCounterStore(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Open the counters in place, if they were written for the current mistakes
+     *
+     * @param path The counters file
+     * @return The store, or null if there are no active counters for the current mistakes
+     * @throws IOException If the file can't be read or mapped
+     */
+    static MappedCounterStore open(Path path) throws IOException {
+        if (!Files.exists(path)) return null;
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                channel.close();
+                return null;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("Unexpected end of mistake counters header");
+                }
+            }
+            ToaMistake[] mistakes = readHeader(header);
+            int capacity = header.getInt(CAPACITY_OFFSET);
+            if (mistakes == null || !Arrays.equals(mistakes, MISTAKES) || capacity <= 0 ||
+                    size < fileSize(capacity, RECORD_SIZE)) {
+                channel.close();
+                return null;
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity, RECORD_SIZE));
+            MappedCounterStore counterStore = new MappedCounterStore(channel, buffer, capacity);
+            counterStore.buildIndex();
+            return counterStore;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read active counters into a new state, by mistake name, without mapping them
+     *
+     * @param path The counters file
+     * @return The state, or null if there are no active counters
+     * @throws IOException If the file can't be read
+     */
+    static MistakeStateManager read(Path path) throws IOException {
+        if (!Files.exists(path)) return null;
+
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (bytes.capacity() < HEADER_SIZE) return null;
+
+        ToaMistake[] mistakes = readHeader(bytes);
+        if (mistakes == null) return null;
+
+        int capacity = bytes.getInt(CAPACITY_OFFSET);
+        int recordSize = recordSize(mistakes.length);
+        if (capacity < 0 || bytes.capacity() < fileSize(capacity, recordSize)) {
+            throw new IOException("Mistake counters are truncated");
+        }
+        return readState(bytes, mistakes, capacity, recordSize);
+    }
+
+    /**
+     * Write the given state to a new counters file, replacing any existing one, and open it in place
+     *
+     * @param path                The counters file
+     * @param mistakeStateManager The state
+     * @return The store
+     * @throws IOException If the file can't be written or mapped
+     */
+    static MappedCounterStore create(Path path, MistakeStateManager mistakeStateManager) throws IOException {
+        MistakeManager currentRaid = mistakeStateManager.getCurrentRaidMistakeManager();
+        MistakeManager allRaids = mistakeStateManager.getAllRaidsMistakeManager();
+        int records = currentRaid.getTrackingInfo().size() + allRaids.getTrackingInfo().size();
+        int capacity = Math.max(INITIAL_CAPACITY, records * 2);
+
+        Path tempFile = path.resolveSibling(path.getFileName() + TEMP_FILE_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.wrap(newHeader(capacity));
+            header.putInt(TRACKED_RAIDS_OFFSET, currentRaid.getTrackedRaids());
+            header.putInt(TRACKED_RAIDS_OFFSET + 4, allRaids.getTrackedRaids());
+            writeFully(channel, 0, header);
+
+            int record = 0;
+            ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_SIZE);
+            int[] counts = new int[MISTAKES.length];
+            for (int slot = CURRENT_RAID; slot <= ALL_RAIDS; slot++) {
+                MistakeManager mistakeManager = slot == CURRENT_RAID ? currentRaid : allRaids;
+                for (PlayerTrackingInfo playerInfo : mistakeManager.getTrackingInfo()) {
+                    if (playerInfo.getPlayerName().length() > MAX_NAME_LENGTH || record == capacity) continue;
+
+                    Arrays.fill(recordBuffer.array(), (byte) 0);
+                    playerInfo.copyMistakeCounts(counts);
+                    writeRecord(recordBuffer, 0, slot, playerInfo.getPlayerName(), playerInfo.getRaidCount(), counts);
+                    recordBuffer.clear();
+                    writeFully(channel, recordOffset(record++, RECORD_SIZE), recordBuffer);
+                }
+            }
+
+            // Extend the file to its full capacity, leaving every other record free
+            writeFully(channel, fileSize(capacity, RECORD_SIZE) - 1, ByteBuffer.allocate(1));
+
+            // Only mark it active once everything is on disk, so a torn file is never read
+            channel.force(true);
+            writeFully(channel, STATUS_OFFSET, ByteBuffer.wrap(new byte[]{ACTIVE}));
+            channel.force(true);
+        }
+
+        MistakeStateWriter.moveAtomically(tempFile, path);
+        MappedCounterStore counterStore = open(path);
+        if (counterStore == null) {
+            throw new IOException("Unable to open the mistake counters that were just written to " + path);
+        }
+        return counterStore;
+    }
+
+    /**
+     * Mark the counters as retired, after they've been imported into a snapshot, so they're never read again
+     *
+     * @param path The counters file
+     * @throws IOException If the file can't be written
+     */
+    static void retire(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (channel.size() >= HEADER_SIZE) {
+                writeFully(channel, STATUS_OFFSET, ByteBuffer.wrap(new byte[]{RETIRED}));
+                channel.force(true);
+            }
+        }
+    }
+
+    /**
+     * @return False once the store is closed, after which it's no longer written to
+     */
+    synchronized boolean isOpen() {
+        return isOpen;
+    }
+
+    /**
+     * Stop writing to the store. The mapping itself is released once it's garbage collected.
+     */
+    synchronized void close() {
+        if (!isOpen) return;
+
+        isOpen = false;
+        force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error("Unable to close the mistake counters", e);
+        }
+    }
+
+    /**
+     * Write all changes to disk. This doesn't take the lock, so it never blocks the client thread.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * @return The counters read into a new state
+     */
+    synchronized MistakeStateManager readState() {
+        return readState(buffer.duplicate(), MISTAKES, capacity, RECORD_SIZE);
+    }
+
+    /**
+     * Write the count of one mistake for the player, or the whole player if they don't have a record yet
+     */
+    synchronized void putMistakeCount(int slot, PlayerTrackingInfo playerInfo, ToaMistake mistake) throws IOException {
+        Integer record = getRecords(slot).get(playerInfo.getPlayerName());
+        if (record == null) {
+            putPlayer(slot, playerInfo);
+            return;
+        }
+
+        buffer.putInt(recordOffset(record, RECORD_SIZE) + COUNTS_OFFSET + mistake.ordinal() * 4,
+                playerInfo.getMistakeCount(mistake));
+    }
+
+    /**
+     * Write the whole player, allocating a record if they don't have one yet
+     */
+    synchronized void putPlayer(int slot, PlayerTrackingInfo playerInfo) throws IOException {
+        String playerName = playerInfo.getPlayerName();
+        if (playerName.length() > MAX_NAME_LENGTH) {
+            log.warn("Not storing counters for a player name longer than {} characters", MAX_NAME_LENGTH);
+            return;
+        }
+
+        Map<String, Integer> records = getRecords(slot);
+        Integer record = records.get(playerName);
+        if (record == null) {
+            record = allocateRecord();
+            records.put(playerName, record);
+        }
+
+        int[] counts = new int[MISTAKES.length];
+        playerInfo.copyMistakeCounts(counts);
+        writeRecord(buffer, recordOffset(record, RECORD_SIZE), slot, playerName, playerInfo.getRaidCount(), counts);
+    }
+
+    synchronized void removePlayer(int slot, String playerName) {
+        Integer record = getRecords(slot).remove(playerName);
+        if (record != null) {
+            freeRecord(record);
+        }
+    }
+
+    /**
+     * Free every record of the manager, and reset its tracked raids
+     */
+    synchronized void clear(int slot) {
+        Map<String, Integer> records = getRecords(slot);
+        for (int record : records.values()) {
+            freeRecord(record);
+        }
+        records.clear();
+        putTrackedRaids(slot, 0);
+    }
+
+    synchronized void putTrackedRaids(int slot, int trackedRaids) {
+        buffer.putInt(TRACKED_RAIDS_OFFSET + (slot - CURRENT_RAID) * 4, trackedRaids);
+    }
+
+    /**
+     * Replace everything in the store with the given state, e.g. after changes made while loading were replayed
+     */
+    synchronized void putState(MistakeStateManager mistakeStateManager) throws IOException {
+        for (int slot = CURRENT_RAID; slot <= ALL_RAIDS; slot++) {
+            MistakeManager mistakeManager = slot == CURRENT_RAID ?
+                    mistakeStateManager.getCurrentRaidMistakeManager() :
+                    mistakeStateManager.getAllRaidsMistakeManager();
+            clear(slot);
+            for (PlayerTrackingInfo playerInfo : mistakeManager.getTrackingInfo()) {
+                putPlayer(slot, playerInfo);
+            }
+            putTrackedRaids(slot, mistakeManager.getTrackedRaids());
+        }
+    }
+
+    private Map<String, Integer> getRecords(int slot) {
+        return slot == CURRENT_RAID ? currentRaidRecords : allRaidsRecords;
+    }
+
+    private void buildIndex() {
+        freeRecords = new int[capacity];
+        for (int record = capacity - 1; record >= 0; record--) {
+            int offset = recordOffset(record, RECORD_SIZE);
+            int slot = buffer.get(offset + slotOffset(MISTAKES.length));
+            String playerName = slot == FREE ? null : readName(buffer, offset, MISTAKES.length);
+            if (playerName != null && (slot == CURRENT_RAID || slot == ALL_RAIDS)) {
+                getRecords(slot).put(playerName, record);
+            } else {
+                freeRecords[freeCount++] = record;
+            }
+        }
+    }
+
+    private int allocateRecord() throws IOException {
+        if (freeCount == 0) {
+            grow();
+        }
+        return freeRecords[--freeCount];
+    }
+
+    private void freeRecord(int record) {
+        buffer.put(recordOffset(record, RECORD_SIZE) + slotOffset(MISTAKES.length), (byte) FREE);
+        if (freeCount == freeRecords.length) {
+            freeRecords = Arrays.copyOf(freeRecords, Math.max(16, freeCount * 2));
+        }
+        freeRecords[freeCount++] = record;
+    }
+
+    private void grow() throws IOException {
+        int newCapacity = capacity * 2;
+        buffer.force();
+
+        // Mapping past the end extends the file, and the new records are all zero, i.e. free
+        MappedByteBuffer newBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                fileSize(newCapacity, RECORD_SIZE));
+        newBuffer.putInt(CAPACITY_OFFSET, newCapacity);
+
+        if (freeRecords.length < newCapacity - capacity) {
+            freeRecords = Arrays.copyOf(freeRecords, newCapacity - capacity);
+        }
+        for (int record = newCapacity - 1; record >= capacity; record--) {
+            freeRecords[freeCount++] = record;
+        }
+        log.debug("Grew mistake counters from {} to {} records", capacity, newCapacity);
+
+        capacity = newCapacity;
+        buffer = newBuffer;
+    }
+
+    private static MistakeStateManager readState(ByteBuffer bytes, ToaMistake[] mistakes, int capacity,
+                                                 int recordSize) {
+        MistakeStateManager mistakeStateManager = new MistakeStateManager(null);
+        mistakeStateManager.getCurrentRaidMistakeManager().setTrackedRaids(bytes.getInt(TRACKED_RAIDS_OFFSET));
+        mistakeStateManager.getAllRaidsMistakeManager().setTrackedRaids(bytes.getInt(TRACKED_RAIDS_OFFSET + 4));
+
+        for (int record = 0; record < capacity; record++) {
+            int offset = recordOffset(record, recordSize);
+            int slot = bytes.get(offset + slotOffset(mistakes.length));
+            if (slot != CURRENT_RAID && slot != ALL_RAIDS) continue;
+
+            String playerName = readName(bytes, offset, mistakes.length);
+            if (playerName == null) {
+                log.warn("Skipping corrupted mistake counters record {}", record);
+                continue;
+            }
+
+            int[] counts = null; // Only allocated if the player has any mistakes
+            for (int i = 0; i < mistakes.length; i++) {
+                int count = bytes.getInt(offset + COUNTS_OFFSET + i * 4);
+                if (mistakes[i] != null && count > 0) {
+                    if (counts == null) {
+                        counts = new int[MISTAKES.length];
+                    }
+                    counts[mistakes[i].ordinal()] += count;
+                }
+            }
+
+            MistakeManager mistakeManager = slot == CURRENT_RAID ?
+                    mistakeStateManager.getCurrentRaidMistakeManager() :
+                    mistakeStateManager.getAllRaidsMistakeManager();
+            mistakeManager.putTrackingInfo(new PlayerTrackingInfo(playerName, counts,
+                    bytes.getInt(offset + RAID_COUNT_OFFSET)));
+        }
+
+        mistakeStateManager.rebuildAggregates();
+        return mistakeStateManager;
+    }
+
+    /**
+     * @return The mistakes the counters were written for, null where a mistake no longer exists, or null if the header
+     * isn't for active counters
+     */
+    private static ToaMistake[] readHeader(ByteBuffer header) throws IOException {
+        if (header.getInt(0) != MAGIC || header.get(4) != VERSION || header.get(STATUS_OFFSET) != ACTIVE) {
+            return null;
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(header.array(),
+                header.arrayOffset() + MISTAKE_NAMES_OFFSET, HEADER_SIZE - MISTAKE_NAMES_OFFSET));
+        ToaMistake[] mistakes = new ToaMistake[in.readUnsignedShort()];
+        for (int i = 0; i < mistakes.length; i++) {
+            mistakes[i] = toMistake(in.readUTF());
+        }
+        return mistakes;
+    }
+
+    private static byte[] newHeader(int capacity) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(CREATING);
+        out.writeInt(capacity);
+        out.writeInt(0); // current raid tracked raids
+        out.writeInt(0); // all raids tracked raids
+        out.writeShort(MISTAKES.length);
+        for (ToaMistake mistake : MISTAKES) {
+            out.writeUTF(mistake.name());
+        }
+        if (bytes.size() > HEADER_SIZE) {
+            throw new IOException("Mistake names don't fit in the mistake counters header");
+        }
+        return Arrays.copyOf(bytes.toByteArray(), HEADER_SIZE);
+    }
+
+    private static void writeRecord(ByteBuffer bytes, int offset, int slot, String playerName, int raidCount,
+                                    int[] counts) {
+        bytes.putInt(offset + NAME_HASH_OFFSET, playerName.hashCode());
+        bytes.putInt(offset + RAID_COUNT_OFFSET, raidCount);
+        for (int i = 0; i < counts.length; i++) {
+            bytes.putInt(offset + COUNTS_OFFSET + i * 4, counts[i]);
+        }
+
+        int slotOffset = offset + slotOffset(counts.length);
+        bytes.put(slotOffset + 1, (byte) playerName.length());
+        for (int i = 0; i < playerName.length(); i++) {
+            bytes.putChar(slotOffset + 2 + i * 2, playerName.charAt(i));
+        }
+        // Write the slot last, so the record is only in use once the rest of it is written
+        bytes.put(slotOffset, (byte) slot);
+    }
+
+    /**
+     * @return The player name, or null if the record doesn't match its name hash
+     */
+    private static String readName(ByteBuffer bytes, int offset, int mistakeCount) {
+        int slotOffset = offset + slotOffset(mistakeCount);
+        int nameLength = bytes.get(slotOffset + 1);
+        if (nameLength <= 0 || nameLength > MAX_NAME_LENGTH) return null;
+
+        char[] name = new char[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            name[i] = bytes.getChar(slotOffset + 2 + i * 2);
+        }
+        String playerName = new String(name);
+        return playerName.hashCode() == bytes.getInt(offset + NAME_HASH_OFFSET) ? playerName : null;
+    }
+
+    private static int slotOffset(int mistakeCount) {
+        return COUNTS_OFFSET + mistakeCount * 4;
+    }
+
+    private static int recordSize(int mistakeCount) {
+        int size = slotOffset(mistakeCount) + 2 + MAX_NAME_LENGTH * 2;
+        return (size + 3) & ~3;
+    }
+
+    private static int recordOffset(int record, int recordSize) {
+        return HEADER_SIZE + record * recordSize;
+    }
+
+    private static long fileSize(int capacity, int recordSize) {
+        return HEADER_SIZE + (long) capacity * recordSize;
+    }
+
+    private static void writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.ToaMistake;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.toMistake;
+
+/**
+ * Append-only log of every change to the mistake state since the last snapshot. Each change is one small record, so
+ * persisting a mistake costs a few bytes instead of rewriting the whole state. The {@link MistakeStateWriter} folds the
+ * journal into a new snapshot once it grows past a threshold.
+ * <p>
+ * The journal starts with a header naming the snapshot it applies on top of. If a compaction is interrupted after the
+ * new snapshot was written but before the journal was restarted, the old journal no longer matches the snapshot and is
+ * skipped instead of being applied twice.
+ * <p>
+ * Format: {@code int MAGIC, byte VERSION, long snapshotId}, followed by records of {@code byte type} and the type's
+ * fields. Strings are modified UTF-8, as written by {@link DataOutputStream#writeUTF(String)}.
+ */
+@Slf4j
+class MistakeJournal {
+
+    private static final int MAGIC = 0x544F414A; // "TOAJ"
+    private static final byte VERSION = 1;
+
+    private static final byte ADD_MISTAKE = 1; // playerName, mistake name
+    private static final byte NEW_RAID = 2; // short count, playerNames
+    private static final byte REMOVE_ALL_MISTAKES_FOR_PLAYER = 3; // playerName
+    private static final byte RESET_ALL = 4;
+
+    /**
+     * A single change to the mistake state, written to the journal on the writer thread
+     */
+    @FunctionalInterface
+    interface Record {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    static Record addMistake(@NonNull String playerName, @NonNull ToaMistake mistake) {
+        return out -> {
+            out.writeByte(ADD_MISTAKE);
+            out.writeUTF(playerName);
+            out.writeUTF(mistake.name());
+        };
+    }
+
+    static Record newRaid(@NonNull Set<String> playerNames) {
+        // Copy, since the record is written later on the writer thread
+        final List<String> names = new ArrayList<>(playerNames);
+        return out -> {
+            out.writeByte(NEW_RAID);
+            out.writeShort(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+        };
+    }
+
+    static Record removeAllMistakesForPlayer(@NonNull String playerName) {
+        return out -> {
+            out.writeByte(REMOVE_ALL_MISTAKES_FOR_PLAYER);
+            out.writeUTF(playerName);
+        };
+    }
+
+    static Record resetAll() {
+        return out -> out.writeByte(RESET_ALL);
+    }
+
+    static void writeHeader(DataOutputStream out, long snapshotId) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(snapshotId);
+    }
+
+    /**
+     * Replay the journal onto the given state, if the journal applies on top of the given snapshot. A torn record at
+     * the end, e.g. from the client being killed mid-write, ends the replay.
+     *
+     * @param journalPath The journal file
+     * @param snapshotId  The id of the snapshot the state was read from
+     * @param into        The state to apply the records to
+     * @return The number of records replayed
+     * @throws IOException If the journal can't be read
+     */
+    static int replay(Path journalPath, long snapshotId, MistakeStateManager into) throws IOException {
+        if (!Files.exists(journalPath)) return 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalPath)))) {
+            try {
+                if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                    log.warn("Ignoring unrecognized mistake journal " + journalPath);
+                    return 0;
+                }
+                if (in.readLong() != snapshotId) {
+                    // Already folded into the snapshot by a compaction that didn't get to restart the journal
+                    log.debug("Ignoring mistake journal for another snapshot");
+                    return 0;
+                }
+            } catch (EOFException e) {
+                return 0;
+            }
+
+            return replayRecords(in, into);
+        }
+    }
+
+    /**
+     * Replay records that haven't been written to the journal yet onto the given state, exactly as they would be
+     * replayed from the journal
+     *
+     * @param records The records, in the order they were made
+     * @param into    The state to apply the records to
+     * @throws IOException If the records can't be written or read back
+     */
+    static void replay(List<Record> records, MistakeStateManager into) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Record record : records) {
+                record.writeTo(out);
+            }
+        }
+
+        replayRecords(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), into);
+    }
+
+    private static int replayRecords(DataInputStream in, MistakeStateManager into) throws IOException {
+        int records = 0;
+        for (int type = in.read(); type != -1; type = in.read()) {
+            try {
+                if (!replayRecord(type, in, into)) {
+                    log.warn("Unknown record type {} in mistake journal, ignoring the rest", type);
+                    break;
+                }
+            } catch (EOFException e) {
+                log.warn("Ignoring torn record at the end of the mistake journal");
+                break;
+            }
+            records++;
+        }
+        return records;
+    }
+
+    private static boolean replayRecord(int type, DataInputStream in, MistakeStateManager into) throws IOException {
+        switch (type) {
+            case ADD_MISTAKE:
+                String playerName = in.readUTF();
+                String mistakeName = in.readUTF();
+                ToaMistake mistake = toMistake(mistakeName);
+                if (mistake != null) {
+                    into.applyMistake(playerName, mistake);
+                } else {
+                    log.debug("Skipping unknown mistake {}", mistakeName);
+                }
+                return true;
+            case NEW_RAID:
+                int count = in.readUnsignedShort();
+                Set<String> playerNames = new HashSet<>(count);
+                for (int i = 0; i < count; i++) {
+                    playerNames.add(in.readUTF());
+                }
+                into.applyNewRaid(playerNames);
+                return true;
+            case REMOVE_ALL_MISTAKES_FOR_PLAYER:
+                into.applyRemoveAllMistakesForPlayer(in.readUTF());
+                return true;
+            case RESET_ALL:
+                into.applyResetAll();
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -2,94 +2,165 @@ package com.toamistaketracker.mistakestate;
 
 import com.toamistaketracker.ToaMistake;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Keeps track of mistakes for players
+ * <p>
+ * Players are kept in a concurrent map with lock-free counters, since mistakes are added on the client thread as
+ * they're detected while the EDT reads the counts to render the panel.
+ * <p>
+ * The aggregates the panel shows (the players with mistakes and the total mistake count) are kept up to date on every
+ * add, remove and reset, so reading them never has to scan every tracked player. They aren't persisted, and are
+ * rebuilt with {@link #rebuildAggregates()} after the state is read from disk.
+ * <p>
+ * Every write is synchronized, since the client thread adds mistakes while the EDT removes players and resets, and a
+ * player and the aggregates have to change together. Reads never lock.
  */
 class MistakeManager {
 
-    private final Map<String, PlayerTrackingInfo> trackingInfo;
-    private int trackedRaids;
+    private final ConcurrentMap<String, PlayerTrackingInfo> trackingInfo;
+    private volatile int trackedRaids;
+
+    private final transient Set<String> playersWithMistakes;
+    private final transient AtomicInteger totalMistakes;
 
     MistakeManager() {
-        trackingInfo = new HashMap<>();
+        trackingInfo = new ConcurrentHashMap<>();
         trackedRaids = 0;
+        playersWithMistakes = ConcurrentHashMap.newKeySet();
+        totalMistakes = new AtomicInteger();
+    }
+
+    /**
+     * Recompute the aggregates from the tracked players, e.g. after they've been read from disk
+     */
+    synchronized void rebuildAggregates() {
+        playersWithMistakes.clear();
+        int total = 0;
+        for (PlayerTrackingInfo playerInfo : trackingInfo.values()) {
+            if (playerInfo.hasMistakes()) {
+                playersWithMistakes.add(playerInfo.getPlayerName());
+                total += playerInfo.getTotalMistakeCount();
+            }
+        }
+        totalMistakes.set(total);
+    }
+
+    /**
+     * @return A read-only live view of all tracked players, for writing them to disk
+     */
+    Collection<PlayerTrackingInfo> getTrackingInfo() {
+        return Collections.unmodifiableCollection(trackingInfo.values());
     }
 
-    public void clearAllMistakes() {
+    /**
+     * @return The tracked player, or null if they aren't tracked
+     */
+    PlayerTrackingInfo getTrackingInfo(String playerName) {
+        return trackingInfo.get(playerName);
+    }
+
+    /**
+     * Put a tracked player read from disk, without updating the aggregates
+     */
+    void putTrackingInfo(PlayerTrackingInfo playerInfo) {
+        trackingInfo.put(playerInfo.getPlayerName(), playerInfo);
+    }
+
+    void setTrackedRaids(int trackedRaids) {
+        this.trackedRaids = trackedRaids;
+    }
+
+    public synchronized void clearAllMistakes() {
         trackingInfo.clear();
         trackedRaids = 0;
+        playersWithMistakes.clear();
+        totalMistakes.set(0);
     }
 
-    public void addMistakeForPlayer(String playerName, ToaMistake mistake) {
-        PlayerTrackingInfo playerInfo = trackingInfo.computeIfAbsent(playerName,
-                k -> new PlayerTrackingInfo(playerName));
-        playerInfo.incrementMistake(mistake);
+    public synchronized int addMistakeForPlayer(String playerName, ToaMistake mistake) {
+        PlayerTrackingInfo playerInfo = trackingInfo.computeIfAbsent(playerName, PlayerTrackingInfo::new);
+        int count = playerInfo.incrementMistake(mistake);
+        totalMistakes.incrementAndGet();
+        playersWithMistakes.add(playerName);
+        return count;
     }
 
-    public void newRaid(Set<String> playerNames) {
+    public synchronized void newRaid(Set<String> playerNames) {
         // TODO: Small bug where if plugin is installed mid-raid (or mistakes reset), then player raids gets 1 but
         // total tracked raids is still 0
         trackedRaids++;
 
         for (String playerName : playerNames) {
-            PlayerTrackingInfo playerInfo = trackingInfo.get(playerName);
+            PlayerTrackingInfo playerInfo = trackingInfo.putIfAbsent(playerName, new PlayerTrackingInfo(playerName));
             if (playerInfo != null) {
                 playerInfo.incrementRaidCount();
-            } else {
-                trackingInfo.put(playerName, new PlayerTrackingInfo(playerName));
             }
         }
     }
 
-    public void removeAllMistakesForPlayer(String playerName) {
-        trackingInfo.remove(playerName);
+    public synchronized void removeAllMistakesForPlayer(String playerName) {
+        PlayerTrackingInfo playerInfo = trackingInfo.remove(playerName);
+        if (playerInfo != null) {
+            playersWithMistakes.remove(playerName);
+            totalMistakes.addAndGet(-playerInfo.getTotalMistakeCount());
+        }
     }
 
+    /**
+     * @return A read-only live view of the names of the players with at least one mistake
+     */
     public Set<String> getPlayersWithMistakes() {
-        return trackingInfo.values().stream()
-                .filter(PlayerTrackingInfo::hasMistakes)
-                .map(PlayerTrackingInfo::getPlayerName)
-                .collect(Collectors.toSet());
+        return Collections.unmodifiableSet(playersWithMistakes);
+    }
+
+    public int getPlayersWithMistakesCount() {
+        return playersWithMistakes.size();
     }
 
     public int getMistakeCountForPlayer(String playerName, ToaMistake mistake) {
         PlayerTrackingInfo playerInfo = trackingInfo.get(playerName);
         if (playerInfo != null) {
-            Integer count = playerInfo.getMistakes().get(mistake);
-            if (count != null) {
-                return count;
-            }
+            return playerInfo.getMistakeCount(mistake);
         }
 
         return 0;
     }
 
+    /**
+     * Copy all mistake counts for the specified player into the given array, indexed by {@link ToaMistake#ordinal()}
+     *
+     * @param playerName The player name
+     * @param into       The array to copy into, of at least {@link ToaMistake#values()} length
+     */
+    public void copyMistakeCountsForPlayer(String playerName, int[] into) {
+        PlayerTrackingInfo playerInfo = trackingInfo.get(playerName);
+        if (playerInfo != null) {
+            playerInfo.copyMistakeCounts(into);
+        } else {
+            Arrays.fill(into, 0);
+        }
+    }
+
     public int getTotalMistakeCountForPlayer(String playerName) {
-        int totalMistakes = 0;
         PlayerTrackingInfo playerInfo = trackingInfo.get(playerName);
         if (playerInfo != null) {
-            for (int mistakes : playerInfo.getMistakes().values()) {
-                totalMistakes += mistakes;
-            }
+            return playerInfo.getTotalMistakeCount();
         }
-        return totalMistakes;
+
+        return 0;
     }
 
     public int getTotalMistakeCountForAllPlayers() {
         // TODO: Fix bug where room death and raid death count as 2 distinct mistakes, but they're the same.
-        int totalMistakes = 0;
-        for (PlayerTrackingInfo playerInfo : trackingInfo.values()) {
-            for (int mistakes : playerInfo.getMistakes().values()) {
-                totalMistakes += mistakes;
-            }
-        }
-
-        return totalMistakes;
+        return totalMistakes.get();
     }
 
     public int getRaidCountForPlayer(String playerName) {
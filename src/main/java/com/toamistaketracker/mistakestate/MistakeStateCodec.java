@@ -0,0 +1,231 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.ToaMistake;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.toMistake;
+
+/**
+ * Compact binary format for the mistake state snapshot.
+ * <p>
+ * Each player name is written once to a string table, and mistake counts are varints keyed by the mistake's index in a
+ * persisted name table, so reordering or removing {@link ToaMistake} values never misattributes counts. A CRC over the
+ * whole file catches torn or corrupted snapshots.
+ * <p>
+ * Format, where varints are unsigned LEB128:
+ * <pre>
+ * int MAGIC, byte VERSION, long snapshotId
+ * varint mistakeNameCount, UTF mistakeNames...
+ * varint playerNameCount, UTF playerNames...
+ * currentRaid manager, allRaids manager, each as:
+ *     varint trackedRaids, varint playerCount, players... as:
+ *         varint playerNameIndex, varint raidCount, varint countCount, (varint mistakeNameIndex, varint count)...
+ * int CRC32 of everything before it
+ * </pre>
+ */
+@Slf4j
+class MistakeStateCodec {
+
+    private static final int MAGIC = 0x544F4153; // "TOAS"
+    private static final byte VERSION = 1;
+    private static final int CRC_SIZE = 4;
+
+    private static final ToaMistake[] MISTAKES = ToaMistake.values();
+
+    static void write(MistakeStateManager mistakeStateManager, OutputStream outputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(mistakeStateManager.getSnapshotId());
+
+        // The mistake name table is just the current ordinals
+        writeVarInt(out, MISTAKES.length);
+        for (ToaMistake mistake : MISTAKES) {
+            out.writeUTF(mistake.name());
+        }
+
+        // Snapshot both managers first, so the string table and the records agree even if players are being added
+        List<PlayerTrackingInfo> currentRaid = new ArrayList<>(
+                mistakeStateManager.getCurrentRaidMistakeManager().getTrackingInfo());
+        List<PlayerTrackingInfo> allRaids = new ArrayList<>(
+                mistakeStateManager.getAllRaidsMistakeManager().getTrackingInfo());
+
+        Map<String, Integer> playerNameIndexes = new HashMap<>();
+        List<String> playerNames = new ArrayList<>();
+        addPlayerNames(currentRaid, playerNameIndexes, playerNames);
+        addPlayerNames(allRaids, playerNameIndexes, playerNames);
+        writeVarInt(out, playerNames.size());
+        for (String playerName : playerNames) {
+            out.writeUTF(playerName);
+        }
+
+        writeManager(out, mistakeStateManager.getCurrentRaidMistakeManager(), currentRaid, playerNameIndexes);
+        writeManager(out, mistakeStateManager.getAllRaidsMistakeManager(), allRaids, playerNameIndexes);
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+
+        bytes.writeTo(outputStream);
+    }
+
+    /**
+     * Read a snapshot written by {@link #write(MistakeStateManager, OutputStream)}
+     *
+     * @param data The whole file
+     * @return The state, without a writer set
+     * @throws IOException If the data is not a valid snapshot, e.g. it's truncated or fails the CRC
+     */
+    static MistakeStateManager read(byte[] data) throws IOException {
+        if (data.length < CRC_SIZE) {
+            throw new IOException("Mistake state is truncated");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - CRC_SIZE);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        in.skipBytes(data.length - CRC_SIZE);
+        if (in.readInt() != (int) crc.getValue()) {
+            throw new IOException("Mistake state failed the CRC check");
+        }
+
+        in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - CRC_SIZE));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a mistake state file");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported mistake state version " + version);
+        }
+
+        MistakeStateManager mistakeStateManager = new MistakeStateManager(null);
+        mistakeStateManager.setSnapshotId(in.readLong());
+
+        // Map the persisted mistake names to the current enum, skipping any that no longer exist
+        ToaMistake[] mistakes = new ToaMistake[readVarInt(in)];
+        for (int i = 0; i < mistakes.length; i++) {
+            String mistakeName = in.readUTF();
+            mistakes[i] = toMistake(mistakeName);
+            if (mistakes[i] == null) {
+                log.debug("Skipping unknown mistake {}", mistakeName);
+            }
+        }
+
+        String[] playerNames = new String[readVarInt(in)];
+        for (int i = 0; i < playerNames.length; i++) {
+            playerNames[i] = in.readUTF();
+        }
+
+        readManager(in, mistakeStateManager.getCurrentRaidMistakeManager(), mistakes, playerNames);
+        readManager(in, mistakeStateManager.getAllRaidsMistakeManager(), mistakes, playerNames);
+
+        mistakeStateManager.rebuildAggregates();
+        return mistakeStateManager;
+    }
+
+    private static void addPlayerNames(List<PlayerTrackingInfo> playerInfos, Map<String, Integer> playerNameIndexes,
+                                       List<String> playerNames) {
+        for (PlayerTrackingInfo playerInfo : playerInfos) {
+            if (playerNameIndexes.putIfAbsent(playerInfo.getPlayerName(), playerNames.size()) == null) {
+                playerNames.add(playerInfo.getPlayerName());
+            }
+        }
+    }
+
+    private static void writeManager(DataOutputStream out, MistakeManager mistakeManager,
+                                     List<PlayerTrackingInfo> playerInfos, Map<String, Integer> playerNameIndexes)
+            throws IOException {
+        writeVarInt(out, mistakeManager.getTrackedRaids());
+        writeVarInt(out, playerInfos.size());
+
+        int[] counts = new int[MISTAKES.length];
+        for (PlayerTrackingInfo playerInfo : playerInfos) {
+            writeVarInt(out, playerNameIndexes.get(playerInfo.getPlayerName()));
+            writeVarInt(out, playerInfo.getRaidCount());
+
+            playerInfo.copyMistakeCounts(counts);
+            int countCount = 0;
+            for (int count : counts) {
+                if (count > 0) {
+                    countCount++;
+                }
+            }
+            writeVarInt(out, countCount);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    writeVarInt(out, i);
+                    writeVarInt(out, counts[i]);
+                }
+            }
+        }
+    }
+
+    private static void readManager(DataInputStream in, MistakeManager mistakeManager, ToaMistake[] mistakes,
+                                    String[] playerNames) throws IOException {
+        mistakeManager.setTrackedRaids(readVarInt(in));
+
+        int playerCount = readVarInt(in);
+        for (int i = 0; i < playerCount; i++) {
+            String playerName = playerNames[checkIndex(readVarInt(in), playerNames.length)];
+            int raidCount = readVarInt(in);
+
+            int[] counts = null; // Only allocated if the player has any mistakes
+            int countCount = readVarInt(in);
+            for (int j = 0; j < countCount; j++) {
+                ToaMistake mistake = mistakes[checkIndex(readVarInt(in), mistakes.length)];
+                int count = readVarInt(in);
+                if (mistake != null && count > 0) {
+                    if (counts == null) {
+                        counts = new int[MISTAKES.length];
+                    }
+                    counts[mistake.ordinal()] += count;
+                }
+            }
+
+            mistakeManager.putTrackingInfo(new PlayerTrackingInfo(playerName, counts, raidCount));
+        }
+    }
+
+    private static int checkIndex(int index, int size) throws IOException {
+        if (index < 0 || index >= size) {
+            throw new IOException("Index " + index + " out of bounds for table of size " + size);
+        }
+        return index;
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
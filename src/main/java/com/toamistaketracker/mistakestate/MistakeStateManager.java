@@ -1,28 +1,79 @@
 package com.toamistaketracker.mistakestate;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
 import com.toamistaketracker.ToaMistake;
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import net.runelite.http.api.RuneLiteAPI;
 
 import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
+
+import static com.toamistaketracker.mistakestate.MappedCounterStore.ALL_RAIDS;
+import static com.toamistaketracker.mistakestate.MappedCounterStore.CURRENT_RAID;
 
 /**
  * In charge of the different MistakeManagers, and knowing which one is the currently viewed one.
  * <p>
- * For now, these are very small and writes are relatively infrequent, so let's write to disk for every write API.
+ * Every write API appends a record to the {@link MistakeJournal} through the {@link MistakeStateWriter}, which writes
+ * them on a background thread and coalesces the flushes to disk. Recording mistakes happens on the client thread as
+ * they're detected, and those are flushed at most once per tick when the tick's {@link TickMistakeBatch} is committed
+ * on the EDT. Raid boundaries and resets are flushed right away.
+ * <p>
+ * The package-private {@code apply} methods only change the state in memory, and are used to replay the journal.
+ * <p>
+ * When the state is read in the background by {@link MistakeStateReader#readInBackground(Runnable)}, it starts out
+ * empty and still loading. Changes made until the load completes are applied right away and buffered, and are replayed
+ * on top of the loaded state once it's swapped in, so nothing recorded during startup is lost.
+ * <p>
+ * With the {@link MappedCounterStore} backend, each change is mirrored into the memory-mapped counters instead of
+ * being appended to the journal.
  */
 @Slf4j
 @Singleton
 public class MistakeStateManager {
 
-    private final MistakeManager currentRaidMistakeManager;
-    private final MistakeManager allRaidsMistakeManager;
+    // Only replaced once, when a background load completes
+    @Getter(AccessLevel.PACKAGE)
+    private volatile MistakeManager currentRaidMistakeManager;
+    @Getter(AccessLevel.PACKAGE)
+    private volatile MistakeManager allRaidsMistakeManager;
+
+    // Identifies this snapshot, so that only the journal written on top of it gets replayed. Only the binary snapshot
+    // has it, not the JSON.
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    private transient long snapshotId;
 
     private transient boolean isAll;
     @Setter
     private transient MistakeStateWriter mistakeStateWriter;
 
+    // Changes made while the state is loading in the background, guarded by this. Null once the state is loaded.
+    private transient volatile List<MistakeJournal.Record> pendingRecords;
+
+    // Metrics for the per-tick batches, for debugging. These aren't persisted.
+    @Getter
+    private transient int batchCount;
+    @Getter
+    private transient int batchedMistakeCount;
+    @Getter
+    private transient int largestBatchSize;
+
+    private static final Gson GSON = RuneLiteAPI.GSON;
+
     public MistakeStateManager(MistakeStateWriter mistakeStateWriter) {
         this.currentRaidMistakeManager = new MistakeManager();
         this.allRaidsMistakeManager = new MistakeManager();
@@ -31,39 +82,202 @@ public class MistakeStateManager {
         this.isAll = false;
     }
 
+    /**
+     * Record a mistake for the specified player, and queue its journal record without flushing it to disk. This is
+     * safe to call from the client thread while the EDT reads the counts, or removes and resets them.
+     *
+     * @param playerName The player name
+     * @param mistake    The mistake
+     */
     public void addMistakeForPlayer(String playerName, ToaMistake mistake) {
+        change(MistakeJournal.addMistake(playerName, mistake), () -> applyMistake(playerName, mistake), counters -> {
+            counters.putMistakeCount(CURRENT_RAID, currentRaidMistakeManager.getTrackingInfo(playerName), mistake);
+            counters.putMistakeCount(ALL_RAIDS, allRaidsMistakeManager.getTrackingInfo(playerName), mistake);
+        });
+    }
+
+    /**
+     * Commit all mistakes recorded on a tick, flushing the journal to disk at most once for the whole batch
+     *
+     * @param batch The mistakes recorded on the tick through {@link #addMistakeForPlayer(String, ToaMistake)}
+     */
+    public void commitMistakes(TickMistakeBatch batch) {
+        if (batch.isEmpty()) return;
+
+        mistakeStateWriter.scheduleFlush();
+
+        batchCount++;
+        batchedMistakeCount += batch.size();
+        largestBatchSize = Math.max(largestBatchSize, batch.size());
+        log.debug("Added batch of {} mistakes ({} batches, {} mistakes, largest {}, {} writes)", batch.size(),
+                batchCount, batchedMistakeCount, largestBatchSize, mistakeStateWriter.getWriteCount());
+    }
+
+    public void removeAllMistakesForPlayer(String playerName) {
+        change(MistakeJournal.removeAllMistakesForPlayer(playerName),
+                () -> applyRemoveAllMistakesForPlayer(playerName), counters -> {
+                    counters.removePlayer(CURRENT_RAID, playerName);
+                    counters.removePlayer(ALL_RAIDS, playerName);
+                });
+        mistakeStateWriter.flush();
+    }
+
+    public void resetAll() {
+        change(MistakeJournal.resetAll(), this::applyResetAll, counters -> {
+            counters.clear(CURRENT_RAID);
+            counters.clear(ALL_RAIDS);
+        });
+        mistakeStateWriter.flush();
+    }
+
+    public void newRaid(Set<String> playerNames) {
+        change(MistakeJournal.newRaid(playerNames), () -> applyNewRaid(playerNames), counters -> {
+            counters.clear(CURRENT_RAID);
+            for (String playerName : playerNames) {
+                counters.putPlayer(ALL_RAIDS, allRaidsMistakeManager.getTrackingInfo(playerName));
+            }
+            counters.putTrackedRaids(ALL_RAIDS, allRaidsMistakeManager.getTrackedRaids());
+        });
+        mistakeStateWriter.flush();
+    }
+
+    /**
+     * @return True if the state is still being read in the background, and only holds what was recorded since startup
+     */
+    public boolean isLoading() {
+        return pendingRecords != null;
+    }
+
+    /**
+     * Mark this (empty) state as loading, buffering every change until {@link #completeLoad(MistakeStateManager)}
+     */
+    synchronized void startLoading() {
+        pendingRecords = new ArrayList<>();
+    }
+
+    /**
+     * Swap in the state read from disk, with every change buffered since {@link #startLoading()} replayed on top of it,
+     * and append the buffered changes to the journal, or write them to the counters. This must be called on the writer
+     * thread.
+     *
+     * @param loaded The state read from disk
+     */
+    synchronized void completeLoad(MistakeStateManager loaded) {
+        List<MistakeJournal.Record> records = pendingRecords;
+        if (records == null) return;
+
+        try {
+            MistakeJournal.replay(records, loaded);
+        } catch (IOException e) {
+            // Only ever written to and read from memory
+            log.error("Unable to replay mistakes recorded while loading", e);
+        }
+
+        currentRaidMistakeManager = loaded.currentRaidMistakeManager;
+        allRaidsMistakeManager = loaded.allRaidsMistakeManager;
+        snapshotId = loaded.snapshotId;
+        pendingRecords = null;
+
+        MappedCounterStore counterStore = mistakeStateWriter.getCounterStore();
+        if (counterStore != null) {
+            try {
+                counterStore.putState(this);
+            } catch (IOException e) {
+                log.error("Unable to write mistakes recorded while loading to the mistake counters", e);
+                mistakeStateWriter.replaceSnapshot(this);
+            }
+        } else if (!records.isEmpty()) {
+            records.forEach(mistakeStateWriter::append);
+            mistakeStateWriter.flush();
+        }
+        log.debug("Loaded mistake state, with {} changes made while loading", records.size());
+    }
+
+    /**
+     * Apply a change in memory and append its record to the journal, as one step under the lock. Changes are made on
+     * both the client thread and the EDT, so otherwise e.g. a mistake applied before a reset could be appended after
+     * it, and come back on the next load. While loading, the change is buffered instead, under the same lock, so it's
+     * never applied to the state that's about to be swapped out without also being replayed.
+     * <p>
+     * With the counters backend, the change is applied and mirrored into the counters under the counters' lock, so
+     * the counters always match the state. If the counters can't be written, e.g. because they can't grow, the whole
+     * state is written to a new snapshot instead and the journal takes over.
+     */
+    private void change(MistakeJournal.Record record, Runnable apply, MappedCounterStore.Change mirror) {
+        if (pendingRecords != null) {
+            synchronized (this) {
+                if (pendingRecords != null) {
+                    apply.run();
+                    pendingRecords.add(record);
+                    return;
+                }
+            }
+        }
+
+        MappedCounterStore counterStore = mistakeStateWriter.getCounterStore();
+        if (counterStore != null) {
+            synchronized (counterStore) {
+                if (counterStore.isOpen()) {
+                    apply.run();
+                    try {
+                        mirror.applyTo(counterStore);
+                    } catch (IOException e) {
+                        log.error("Unable to write to the mistake counters, switching to the journal", e);
+                        mistakeStateWriter.replaceSnapshot(this);
+                    }
+                    return;
+                }
+            }
+        }
+
+        synchronized (this) {
+            apply.run();
+            mistakeStateWriter.append(record);
+        }
+    }
+
+    /**
+     * Export the state as JSON on the writer thread, after every change recorded so far
+     *
+     * @param onExported Called on the writer thread with the exported file, or null if it couldn't be written
+     */
+    public void exportJson(Consumer<Path> onExported) {
+        mistakeStateWriter.exportJson(this, onExported);
+    }
+
+    /**
+     * Flush everything to disk and wait for it to finish, including mistakes recorded on the client thread whose
+     * batch hasn't been committed yet. This is for shutting down.
+     */
+    public void flushAndWait() {
+        mistakeStateWriter.flushAndWait();
+    }
+
+    void applyMistake(String playerName, ToaMistake mistake) {
         // Always add to both
         currentRaidMistakeManager.addMistakeForPlayer(playerName, mistake);
         allRaidsMistakeManager.addMistakeForPlayer(playerName, mistake);
-
-        mistakeStateWriter.write(this);
     }
 
-    public void removeAllMistakesForPlayer(String playerName) {
+    void applyRemoveAllMistakesForPlayer(String playerName) {
         // Always remove from both
         currentRaidMistakeManager.removeAllMistakesForPlayer(playerName);
         allRaidsMistakeManager.removeAllMistakesForPlayer(playerName);
-
-        mistakeStateWriter.write(this);
     }
 
-    public void resetAll() {
+    void applyResetAll() {
         // Always clear from both
         currentRaidMistakeManager.clearAllMistakes();
         allRaidsMistakeManager.clearAllMistakes();
-
-        mistakeStateWriter.write(this);
     }
 
-    public void newRaid(Set<String> playerNames) {
+    void applyNewRaid(Set<String> playerNames) {
         // Clear just the current mistakes
         currentRaidMistakeManager.clearAllMistakes();
 
         // Denote to the manager that there's a new raid, incrementing the raid count for all players in this raid
         // Raid count for current raid isn't valid, so only do for all raids
         allRaidsMistakeManager.newRaid(playerNames);
-
-        mistakeStateWriter.write(this);
     }
 
     public Set<String> getPlayersWithMistakes() {
@@ -72,12 +286,33 @@ public class MistakeStateManager {
                 currentRaidMistakeManager.getPlayersWithMistakes();
     }
 
+    public int getPlayersWithMistakesCount() {
+        return isAll ?
+                allRaidsMistakeManager.getPlayersWithMistakesCount() :
+                currentRaidMistakeManager.getPlayersWithMistakesCount();
+    }
+
     public int getMistakeCountForPlayer(String playerName, ToaMistake mistake) {
         return isAll ?
                 allRaidsMistakeManager.getMistakeCountForPlayer(playerName, mistake) :
                 currentRaidMistakeManager.getMistakeCountForPlayer(playerName, mistake);
     }
 
+    /**
+     * Copy all mistake counts for the specified player in the current view into the given array, indexed by
+     * {@link ToaMistake#ordinal()}
+     *
+     * @param playerName The player name
+     * @param into       The array to copy into, of at least {@link ToaMistake#values()} length
+     */
+    public void copyMistakeCountsForPlayer(String playerName, int[] into) {
+        if (isAll) {
+            allRaidsMistakeManager.copyMistakeCountsForPlayer(playerName, into);
+        } else {
+            currentRaidMistakeManager.copyMistakeCountsForPlayer(playerName, into);
+        }
+    }
+
     public int getCurrentMistakeCountForPlayer(String playerName, ToaMistake mistake) {
         return currentRaidMistakeManager.getMistakeCountForPlayer(playerName, mistake);
     }
@@ -102,6 +337,46 @@ public class MistakeStateManager {
                 1; // Tracked raids for current raid is always just the 1 raid
     }
 
+    /**
+     * Recompute the running totals of both managers, which aren't persisted, after the state is read from disk
+     */
+    void rebuildAggregates() {
+        currentRaidMistakeManager.rebuildAggregates();
+        allRaidsMistakeManager.rebuildAggregates();
+    }
+
+    /**
+     * Write the state as JSON, in the same format as the legacy snapshot. Each player is written by the
+     * {@link PlayerTrackingInfoAdapter}.
+     *
+     * @param writer The writer
+     */
+    void writeJson(Writer writer) throws IOException {
+        try {
+            GSON.toJson(this, MistakeStateManager.class, writer);
+        } catch (JsonIOException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Read a state written by {@link #writeJson(Writer)}, or a legacy snapshot
+     *
+     * @param reader The reader
+     * @return The state, without a writer, or null if there was nothing to read
+     */
+    static MistakeStateManager readJson(Reader reader) throws IOException {
+        try (JsonReader jsonReader = new JsonReader(reader)) {
+            MistakeStateManager mistakeStateManager = GSON.fromJson(jsonReader, MistakeStateManager.class);
+            if (mistakeStateManager != null) {
+                mistakeStateManager.rebuildAggregates();
+            }
+            return mistakeStateManager;
+        } catch (JsonParseException e) {
+            throw new IOException(e);
+        }
+    }
+
     public void switchMistakes() {
         isAll = !isAll;
     }
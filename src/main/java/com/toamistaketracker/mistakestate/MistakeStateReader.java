@@ -1,10 +1,7 @@
 package com.toamistaketracker.mistakestate;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
-import com.google.gson.stream.JsonReader;
+import com.toamistaketracker.ToaMistakeTrackerConfig;
 import lombok.extern.slf4j.Slf4j;
-import net.runelite.http.api.RuneLiteAPI;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -13,42 +10,234 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.getLegacyMistakeStateFilePath;
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.getMistakeCountersFilePath;
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.getMistakeJournalFilePath;
 import static com.toamistaketracker.mistakestate.MistakeStateUtil.getMistakeStateFilePath;
 
 /**
  * Reads MistakeState from disk
+ * <p>
+ * The state is the last snapshot, with the {@link MistakeJournal} of every change since then replayed on top. Snapshots
+ * are in the {@link MistakeStateCodec} binary format. If there's no binary snapshot yet, the legacy JSON snapshot is
+ * read instead, and the {@link MistakeStateWriter} migrates it on its first compaction. A snapshot that exists but
+ * can't be read is set aside with its journal instead of being silently replaced by an empty state.
+ * <p>
+ * On startup, the state is read in the background with {@link #readInBackground(Runnable)}, so enabling the plugin
+ * never blocks on disk.
+ * <p>
+ * With the {@link MappedCounterStore} backend enabled, the state is read from the memory-mapped counters instead, which
+ * start out from the snapshot and journal the first time. Once the backend is disabled again, the counters are read one
+ * last time and imported into a new snapshot.
  */
 @Slf4j
 @Singleton
 public class MistakeStateReader {
 
-    private static final Gson GSON = RuneLiteAPI.GSON;
+    private static final String CORRUPT_FILE_SUFFIX = ".corrupt";
 
     private final MistakeStateWriter mistakeStateWriter;
+    private final ToaMistakeTrackerConfig config;
     private final Path mistakeStateFilePath;
+    private final Path legacyMistakeStateFilePath;
+    private final Path mistakeJournalFilePath;
+    private final Path mistakeCountersFilePath;
 
     @Inject
-    public MistakeStateReader(MistakeStateWriter mistakeStateWriter, @Named("developerMode") boolean developerMode) {
+    public MistakeStateReader(MistakeStateWriter mistakeStateWriter, ToaMistakeTrackerConfig config,
+                              @Named("developerMode") boolean developerMode) {
         this.mistakeStateWriter = mistakeStateWriter;
+        this.config = config;
         this.mistakeStateFilePath = getMistakeStateFilePath(developerMode);
+        this.legacyMistakeStateFilePath = getLegacyMistakeStateFilePath(developerMode);
+        this.mistakeJournalFilePath = getMistakeJournalFilePath(developerMode);
+        this.mistakeCountersFilePath = getMistakeCountersFilePath(developerMode);
+    }
+
+    /**
+     * Read the state on the writer thread, without blocking the caller. The returned state starts out empty and
+     * loading, and buffers any changes made until the state read from disk is swapped in.
+     *
+     * @param onLoaded Called on the writer thread once the state is loaded
+     * @return The loading state
+     */
+    public MistakeStateManager readInBackground(Runnable onLoaded) {
+        MistakeStateManager mistakeStateManager = new MistakeStateManager(mistakeStateWriter);
+        mistakeStateManager.startLoading();
+        mistakeStateWriter.execute(() -> {
+            MistakeStateManager loaded;
+            try {
+                loaded = read();
+            } catch (RuntimeException e) {
+                // Keep recording new mistakes on top of whatever is on disk, instead of buffering them forever
+                log.error("Unable to load mistake state", e);
+                loaded = new MistakeStateManager(mistakeStateWriter);
+            }
+
+            mistakeStateManager.completeLoad(loaded);
+            onLoaded.run();
+        });
+        return mistakeStateManager;
     }
 
     public MistakeStateManager read() {
-        if (Files.exists(mistakeStateFilePath)) {
-            try (BufferedReader reader = Files.newBufferedReader(mistakeStateFilePath);
-                 JsonReader jsonReader = new JsonReader(reader)) {
-                MistakeStateManager mistakeStateManager = GSON.fromJson(jsonReader, MistakeStateManager.class);
-                if (mistakeStateManager == null) {
-                    return new MistakeStateManager(mistakeStateWriter);
-                }
+        MistakeStateManager mistakeStateManager;
+        if (config.useMemoryMappedCounters()) {
+            mistakeStateManager = readCounters();
+            if (mistakeStateManager != null) {
                 mistakeStateManager.setMistakeStateWriter(mistakeStateWriter);
                 return mistakeStateManager;
-            } catch (IOException | JsonSyntaxException e) {
-                log.error("Unable to read mistake state from " + mistakeStateFilePath, e);
             }
+            // Couldn't open the counters, so keep using the journal
+        } else {
+            mistakeStateWriter.setCounterStore(null);
+
+            mistakeStateManager = readRetiringCounters();
+            if (mistakeStateManager != null) {
+                // The counters are newer than the snapshot, so they replace it
+                mistakeStateManager.setMistakeStateWriter(mistakeStateWriter);
+                mistakeStateWriter.replaceSnapshot(mistakeStateManager);
+                return mistakeStateManager;
+            }
+        }
+
+        return readJournal();
+    }
+
+    /**
+     * Read the state from the memory-mapped counters, and switch the writer to them. The first time, the counters are
+     * created from the snapshot and journal.
+     *
+     * @return The state, or null if the counters can't be opened
+     */
+    private MistakeStateManager readCounters() {
+        try {
+            // The counters are still open if the plugin is restarted
+            MappedCounterStore counterStore = mistakeStateWriter.getCounterStore();
+            if (counterStore == null) {
+                counterStore = MappedCounterStore.open(mistakeCountersFilePath);
+            }
+            if (counterStore != null) {
+                mistakeStateWriter.setCounterStore(counterStore);
+                return counterStore.readState();
+            }
+
+            // Counters written for other mistakes are read by name, or else this is the first time
+            MistakeStateManager mistakeStateManager = MappedCounterStore.read(mistakeCountersFilePath);
+            if (mistakeStateManager == null) {
+                mistakeStateManager = readJournal();
+            }
+            mistakeStateWriter.setCounterStore(MappedCounterStore.create(mistakeCountersFilePath,
+                    mistakeStateManager));
+            log.debug("Created mistake counters at {}", mistakeCountersFilePath);
+            return mistakeStateManager;
+        } catch (IOException e) {
+            log.error("Unable to open mistake counters " + mistakeCountersFilePath, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return The state in the counters left over from when they were last enabled, or null if there are none
+     */
+    private MistakeStateManager readRetiringCounters() {
+        try {
+            return MappedCounterStore.read(mistakeCountersFilePath);
+        } catch (IOException e) {
+            log.error("Unable to read mistake counters " + mistakeCountersFilePath, e);
+            return null;
+        }
+    }
+
+    private MistakeStateManager readJournal() {
+        MistakeStateManager mistakeStateManager = readSnapshotOrSetAside(mistakeStateFilePath,
+                legacyMistakeStateFilePath, mistakeJournalFilePath);
+        try {
+            int records = MistakeJournal.replay(mistakeJournalFilePath, mistakeStateManager.getSnapshotId(),
+                    mistakeStateManager);
+            log.debug("Replayed {} records from the mistake journal", records);
+        } catch (IOException e) {
+            log.error("Unable to replay mistake journal from " + mistakeJournalFilePath, e);
+        }
+
+        mistakeStateManager.setMistakeStateWriter(mistakeStateWriter);
+
+        // Fold whatever was replayed into a new snapshot and start a clean journal, before anything new is appended
+        mistakeStateWriter.compact();
+        return mistakeStateManager;
+    }
+
+    /**
+     * Read just the snapshot, without replaying the journal
+     *
+     * @param snapshotPath       The binary snapshot file
+     * @param legacySnapshotPath The JSON snapshot file, only read if there's no binary snapshot yet
+     * @return The state in the snapshot, or an empty state if there is none
+     * @throws IOException If there is a snapshot, but it can't be read
+     */
+    static MistakeStateManager readSnapshot(Path snapshotPath, Path legacySnapshotPath) throws IOException {
+        if (Files.exists(snapshotPath)) {
+            try {
+                return MistakeStateCodec.read(Files.readAllBytes(snapshotPath));
+            } catch (IOException e) {
+                throw new IOException("Unable to read mistake state from " + snapshotPath, e);
+            }
+        }
+
+        if (Files.exists(legacySnapshotPath)) {
+            return readLegacySnapshot(legacySnapshotPath);
         }
 
-        return new MistakeStateManager(mistakeStateWriter);
+        return new MistakeStateManager(null);
+    }
+
+    /**
+     * Read just the snapshot, like {@link #readSnapshot(Path, Path)}. If the snapshot can't be read, it's renamed with
+     * {@link #CORRUPT_FILE_SUFFIX} along with the journal written on top of it, so they can still be recovered by hand
+     * and starting over never overwrites them. The legacy snapshot is read next, if it's still there.
+     *
+     * @param snapshotPath       The binary snapshot file
+     * @param legacySnapshotPath The JSON snapshot file, only read if there's no binary snapshot yet
+     * @param journalPath        The journal file
+     * @return The state in the snapshot, or an empty state if there is none or it can't be read
+     */
+    static MistakeStateManager readSnapshotOrSetAside(Path snapshotPath, Path legacySnapshotPath, Path journalPath) {
+        try {
+            return readSnapshot(snapshotPath, legacySnapshotPath);
+        } catch (IOException e) {
+            log.error("Unable to read mistake state snapshot, setting it aside", e);
+        }
+
+        try {
+            setAside(journalPath);
+            setAside(Files.exists(snapshotPath) ? snapshotPath : legacySnapshotPath);
+        } catch (IOException e) {
+            // The writer won't compact on top of the unreadable snapshot either, so the journal is kept
+            log.error("Unable to set aside unreadable mistake state", e);
+            return new MistakeStateManager(null);
+        }
+        return readSnapshotOrSetAside(snapshotPath, legacySnapshotPath, journalPath);
+    }
+
+    private static MistakeStateManager readLegacySnapshot(Path snapshotPath) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(snapshotPath)) {
+            MistakeStateManager mistakeStateManager = MistakeStateManager.readJson(reader);
+            if (mistakeStateManager == null) {
+                throw new IOException("Mistake state is empty");
+            }
+            return mistakeStateManager;
+        } catch (IOException e) {
+            throw new IOException("Unable to read mistake state from " + snapshotPath, e);
+        }
+    }
+
+    private static void setAside(Path path) throws IOException {
+        if (!Files.exists(path)) return;
+
+        Path corruptPath = path.resolveSibling(path.getFileName() + CORRUPT_FILE_SUFFIX);
+        Files.move(path, corruptPath, StandardCopyOption.REPLACE_EXISTING);
+        log.warn("Moved unreadable mistake state to {}", corruptPath);
     }
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package com.toamistaketracker.mistakestate;
 
+import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.ToaMistake;
+
 import java.nio.file.Path;
 
 import static net.runelite.client.RuneLite.RUNELITE_DIR;
@@ -9,7 +12,12 @@ public class MistakeStateUtil {
     private static final Path MISTAKE_STATE_DIR = RUNELITE_DIR.toPath().resolve("toa-mistake-tracker");
 
     // Use the same mistake state file regardless of user
-    private static final String MISTAKE_STATE_FILE_NAME = "mistake-state.txt";
+    private static final String MISTAKE_STATE_FILE_NAME = "mistake-state.dat";
+    private static final String LEGACY_MISTAKE_STATE_FILE_NAME = "mistake-state.txt"; // JSON, migrated on first load
+    private static final String MISTAKE_JOURNAL_FILE_NAME = "mistake-journal.dat";
+    private static final String MISTAKE_COUNTERS_FILE_NAME = "mistake-counters.dat";
+    private static final String RAID_HISTORY_DIR_NAME = "raid-history";
+    private static final String MISTAKE_STATE_EXPORT_FILE_NAME = "mistake-state-export.json";
 
     private static final String DEVELOPER_MODE_PREFIX = "dev-";
 
@@ -18,11 +26,63 @@ public class MistakeStateUtil {
     }
 
     static Path getMistakeStateFilePath(boolean developerMode) {
+        return getFilePath(MISTAKE_STATE_FILE_NAME, developerMode);
+    }
+
+    static Path getLegacyMistakeStateFilePath(boolean developerMode) {
+        return getFilePath(LEGACY_MISTAKE_STATE_FILE_NAME, developerMode);
+    }
+
+    static Path getMistakeJournalFilePath(boolean developerMode) {
+        return getFilePath(MISTAKE_JOURNAL_FILE_NAME, developerMode);
+    }
+
+    static Path getMistakeCountersFilePath(boolean developerMode) {
+        return getFilePath(MISTAKE_COUNTERS_FILE_NAME, developerMode);
+    }
+
+    static Path getRaidHistoryDir(boolean developerMode) {
+        return getFilePath(RAID_HISTORY_DIR_NAME, developerMode);
+    }
+
+    /**
+     * Look up a persisted mistake name
+     *
+     * @param name The mistake's enum name
+     * @return The mistake, or null if no mistake has that name anymore
+     */
+    static ToaMistake toMistake(String name) {
+        try {
+            return ToaMistake.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Look up a persisted room name
+     *
+     * @param name The room's enum name
+     * @return The room, or null if no room has that name anymore
+     */
+    static RaidRoom toRaidRoom(String name) {
+        try {
+            return RaidRoom.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static Path getMistakeStateExportFilePath(boolean developerMode) {
+        return getFilePath(MISTAKE_STATE_EXPORT_FILE_NAME, developerMode);
+    }
+
+    private static Path getFilePath(String baseFilename, boolean developerMode) {
         final String filename;
         if (developerMode) {
-            filename = DEVELOPER_MODE_PREFIX + MISTAKE_STATE_FILE_NAME;
+            filename = DEVELOPER_MODE_PREFIX + baseFilename;
         } else {
-            filename = MISTAKE_STATE_FILE_NAME;
+            filename = baseFilename;
         }
 
         return getMistakeStateDir().resolve(filename);
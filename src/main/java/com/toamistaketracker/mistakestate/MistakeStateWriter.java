@@ -1,51 +1,439 @@
 package com.toamistaketracker.mistakestate;
 
-import com.google.gson.Gson;
+import com.google.common.annotations.VisibleForTesting;
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import net.runelite.http.api.RuneLiteAPI;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.getLegacyMistakeStateFilePath;
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.getMistakeCountersFilePath;
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.getMistakeJournalFilePath;
 import static com.toamistaketracker.mistakestate.MistakeStateUtil.getMistakeStateDir;
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.getMistakeStateExportFilePath;
 import static com.toamistaketracker.mistakestate.MistakeStateUtil.getMistakeStateFilePath;
 
 /**
  * Writes MistakeState to disk
+ * <p>
+ * Every change is appended as a small record to the {@link MistakeJournal}, all on a single background thread, so the
+ * caller (the client thread or the EDT) never blocks on disk. Flushing the journal is coalesced to at most once every
+ * {@link #FLUSH_DELAY_MS}, or done right away on {@link #flush()}, e.g. at raid and room boundaries.
+ * <p>
+ * Once the journal grows past {@link #COMPACTION_THRESHOLD_BYTES}, it's folded into a new snapshot: the snapshot on
+ * disk is read, the journal is replayed on top of it, and the result is written in the {@link MistakeStateCodec}
+ * binary format to a temp file and atomically moved over the old snapshot before the journal is restarted. The first
+ * compaction also migrates a legacy JSON snapshot, which is then kept as a backup. The compaction only ever reads the
+ * files, never the live state, so it's always consistent with what was appended. If the snapshot can't be read, the
+ * compaction is skipped and the journal is kept.
+ * <p>
+ * The state is also loaded on the writer thread, so it's read before anything new is appended to the journal.
+ * <p>
+ * If the {@link MappedCounterStore} backend is enabled, changes are mirrored into the memory-mapped counters instead of
+ * being appended, and flushing forces the counters to disk.
  */
 @Slf4j
 @Singleton
 public class MistakeStateWriter {
 
-    private static final Gson GSON = RuneLiteAPI.GSON;
+    private static final long FLUSH_DELAY_MS = 5000;
+    private static final long SHUTDOWN_FLUSH_TIMEOUT_MS = 5000;
+    private static final int COMPACTION_THRESHOLD_BYTES = 64 * 1024;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String BACKUP_FILE_SUFFIX = ".bak";
 
     private final Path mistakeStateDir;
     private final Path mistakeStateFilePath;
+    private final Path legacyMistakeStateFilePath;
+    private final Path mistakeJournalFilePath;
+    private final Path mistakeCountersFilePath;
+    private final Path mistakeStateExportFilePath;
+
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean isFlushScheduled = new AtomicBoolean();
+
+    // Only accessed on the writer thread
+    private boolean isDirectoryCreated;
+    private DataOutputStream journal;
+    private long journalBaseSize; // bytes already in the journal file when it was opened
+
+    // The memory-mapped counters, if that backend is enabled and open
+    @Getter(AccessLevel.PACKAGE)
+    private volatile MappedCounterStore counterStore;
+
+    // The number of times the journal was flushed to disk since startup, for debugging
+    @Getter
+    private volatile int writeCount;
+    // The number of times the journal was compacted into a snapshot since startup, for debugging
+    @Getter
+    private volatile int compactionCount;
 
     @Inject
     public MistakeStateWriter(@Named("developerMode") boolean developerMode) {
-        this.mistakeStateDir = getMistakeStateDir();
-        this.mistakeStateFilePath = getMistakeStateFilePath(developerMode);
+        this(getMistakeStateDir(), developerMode);
+    }
+
+    /**
+     * @param mistakeStateDir The directory to keep the files in, instead of the one in the RuneLite directory
+     * @param developerMode   Whether to use the developer mode files
+     */
+    @VisibleForTesting
+    MistakeStateWriter(Path mistakeStateDir, boolean developerMode) {
+        this.mistakeStateDir = mistakeStateDir;
+        this.mistakeStateFilePath = inDir(getMistakeStateFilePath(developerMode));
+        this.legacyMistakeStateFilePath = inDir(getLegacyMistakeStateFilePath(developerMode));
+        this.mistakeJournalFilePath = inDir(getMistakeJournalFilePath(developerMode));
+        this.mistakeCountersFilePath = inDir(getMistakeCountersFilePath(developerMode));
+        this.mistakeStateExportFilePath = inDir(getMistakeStateExportFilePath(developerMode));
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "toa-mistake-state-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Append the given record to the journal on the writer thread. The record isn't flushed to disk until the next
+     * {@link #scheduleFlush()} or {@link #flush()}.
+     *
+     * @param record The record
+     */
+    public void append(MistakeJournal.Record record) {
+        executor.execute(() -> appendToJournal(record));
+    }
+
+    /**
+     * Flush the journal once the flush delay has passed. Any further flushes until then are coalesced into that one.
+     */
+    public void scheduleFlush() {
+        if (isFlushScheduled.compareAndSet(false, true)) {
+            executor.schedule(this::flushJournal, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
     }
 
-    public void write(MistakeStateManager mistakeStateManager) {
+    /**
+     * Flush the journal on the writer thread right away instead of waiting for the flush delay
+     */
+    public void flush() {
+        executor.execute(this::flushJournal);
+    }
+
+    /**
+     * Flush the journal and wait for it to finish. This is for shutting down, where appended records shouldn't be lost.
+     */
+    public void flushAndWait() {
         try {
-            Files.createDirectories(mistakeStateDir);
+            executor.submit(this::flushJournal).get(SHUTDOWN_FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.error("Unable to flush mistake journal to " + mistakeJournalFilePath, e);
+        }
+    }
+
+    /**
+     * Run a task on the writer thread, after everything appended or flushed so far
+     *
+     * @param task The task
+     */
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Switch to the given memory-mapped counters, or back to the journal if null, closing the current counters
+     *
+     * @param counterStore The counters, or null
+     */
+    void setCounterStore(MappedCounterStore counterStore) {
+        MappedCounterStore previousCounterStore = this.counterStore;
+        this.counterStore = counterStore;
+        if (previousCounterStore != null && previousCounterStore != counterStore) {
+            previousCounterStore.close();
+        }
+    }
+
+    /**
+     * Replace the snapshot with the given state and restart the journal on top of it, closing and retiring the
+     * memory-mapped counters. This is for switching from the counters back to the journal.
+     * <p>
+     * The state is encoded right away, so that changes made after this call are only ever in the new journal.
+     *
+     * @param mistakeStateManager The state
+     */
+    void replaceSnapshot(MistakeStateManager mistakeStateManager) {
+        setCounterStore(null);
+
+        final long snapshotId = newSnapshotId(mistakeStateManager.getSnapshotId());
+        mistakeStateManager.setSnapshotId(snapshotId);
+        final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        try {
+            MistakeStateCodec.write(mistakeStateManager, snapshot);
         } catch (IOException e) {
-            log.error("Unable to create directories " + mistakeStateDir, e);
+            log.error("Unable to encode mistake state", e);
             return;
         }
 
-        final Path filepath = mistakeStateFilePath;
-        try (BufferedWriter writer = Files.newBufferedWriter(filepath)) {
-            writer.write(GSON.toJson(mistakeStateManager));
+        executor.execute(() -> {
+            closeJournal();
+            if (!createDirectory()) return;
+
+            try {
+                writeAtomically(mistakeStateFilePath, tempFile -> {
+                    try (OutputStream out = Files.newOutputStream(tempFile)) {
+                        snapshot.writeTo(out);
+                    }
+                });
+                writeAtomically(mistakeJournalFilePath, tempFile -> {
+                    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tempFile))) {
+                        MistakeJournal.writeHeader(out, snapshotId);
+                    }
+                });
+                openJournal();
+                compactionCount++;
+
+                // Only once the snapshot is written, so that the counters are imported again if this is interrupted
+                MappedCounterStore.retire(mistakeCountersFilePath);
+                log.debug("Replaced the mistake state snapshot and retired the mistake counters");
+            } catch (IOException e) {
+                log.error("Unable to replace mistake state snapshot " + mistakeStateFilePath, e);
+            }
+        });
+    }
+
+    /**
+     * Export the state as JSON on the writer thread, after everything appended so far. With the counters backend, the
+     * state in memory is exactly what's in the counters.
+     *
+     * @param mistakeStateManager The state
+     * @param onExported          Called on the writer thread with the exported file, or null if it couldn't be written
+     */
+    void exportJson(MistakeStateManager mistakeStateManager, Consumer<Path> onExported) {
+        executor.execute(() -> {
+            if (!createDirectory()) {
+                onExported.accept(null);
+                return;
+            }
+
+            try {
+                writeAtomically(mistakeStateExportFilePath, tempFile -> {
+                    try (BufferedWriter out = Files.newBufferedWriter(tempFile)) {
+                        mistakeStateManager.writeJson(out);
+                    }
+                });
+                log.debug("Exported mistake state to {}", mistakeStateExportFilePath);
+                onExported.accept(mistakeStateExportFilePath);
+            } catch (IOException e) {
+                log.error("Unable to export mistake state to " + mistakeStateExportFilePath, e);
+                onExported.accept(null);
+            }
+        });
+    }
+
+    /**
+     * Fold the journal into a new snapshot and restart the journal on the writer thread. This is done on startup, so
+     * the journal only ever holds changes made since then.
+     */
+    void compact() {
+        executor.execute(this::compactJournal);
+    }
+
+    private void appendToJournal(MistakeJournal.Record record) {
+        if (journal == null) {
+            if (Files.exists(mistakeJournalFilePath)) {
+                openJournal();
+            } else {
+                // Nothing to fold yet, so compacting just starts a journal on top of the current snapshot
+                compactJournal();
+            }
+            if (journal == null) return;
+        }
+
+        try {
+            record.writeTo(journal);
+        } catch (IOException e) {
+            log.error("Unable to append to mistake journal " + mistakeJournalFilePath, e);
+            closeJournal();
+        }
+    }
+
+    private void flushJournal() {
+        // Clear the flag first, so that any flush requested from now on schedules another flush
+        isFlushScheduled.set(false);
+
+        MappedCounterStore counterStore = this.counterStore;
+        if (counterStore != null) {
+            counterStore.force();
+            writeCount++;
+        }
+        if (journal == null) return;
+
+        try {
+            journal.flush();
+            writeCount++;
         } catch (IOException e) {
-            log.error("Unable to write mistake state to " + filepath, e);
+            log.error("Unable to flush mistake journal " + mistakeJournalFilePath, e);
+            closeJournal();
+            return;
         }
+
+        if (journalBaseSize + journal.size() >= COMPACTION_THRESHOLD_BYTES) {
+            compactJournal();
+        }
+    }
+
+    private void compactJournal() {
+        if (journal != null) {
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                log.error("Unable to flush mistake journal " + mistakeJournalFilePath, e);
+            }
+            closeJournal();
+        }
+
+        if (!createDirectory()) return;
+
+        boolean isMigrating = !Files.exists(mistakeStateFilePath) && Files.exists(legacyMistakeStateFilePath);
+        MistakeStateManager mistakeStateManager;
+        try {
+            mistakeStateManager = MistakeStateReader.readSnapshot(mistakeStateFilePath, legacyMistakeStateFilePath);
+        } catch (IOException e) {
+            // Restarting the journal on top of an empty state would lose everything in both, so keep appending to it
+            log.error("Unable to compact mistake journal " + mistakeJournalFilePath + ", keeping it", e);
+            return;
+        }
+        long snapshotId = mistakeStateManager.getSnapshotId();
+        try {
+            int records = MistakeJournal.replay(mistakeJournalFilePath, snapshotId, mistakeStateManager);
+            if (records > 0 || isMigrating) {
+                snapshotId = newSnapshotId(snapshotId);
+                mistakeStateManager.setSnapshotId(snapshotId);
+                writeSnapshot(mistakeStateManager);
+                compactionCount++;
+                log.debug("Compacted {} journal records into a new snapshot", records);
+            }
+            if (isMigrating) {
+                Files.move(legacyMistakeStateFilePath, legacyMistakeStateFilePath.resolveSibling(
+                        legacyMistakeStateFilePath.getFileName() + BACKUP_FILE_SUFFIX),
+                        StandardCopyOption.REPLACE_EXISTING);
+                log.debug("Migrated mistake state from {}", legacyMistakeStateFilePath);
+            }
+
+            // Restart the journal on top of the snapshot. If this fails after a new snapshot was written, the old
+            // journal is for the old snapshot id, so it won't be replayed again.
+            writeAtomically(mistakeJournalFilePath, tempFile -> {
+                try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tempFile))) {
+                    MistakeJournal.writeHeader(out, mistakeStateManager.getSnapshotId());
+                }
+            });
+            openJournal();
+        } catch (IOException e) {
+            log.error("Unable to compact mistake journal " + mistakeJournalFilePath, e);
+        }
+    }
+
+    private void openJournal() {
+        try {
+            // DataOutputStream#size only counts what's written through it, so remember what's already in the file
+            journalBaseSize = Files.size(mistakeJournalFilePath);
+            journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(mistakeJournalFilePath,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+        } catch (IOException e) {
+            log.error("Unable to open mistake journal " + mistakeJournalFilePath, e);
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null) return;
+
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.error("Unable to close mistake journal " + mistakeJournalFilePath, e);
+        }
+        journal = null;
+    }
+
+    private void writeSnapshot(MistakeStateManager mistakeStateManager) throws IOException {
+        writeAtomically(mistakeStateFilePath, tempFile -> {
+            try (BufferedOutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile))) {
+                MistakeStateCodec.write(mistakeStateManager, out);
+            }
+        });
+    }
+
+    private Path inDir(Path filePath) {
+        return mistakeStateDir.resolve(filePath.getFileName());
+    }
+
+    private boolean createDirectory() {
+        if (isDirectoryCreated) return true;
+
+        try {
+            Files.createDirectories(mistakeStateDir);
+            isDirectoryCreated = true;
+            return true;
+        } catch (IOException e) {
+            log.error("Unable to create directories " + mistakeStateDir, e);
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    private interface FileWriter {
+        void write(Path file) throws IOException;
+    }
+
+    /**
+     * Write a file to a temp file first and then move it over the target, so a crash mid-write never leaves a partial
+     * file behind
+     */
+    private static void writeAtomically(Path target, FileWriter fileWriter) throws IOException {
+        Path tempFile = target.resolveSibling(target.getFileName() + TEMP_FILE_SUFFIX);
+        fileWriter.write(tempFile);
+        moveAtomically(tempFile, target);
+    }
+
+    /**
+     * Move a fully written temp file over the target, atomically if the file system supports it
+     */
+    static void moveAtomically(Path tempFile, Path target) throws IOException {
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static long newSnapshotId(long previousSnapshotId) {
+        long snapshotId;
+        do {
+            snapshotId = ThreadLocalRandom.current().nextLong();
+        } while (snapshotId == 0 || snapshotId == previousSnapshotId);
+        return snapshotId;
     }
 }
\ No newline at end of file
@@ -1,45 +1,116 @@
 package com.toamistaketracker.mistakestate;
 
+import com.google.gson.annotations.JsonAdapter;
 import com.toamistaketracker.ToaMistake;
 import lombok.Getter;
 import lombok.NonNull;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Encapsulating class for relevant tracking information for a player, including mistakes.
+ * <p>
+ * Mistake counts are kept in an {@link AtomicIntegerArray} indexed by {@link ToaMistake#ordinal()}, so the client
+ * thread can increment and read them while the EDT renders them, without any locks. The array is only allocated once
+ * the player makes their first mistake, since most players tracked across all raids never make one, and the totals are
+ * plain volatile ints updated through field updaters instead of separate atomic objects. The JSON shape on disk is
+ * kept by {@link PlayerTrackingInfoAdapter}.
  */
+@JsonAdapter(PlayerTrackingInfoAdapter.class)
 public class PlayerTrackingInfo {
 
+    static final ToaMistake[] MISTAKES = ToaMistake.values();
+
+    private static final AtomicReferenceFieldUpdater<PlayerTrackingInfo, AtomicIntegerArray> MISTAKES_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(PlayerTrackingInfo.class, AtomicIntegerArray.class, "mistakes");
+    private static final AtomicIntegerFieldUpdater<PlayerTrackingInfo> TOTAL_MISTAKES_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(PlayerTrackingInfo.class, "totalMistakes");
+    private static final AtomicIntegerFieldUpdater<PlayerTrackingInfo> RAID_COUNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(PlayerTrackingInfo.class, "raidCount");
+
     @NonNull
     @Getter
     private final String playerName;
-    @NonNull
-    @Getter
-    private final Map<ToaMistake, Integer> mistakes;
-    @Getter
-    private int raidCount;
+    private volatile AtomicIntegerArray mistakes; // ordinal -> count, or null if the player has no mistakes yet
+    private volatile int totalMistakes; // sum of all counts, kept up to date on increment
+    private volatile int raidCount;
 
     public PlayerTrackingInfo(@NonNull final String playerName) {
+        // Default raid count is 1 since just by creating this object it's assumed there's a raid
+        this(playerName, null, 1);
+    }
+
+    /**
+     * @param playerName    The player name
+     * @param mistakeCounts The counts indexed by mistake ordinal, or null if the player has no mistakes
+     * @param raidCount     The raid count
+     */
+    PlayerTrackingInfo(@NonNull final String playerName, int[] mistakeCounts, int raidCount) {
         this.playerName = playerName;
-        this.mistakes = new HashMap<>();
-        this.raidCount = 1; // Default raid count is 1 since just by creating this object it's assumed there's a raid
+        this.raidCount = raidCount;
+
+        int total = 0;
+        if (mistakeCounts != null) {
+            for (int count : mistakeCounts) {
+                total += count;
+            }
+        }
+        if (total > 0) {
+            this.mistakes = new AtomicIntegerArray(mistakeCounts);
+        }
+        this.totalMistakes = total;
     }
 
-    public void incrementMistake(ToaMistake mistake) {
-        mistakes.compute(mistake, PlayerTrackingInfo::increment);
+    /**
+     * Increment the count for the given mistake
+     *
+     * @param mistake The mistake
+     * @return The new count for the mistake
+     */
+    public int incrementMistake(ToaMistake mistake) {
+        AtomicIntegerArray counts = mistakes;
+        if (counts == null) {
+            // Whichever thread loses the race just uses the winner's array
+            MISTAKES_UPDATER.compareAndSet(this, null, new AtomicIntegerArray(MISTAKES.length));
+            counts = mistakes;
+        }
+
+        TOTAL_MISTAKES_UPDATER.incrementAndGet(this);
+        return counts.incrementAndGet(mistake.ordinal());
+    }
+
+    public int getMistakeCount(ToaMistake mistake) {
+        AtomicIntegerArray counts = mistakes;
+        return counts == null ? 0 : counts.get(mistake.ordinal());
+    }
+
+    /**
+     * Copy all mistake counts into the given array, indexed by {@link ToaMistake#ordinal()}
+     *
+     * @param into The array to copy into, of at least {@link ToaMistake#values()} length
+     */
+    public void copyMistakeCounts(int[] into) {
+        AtomicIntegerArray counts = mistakes;
+        for (int i = 0; i < MISTAKES.length; i++) {
+            into[i] = counts == null ? 0 : counts.get(i);
+        }
+    }
+
+    public int getTotalMistakeCount() {
+        return totalMistakes;
     }
 
     public void incrementRaidCount() {
-        raidCount++;
+        RAID_COUNT_UPDATER.incrementAndGet(this);
     }
 
-    public boolean hasMistakes() {
-        return !mistakes.isEmpty();
+    public int getRaidCount() {
+        return raidCount;
     }
 
-    private static <T> Integer increment(T key, Integer oldValue) {
-        return oldValue == null ? 1 : oldValue + 1;
+    public boolean hasMistakes() {
+        return totalMistakes > 0;
     }
 }
@@ -0,0 +1,120 @@
+package com.toamistaketracker.mistakestate;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.toamistaketracker.ToaMistake;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.toMistake;
+
+/**
+ * Reads and writes {@link PlayerTrackingInfo} in the same JSON shape the reflective Gson serialization always used, so
+ * existing mistake state files load unchanged:
+ * <pre>
+ * {"playerName": "...", "mistakes": {"MISTAKE_NAME": count, ...}, "raidCount": count}
+ * </pre>
+ * Only mistakes with a positive count are written, same as the old map which only had entries for made mistakes.
+ */
+@Slf4j
+class PlayerTrackingInfoAdapter extends TypeAdapter<PlayerTrackingInfo> {
+
+    private static final String PLAYER_NAME = "playerName";
+    private static final String MISTAKES = "mistakes";
+    private static final String RAID_COUNT = "raidCount";
+
+    @Override
+    public void write(JsonWriter out, PlayerTrackingInfo playerInfo) throws IOException {
+        if (playerInfo == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name(PLAYER_NAME).value(playerInfo.getPlayerName());
+
+        out.name(MISTAKES).beginObject();
+        for (ToaMistake mistake : PlayerTrackingInfo.MISTAKES) {
+            int count = playerInfo.getMistakeCount(mistake);
+            if (count > 0) {
+                out.name(mistake.name()).value(count);
+            }
+        }
+        out.endObject();
+
+        out.name(RAID_COUNT).value(playerInfo.getRaidCount());
+        out.endObject();
+    }
+
+    @Override
+    public PlayerTrackingInfo read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        String playerName = null;
+        int[] mistakeCounts = null; // Only allocated if the player has any mistakes
+        int raidCount = 0;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case PLAYER_NAME:
+                    playerName = in.nextString();
+                    break;
+                case MISTAKES:
+                    mistakeCounts = readMistakes(in);
+                    break;
+                case RAID_COUNT:
+                    raidCount = in.nextInt();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (playerName == null) {
+            throw new JsonSyntaxException("Missing " + PLAYER_NAME + " at " + in.getPath());
+        }
+
+        return new PlayerTrackingInfo(playerName, mistakeCounts, raidCount);
+    }
+
+    private static int[] readMistakes(JsonReader in) throws IOException {
+        int[] mistakeCounts = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            String mistakeName = in.nextName();
+            ToaMistake mistake = toMistake(mistakeName);
+            if (mistake == null || in.peek() == JsonToken.NULL) {
+                // e.g. a mistake that was renamed or removed since the file was written. Skip it instead of failing the
+                // whole load
+                log.debug("Skipping unknown mistake {}", mistakeName);
+                in.skipValue();
+                continue;
+            }
+
+            int count = in.nextInt();
+            if (count > 0) {
+                if (mistakeCounts == null) {
+                    mistakeCounts = new int[PlayerTrackingInfo.MISTAKES.length];
+                }
+                mistakeCounts[mistake.ordinal()] += count;
+            }
+        }
+        in.endObject();
+        return mistakeCounts;
+    }
+}
@@ -0,0 +1,98 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.PackedTile;
+import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.Raider;
+import com.toamistaketracker.ToaMistake;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.getRaidHistoryDir;
+
+/**
+ * Keeps the history of every raid, on top of the aggregate counts in the {@link MistakeStateManager}.
+ * <p>
+ * The raid in progress is recorded on the client thread as a {@link RaidRecord}. Once the raid ends, the whole record
+ * is appended to the {@link RaidHistoryStore} on the writer thread, so recording never blocks on disk.
+ */
+@Slf4j
+@Singleton
+public class RaidHistory {
+
+    private final MistakeStateWriter mistakeStateWriter;
+    private final RaidHistoryStore raidHistoryStore;
+
+    // The raid in progress, only accessed on the client thread
+    private RaidRecord currentRaid;
+    private int currentRaidStartTick;
+
+    @Inject
+    public RaidHistory(MistakeStateWriter mistakeStateWriter, @Named("developerMode") boolean developerMode) {
+        this.mistakeStateWriter = mistakeStateWriter;
+        this.raidHistoryStore = new RaidHistoryStore(getRaidHistoryDir(developerMode));
+    }
+
+    /**
+     * Start recording a new raid, ending the raid in progress if there is one
+     *
+     * @param raiderNames The raider names by slot, null for empty slots
+     * @param room        The room the raid starts in, or null if it's unknown
+     * @param tick        The current tick count
+     */
+    public void startRaid(@NonNull String[] raiderNames, RaidRoom room, int tick) {
+        endRaid();
+
+        currentRaid = new RaidRecord(System.currentTimeMillis(), raiderNames);
+        currentRaidStartTick = tick;
+        if (room != null) {
+            currentRaid.addRoom(room);
+        }
+    }
+
+    /**
+     * Note that a new room was entered in the raid in progress
+     *
+     * @param room The room
+     */
+    public void enterRoom(RaidRoom room) {
+        if (currentRaid == null) return;
+
+        currentRaid.addRoom(room);
+    }
+
+    /**
+     * Record a mistake in the raid in progress, at the raider's location for this tick
+     *
+     * @param raider  The raider
+     * @param mistake The mistake, as it was detected
+     * @param tick    The current tick count
+     */
+    public void addMistake(@NonNull Raider raider, @NonNull ToaMistake mistake, int tick) {
+        if (currentRaid == null) return;
+
+        currentRaid.addMistake(tick - currentRaidStartTick, raider.getSlot(), mistake,
+                PackedTile.pack(raider.getCurrentWorldLocation()));
+    }
+
+    /**
+     * End the raid in progress, if there is one, and append it to the history on the writer thread
+     */
+    public void endRaid() {
+        if (currentRaid == null) return;
+
+        final RaidRecord raid = currentRaid;
+        currentRaid = null;
+        mistakeStateWriter.execute(() -> {
+            try {
+                raidHistoryStore.append(raid);
+            } catch (IOException e) {
+                log.error("Unable to append raid to the raid history", e);
+            }
+        });
+    }
+}
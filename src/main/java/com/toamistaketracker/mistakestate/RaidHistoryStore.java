@@ -0,0 +1,458 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.RaidState;
+import com.toamistaketracker.ToaMistake;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.toamistaketracker.mistakestate.MistakeStateCodec.readVarInt;
+import static com.toamistaketracker.mistakestate.MistakeStateCodec.writeVarInt;
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.toMistake;
+import static com.toamistaketracker.mistakestate.MistakeStateUtil.toRaidRoom;
+
+/**
+ * Stores {@link RaidRecord}s in append-only segment files, so thousands of raids can be kept without ever loading all
+ * of them.
+ * <p>
+ * Raids are appended to the active segment until it grows past {@link #SEGMENT_CAPACITY_BYTES}. The segment is then
+ * sealed with an index footer of every record's offset and start time, and the next raid starts a new segment. Reading
+ * the last N raids walks the segments newest first, and only reads the footer of each sealed segment and then the
+ * records it needs, so it costs O(N) record reads. The active segment has no footer yet, and is indexed by scanning it,
+ * which is bounded by the segment capacity.
+ * <p>
+ * Every record has a CRC, so a record torn by the client being killed mid-write is dropped, and is overwritten by the
+ * next append.
+ * <p>
+ * Segment format: {@code int MAGIC, byte VERSION}, then records of {@code int length, byte[length] raid, int CRC32},
+ * and once sealed, the index of {@code (int offset, long startTime)} for every record followed by
+ * {@code int recordCount, int indexOffset, int INDEX_MAGIC}.
+ * <p>
+ * Raid format, where varints are unsigned LEB128 and names are written like in {@link MistakeStateCodec}:
+ * <pre>
+ * long startTime
+ * varint raiderCount, (byte slot, UTF name)...
+ * varint roomCount, UTF roomNames... (empty if unknown)
+ * varint mistakeNameCount, UTF mistakeNames...
+ * varint eventCount, events... as:
+ *     varint ticks since the previous event, byte roomIndex, byte slot, varint mistakeNameIndex, int packedTile
+ * </pre>
+ * Appending is only done on the writer thread. Reading never touches the writer's state, so it's safe on any thread.
+ */
+@Slf4j
+class RaidHistoryStore {
+
+    private static final int MAGIC = 0x544F4148; // "TOAH"
+    private static final int INDEX_MAGIC = 0x544F4149; // "TOAI"
+    private static final byte VERSION = 1;
+
+    private static final int HEADER_SIZE = 5; // int MAGIC, byte VERSION
+    private static final int RECORD_OVERHEAD = 8; // int length, int CRC32
+    private static final int INDEX_ENTRY_SIZE = 12; // int offset, long startTime
+    private static final int INDEX_TRAILER_SIZE = 12; // int recordCount, int indexOffset, int INDEX_MAGIC
+
+    static final int SEGMENT_CAPACITY_BYTES = 256 * 1024;
+
+    private static final String SEGMENT_PREFIX = "raid-history-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path raidHistoryDir;
+
+    // Only accessed on the writer thread
+    private int activeSegmentNumber;
+    private SegmentIndex activeIndex; // null until the active segment is found
+
+    RaidHistoryStore(Path raidHistoryDir) {
+        this.raidHistoryDir = raidHistoryDir;
+    }
+
+    /**
+     * Append a finished raid to the active segment, sealing the segment if it's full. This must be called on the
+     * writer thread.
+     *
+     * @param raid The raid
+     * @throws IOException If the raid can't be written
+     */
+    void append(RaidRecord raid) throws IOException {
+        byte[] record = encodeRecord(raid);
+
+        if (activeIndex == null) {
+            findActiveSegment();
+        }
+
+        Path segmentPath = getSegmentPath(activeSegmentNumber);
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (activeIndex.end < HEADER_SIZE) {
+                // A new segment, or one that was torn before its header was written
+                channel.truncate(0);
+                writeFully(channel, 0, newHeader());
+                activeIndex.end = HEADER_SIZE;
+            } else {
+                // Drop anything after the last complete record, e.g. a torn record
+                channel.truncate(activeIndex.end);
+            }
+
+            long offset = activeIndex.end;
+            writeFully(channel, offset, record);
+            activeIndex.add((int) offset, raid.getStartTime());
+            activeIndex.end = offset + record.length;
+
+            if (activeIndex.end >= SEGMENT_CAPACITY_BYTES) {
+                writeFully(channel, activeIndex.end, encodeIndex(activeIndex));
+                log.debug("Sealed raid history segment {} with {} raids", activeSegmentNumber, activeIndex.count);
+
+                activeSegmentNumber++;
+                activeIndex = new SegmentIndex();
+            }
+        }
+    }
+
+    /**
+     * Read the most recent raids, without reading any older ones
+     *
+     * @param count The maximum number of raids
+     * @return Up to {@code count} raids, newest first
+     * @throws IOException If the segments can't be listed
+     */
+    List<RaidRecord> readLast(int count) throws IOException {
+        List<RaidRecord> raids = new ArrayList<>(Math.min(count, 1024));
+        if (count <= 0) return raids;
+
+        int[] segmentNumbers = listSegmentNumbers();
+        for (int i = segmentNumbers.length - 1; i >= 0 && raids.size() < count; i--) {
+            Path segmentPath = getSegmentPath(segmentNumbers[i]);
+            try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+                SegmentIndex index = readIndex(channel);
+                if (index == null) {
+                    log.warn("Ignoring unrecognized raid history segment " + segmentPath);
+                    continue;
+                }
+
+                for (int j = index.count - 1; j >= 0 && raids.size() < count; j--) {
+                    RaidRecord raid = readRecord(channel, index.offsets[j]);
+                    if (raid != null) {
+                        raids.add(raid);
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Unable to read raid history segment " + segmentPath, e);
+            }
+        }
+        return raids;
+    }
+
+    private void findActiveSegment() throws IOException {
+        Files.createDirectories(raidHistoryDir);
+
+        int[] segmentNumbers = listSegmentNumbers();
+        if (segmentNumbers.length == 0) {
+            activeSegmentNumber = 1;
+            activeIndex = new SegmentIndex();
+            return;
+        }
+
+        // Keep appending to the last segment, unless it's sealed or can't be read
+        activeSegmentNumber = segmentNumbers[segmentNumbers.length - 1];
+        try (FileChannel channel = FileChannel.open(getSegmentPath(activeSegmentNumber), StandardOpenOption.READ)) {
+            activeIndex = readIndex(channel);
+        }
+        if (activeIndex == null || activeIndex.isSealed) {
+            activeSegmentNumber++;
+            activeIndex = new SegmentIndex();
+        }
+    }
+
+    private Path getSegmentPath(int segmentNumber) {
+        return raidHistoryDir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * @return The numbers of all segments, in ascending order
+     */
+    private int[] listSegmentNumbers() throws IOException {
+        if (!Files.isDirectory(raidHistoryDir)) return new int[0];
+
+        int[] segmentNumbers = new int[16];
+        int size = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(raidHistoryDir,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String number = fileName.substring(SEGMENT_PREFIX.length(),
+                        fileName.length() - SEGMENT_SUFFIX.length());
+                try {
+                    if (size == segmentNumbers.length) {
+                        segmentNumbers = Arrays.copyOf(segmentNumbers, size * 2);
+                    }
+                    segmentNumbers[size] = Integer.parseInt(number);
+                    size++;
+                } catch (NumberFormatException e) {
+                    log.debug("Ignoring {} in the raid history", fileName);
+                }
+            }
+        }
+
+        segmentNumbers = Arrays.copyOf(segmentNumbers, size);
+        Arrays.sort(segmentNumbers);
+        return segmentNumbers;
+    }
+
+    /**
+     * Read the index of a segment, from its footer if it's sealed, or else by scanning its records
+     *
+     * @return The index, or null if the file isn't a raid history segment
+     */
+    private static SegmentIndex readIndex(FileChannel channel) throws IOException {
+        long size = channel.size();
+        SegmentIndex index = new SegmentIndex();
+        if (size < HEADER_SIZE) {
+            // Torn before the header was written, so there's nothing in it
+            return index;
+        }
+
+        ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.get() != VERSION) {
+            return null;
+        }
+
+        if (size >= HEADER_SIZE + INDEX_TRAILER_SIZE) {
+            ByteBuffer trailer = readFully(channel, size - INDEX_TRAILER_SIZE, INDEX_TRAILER_SIZE);
+            int count = trailer.getInt();
+            int indexOffset = trailer.getInt();
+            if (trailer.getInt() == INDEX_MAGIC && count >= 0 && indexOffset >= HEADER_SIZE &&
+                    indexOffset + (long) count * INDEX_ENTRY_SIZE + INDEX_TRAILER_SIZE == size) {
+                ByteBuffer entries = readFully(channel, indexOffset, count * INDEX_ENTRY_SIZE);
+                for (int i = 0; i < count; i++) {
+                    index.add(entries.getInt(), entries.getLong());
+                }
+                index.end = indexOffset;
+                index.isSealed = true;
+                return index;
+            }
+        }
+
+        // Not sealed yet, so scan for every complete record
+        long offset = HEADER_SIZE;
+        while (offset + RECORD_OVERHEAD <= size) {
+            int length = readFully(channel, offset, 4).getInt();
+            if (length < 8 || offset + RECORD_OVERHEAD + length > size) break;
+
+            ByteBuffer record = readFully(channel, offset + 4, length + 4);
+            if (!isValid(record, length)) break;
+
+            index.add((int) offset, record.getLong(0));
+            offset += RECORD_OVERHEAD + length;
+        }
+        index.end = offset;
+        return index;
+    }
+
+    private static RaidRecord readRecord(FileChannel channel, int offset) throws IOException {
+        int length = readFully(channel, offset, 4).getInt();
+        if (length < 8 || offset + RECORD_OVERHEAD + (long) length > channel.size()) {
+            log.warn("Skipping raid with invalid length at offset {}", offset);
+            return null;
+        }
+
+        ByteBuffer record = readFully(channel, offset + 4, length + 4);
+        if (!isValid(record, length)) {
+            log.warn("Skipping raid that failed the CRC check at offset {}", offset);
+            return null;
+        }
+        return decodeRaid(new DataInputStream(new ByteArrayInputStream(record.array(), 0, length)));
+    }
+
+    private static boolean isValid(ByteBuffer record, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, length);
+        return record.getInt(length) == (int) crc.getValue();
+    }
+
+    private static byte[] newHeader() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeRecord(RaidRecord raid) throws IOException {
+        ByteArrayOutputStream raidBytes = new ByteArrayOutputStream();
+        encodeRaid(raid, new DataOutputStream(raidBytes));
+
+        CRC32 crc = new CRC32();
+        crc.update(raidBytes.toByteArray(), 0, raidBytes.size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(raidBytes.size() + RECORD_OVERHEAD);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(raidBytes.size());
+        raidBytes.writeTo(out);
+        out.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeIndex(SegmentIndex index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(index.count * INDEX_ENTRY_SIZE + INDEX_TRAILER_SIZE);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < index.count; i++) {
+            out.writeInt(index.offsets[i]);
+            out.writeLong(index.startTimes[i]);
+        }
+        out.writeInt(index.count);
+        out.writeInt((int) index.end);
+        out.writeInt(INDEX_MAGIC);
+        return bytes.toByteArray();
+    }
+
+    private static void encodeRaid(RaidRecord raid, DataOutputStream out) throws IOException {
+        out.writeLong(raid.getStartTime());
+
+        int raiderCount = 0;
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            if (raid.getRaiderName(slot) != null) {
+                raiderCount++;
+            }
+        }
+        writeVarInt(out, raiderCount);
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            if (raid.getRaiderName(slot) != null) {
+                out.writeByte(slot);
+                out.writeUTF(raid.getRaiderName(slot));
+            }
+        }
+
+        List<RaidRoom> rooms = raid.getRooms();
+        writeVarInt(out, rooms.size());
+        for (RaidRoom room : rooms) {
+            out.writeUTF(room == null ? "" : room.name());
+        }
+
+        // Only the mistakes made in this raid go in its name table
+        ToaMistake[] allMistakes = ToaMistake.values();
+        int[] mistakeNameIndexes = new int[allMistakes.length];
+        Arrays.fill(mistakeNameIndexes, -1);
+        List<ToaMistake> mistakeNames = new ArrayList<>();
+        for (int i = 0; i < raid.getEventCount(); i++) {
+            ToaMistake mistake = raid.getEventMistake(i);
+            if (mistakeNameIndexes[mistake.ordinal()] == -1) {
+                mistakeNameIndexes[mistake.ordinal()] = mistakeNames.size();
+                mistakeNames.add(mistake);
+            }
+        }
+        writeVarInt(out, mistakeNames.size());
+        for (ToaMistake mistake : mistakeNames) {
+            out.writeUTF(mistake.name());
+        }
+
+        writeVarInt(out, raid.getEventCount());
+        int previousTick = 0;
+        for (int i = 0; i < raid.getEventCount(); i++) {
+            writeVarInt(out, raid.getEventTick(i) - previousTick);
+            previousTick = raid.getEventTick(i);
+            out.writeByte(raid.getEventRoomIndex(i));
+            out.writeByte(raid.getEventRaiderSlot(i));
+            writeVarInt(out, mistakeNameIndexes[raid.getEventMistake(i).ordinal()]);
+            out.writeInt(raid.getEventTile(i));
+        }
+        out.flush();
+    }
+
+    private static RaidRecord decodeRaid(DataInputStream in) throws IOException {
+        long startTime = in.readLong();
+
+        String[] raiderNames = new String[RaidState.MAX_RAIDERS];
+        int raiderCount = readVarInt(in);
+        for (int i = 0; i < raiderCount; i++) {
+            int slot = in.readUnsignedByte();
+            String name = in.readUTF();
+            if (slot < RaidState.MAX_RAIDERS) {
+                raiderNames[slot] = name;
+            }
+        }
+
+        RaidRecord raid = new RaidRecord(startTime, raiderNames);
+        int roomCount = readVarInt(in);
+        for (int i = 0; i < roomCount; i++) {
+            raid.addRoom(toRaidRoom(in.readUTF()));
+        }
+
+        ToaMistake[] mistakes = new ToaMistake[readVarInt(in)];
+        for (int i = 0; i < mistakes.length; i++) {
+            mistakes[i] = toMistake(in.readUTF());
+        }
+
+        int eventCount = readVarInt(in);
+        int tick = 0;
+        for (int i = 0; i < eventCount; i++) {
+            tick += readVarInt(in);
+            int roomIndex = in.readByte();
+            int slot = in.readByte();
+            int mistakeNameIndex = readVarInt(in);
+            int packedTile = in.readInt();
+
+            if (mistakeNameIndex < 0 || mistakeNameIndex >= mistakes.length || roomIndex < RaidRecord.NO_ROOM ||
+                    roomIndex >= roomCount) {
+                throw new IOException("Raid history event " + i + " is out of bounds");
+            }
+            // Skip mistakes that no longer exist
+            if (mistakes[mistakeNameIndex] != null) {
+                raid.addEvent(tick, roomIndex, slot, mistakes[mistakeNameIndex], packedTile);
+            }
+        }
+        return raid;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of raid history segment");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, long position, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * The offsets and start times of the records in a segment
+     */
+    private static class SegmentIndex {
+        private int[] offsets = new int[64];
+        private long[] startTimes = new long[64];
+        private int count;
+        private long end; // offset right after the last complete record
+        private boolean isSealed;
+
+        private void add(int offset, long startTime) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                startTimes = Arrays.copyOf(startTimes, count * 2);
+            }
+            offsets[count] = offset;
+            startTimes[count] = startTime;
+            count++;
+        }
+    }
+}
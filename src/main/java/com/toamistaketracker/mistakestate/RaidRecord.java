@@ -0,0 +1,168 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.PackedTile;
+import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.RaidState;
+import com.toamistaketracker.ToaMistake;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The history of a single raid: when it started, who was in it, the rooms in the order they were entered, and every
+ * mistake as it was detected.
+ * <p>
+ * Mistake events are kept in parallel primitive arrays instead of one object per event, since a raid can have hundreds
+ * of them. Each event is the tick relative to the start of the raid, the index of the room it was made in, the raider's
+ * slot, the mistake, and the raider's {@link PackedTile}.
+ * <p>
+ * A record is filled on the client thread while the raid is in progress, and must not be modified after it's been
+ * handed off to the {@link RaidHistory} to be written.
+ */
+public class RaidRecord {
+
+    private static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * The room index of events made before any room was entered
+     */
+    public static final int NO_ROOM = -1;
+
+    /**
+     * The time the raid started, in epoch millis
+     */
+    @Getter
+    private final long startTime;
+
+    private final String[] raiderNames; // slot -> name, or null if the slot is empty
+    private final List<RaidRoom> rooms = new ArrayList<>(); // rooms in the order they were entered, null if unknown
+
+    private int[] ticks = new int[DEFAULT_CAPACITY];
+    private byte[] roomIndexes = new byte[DEFAULT_CAPACITY];
+    private byte[] slots = new byte[DEFAULT_CAPACITY];
+    private ToaMistake[] mistakes = new ToaMistake[DEFAULT_CAPACITY];
+    private int[] tiles = new int[DEFAULT_CAPACITY];
+    private int eventCount;
+
+    RaidRecord(long startTime, @NonNull String[] raiderNames) {
+        if (raiderNames.length != RaidState.MAX_RAIDERS) {
+            throw new IllegalArgumentException("Expected " + RaidState.MAX_RAIDERS + " raider slots");
+        }
+        this.startTime = startTime;
+        this.raiderNames = raiderNames.clone();
+    }
+
+    /**
+     * Note that the given room was entered. Every mistake from now on is made in this room.
+     *
+     * @param room The room, or null if it's unknown
+     */
+    void addRoom(RaidRoom room) {
+        // Room indexes are stored in a byte, and no real raid comes close to this many rooms
+        if (rooms.size() < Byte.MAX_VALUE) {
+            rooms.add(room);
+        }
+    }
+
+    /**
+     * Add a mistake event in the room that was entered last
+     *
+     * @param tick       The tick, relative to the start of the raid
+     * @param slot       The raider's slot
+     * @param mistake    The mistake
+     * @param packedTile The raider's tile, or {@link PackedTile#NONE}
+     */
+    void addMistake(int tick, int slot, @NonNull ToaMistake mistake, int packedTile) {
+        addEvent(tick, rooms.size() - 1, slot, mistake, packedTile);
+    }
+
+    void addEvent(int tick, int roomIndex, int slot, @NonNull ToaMistake mistake, int packedTile) {
+        if (eventCount == mistakes.length) {
+            int capacity = eventCount * 2;
+            ticks = Arrays.copyOf(ticks, capacity);
+            roomIndexes = Arrays.copyOf(roomIndexes, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            mistakes = Arrays.copyOf(mistakes, capacity);
+            tiles = Arrays.copyOf(tiles, capacity);
+        }
+        ticks[eventCount] = tick;
+        roomIndexes[eventCount] = (byte) roomIndex;
+        slots[eventCount] = (byte) slot;
+        mistakes[eventCount] = mistake;
+        tiles[eventCount] = packedTile;
+        eventCount++;
+    }
+
+    /**
+     * Retrieve the name of the raider in the given slot
+     *
+     * @param slot The slot, from 0 until {@link RaidState#MAX_RAIDERS}
+     * @return The name, or null if nobody was in that slot
+     */
+    public String getRaiderName(int slot) {
+        return raiderNames[slot];
+    }
+
+    /**
+     * @return The rooms in the order they were entered, where a room is null if it's no longer known
+     */
+    public List<RaidRoom> getRooms() {
+        return Collections.unmodifiableList(rooms);
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @return The tick the event happened on, relative to the start of the raid
+     */
+    public int getEventTick(int index) {
+        checkIndex(index);
+        return ticks[index];
+    }
+
+    /**
+     * @return The index in {@link #getRooms()} of the room the event happened in, or {@link #NO_ROOM}
+     */
+    public int getEventRoomIndex(int index) {
+        checkIndex(index);
+        return roomIndexes[index];
+    }
+
+    /**
+     * @return The room the event happened in, or null if it's unknown
+     */
+    public RaidRoom getEventRoom(int index) {
+        int roomIndex = getEventRoomIndex(index);
+        return roomIndex == NO_ROOM ? null : rooms.get(roomIndex);
+    }
+
+    public int getEventRaiderSlot(int index) {
+        checkIndex(index);
+        return slots[index];
+    }
+
+    public ToaMistake getEventMistake(int index) {
+        checkIndex(index);
+        return mistakes[index];
+    }
+
+    /**
+     * @return The {@link PackedTile} the raider was on when making the mistake, or {@link PackedTile#NONE}
+     */
+    public int getEventTile(int index) {
+        checkIndex(index);
+        return tiles[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= eventCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + eventCount);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.ToaMistake;
+import lombok.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * All mistakes detected on a single tick, in the order they were detected. The plugin records each mistake as it's
+ * detected on the client thread, fills one batch per tick, and hands it to the EDT once, so the panel is updated in
+ * bulk and the mistake state is written to disk at most once, instead of once per mistake.
+ * <p>
+ * A batch must not be modified after it's been handed off.
+ */
+public class TickMistakeBatch {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private String[] playerNames = new String[DEFAULT_CAPACITY];
+    private ToaMistake[] mistakes = new ToaMistake[DEFAULT_CAPACITY];
+    private int size;
+
+    /**
+     * Add a mistake for the specified player
+     *
+     * @param playerName The player name
+     * @param mistake    The mistake, already grouped for the panel and written state
+     */
+    public void add(@NonNull String playerName, @NonNull ToaMistake mistake) {
+        if (size == mistakes.length) {
+            playerNames = Arrays.copyOf(playerNames, size * 2);
+            mistakes = Arrays.copyOf(mistakes, size * 2);
+        }
+        playerNames[size] = playerName;
+        mistakes[size] = mistake;
+        size++;
+    }
+
+    public String getPlayerName(int index) {
+        checkIndex(index);
+        return playerNames[index];
+    }
+
+    public ToaMistake getMistake(int index) {
+        checkIndex(index);
+        return mistakes[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.util.List;
 public class PlayerMistakesBox extends JPanel {
 
     private static final int ITEMS_PER_ROW = 5;
+    private static final ToaMistake[] MISTAKES = ToaMistake.values();
 
     private final MistakeStateManager mistakeStateManager;
 
@@ -35,6 +36,7 @@ public class PlayerMistakesBox extends JPanel {
     @Getter
     private final String playerName;
     private int totalMistakes;
+    private final int[] mistakeCounts = new int[MISTAKES.length]; // ordinal -> count, reused for every rebuild
 
     private final JPanel mistakesContainer = new JPanel();
     private final JLabel raidCountLabel;
@@ -96,15 +98,18 @@ public class PlayerMistakesBox extends JPanel {
         totalMistakes = 0;
         setVisible(true);
 
+        // Read all counts at once, instead of looking the player up again for every mistake
+        mistakeStateManager.copyMistakeCountsForPlayer(playerName, mistakeCounts);
+
         List<ToaMistakeCount> mistakeCountsForPlayer = new ArrayList<>();
-        for (ToaMistake mistake : ToaMistake.values()) {
+        for (ToaMistake mistake : MISTAKES) {
             if (isRaidDeaths && ToaMistake.isRoomDeath(mistake)) {
                 continue;
             } else if (!isRaidDeaths && mistake == ToaMistake.DEATH) {
                 continue;
             }
 
-            int mistakeCount = mistakeStateManager.getMistakeCountForPlayer(playerName, mistake);
+            int mistakeCount = mistakeCounts[mistake.ordinal()];
             if (mistakeCount > 0) {
                 totalMistakes += mistakeCount;
                 mistakeCountsForPlayer.add(new ToaMistakeCount(mistake, mistakeCount));
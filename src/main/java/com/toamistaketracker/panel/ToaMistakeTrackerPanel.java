@@ -4,6 +4,7 @@ import com.toamistaketracker.ToaMistake;
 import com.toamistaketracker.ToaMistakeTrackerPlugin;
 import com.toamistaketracker.mistakestate.MistakeStateManager;
 import com.toamistaketracker.mistakestate.MistakeStateReader;
+import com.toamistaketracker.mistakestate.TickMistakeBatch;
 import net.runelite.api.Client;
 import net.runelite.client.ui.ColorScheme;
 import net.runelite.client.ui.FontManager;
@@ -41,8 +42,10 @@ import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -115,7 +118,9 @@ public class ToaMistakeTrackerPanel extends PluginPanel {
     public ToaMistakeTrackerPanel(Client client, MistakeStateReader mistakeStateReader,
                                   @Named("developerMode") boolean developerMode) {
         this.client = client;
-        this.mistakeStateManager = mistakeStateReader.read();
+        // Plugins start up on the EDT, so the panel is always fully constructed before the loaded callback runs
+        this.mistakeStateManager = mistakeStateReader.readInBackground(
+                () -> SwingUtilities.invokeLater(this::onMistakeStateLoaded));
         this.currentRaiderNames = Collections.emptyList();
 
         setBorder(new EmptyBorder(6, 6, 6, 6));
@@ -242,10 +247,15 @@ public class ToaMistakeTrackerPanel extends PluginPanel {
             resetAll();
         });
 
+        // Create export menu
+        final JMenuItem export = new JMenuItem("Export to JSON");
+        export.addActionListener(e -> exportJson());
+
         // Create popup menu
         final JPopupMenu popupMenu = new JPopupMenu();
         popupMenu.setBorder(new EmptyBorder(5, 5, 5, 5));
         popupMenu.add(reset);
+        popupMenu.add(export);
         overallPanel.setComponentPopupMenu(popupMenu);
 
         // Create the mistakes panel which shows all mistakes for all players
@@ -261,18 +271,34 @@ public class ToaMistakeTrackerPanel extends PluginPanel {
             JButton testButton = new JButton("Test Mistakes");
             testButton.addActionListener(e ->
             {
+                TickMistakeBatch batch = new TickMistakeBatch();
                 for (ToaMistake mistake : ToaMistake.values()) {
-                    addMistakeForPlayer("Test Player", mistake);
+                    recordMistakeForPlayer("Test Player", mistake);
+                    batch.add("Test Player", mistake);
                 }
+                addMistakes(batch);
             });
             layoutPanel.add(testButton);
         }
 
-        // Add the error for when there are no mistakes yet
-        errorPanel.setContent("Toa Mistake Tracker", "You have not tracked any mistakes yet.");
+        // Add the error for when there are no mistakes yet, or they're still loading
+        setErrorPanelContent();
         updateVisiblePanels(true);
     }
 
+    private void onMistakeStateLoaded() {
+        setErrorPanelContent();
+        rebuildAll();
+    }
+
+    private void setErrorPanelContent() {
+        if (mistakeStateManager.isLoading()) {
+            errorPanel.setContent("Toa Mistake Tracker", "Loading tracked mistakes...");
+        } else {
+            errorPanel.setContent("Toa Mistake Tracker", "You have not tracked any mistakes yet.");
+        }
+    }
+
     /**
      * The plugin has been reloaded, reload the panel
      */
@@ -280,6 +306,13 @@ public class ToaMistakeTrackerPanel extends PluginPanel {
         rebuildAll();
     }
 
+    /**
+     * The plugin is shutting down, write the mistake state to disk
+     */
+    public void shutDown() {
+        mistakeStateManager.flushAndWait();
+    }
+
     public void loadHeaderIcon(BufferedImage img) {
         overallIcon.setIcon(new ImageIcon(img));
     }
@@ -290,6 +323,11 @@ public class ToaMistakeTrackerPanel extends PluginPanel {
     public void newRaid(List<String> playerNames) {
         currentRaiderNames = playerNames;
         mistakeStateManager.newRaid(new HashSet<>(playerNames));
+        if (mistakeStateManager.isLoading()) {
+            // The panel is rebuilt from scratch once loaded
+            return;
+        }
+
         if (isShowingAll) {
             updateOverallPanel();
             reorderRaiderBoxes();
@@ -300,15 +338,39 @@ public class ToaMistakeTrackerPanel extends PluginPanel {
     }
 
     /**
-     * Adds a mistake for the specified player, both in the manager and the panel.
+     * Records a mistake for the specified player in the manager, without updating the panel. This can be called from
+     * the client thread, and the mistake shows up in the panel once its batch is added through
+     * {@link #addMistakes(TickMistakeBatch)}.
      *
-     * @param playerName - The player name that a mistake was added for
+     * @param playerName - The player name that a mistake was made by
+     * @param mistake    - The mistake
      */
-    public void addMistakeForPlayer(String playerName, ToaMistake mistake) {
+    public void recordMistakeForPlayer(String playerName, ToaMistake mistake) {
         mistakeStateManager.addMistakeForPlayer(playerName, mistake);
+    }
+
+    /**
+     * Adds all mistakes recorded on a tick to the panel, and commits them in the manager. Each affected box and the
+     * overall panel are only rebuilt once for the whole batch.
+     *
+     * @param batch - The mistakes recorded on the tick
+     */
+    public void addMistakes(TickMistakeBatch batch) {
+        if (batch.isEmpty()) return;
+
+        mistakeStateManager.commitMistakes(batch);
+        if (mistakeStateManager.isLoading()) {
+            // The panel is rebuilt from scratch once loaded
+            return;
+        }
 
-        PlayerMistakesBox box = buildBox(playerName);
-        box.rebuildAllMistakes(isRaidDeaths);
+        Set<String> playerNames = new LinkedHashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            playerNames.add(batch.getPlayerName(i));
+        }
+        for (String playerName : playerNames) {
+            buildBox(playerName).rebuildAllMistakes(isRaidDeaths);
+        }
         updateOverallPanel();
 
         // Ensure ordering is correct
@@ -340,6 +402,11 @@ public class ToaMistakeTrackerPanel extends PluginPanel {
      * Rebuilds all the boxes from scratch based on which view we're currently looking at
      */
     private void rebuildAll() {
+        if (mistakeStateManager.isLoading()) {
+            // Keep showing the loading state until the whole state is loaded
+            return;
+        }
+
         if (SwingUtilities.isEventDispatchThread()) {
             SwingUtil.fastRemoveAll(mistakesContainer);
         } else {
@@ -430,6 +497,18 @@ public class ToaMistakeTrackerPanel extends PluginPanel {
         resetUi();
     }
 
+    private void exportJson() {
+        mistakeStateManager.exportJson(path -> SwingUtilities.invokeLater(() -> {
+            if (path == null) {
+                JOptionPane.showMessageDialog(overallPanel, "Unable to export mistakes, see the client log.",
+                        "Export failed", JOptionPane.ERROR_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(overallPanel, "Exported all mistakes to " + path,
+                        "Export complete", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }));
+    }
+
     private void resetUi() {
         playerMistakesBoxes.clear();
 
@@ -442,7 +521,7 @@ public class ToaMistakeTrackerPanel extends PluginPanel {
 
     private void updateOverallPanel() {
         overallPlayersLabel.setText(htmlLabel("Total players: ",
-                mistakeStateManager.getPlayersWithMistakes().size()));
+                mistakeStateManager.getPlayersWithMistakesCount()));
         overallMistakesLabel.setText(htmlLabel("Total mistakes: ",
                 mistakeStateManager.getTotalMistakeCountForAllPlayers()));
         overallRaidsLabel.setText(htmlLabel("Tracked raids: ",
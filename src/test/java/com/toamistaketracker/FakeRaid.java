@@ -0,0 +1,306 @@
+package com.toamistaketracker;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.toamistaketracker.detector.MistakeDetectorManager;
+import com.toamistaketracker.detector.MistakeSink;
+import com.toamistaketracker.detector.TickEvaluator;
+import com.toamistaketracker.detector.TickSnapshot;
+import com.toamistaketracker.events.InRaidChanged;
+import net.runelite.api.ChatMessageType;
+import net.runelite.api.Client;
+import net.runelite.api.GameState;
+import net.runelite.api.Player;
+import net.runelite.api.coords.WorldPoint;
+import net.runelite.api.events.ActorDeath;
+import net.runelite.api.events.AnimationChanged;
+import net.runelite.api.events.ChatMessage;
+import net.runelite.api.events.GameStateChanged;
+import net.runelite.api.events.GameTick;
+import net.runelite.client.eventbus.EventBus;
+import net.runelite.client.eventbus.Subscribe;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A raid driven by hand for tests. The client and its players are fakes, but the raid state, detectors and tick
+ * pipeline are the real ones, wired together the same way the plugin is. Everything a test calls here runs on the
+ * "client thread", i.e. the test's thread, and any evaluation on the worker thread is applied back onto it whenever
+ * {@link #runClientThread()} is called.
+ */
+public class FakeRaid {
+
+    private static final int TOA_RAIDERS_VARC_START = 1099;
+
+    private final List<FakePlayer> raiders = new ArrayList<>();
+    private final List<Player> players = new ArrayList<>();
+    private final Client client;
+    private int tickCount;
+    // Boxed once per tick, so that reading them through the proxy never allocates while the tick is evaluated
+    private Integer boxedTickCount = 0;
+    private Integer boxedGameCycle = 0;
+
+    private final EventBus eventBus = new EventBus();
+    private final Queue<Runnable> clientThread = new ConcurrentLinkedQueue<>();
+    private final TickEvaluator tickEvaluator = new TickEvaluator(clientThread::add);
+    private final RaidState raidState;
+    private final MistakeDetectorManager mistakeDetectorManager;
+
+    private final MistakeSink[] detectedMistakes = new MistakeSink[RaidState.MAX_RAIDERS];
+    private final List<String> appliedMistakes = new ArrayList<>();
+
+    // Reused for every tick, like in the plugin
+    private TickSnapshot evaluatingTick;
+    private final Runnable detectAll;
+    private final Runnable applyAll = () -> apply(evaluatingTick);
+
+    public FakeRaid(int numRaiders, boolean async) {
+        for (int slot = 0; slot < numRaiders; slot++) {
+            FakePlayer raider = new FakePlayer("Raider " + slot, new WorldPoint(3000 + slot, 3000, 0));
+            raiders.add(raider);
+            players.add(raider.getPlayer());
+        }
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            detectedMistakes[slot] = new MistakeSink();
+        }
+
+        client = (Client) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Client.class},
+                (proxy, method, args) -> invokeClient(method, args));
+
+        Injector injector = Guice.createInjector(binder -> {
+            binder.bind(Client.class).toInstance(client);
+            binder.bind(EventBus.class).toInstance(eventBus);
+            binder.bind(TickEvaluator.class).toInstance(tickEvaluator);
+        });
+        raidState = injector.getInstance(RaidState.class);
+        mistakeDetectorManager = injector.getInstance(MistakeDetectorManager.class);
+        detectAll = () -> mistakeDetectorManager.detectAll(evaluatingTick, detectedMistakes);
+
+        tickEvaluator.setAsync(async);
+        eventBus.register(this);
+        raidState.startUp();
+    }
+
+    public EventBus getEventBus() {
+        return eventBus;
+    }
+
+    public MistakeDetectorManager getMistakeDetectorManager() {
+        return mistakeDetectorManager;
+    }
+
+    public RaidState getRaidState() {
+        return raidState;
+    }
+
+    public boolean isEvaluatingAsync() {
+        return tickEvaluator.isAsync();
+    }
+
+    /**
+     * Run a game tick in the given room the same way the plugin does: the raid state and every detector handle the
+     * GameTick, and then the tick is captured and evaluated. The raiders are loaded on the first tick in the raid.
+     *
+     * @param room The room the local player is in
+     */
+    public void tick(RaidRoom room) {
+        postTick(room);
+        evaluateTick();
+    }
+
+    /**
+     * Only the first half of {@link #tick(RaidRoom)}: the raid state and every detector handle the GameTick
+     *
+     * @param room The room the local player is in
+     */
+    public void postTick(RaidRoom room) {
+        tickCount++;
+        boxedTickCount = tickCount;
+        boxedGameCycle = tickCount * ToaMistakeTrackerPlugin.CYCLES_PER_GAME_TICK;
+        raidState.onGameTick(room.getRegionId());
+        eventBus.post(new GameTick());
+    }
+
+    /**
+     * Only the second half of {@link #tick(RaidRoom)}: capture the tick, evaluate it and apply the results, like the
+     * plugin's GameTick handler
+     */
+    public void evaluateTick() {
+        if (!raidState.isInRaid()) return;
+
+        evaluatingTick = mistakeDetectorManager.captureTick();
+        tickEvaluator.evaluate(detectAll, applyAll);
+    }
+
+    /**
+     * @return The mistakes detected for the raider in the given slot on the last evaluated tick
+     */
+    public MistakeSink getDetectedMistakes(int slot) {
+        return detectedMistakes[slot];
+    }
+
+    /**
+     * Apply the results like the plugin does, but only record them
+     */
+    private void apply(TickSnapshot tick) {
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            Raider raider = tick.getRaider(slot);
+            MistakeSink mistakes = detectedMistakes[slot];
+            if (raider == null || mistakes.isEmpty()) continue;
+
+            for (int i = 0; i < mistakes.size(); i++) {
+                if (mistakes.get(i) == ToaMistake.DEATH) {
+                    Raider liveRaider = raidState.getRaider(slot);
+                    if (liveRaider != null && liveRaider.getPlayer() == raider.getPlayer()) {
+                        liveRaider.setDead(true);
+                    }
+                }
+            }
+            appliedMistakes.add(tick.getTickCount() + " " + raider.getName() + " " + mistakes);
+        }
+    }
+
+    /**
+     * Run everything queued up for the client thread so far, like the results of a tick evaluated in the background
+     */
+    public void runClientThread() {
+        Runnable runnable;
+        while ((runnable = clientThread.poll()) != null) {
+            runnable.run();
+        }
+    }
+
+    /**
+     * Finish the tick in flight and stop the worker thread
+     *
+     * @return Every mistake applied so far, in the order they were applied
+     */
+    public List<String> finish() {
+        tickEvaluator.shutdown();
+        runClientThread();
+        return appliedMistakes;
+    }
+
+    public void moveTo(int slot, WorldPoint worldLocation) {
+        raiders.get(slot).worldLocation = worldLocation;
+    }
+
+    public void animate(int slot, int animation, int graphic) {
+        FakePlayer raider = raiders.get(slot);
+        raider.animation = animation;
+        raider.graphic = graphic;
+
+        AnimationChanged event = new AnimationChanged();
+        event.setActor(raider.getPlayer());
+        eventBus.post(event);
+    }
+
+    public void die(int slot) {
+        eventBus.post(new ActorDeath(raiders.get(slot).getPlayer()));
+    }
+
+    public void gameMessage(String message) {
+        ChatMessage event = new ChatMessage();
+        event.setType(ChatMessageType.GAMEMESSAGE);
+        event.setMessage(message);
+        eventBus.post(event);
+    }
+
+    public void loadScene() {
+        GameStateChanged event = new GameStateChanged();
+        event.setGameState(GameState.LOADING);
+        eventBus.post(event);
+    }
+
+    @Subscribe
+    public void onInRaidChanged(InRaidChanged event) {
+        if (event.isInRaid()) {
+            mistakeDetectorManager.startup();
+        } else {
+            mistakeDetectorManager.shutdown();
+        }
+    }
+
+    private Object invokeClient(Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getTickCount":
+                return boxedTickCount;
+            case "getGameCycle":
+                return boxedGameCycle;
+            case "getGameState":
+                // Not logged in, so RaidState only handles the ticks driven through tick(RaidRoom)
+                return GameState.LOGIN_SCREEN;
+            case "getVarcStrValue":
+                int slot = (int) args[0] - TOA_RAIDERS_VARC_START;
+                return slot >= 0 && slot < raiders.size() ? raiders.get(slot).name : null;
+            case "getPlayers":
+                return players;
+            case "getNpcs":
+                return Collections.emptyList();
+            default:
+                return defaultValue(method);
+        }
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0d;
+        if (type == float.class) return 0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return (char) 0;
+        return null;
+    }
+
+    private static class FakePlayer {
+
+        private final String name;
+        private final Player player;
+        private WorldPoint worldLocation;
+        private int animation = -1;
+        private int graphic = -1;
+
+        FakePlayer(String name, WorldPoint worldLocation) {
+            this.name = name;
+            this.worldLocation = worldLocation;
+            this.player = (Player) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Player.class},
+                    (proxy, method, args) -> invoke(proxy, method, args));
+        }
+
+        Player getPlayer() {
+            return player;
+        }
+
+        private Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getName":
+                    return name;
+                case "getWorldLocation":
+                    return worldLocation;
+                case "getAnimation":
+                    return animation;
+                case "getGraphic":
+                    return graphic;
+                case "getPoseAnimation":
+                    return -1;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return name;
+                default:
+                    return defaultValue(method);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.toamistaketracker.detector;
+
+import com.toamistaketracker.FakeRaid;
+import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.RaidState;
+import com.toamistaketracker.ToaMistake;
+import com.toamistaketracker.detector.death.DeathDetector;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MistakeDetectorManagerTest {
+
+    private static final int BANANA_SLIP_ANIMATION_ID = 4030;
+
+    private static final int WARMUP_TICKS = 2_000;
+    private static final int MEASURED_TICKS = 20;
+
+    @Test
+    public void testActiveDetectorsKeepConfiguredOrder() {
+        FakeRaid raid = new FakeRaid(1, false);
+        MistakeDetectorManager manager = raid.getMistakeDetectorManager();
+        List<BaseMistakeDetector> configured = manager.getMistakeDetectors();
+
+        for (RaidRoom room : RaidRoom.values()) {
+            if (room == RaidRoom.RAID_LOBBY_OUTSIDE) continue;
+
+            raid.tick(room);
+            BaseMistakeDetector[] active = manager.captureTick().getDetectors();
+            String message = room + " " + Arrays.toString(active);
+
+            // Last write wins for the overhead text, so death must always be detected last
+            assertTrue(message, active.length > 0);
+            assertTrue(message, active[active.length - 1] instanceof DeathDetector);
+            for (int i = 1; i < active.length; i++) {
+                assertTrue(message, configured.indexOf(active[i - 1]) < configured.indexOf(active[i]));
+            }
+            for (BaseMistakeDetector detector : active) {
+                assertTrue(message, detector.getRaidRoom() == null || detector.getRaidRoom() == room);
+            }
+            // And no detector for this room is left out
+            for (BaseMistakeDetector detector : configured) {
+                if (detector.getRaidRoom() == room) {
+                    assertTrue(message + " missing " + detector, Arrays.asList(active).contains(detector));
+                }
+            }
+        }
+        raid.finish();
+    }
+
+    @Test
+    public void testDeathIsDetectedAfterRoomMistakes() {
+        FakeRaid raid = new FakeRaid(2, false);
+        MistakeDetectorManager manager = raid.getMistakeDetectorManager();
+        raid.tick(RaidRoom.BABA);
+
+        raid.animate(0, BANANA_SLIP_ANIMATION_ID, -1);
+        raid.die(0);
+        raid.animate(1, BANANA_SLIP_ANIMATION_ID, -1);
+        TickSnapshot tick = manager.captureTick();
+
+        MistakeSink mistakes = new MistakeSink();
+        manager.detectMistakes(tick, tick.getRaider(0), mistakes);
+        assertMistakes(mistakes, ToaMistake.BABA_BANANA, ToaMistake.DEATH, ToaMistake.DEATH_APMEKEN);
+
+        manager.detectMistakes(tick, tick.getRaider(1), mistakes);
+        assertMistakes(mistakes, ToaMistake.BABA_BANANA);
+        raid.finish();
+    }
+
+    @Test
+    public void testNoMistakeTickDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // Reading the allocated bytes can allocate itself, so take it off every measurement
+        long overhead = Long.MAX_VALUE;
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            long start = threadMXBean.getThreadAllocatedBytes(threadId);
+            long end = threadMXBean.getThreadAllocatedBytes(threadId);
+            overhead = Math.min(overhead, end - start);
+        }
+
+        for (RaidRoom room : RaidRoom.values()) {
+            if (room == RaidRoom.RAID_LOBBY_OUTSIDE) continue;
+
+            FakeRaid raid = new FakeRaid(RaidState.MAX_RAIDERS, false);
+            for (int i = 0; i < WARMUP_TICKS; i++) {
+                raid.tick(room);
+            }
+
+            // Every tick, from capturing it to applying the results, like the plugin's GameTick handler
+            for (int i = 0; i < MEASURED_TICKS; i++) {
+                raid.postTick(room);
+
+                long start = threadMXBean.getThreadAllocatedBytes(threadId);
+                raid.evaluateTick();
+                long end = threadMXBean.getThreadAllocatedBytes(threadId);
+
+                for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+                    MistakeSink mistakes = raid.getDetectedMistakes(slot);
+                    assertTrue(room + " slot " + slot + " " + mistakes, mistakes.isEmpty());
+                }
+                assertEquals("Bytes allocated evaluating tick " + i + " in " + room, 0, end - start - overhead);
+            }
+            raid.finish();
+        }
+    }
+
+    private static void assertMistakes(MistakeSink actual, ToaMistake... expected) {
+        ToaMistake[] mistakes = new ToaMistake[actual.size()];
+        for (int i = 0; i < actual.size(); i++) {
+            mistakes[i] = actual.get(i);
+        }
+        assertEquals(Arrays.asList(expected), Arrays.asList(mistakes));
+    }
+}
@@ -0,0 +1,123 @@
+package com.toamistaketracker.detector;
+
+import com.toamistaketracker.FakeRaid;
+import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.RaidState;
+import com.toamistaketracker.events.RaidRoomChanged;
+import net.runelite.api.events.GameTick;
+import net.runelite.client.eventbus.EventBus;
+
+/**
+ * Times room transitions with every room detector (un)registered with the {@link EventBus} when its room starts and
+ * ends, like they used to be, against keeping every detector registered for the whole raid and only flipping their
+ * active flag. Since the inactive detectors still receive every event, this also times dispatching a
+ * {@link GameTick} both ways.
+ * <p>
+ * This is a benchmark, not a test. Run it with {@link #main(String[])}. Only this plugin's subscribers are on the bus,
+ * so the register path is cheaper here than in the client, where every other plugin is subscribed too.
+ */
+public class RoomTransitionBenchmark {
+
+    // In raid order, wrapping around from Wardens back to the Het puzzle
+    private static final RaidRoom[] ROOMS = {
+            RaidRoom.HET_PUZZLE,
+            RaidRoom.AKKHA,
+            RaidRoom.CRONDIS_PUZZLE,
+            RaidRoom.ZEBAK,
+            RaidRoom.SCABARAS_PUZZLE,
+            RaidRoom.KEPHRI,
+            RaidRoom.APMEKEN_PUZZLE,
+            RaidRoom.BABA,
+            RaidRoom.WARDENS_P1_P2,
+            RaidRoom.WARDENS_P3,
+    };
+
+    private static final int WARMUP_ROUNDS = 1_000;
+    private static final int MEASURED_ROUNDS = 1_000;
+    private static final int WARMUP_EVENTS = 200_000;
+    private static final int MEASURED_EVENTS = 1_000_000;
+
+    public static void main(String[] args) {
+        FakeRaid raid = new FakeRaid(RaidState.MAX_RAIDERS, false);
+        raid.tick(ROOMS[0]);
+        MistakeDetectorManager manager = raid.getMistakeDetectorManager();
+        EventBus eventBus = raid.getEventBus();
+
+        // Every detector is registered for the whole raid, so a room change only flips the active flags
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            gatedRound(manager);
+        }
+        long gatedStart = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            gatedRound(manager);
+        }
+        long gatedTransitionNanos = (System.nanoTime() - gatedStart) / ((long) MEASURED_ROUNDS * ROOMS.length);
+        long gatedEventNanos = timeEvents(eventBus);
+
+        // Only the detectors for the current room are registered, and every room change (un)registers them
+        for (BaseMistakeDetector detector : manager.getMistakeDetectors()) {
+            if (detector.getRaidRoom() != null && detector.getRaidRoom() != ROOMS[0]) {
+                eventBus.unregister(detector);
+            }
+        }
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            registeringRound(manager, eventBus);
+        }
+        long registeringStart = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            registeringRound(manager, eventBus);
+        }
+        long registeringTransitionNanos = (System.nanoTime() - registeringStart) /
+                ((long) MEASURED_ROUNDS * ROOMS.length);
+        long registeringEventNanos = timeEvents(eventBus);
+
+        raid.finish();
+
+        System.out.println("Room transition, register/unregister: " + registeringTransitionNanos + " ns");
+        System.out.println("Room transition, active flag:         " + gatedTransitionNanos + " ns");
+        System.out.println("GameTick dispatch, register/unregister: " + registeringEventNanos + " ns");
+        System.out.println("GameTick dispatch, active flag:         " + gatedEventNanos + " ns");
+    }
+
+    private static void gatedRound(MistakeDetectorManager manager) {
+        for (int i = 0; i < ROOMS.length; i++) {
+            manager.onRaidRoomChanged(roomChanged(i));
+        }
+    }
+
+    private static void registeringRound(MistakeDetectorManager manager, EventBus eventBus) {
+        for (int i = 0; i < ROOMS.length; i++) {
+            RaidRoomChanged event = roomChanged(i);
+            for (BaseMistakeDetector detector : manager.getMistakeDetectors()) {
+                if (detector.getRaidRoom() == null) continue;
+
+                if (detector.getRaidRoom() == event.getNewRaidRoom()) {
+                    eventBus.register(detector);
+                    detector.startup();
+                } else if (detector.getRaidRoom() == event.getPrevRaidRoom()) {
+                    detector.shutdown();
+                    eventBus.unregister(detector);
+                }
+            }
+        }
+    }
+
+    private static RaidRoomChanged roomChanged(int i) {
+        return RaidRoomChanged.builder()
+                .prevRaidRoom(ROOMS[i])
+                .newRaidRoom(ROOMS[(i + 1) % ROOMS.length])
+                .build();
+    }
+
+    private static long timeEvents(EventBus eventBus) {
+        GameTick event = new GameTick();
+        for (int i = 0; i < WARMUP_EVENTS; i++) {
+            eventBus.post(event);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_EVENTS; i++) {
+            eventBus.post(event);
+        }
+        return (System.nanoTime() - start) / MEASURED_EVENTS;
+    }
+}
@@ -0,0 +1,83 @@
+package com.toamistaketracker.detector;
+
+import com.toamistaketracker.FakeRaid;
+import com.toamistaketracker.RaidRoom;
+import net.runelite.api.coords.WorldPoint;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TickEvaluatorTest {
+
+    private static final int NUM_RAIDERS = 8;
+    private static final int NUM_TICKS = 300;
+
+    private static final int BANANA_SLIP_ANIMATION_ID = 4030;
+    private static final String[] APMEKEN_FAILURE_MESSAGES = {
+            "The fumes filling the room suddenly ignite!",
+            "Damaged roof supports cause some debris to fall on you!",
+            "Your group is overwhelmed by Amascut's corruption!",
+    };
+
+    @Test
+    public void testAsyncEvaluationMatchesSync() {
+        List<String> expected = runRaid(false, 0);
+        assertTrue(expected.stream().anyMatch(m -> m.contains("DEATH")));
+        assertTrue(expected.stream().anyMatch(m -> m.contains("BABA_BANANA")));
+        assertTrue(expected.stream().anyMatch(m -> m.contains("APMEKEN_PUZZLE_")));
+
+        // Different seeds apply the results from the worker at different points between the events
+        for (int seed = 0; seed < 10; seed++) {
+            assertEquals("seed " + seed, expected, runRaid(true, seed));
+        }
+    }
+
+    /**
+     * Run the same scripted raid, with deaths, slips, team mistakes and room changes
+     *
+     * @param async         Whether to evaluate each tick on the worker thread
+     * @param clientThreadSeed The seed for when the client thread gets around to applying results from the worker
+     * @return The applied mistakes
+     */
+    private static List<String> runRaid(boolean async, long clientThreadSeed) {
+        FakeRaid raid = new FakeRaid(NUM_RAIDERS, async);
+        Random script = new Random(1);
+        Random clientThread = new Random(clientThreadSeed);
+
+        for (int tick = 0; tick < NUM_TICKS; tick++) {
+            RaidRoom room = tick < NUM_TICKS / 3 ? RaidRoom.APMEKEN_PUZZLE
+                    : tick < 2 * NUM_TICKS / 3 ? RaidRoom.BABA
+                    : RaidRoom.WARDENS_P1_P2;
+            raid.tick(room);
+
+            for (int slot = 0; slot < NUM_RAIDERS; slot++) {
+                raid.moveTo(slot, new WorldPoint(3000 + script.nextInt(10), 3000 + script.nextInt(10), 0));
+                if (script.nextInt(10) == 0) {
+                    raid.animate(slot, BANANA_SLIP_ANIMATION_ID, -1);
+                } else if (script.nextInt(4) == 0) {
+                    raid.animate(slot, -1, -1);
+                }
+                if (script.nextInt(60) == 0) {
+                    raid.die(slot);
+                }
+                if (clientThread.nextBoolean()) {
+                    raid.runClientThread();
+                }
+            }
+
+            if (script.nextInt(10) == 0) {
+                raid.gameMessage(APMEKEN_FAILURE_MESSAGES[script.nextInt(APMEKEN_FAILURE_MESSAGES.length)]);
+            }
+            if (script.nextInt(40) == 0) {
+                raid.loadScene();
+            }
+        }
+
+        assertEquals(async, raid.isEvaluatingAsync());
+        return raid.finish();
+    }
+}
@@ -0,0 +1,130 @@
+package com.toamistaketracker.detector.tracker;
+
+import com.toamistaketracker.PackedTile;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HitTileSetTest {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    @Test
+    public void testRemoveKeepsCollidingTilesReachable() {
+        // Tiles that all probe from the last slot, so their run wraps around to the start of the table
+        List<Integer> colliding = tilesWithHomeSlot(DEFAULT_CAPACITY - 1, 4);
+        // And one that probes from the first slot, which the wrapped run pushes along
+        int neighbour = tilesWithHomeSlot(0, 1).get(0);
+
+        HitTileSet tiles = new HitTileSet();
+        for (int tile : colliding) {
+            assertTrue(tiles.add(tile));
+        }
+        assertTrue(tiles.add(neighbour));
+
+        // Removing from the middle of the run must shift the later entries back, not leave a hole that ends lookups
+        assertTrue(tiles.remove(colliding.get(1)));
+        assertFalse(tiles.contains(colliding.get(1)));
+        assertTrue(tiles.contains(colliding.get(0)));
+        assertTrue(tiles.contains(colliding.get(2)));
+        assertTrue(tiles.contains(colliding.get(3)));
+        assertTrue(tiles.contains(neighbour));
+
+        assertTrue(tiles.remove(colliding.get(0)));
+        assertTrue(tiles.contains(colliding.get(2)));
+        assertTrue(tiles.contains(colliding.get(3)));
+        assertTrue(tiles.contains(neighbour));
+        assertFalse(tiles.remove(colliding.get(0)));
+
+        assertTrue(tiles.remove(neighbour));
+        assertTrue(tiles.contains(colliding.get(2)));
+        assertTrue(tiles.contains(colliding.get(3)));
+        assertEquals(2, tiles.size());
+    }
+
+    @Test
+    public void testMatchesHashSet() {
+        // A small area, so that probe runs collide and wrap a lot
+        Random random = new Random(1);
+        HitTileSet tiles = new HitTileSet();
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 20_000; i++) {
+            int tile = PackedTile.pack(3200 + random.nextInt(8), 5400 + random.nextInt(8), random.nextInt(2));
+            if (random.nextInt(3) == 0) {
+                assertEquals("remove " + i, expected.remove(tile), tiles.remove(tile));
+            } else {
+                assertEquals("add " + i, expected.add(tile), tiles.add(tile));
+            }
+            assertEquals(expected.size(), tiles.size());
+        }
+        assertEquals(expected, toSet(tiles));
+    }
+
+    @Test
+    public void testGrowthKeepsTiles() {
+        HitTileSet tiles = new HitTileSet();
+        Set<Integer> expected = new HashSet<>();
+        // Well past the default capacity, so the table is rehashed a few times
+        for (int x = 0; x < 30; x++) {
+            for (int y = 0; y < 30; y++) {
+                int tile = PackedTile.pack(3600 + x, 5200 + y, x % 4);
+                assertTrue(tiles.add(tile));
+                expected.add(tile);
+            }
+        }
+        assertEquals(expected.size(), tiles.size());
+        assertEquals(expected, toSet(tiles));
+        for (int tile : expected) {
+            assertTrue(tiles.contains(tile));
+            assertFalse(tiles.add(tile));
+        }
+
+        // Clearing keeps the grown table, and the set works the same afterwards
+        tiles.clear();
+        assertTrue(tiles.isEmpty());
+        for (int tile : expected) {
+            assertFalse(tiles.contains(tile));
+        }
+        HitTileSet other = new HitTileSet(expected.size());
+        for (int tile : expected) {
+            other.add(tile);
+        }
+        tiles.addAll(other);
+        assertEquals(expected, toSet(tiles));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddNoneIsRejected() {
+        new HitTileSet().add(PackedTile.NONE);
+    }
+
+    /**
+     * Find tiles whose home slot in a table of the default capacity is the given slot. This repeats the set's hash, so
+     * it has to be kept in sync with it.
+     */
+    private static List<Integer> tilesWithHomeSlot(int slot, int count) {
+        List<Integer> tiles = new ArrayList<>();
+        for (int x = 3200; tiles.size() < count; x++) {
+            int tile = PackedTile.pack(x, 5400, 0);
+            int h = tile * 0x9E3779B9;
+            if (((h ^ (h >>> 16)) & (DEFAULT_CAPACITY - 1)) == slot) {
+                tiles.add(tile);
+            }
+        }
+        return tiles;
+    }
+
+    private static Set<Integer> toSet(HitTileSet tiles) {
+        Set<Integer> set = new HashSet<>();
+        tiles.forEach(set::add);
+        return set;
+    }
+}
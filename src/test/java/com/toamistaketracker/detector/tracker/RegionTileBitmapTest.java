@@ -0,0 +1,161 @@
+package com.toamistaketracker.detector.tracker;
+
+import com.toamistaketracker.PackedTile;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RegionTileBitmapTest {
+
+    private static final int BASE_X = 3584;
+    private static final int BASE_Y = 5376;
+    private static final int REGION_SIZE = 64;
+
+    @Test
+    public void testTilesOutsideRegionGoToOverflow() {
+        RegionTileBitmap layer = new RegionTileBitmap();
+        layer.anchor(BASE_X, BASE_Y);
+
+        // Just outside each edge, where a wrong bounds check would alias onto a tile in the region
+        int[][] outside = {
+                {BASE_X - 1, BASE_Y}, {BASE_X + REGION_SIZE, BASE_Y},
+                {BASE_X, BASE_Y - 1}, {BASE_X, BASE_Y + REGION_SIZE},
+        };
+        for (int[] tile : outside) {
+            layer.add(tile[0], tile[1], 0);
+        }
+        assertEquals(outside.length, layer.size());
+        for (int[] tile : outside) {
+            assertTrue(layer.contains(tile[0], tile[1], 0));
+            assertFalse(layer.contains(tile[0], tile[1], 1));
+        }
+        assertFalse(layer.contains(BASE_X, BASE_Y, 0));
+        assertFalse(layer.contains(BASE_X + REGION_SIZE - 1, BASE_Y, 0));
+        assertFalse(layer.contains(BASE_X, BASE_Y + REGION_SIZE - 1, 0));
+
+        layer.add(BASE_X, BASE_Y, 0);
+        assertTrue(layer.contains(BASE_X, BASE_Y, 0));
+        assertEquals(outside.length + 1, layer.size());
+
+        layer.remove(BASE_X - 1, BASE_Y, 0);
+        assertFalse(layer.contains(BASE_X - 1, BASE_Y, 0));
+        assertTrue(layer.contains(BASE_X, BASE_Y, 0));
+        assertEquals(outside.length, layer.size());
+    }
+
+    @Test
+    public void testPlanesAreSeparate() {
+        RegionTileBitmap layer = new RegionTileBitmap();
+        layer.anchor(BASE_X, BASE_Y);
+
+        layer.add(BASE_X + 10, BASE_Y + 20, 0);
+        layer.add(BASE_X + 10, BASE_Y + 20, 3);
+        layer.add(BASE_X + 10, BASE_Y + 20, 3);
+        assertEquals(2, layer.size());
+        assertTrue(layer.contains(BASE_X + 10, BASE_Y + 20, 0));
+        assertFalse(layer.contains(BASE_X + 10, BASE_Y + 20, 1));
+        assertFalse(layer.contains(BASE_X + 10, BASE_Y + 20, 2));
+        assertTrue(layer.contains(BASE_X + 10, BASE_Y + 20, 3));
+
+        layer.remove(BASE_X + 10, BASE_Y + 20, 0);
+        assertFalse(layer.contains(BASE_X + 10, BASE_Y + 20, 0));
+        assertTrue(layer.contains(BASE_X + 10, BASE_Y + 20, 3));
+        assertEquals(1, layer.size());
+
+        layer.clear();
+        assertTrue(layer.isEmpty());
+        assertFalse(layer.contains(BASE_X + 10, BASE_Y + 20, 3));
+    }
+
+    @Test
+    public void testAnchoringClearsTiles() {
+        RegionTileBitmap layer = new RegionTileBitmap();
+        assertFalse(layer.isAnchored());
+
+        // Anchors itself to the region of the first tile
+        layer.add(BASE_X + 5, BASE_Y + 63, 1);
+        assertTrue(layer.isAnchored());
+        assertEquals(BASE_X, layer.getBaseX());
+        assertEquals(BASE_Y, layer.getBaseY());
+        layer.add(BASE_X + REGION_SIZE + 5, BASE_Y, 1); // The next region over
+        assertEquals(2, layer.size());
+
+        // Clearing keeps the anchor
+        layer.clear();
+        assertTrue(layer.isEmpty());
+        assertTrue(layer.isAnchored());
+        assertEquals(BASE_X, layer.getBaseX());
+        assertFalse(layer.contains(BASE_X + 5, BASE_Y + 63, 1));
+        assertFalse(layer.contains(BASE_X + REGION_SIZE + 5, BASE_Y, 1));
+
+        // Re-anchoring to the next region over clears everything, in both the bitmap and the overflow
+        layer.add(BASE_X + 5, BASE_Y + 63, 1);
+        layer.add(BASE_X + REGION_SIZE + 5, BASE_Y, 1);
+        layer.anchor(BASE_X + REGION_SIZE, BASE_Y);
+        assertTrue(layer.isEmpty());
+        assertFalse(layer.contains(BASE_X + 5, BASE_Y + 63, 1));
+        assertFalse(layer.contains(BASE_X + REGION_SIZE + 5, BASE_Y, 1));
+
+        // And the tile that was in the overflow is now in the bitmap
+        layer.add(BASE_X + REGION_SIZE + 5, BASE_Y, 1);
+        layer.add(BASE_X + 5, BASE_Y + 63, 1);
+        assertEquals(2, layer.size());
+        assertTrue(layer.contains(BASE_X + REGION_SIZE + 5, BASE_Y, 1));
+        assertTrue(layer.contains(BASE_X + 5, BASE_Y + 63, 1));
+    }
+
+    @Test
+    public void testMatchesHashSet() {
+        Random random = new Random(1);
+        for (int run = 0; run < 20; run++) {
+            RegionTileBitmap layer = new RegionTileBitmap();
+            RegionTileBitmap other = new RegionTileBitmap();
+            layer.anchor(BASE_X, BASE_Y);
+            // Half the runs union a layer anchored to the region next door, which has to go tile by tile
+            other.anchor(run % 2 == 0 ? BASE_X : BASE_X + REGION_SIZE, BASE_Y);
+            Set<Integer> expected = new HashSet<>();
+            Set<Integer> expectedOther = new HashSet<>();
+
+            for (int i = 0; i < 500; i++) {
+                // Mostly in the region, and some just outside it
+                int x = BASE_X - 8 + random.nextInt(REGION_SIZE + 16);
+                int y = BASE_Y - 8 + random.nextInt(REGION_SIZE + 16);
+                int plane = random.nextInt(4);
+                int tile = PackedTile.pack(x, y, plane);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        layer.remove(x, y, plane);
+                        expected.remove(tile);
+                        break;
+                    case 1:
+                        other.add(x, y, plane);
+                        expectedOther.add(tile);
+                        break;
+                    default:
+                        layer.add(x, y, plane);
+                        expected.add(tile);
+                }
+                assertEquals(expected.size(), layer.size());
+            }
+
+            layer.union(other);
+            expected.addAll(expectedOther);
+            assertEquals(expected.size(), layer.size());
+            for (int x = BASE_X - 8; x < BASE_X + REGION_SIZE + 8; x++) {
+                for (int y = BASE_Y - 8; y < BASE_Y + REGION_SIZE + 8; y++) {
+                    for (int plane = 0; plane < 4; plane++) {
+                        int tile = PackedTile.pack(x, y, plane);
+                        assertEquals("run " + run + " " + x + ", " + y + ", " + plane,
+                                expected.contains(tile), layer.contains(tile));
+                    }
+                }
+            }
+        }
+    }
+}
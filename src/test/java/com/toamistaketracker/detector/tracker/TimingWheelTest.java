@@ -0,0 +1,105 @@
+package com.toamistaketracker.detector.tracker;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+
+    private static final int START_TICK = 1_000;
+
+    @Test
+    public void testOverflowActivatesOnTime() {
+        TimingWheel<Set<Integer>> wheel = newWheel();
+        // Out of order, and each one lands on a slot already taken by a nearer tick
+        int[] delays = {1, 3 * TimingWheel.SLOTS + 1, TimingWheel.SLOTS + 1, 2 * TimingWheel.SLOTS + 1};
+        for (int delay : delays) {
+            wheel.bucketFor(START_TICK + delay).add(delay);
+        }
+        wheel.bucketFor(START_TICK + TimingWheel.SLOTS + 1).add(-1); // Same overflow bucket as before
+
+        for (int tick = START_TICK + 1; tick <= START_TICK + 3 * TimingWheel.SLOTS + 1; tick++) {
+            Set<Integer> active = wheel.advance(tick);
+            int delay = tick - START_TICK;
+            if (delay == TimingWheel.SLOTS + 1) {
+                assertEquals(set(delay, -1), active);
+            } else if (delay % TimingWheel.SLOTS == 1) {
+                assertEquals(set(delay), active);
+            } else {
+                assertTrue("tick " + tick + " " + active, active.isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testPassedOverflowIsDropped() {
+        TimingWheel<Set<Integer>> wheel = newWheel();
+        wheel.bucketFor(START_TICK + 1).add(1);
+        wheel.bucketFor(START_TICK + TimingWheel.SLOTS + 1).add(2);
+        wheel.bucketFor(START_TICK + 2 * TimingWheel.SLOTS + 1).add(3);
+
+        // Skip past the first two, like the wheel not being advanced while out of the raid
+        for (int tick = START_TICK + TimingWheel.SLOTS + 2; tick <= START_TICK + 3 * TimingWheel.SLOTS; tick++) {
+            Set<Integer> active = wheel.advance(tick);
+            if (tick == START_TICK + 2 * TimingWheel.SLOTS + 1) {
+                assertEquals(set(3), active);
+            } else {
+                assertTrue("tick " + tick + " " + active, active.isEmpty());
+            }
+        }
+    }
+
+    @Test
+    public void testOverflowBucketsAreReused() {
+        TimingWheel<Set<Integer>> wheel = newWheel();
+        // Buckets change their hash codes as they're filled, so count them by identity
+        Set<Set<Integer>> overflowBuckets = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int tick = START_TICK; tick < START_TICK + 10 * TimingWheel.SLOTS; tick++) {
+            wheel.bucketFor(tick + 1).add(tick);
+            Set<Integer> overflowBucket = wheel.bucketFor(tick + TimingWheel.SLOTS + 1);
+            overflowBucket.add(tick);
+            overflowBuckets.add(overflowBucket);
+
+            Set<Integer> active = wheel.advance(tick + 1);
+            if (tick >= START_TICK + TimingWheel.SLOTS) {
+                assertEquals(set(tick, tick - TimingWheel.SLOTS), active);
+            }
+        }
+        // Only as many as were ever waiting at once, plus the one being merged
+        assertTrue("" + overflowBuckets.size(), overflowBuckets.size() <= TimingWheel.SLOTS + 1);
+    }
+
+    @Test
+    public void testClearDropsOverflow() {
+        TimingWheel<Set<Integer>> wheel = newWheel();
+        wheel.bucketFor(START_TICK + 1).add(1);
+        wheel.bucketFor(START_TICK + TimingWheel.SLOTS + 1).add(2);
+        Set<Integer> overflowBucket = wheel.bucketFor(START_TICK + TimingWheel.SLOTS + 1);
+        wheel.clear();
+
+        assertTrue(overflowBucket.isEmpty());
+        for (int tick = START_TICK + 1; tick <= START_TICK + 2 * TimingWheel.SLOTS; tick++) {
+            assertTrue("tick " + tick, wheel.advance(tick).isEmpty());
+        }
+
+        // The cleared bucket is reused for the next overflow
+        wheel.bucketFor(START_TICK + 2 * TimingWheel.SLOTS + 1).add(3);
+        assertSame(overflowBucket, wheel.bucketFor(START_TICK + 3 * TimingWheel.SLOTS + 1));
+    }
+
+    private static TimingWheel<Set<Integer>> newWheel() {
+        return new TimingWheel<>(HashSet::new, Set::clear, Set::addAll);
+    }
+
+    private static Set<Integer> set(Integer... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,73 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.ToaMistake;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+public class MistakeManagerTest {
+
+    private static final int NUM_PLAYERS = 4;
+    private static final int NUM_ADDS = 200_000;
+
+    @Test
+    public void testAggregatesSurviveConcurrentRemoves() throws InterruptedException {
+        MistakeManager mistakeManager = new MistakeManager();
+        CountDownLatch start = new CountDownLatch(1);
+
+        // Like the client thread adding mistakes while the EDT removes players
+        Thread adder = new Thread(() -> {
+            awaitUninterruptibly(start);
+            for (int i = 0; i < NUM_ADDS; i++) {
+                mistakeManager.addMistakeForPlayer("Player " + (i % NUM_PLAYERS), ToaMistake.DEATH);
+            }
+        });
+        adder.start();
+        start.countDown();
+        for (int i = 0; adder.isAlive(); i++) {
+            mistakeManager.removeAllMistakesForPlayer("Player " + (i % NUM_PLAYERS));
+        }
+        adder.join();
+
+        int total = 0;
+        Set<String> playersWithMistakes = new HashSet<>();
+        for (PlayerTrackingInfo playerInfo : mistakeManager.getTrackingInfo()) {
+            total += playerInfo.getTotalMistakeCount();
+            if (playerInfo.hasMistakes()) {
+                playersWithMistakes.add(playerInfo.getPlayerName());
+            }
+        }
+        assertEquals(total, mistakeManager.getTotalMistakeCountForAllPlayers());
+        assertEquals(playersWithMistakes, mistakeManager.getPlayersWithMistakes());
+    }
+
+    @Test
+    public void testRemoveAndClearUpdateAggregates() {
+        MistakeManager mistakeManager = new MistakeManager();
+        mistakeManager.addMistakeForPlayer("Player 1", ToaMistake.DEATH);
+        mistakeManager.addMistakeForPlayer("Player 1", ToaMistake.BABA_BANANA);
+        mistakeManager.addMistakeForPlayer("Player 2", ToaMistake.DEATH);
+        assertEquals(3, mistakeManager.getTotalMistakeCountForAllPlayers());
+        assertEquals(2, mistakeManager.getPlayersWithMistakesCount());
+
+        mistakeManager.removeAllMistakesForPlayer("Player 1");
+        assertEquals(1, mistakeManager.getTotalMistakeCountForAllPlayers());
+        assertEquals(1, mistakeManager.getPlayersWithMistakesCount());
+
+        mistakeManager.clearAllMistakes();
+        assertEquals(0, mistakeManager.getTotalMistakeCountForAllPlayers());
+        assertEquals(0, mistakeManager.getPlayersWithMistakesCount());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
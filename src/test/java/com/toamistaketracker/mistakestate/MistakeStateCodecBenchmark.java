@@ -0,0 +1,84 @@
+package com.toamistaketracker.mistakestate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static com.toamistaketracker.mistakestate.MistakeStateCodecTest.NUM_PLAYERS;
+import static com.toamistaketracker.mistakestate.MistakeStateCodecTest.NUM_RAIDS;
+import static com.toamistaketracker.mistakestate.MistakeStateJsonTest.newState;
+
+/**
+ * Times writing and reading a state with {@value MistakeStateCodecTest#NUM_PLAYERS} players in the
+ * {@link MistakeStateCodec} binary format, against the legacy JSON format, and prints both sizes. The sizes are
+ * checked by {@link MistakeStateCodecTest}.
+ * <p>
+ * This is a benchmark, not a test. Run it with {@link #main(String[])}. Both formats are written to and read from
+ * memory, so this leaves out the disk.
+ */
+public class MistakeStateCodecBenchmark {
+
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 50;
+
+    public static void main(String[] args) throws IOException {
+        MistakeStateManager state = newState(NUM_PLAYERS, NUM_RAIDS, 1);
+        byte[] binary = writeBinary(state);
+        String json = writeJson(state);
+
+        // Keep the results alive, so the JIT can't drop the work
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += writeBinary(state).length + writeJson(state).length();
+            sink += MistakeStateCodec.read(binary).getTrackedRaids();
+            sink += MistakeStateManager.readJson(new StringReader(json)).getTrackedRaids();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink += writeBinary(state).length;
+        }
+        long binaryWriteMicros = (System.nanoTime() - start) / MEASURED_ROUNDS / 1000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink += writeJson(state).length();
+        }
+        long jsonWriteMicros = (System.nanoTime() - start) / MEASURED_ROUNDS / 1000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink += MistakeStateCodec.read(binary).getTrackedRaids();
+        }
+        long binaryReadMicros = (System.nanoTime() - start) / MEASURED_ROUNDS / 1000;
+
+        start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            sink += MistakeStateManager.readJson(new StringReader(json)).getTrackedRaids();
+        }
+        long jsonReadMicros = (System.nanoTime() - start) / MEASURED_ROUNDS / 1000;
+
+        System.out.println("Players: " + state.getAllRaidsMistakeManager().getTrackingInfo().size());
+        System.out.println("Size, binary: " + binary.length + " bytes");
+        System.out.println("Size, JSON:   " + json.getBytes(StandardCharsets.UTF_8).length + " bytes");
+        System.out.println("Write, binary: " + binaryWriteMicros + " us");
+        System.out.println("Write, JSON:   " + jsonWriteMicros + " us");
+        System.out.println("Read, binary: " + binaryReadMicros + " us");
+        System.out.println("Read, JSON:   " + jsonReadMicros + " us");
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static byte[] writeBinary(MistakeStateManager state) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MistakeStateCodec.write(state, out);
+        return out.toByteArray();
+    }
+
+    private static String writeJson(MistakeStateManager state) throws IOException {
+        StringWriter out = new StringWriter();
+        state.writeJson(out);
+        return out.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package com.toamistaketracker.mistakestate;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static com.toamistaketracker.mistakestate.MistakeStateJsonTest.assertStateEquals;
+import static com.toamistaketracker.mistakestate.MistakeStateJsonTest.newState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MistakeStateCodecTest {
+
+    static final int NUM_PLAYERS = 10_000;
+    static final int NUM_RAIDS = 5_000;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        MistakeStateManager state = newState(NUM_PLAYERS, NUM_RAIDS, 1);
+        state.setSnapshotId(42);
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        MistakeStateCodec.write(state, binary);
+        MistakeStateManager read = MistakeStateCodec.read(binary.toByteArray());
+
+        assertStateEquals(state, read);
+        assertEquals(42, read.getSnapshotId());
+    }
+
+    @Test
+    public void testSeveralTimesSmallerThanJson() throws IOException {
+        MistakeStateManager state = newState(NUM_PLAYERS, NUM_RAIDS, 1);
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        MistakeStateCodec.write(state, binary);
+        StringWriter json = new StringWriter();
+        state.writeJson(json);
+        int jsonSize = json.toString().getBytes(StandardCharsets.UTF_8).length;
+
+        assertTrue("binary " + binary.size() + " bytes, JSON " + jsonSize + " bytes", 3 * binary.size() <= jsonSize);
+        assertStateEquals(state, MistakeStateManager.readJson(new StringReader(json.toString())));
+    }
+}
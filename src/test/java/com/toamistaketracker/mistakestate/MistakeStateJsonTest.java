@@ -0,0 +1,112 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.ToaMistake;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class MistakeStateJsonTest {
+
+    @Test
+    public void testCountersRoundTripThroughJson() throws IOException {
+        MistakeStateManager state = newState(50, 5, 1);
+
+        Path dir = Files.createTempDirectory("toa-mistake-state");
+        Path countersPath = dir.resolve("mistake-counters.dat");
+        try {
+            MappedCounterStore.create(countersPath, state).close();
+            MappedCounterStore counterStore = MappedCounterStore.open(countersPath);
+            MistakeStateManager fromCounters = counterStore.readState();
+            counterStore.close();
+
+            StringWriter json = new StringWriter();
+            fromCounters.writeJson(json);
+            MistakeStateManager fromJson = MistakeStateManager.readJson(new StringReader(json.toString()));
+
+            assertStateEquals(state, fromCounters);
+            assertStateEquals(state, fromJson);
+            assertEquals(state.getTotalMistakeCountForAllPlayers(), fromJson.getTotalMistakeCountForAllPlayers());
+            assertEquals(state.getPlayersWithMistakes(), fromJson.getPlayersWithMistakes());
+        } finally {
+            Files.deleteIfExists(countersPath);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    @Test
+    public void testJsonKeepsLegacyShape() throws IOException {
+        MistakeStateManager state = new MistakeStateManager(null);
+        state.applyNewRaid(new HashSet<>(Arrays.asList("Player")));
+        state.applyMistake("Player", ToaMistake.DEATH);
+        state.applyMistake("Player", ToaMistake.DEATH);
+        state.setSnapshotId(42);
+
+        StringWriter json = new StringWriter();
+        state.writeJson(json);
+        String expected = "{\"currentRaidMistakeManager\":{\"trackingInfo\":{\"Player\":" +
+                "{\"playerName\":\"Player\",\"mistakes\":{\"DEATH\":2},\"raidCount\":1}},\"trackedRaids\":0}," +
+                "\"allRaidsMistakeManager\":{\"trackingInfo\":{\"Player\":" +
+                "{\"playerName\":\"Player\",\"mistakes\":{\"DEATH\":2},\"raidCount\":1}},\"trackedRaids\":1}}";
+        assertEquals(expected, json.toString());
+        assertFalse(json.toString().contains("snapshotId"));
+    }
+
+    /**
+     * Build a state with random mistakes over a few raids, through the same methods that replay the journal
+     */
+    static MistakeStateManager newState(int numPlayers, int numRaids, long seed) {
+        Random random = new Random(seed);
+        MistakeStateManager state = new MistakeStateManager(null);
+        for (int raid = 0; raid < numRaids; raid++) {
+            HashSet<String> playerNames = new HashSet<>();
+            for (int i = 0; i < 8; i++) {
+                playerNames.add("Player " + random.nextInt(numPlayers));
+            }
+            state.applyNewRaid(playerNames);
+
+            for (String playerName : playerNames) {
+                int mistakes = random.nextInt(20);
+                for (int i = 0; i < mistakes; i++) {
+                    state.applyMistake(playerName, PlayerTrackingInfo.MISTAKES[random.nextInt(
+                            PlayerTrackingInfo.MISTAKES.length)]);
+                }
+            }
+        }
+        return state;
+    }
+
+    static void assertStateEquals(MistakeStateManager expected, MistakeStateManager actual) {
+        assertManagerEquals(expected.getCurrentRaidMistakeManager(), actual.getCurrentRaidMistakeManager());
+        assertManagerEquals(expected.getAllRaidsMistakeManager(), actual.getAllRaidsMistakeManager());
+    }
+
+    private static void assertManagerEquals(MistakeManager expected, MistakeManager actual) {
+        assertEquals(expected.getTrackedRaids(), actual.getTrackedRaids());
+        assertEquals(toMap(expected), toMap(actual));
+    }
+
+    /**
+     * @return Every tracked player's raid count and mistake counts, as one comparable string per player
+     */
+    private static Map<String, String> toMap(MistakeManager mistakeManager) {
+        Map<String, String> players = new TreeMap<>();
+        for (PlayerTrackingInfo playerInfo : mistakeManager.getTrackingInfo()) {
+            int[] mistakeCounts = new int[PlayerTrackingInfo.MISTAKES.length];
+            playerInfo.copyMistakeCounts(mistakeCounts);
+            players.put(playerInfo.getPlayerName(), playerInfo.getRaidCount() + " " + Arrays.toString(mistakeCounts));
+        }
+        return players;
+    }
+}
@@ -0,0 +1,135 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.ToaMistake;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.toamistaketracker.mistakestate.MistakeStateJsonTest.assertStateEquals;
+import static com.toamistaketracker.mistakestate.MistakeStateJsonTest.newState;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MistakeStateLoadTest {
+
+    private static final long SNAPSHOT_ID = 7;
+
+    private Path dir;
+    private Path expectedDir;
+    private Path snapshotPath;
+    private Path legacySnapshotPath;
+    private Path journalPath;
+    private MistakeStateWriter writer;
+    private MistakeStateWriter expectedWriter;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("toa-mistake-state");
+        expectedDir = Files.createTempDirectory("toa-mistake-state-expected");
+        snapshotPath = dir.resolve("mistake-state.dat");
+        legacySnapshotPath = dir.resolve("mistake-state.txt");
+        journalPath = dir.resolve("mistake-journal.dat");
+        writer = new MistakeStateWriter(dir, false);
+        expectedWriter = new MistakeStateWriter(expectedDir, false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        writer.flushAndWait();
+        expectedWriter.flushAndWait();
+        delete(dir);
+        delete(expectedDir);
+    }
+
+    @Test
+    public void testChangesWhileLoadingAreMergedIntoLoadedState() throws Exception {
+        assertMerged(state -> {
+            state.addMistakeForPlayer("Player 1", ToaMistake.DEATH);
+            state.newRaid(set("Player 1", "Late Joiner"));
+            state.addMistakeForPlayer("Late Joiner", ToaMistake.BABA_BANANA);
+            state.addMistakeForPlayer("Player 1", ToaMistake.BABA_BANANA);
+            state.removeAllMistakesForPlayer("Player 2");
+        }, 5);
+    }
+
+    @Test
+    public void testResetWhileLoadingClearsLoadedState() throws Exception {
+        assertMerged(state -> {
+            state.addMistakeForPlayer("Player 1", ToaMistake.DEATH);
+            state.resetAll();
+            state.newRaid(set("Player 1", "Player 3"));
+            state.addMistakeForPlayer("Player 3", ToaMistake.DEATH);
+        }, 4);
+    }
+
+    /**
+     * Make the changes while the state is loading, then complete the load, and assert that both the state in memory
+     * and the state on disk are the loaded state with the changes applied on top
+     */
+    private void assertMerged(Consumer<MistakeStateManager> changes, int changeCount) throws Exception {
+        MistakeStateManager loaded = newState(20, 5, 1);
+        loaded.setSnapshotId(SNAPSHOT_ID);
+        writeSnapshot(loaded);
+
+        // The changes applied to a copy of the loaded state, like they would be without a background load
+        MistakeStateManager expected = MistakeStateReader.readSnapshot(snapshotPath, legacySnapshotPath);
+        expected.setMistakeStateWriter(expectedWriter);
+        changes.accept(expected);
+
+        MistakeStateManager state = new MistakeStateManager(writer);
+        state.startLoading();
+        changes.accept(state);
+        assertTrue(state.isLoading());
+        assertEquals(1, state.getTrackedRaids());
+
+        CountDownLatch isLoaded = new CountDownLatch(1);
+        writer.execute(() -> {
+            state.completeLoad(loaded);
+            isLoaded.countDown();
+        });
+        isLoaded.await();
+        // The buffered changes are appended by the load, so this flushes after them
+        writer.flushAndWait();
+
+        assertFalse(state.isLoading());
+        assertStateEquals(expected, state);
+
+        MistakeStateManager fromDisk = MistakeStateReader.readSnapshot(snapshotPath, legacySnapshotPath);
+        assertEquals(changeCount, MistakeJournal.replay(journalPath, SNAPSHOT_ID, fromDisk));
+        assertStateEquals(expected, fromDisk);
+    }
+
+    private void writeSnapshot(MistakeStateManager mistakeStateManager) throws IOException {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        MistakeStateCodec.write(mistakeStateManager, snapshot);
+        try (OutputStream out = Files.newOutputStream(snapshotPath)) {
+            snapshot.writeTo(out);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static Set<String> set(String... playerNames) {
+        return new HashSet<>(Arrays.asList(playerNames));
+    }
+}
@@ -0,0 +1,257 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.ToaMistake;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.stream.Stream;
+
+import static com.toamistaketracker.mistakestate.MistakeStateJsonTest.assertStateEquals;
+import static com.toamistaketracker.mistakestate.MistakeStateJsonTest.newState;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MistakeStateReaderTest {
+
+    private static final byte[] GARBAGE = "not a mistake state".getBytes(StandardCharsets.UTF_8);
+    private static final long SNAPSHOT_ID = 7;
+    private static final int JOURNAL_HEADER_SIZE = 13; // int MAGIC, byte VERSION, long snapshotId
+
+    // One of every record type, ending with one long enough to be torn partway through
+    private static final MistakeJournal.Record[] CHANGES = {
+            MistakeJournal.addMistake("Player 1", ToaMistake.DEATH),
+            MistakeJournal.newRaid(new HashSet<>(Arrays.asList("Player 1", "New Player"))),
+            MistakeJournal.addMistake("New Player", ToaMistake.BABA_BANANA),
+            MistakeJournal.removeAllMistakesForPlayer("Player 2"),
+            MistakeJournal.resetAll(),
+            MistakeJournal.addMistake("Player 3", ToaMistake.DEATH),
+            MistakeJournal.addMistake("A player with a long name", ToaMistake.DEATH),
+    };
+
+    private Path dir;
+    private Path snapshotPath;
+    private Path legacySnapshotPath;
+    private Path journalPath;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("toa-mistake-state");
+        snapshotPath = dir.resolve("mistake-state.dat");
+        legacySnapshotPath = dir.resolve("mistake-state.txt");
+        journalPath = dir.resolve("mistake-journal.dat");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testMissingSnapshotIsEmpty() throws IOException {
+        MistakeStateManager state = MistakeStateReader.readSnapshot(snapshotPath, legacySnapshotPath);
+        assertStateEquals(new MistakeStateManager(null), state);
+    }
+
+    @Test
+    public void testUnreadableSnapshotThrows() throws IOException {
+        Files.write(snapshotPath, GARBAGE);
+        assertUnreadable();
+    }
+
+    @Test
+    public void testUnreadableLegacySnapshotThrows() throws IOException {
+        Files.write(legacySnapshotPath, GARBAGE);
+        assertUnreadable();
+
+        Files.write(legacySnapshotPath, new byte[0]);
+        assertUnreadable();
+    }
+
+    @Test
+    public void testUnreadableSnapshotIsSetAsideWithJournal() throws IOException {
+        Files.write(snapshotPath, GARBAGE);
+        byte[] journal = {1, 2, 3};
+        Files.write(journalPath, journal);
+
+        MistakeStateManager state = MistakeStateReader.readSnapshotOrSetAside(snapshotPath, legacySnapshotPath,
+                journalPath);
+
+        assertStateEquals(new MistakeStateManager(null), state);
+        assertFalse(Files.exists(snapshotPath));
+        assertFalse(Files.exists(journalPath));
+        assertArrayEquals(GARBAGE, Files.readAllBytes(dir.resolve("mistake-state.dat.corrupt")));
+        assertArrayEquals(journal, Files.readAllBytes(dir.resolve("mistake-journal.dat.corrupt")));
+    }
+
+    @Test
+    public void testLegacySnapshotIsReadAfterUnreadableSnapshot() throws IOException {
+        MistakeStateManager legacyState = newState(50, 5, 1);
+        try (BufferedWriter out = Files.newBufferedWriter(legacySnapshotPath)) {
+            legacyState.writeJson(out);
+        }
+        Files.write(snapshotPath, truncatedSnapshot(legacyState));
+
+        MistakeStateManager state = MistakeStateReader.readSnapshotOrSetAside(snapshotPath, legacySnapshotPath,
+                journalPath);
+
+        assertStateEquals(legacyState, state);
+        assertFalse(Files.exists(snapshotPath));
+        assertEquals(2, countFiles());
+    }
+
+    @Test
+    public void testJournalIsReplayedOnItsSnapshot() throws IOException {
+        writeJournal(SNAPSHOT_ID, CHANGES);
+        MistakeStateManager state = newSnapshotState();
+
+        assertEquals(CHANGES.length, MistakeJournal.replay(journalPath, SNAPSHOT_ID, state));
+        assertStateEquals(expectedState(CHANGES.length), state);
+    }
+
+    @Test
+    public void testTornRecordEndsReplay() throws IOException {
+        writeJournal(SNAPSHOT_ID, CHANGES);
+        // Cut off partway through the last record, a long player name
+        byte[] journal = Files.readAllBytes(journalPath);
+        Files.write(journalPath, Arrays.copyOf(journal, journal.length - 3));
+        MistakeStateManager state = newSnapshotState();
+
+        assertEquals(CHANGES.length - 1, MistakeJournal.replay(journalPath, SNAPSHOT_ID, state));
+        assertStateEquals(expectedState(CHANGES.length - 1), state);
+    }
+
+    @Test
+    public void testJournalForAnotherSnapshotIsSkipped() throws IOException {
+        writeJournal(SNAPSHOT_ID + 1, CHANGES);
+        MistakeStateManager state = newSnapshotState();
+
+        assertEquals(0, MistakeJournal.replay(journalPath, SNAPSHOT_ID, state));
+        assertStateEquals(newSnapshotState(), state);
+    }
+
+    @Test
+    public void testCompactionFoldsJournalIntoSnapshot() throws Exception {
+        writeSnapshot(newSnapshotState());
+        writeJournal(SNAPSHOT_ID, CHANGES);
+
+        compact();
+
+        MistakeStateManager state = MistakeStateReader.readSnapshot(snapshotPath, legacySnapshotPath);
+        assertNotEquals(SNAPSHOT_ID, state.getSnapshotId());
+        assertStateEquals(expectedState(CHANGES.length), state);
+        // The journal is restarted on top of the new snapshot
+        assertEquals(0, MistakeJournal.replay(journalPath, state.getSnapshotId(), state));
+        assertEquals(JOURNAL_HEADER_SIZE, Files.size(journalPath));
+    }
+
+    @Test
+    public void testCompactionMigratesLegacySnapshot() throws Exception {
+        try (BufferedWriter out = Files.newBufferedWriter(legacySnapshotPath)) {
+            newSnapshotState().writeJson(out);
+        }
+
+        compact();
+
+        assertFalse(Files.exists(legacySnapshotPath));
+        assertTrue(Files.exists(dir.resolve("mistake-state.txt.bak")));
+        assertStateEquals(newSnapshotState(), MistakeStateReader.readSnapshot(snapshotPath, legacySnapshotPath));
+    }
+
+    @Test
+    public void testCompactionKeepsJournalOnUnreadableSnapshot() throws Exception {
+        Files.write(snapshotPath, GARBAGE);
+        writeJournal(SNAPSHOT_ID, CHANGES);
+        byte[] journal = Files.readAllBytes(journalPath);
+
+        compact();
+
+        assertArrayEquals(GARBAGE, Files.readAllBytes(snapshotPath));
+        assertArrayEquals(journal, Files.readAllBytes(journalPath));
+    }
+
+    /**
+     * Compact on the writer thread and wait for it
+     */
+    private void compact() {
+        MistakeStateWriter writer = new MistakeStateWriter(dir, false);
+        writer.compact();
+        writer.flushAndWait();
+    }
+
+    private static MistakeStateManager newSnapshotState() {
+        MistakeStateManager state = newState(20, 5, 1);
+        state.setSnapshotId(SNAPSHOT_ID);
+        return state;
+    }
+
+    /**
+     * @return The snapshot state with the first {@code count} of {@link #CHANGES} applied
+     */
+    private static MistakeStateManager expectedState(int count) throws IOException {
+        MistakeStateManager state = newSnapshotState();
+        MistakeJournal.replay(Arrays.asList(CHANGES).subList(0, count), state);
+        return state;
+    }
+
+    private void writeSnapshot(MistakeStateManager state) throws IOException {
+        try (OutputStream out = Files.newOutputStream(snapshotPath)) {
+            MistakeStateCodec.write(state, out);
+        }
+    }
+
+    private void writeJournal(long snapshotId, MistakeJournal.Record... records) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(journalPath))) {
+            MistakeJournal.writeHeader(out, snapshotId);
+            for (MistakeJournal.Record record : records) {
+                record.writeTo(out);
+            }
+        }
+    }
+
+    private void assertUnreadable() {
+        try {
+            MistakeStateReader.readSnapshot(snapshotPath, legacySnapshotPath);
+            fail("Read an unreadable snapshot");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    /**
+     * @return A snapshot cut off partway through, like after a crash mid-write
+     */
+    private static byte[] truncatedSnapshot(MistakeStateManager state) throws IOException {
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        MistakeStateCodec.write(state, snapshot);
+        byte[] bytes = snapshot.toByteArray();
+        byte[] truncated = new byte[bytes.length / 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        return truncated;
+    }
+}
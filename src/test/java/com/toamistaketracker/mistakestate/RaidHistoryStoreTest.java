@@ -0,0 +1,186 @@
+package com.toamistaketracker.mistakestate;
+
+import com.toamistaketracker.PackedTile;
+import com.toamistaketracker.RaidRoom;
+import com.toamistaketracker.RaidState;
+import com.toamistaketracker.ToaMistake;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RaidHistoryStoreTest {
+
+    private static final int INDEX_MAGIC = 0x544F4149;
+    private static final int EVENTS_PER_LARGE_RAID = 1_000;
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("toa-raid-history");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Path file : listSegments()) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        String[] raiderNames = new String[RaidState.MAX_RAIDERS];
+        raiderNames[0] = "Raider 0";
+        raiderNames[3] = "Raider 3";
+        RaidRecord raid = new RaidRecord(1234567890123L, raiderNames);
+        raid.addMistake(0, 0, ToaMistake.DEATH, PackedTile.NONE); // Before any room
+        raid.addRoom(RaidRoom.AKKHA);
+        raid.addMistake(5, 3, ToaMistake.DEATH, PackedTile.pack(3680, 5407, 1));
+        raid.addRoom(null);
+        raid.addRoom(RaidRoom.BABA);
+        raid.addMistake(500, 0, ToaMistake.BABA_BANANA, PackedTile.pack(3800, 5400, 0));
+        raid.addMistake(500, 3, ToaMistake.BABA_BANANA, PackedTile.pack(3801, 5400, 0));
+
+        new RaidHistoryStore(dir).append(raid);
+        List<RaidRecord> raids = new RaidHistoryStore(dir).readLast(10);
+
+        assertEquals(1, raids.size());
+        assertRaidEquals(raid, raids.get(0));
+    }
+
+    @Test
+    public void testSegmentIsSealedOnceFull() throws IOException {
+        RaidHistoryStore store = new RaidHistoryStore(dir);
+        int raidCount = 0;
+        do {
+            store.append(newRaid(raidCount++, EVENTS_PER_LARGE_RAID));
+        } while (Files.size(dir.resolve("raid-history-000001.dat")) < RaidHistoryStore.SEGMENT_CAPACITY_BYTES);
+
+        // Sealing happens on the append that fills the segment, so the next raid starts a new one
+        assertEquals(INDEX_MAGIC, readLastInt(dir.resolve("raid-history-000001.dat")));
+        assertEquals(1, listSegments().size());
+
+        // A new store keeps appending after the sealed segment, instead of to it
+        new RaidHistoryStore(dir).append(newRaid(raidCount++, 1));
+        assertEquals(2, listSegments().size());
+        assertEquals(INDEX_MAGIC, readLastInt(dir.resolve("raid-history-000001.dat")));
+
+        assertStartTimes(new RaidHistoryStore(dir).readLast(raidCount), raidCount, raidCount);
+    }
+
+    @Test
+    public void testTornTailIsOverwrittenByNextAppend() throws IOException {
+        new RaidHistoryStore(dir).append(newRaid(0, 10));
+        Path segment = dir.resolve("raid-history-000001.dat");
+        long completeSize = Files.size(segment);
+
+        // Like the client being killed partway through writing the next raid
+        Files.write(segment, new byte[]{0, 0, 1, 0, 42, 42, 42}, StandardOpenOption.APPEND);
+        assertStartTimes(new RaidHistoryStore(dir).readLast(10), 1, 1);
+
+        RaidHistoryStore store = new RaidHistoryStore(dir);
+        RaidRecord raid = newRaid(1, 10);
+        store.append(raid);
+
+        List<RaidRecord> raids = store.readLast(10);
+        assertStartTimes(raids, 2, 2);
+        assertRaidEquals(raid, raids.get(0));
+        assertEquals(1, listSegments().size());
+        assertEquals(2 * completeSize - 5, Files.size(segment)); // Both raids are the same size, and one header
+    }
+
+    @Test
+    public void testReadLastIsNewestFirstAcrossSegments() throws IOException {
+        RaidHistoryStore store = new RaidHistoryStore(dir);
+        int raidCount = 0;
+        while (listSegments().size() < 3) {
+            store.append(newRaid(raidCount++, EVENTS_PER_LARGE_RAID));
+        }
+        int lastSegmentRaids = 0;
+        while (lastSegmentRaids < 2) {
+            store.append(newRaid(raidCount++, EVENTS_PER_LARGE_RAID));
+            lastSegmentRaids++;
+        }
+
+        RaidHistoryStore reader = new RaidHistoryStore(dir);
+        assertStartTimes(reader.readLast(0), raidCount, 0);
+        assertStartTimes(reader.readLast(1), raidCount, 1);
+        // Crosses from the active segment into the sealed ones
+        assertStartTimes(reader.readLast(lastSegmentRaids + 5), raidCount, lastSegmentRaids + 5);
+        assertStartTimes(reader.readLast(raidCount + 10), raidCount, raidCount);
+    }
+
+    /**
+     * A raid with every slot filled, starting at its number, with the given number of mistakes across a few rooms
+     */
+    private static RaidRecord newRaid(int number, int eventCount) {
+        String[] raiderNames = new String[RaidState.MAX_RAIDERS];
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            raiderNames[slot] = "Raid " + number + " raider " + slot;
+        }
+        RaidRecord raid = new RaidRecord(number, raiderNames);
+        raid.addRoom(RaidRoom.HET_PUZZLE);
+        raid.addRoom(RaidRoom.AKKHA);
+        for (int i = 0; i < eventCount; i++) {
+            raid.addMistake(i * 3, i % RaidState.MAX_RAIDERS, PlayerTrackingInfo.MISTAKES[i %
+                    PlayerTrackingInfo.MISTAKES.length], PackedTile.pack(3600 + i % 64, 5400 + i % 64, i % 4));
+        }
+        return raid;
+    }
+
+    /**
+     * Assert that the raids are the newest ones of {@link #newRaid(int, int)} numbered from 0 until raidCount, newest
+     * first
+     */
+    private static void assertStartTimes(List<RaidRecord> raids, int raidCount, int expectedSize) {
+        assertEquals(expectedSize, raids.size());
+        for (int i = 0; i < raids.size(); i++) {
+            assertEquals(raidCount - 1 - i, raids.get(i).getStartTime());
+        }
+    }
+
+    private static void assertRaidEquals(RaidRecord expected, RaidRecord actual) {
+        assertEquals(expected.getStartTime(), actual.getStartTime());
+        for (int slot = 0; slot < RaidState.MAX_RAIDERS; slot++) {
+            assertEquals(expected.getRaiderName(slot), actual.getRaiderName(slot));
+        }
+        assertEquals(expected.getRooms(), actual.getRooms());
+        assertEquals(expected.getEventCount(), actual.getEventCount());
+        for (int i = 0; i < expected.getEventCount(); i++) {
+            assertArrayEquals("event " + i, new Object[]{
+                    expected.getEventTick(i), expected.getEventRoomIndex(i), expected.getEventRaiderSlot(i),
+                    expected.getEventMistake(i), expected.getEventTile(i)
+            }, new Object[]{
+                    actual.getEventTick(i), actual.getEventRoomIndex(i), actual.getEventRaiderSlot(i),
+                    actual.getEventMistake(i), actual.getEventTile(i)
+            });
+        }
+    }
+
+    private static int readLastInt(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        assertTrue(bytes.length >= 4);
+        return ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt();
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+}